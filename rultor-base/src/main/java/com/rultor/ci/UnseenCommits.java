@@ -29,8 +29,9 @@
  */
 package com.rultor.ci;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterators;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.AbstractIterator;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.Tv;
@@ -40,7 +41,15 @@ import com.rultor.scm.SCM;
 import com.rultor.snapshot.Step;
 import com.rultor.stateful.Notepad;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 import javax.validation.constraints.NotNull;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -48,6 +57,20 @@ import lombok.ToString;
 /**
  * Returns only one commit, if it wasn't seen before.
  *
+ * <p>Commits are read from the origin branch by pages of a hundred and
+ * every page is checked against the notepad in one call to
+ * {@link Notepad#known(Collection)}. A commit is marked as seen only
+ * when it is returned by the iterator.
+ *
+ * <p>When the log of a {@link Branch.Incremental} branch is read to the
+ * end, a watermark of its latest commit is added to the notepad (all
+ * older commits are there already) and the commit is remembered in
+ * memory as a candidate for the SCM URI and the branch name. Next time
+ * the latest candidate with a watermark in this notepad is used and
+ * only commits made after it are requested. Watermarks are checked in
+ * the notepad, so rules sharing a branch never skip each other's
+ * commits and a restarted node simply reads the full log once.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -58,6 +81,21 @@ import lombok.ToString;
 @Loggable(Loggable.DEBUG)
 public final class UnseenCommits implements Branch {
 
+    /**
+     * Latest commits of fully read logs, by SCM URI and branch name,
+     * the most recent first (candidates to check in the notepad).
+     */
+    private static final Cache<String, List<String>> WATERMARKS =
+        CacheBuilder.newBuilder()
+            .expireAfterAccess(1L, TimeUnit.DAYS)
+            .maximumSize((long) Tv.THOUSAND)
+            .build();
+
+    /**
+     * Prefix of a watermark in the notepad.
+     */
+    private static final String MARK = "watermark:";
+
     /**
      * Branch to monitor.
      */
@@ -91,19 +129,59 @@ public final class UnseenCommits implements Branch {
         ignore = IOException.class
     )
     public Iterable<Commit> log() throws IOException {
-        final Iterator<Commit> iterator = this.origin.log().iterator();
+        final Iterator<Commit> iterator;
+        if (this.origin instanceof Branch.Incremental) {
+            iterator = Branch.Incremental.class.cast(this.origin)
+                .log(this.since()).iterator();
+        } else {
+            iterator = this.origin.log().iterator();
+        }
         return new Iterable<Commit>() {
             @Override
             public Iterator<Commit> iterator() {
-                return Iterators.filter(
-                    iterator,
-                    new Predicate<Commit>() {
-                        @Override
-                        public boolean apply(final Commit commit) {
-                            return !UnseenCommits.this.seen(commit);
+                return new AbstractIterator<Commit>() {
+                    /**
+                     * Commits of the current page.
+                     */
+                    private final transient Queue<Commit> page =
+                        new LinkedList<Commit>();
+                    /**
+                     * Names of known commits of the current page.
+                     */
+                    private transient Collection<String> known =
+                        Collections.emptySet();
+                    /**
+                     * Name of the latest commit in the log, if any.
+                     */
+                    private transient String head;
+                    @Override
+                    protected Commit computeNext() {
+                        Commit next = null;
+                        while (next == null) {
+                            if (this.page.isEmpty()) {
+                                this.known = UnseenCommits.this.page(
+                                    iterator, this.page
+                                );
+                                if (this.head == null
+                                    && !this.page.isEmpty()) {
+                                    this.head = UnseenCommits.name(
+                                        this.page.peek()
+                                    );
+                                }
+                            }
+                            if (this.page.isEmpty()) {
+                                UnseenCommits.this.watermark(this.head);
+                                next = this.endOfData();
+                                break;
+                            }
+                            final Commit commit = this.page.poll();
+                            if (!UnseenCommits.this.seen(commit, this.known)) {
+                                next = commit;
+                            }
                         }
+                        return next;
                     }
-                );
+                };
             }
         };
     }
@@ -113,24 +191,117 @@ public final class UnseenCommits implements Branch {
         return this.origin.scm();
     }
 
+    /**
+     * Find the latest commit, all commits before which are seen.
+     * @return Name of the commit or empty string if there is none
+     */
+    private String since() {
+        final List<String> candidates =
+            UnseenCommits.WATERMARKS.getIfPresent(this.key());
+        String since = "";
+        if (candidates != null) {
+            final Collection<String> marks =
+                new ArrayList<String>(candidates.size());
+            for (final String candidate : candidates) {
+                marks.add(UnseenCommits.MARK + candidate);
+            }
+            final Collection<String> known =
+                new HashSet<String>(this.notepad.known(marks));
+            for (final String candidate : candidates) {
+                if (known.contains(UnseenCommits.MARK + candidate)) {
+                    since = candidate;
+                    break;
+                }
+            }
+        }
+        return since;
+    }
+
+    /**
+     * Remember the commit, all commits before which are seen.
+     * @param head Name of the latest commit of the log, or NULL
+     */
+    private void watermark(final String head) {
+        if (head != null && this.origin instanceof Branch.Incremental) {
+            this.notepad.add(UnseenCommits.MARK + head);
+            final String key = this.key();
+            final List<String> before =
+                UnseenCommits.WATERMARKS.getIfPresent(key);
+            final List<String> after = new ArrayList<String>(Tv.FIVE);
+            after.add(head);
+            if (before != null) {
+                for (final String name : before) {
+                    if (after.size() < Tv.FIVE && !name.equals(head)) {
+                        after.add(name);
+                    }
+                }
+            }
+            UnseenCommits.WATERMARKS.put(
+                key, Collections.unmodifiableList(after)
+            );
+        }
+    }
+
+    /**
+     * Key of the branch in the cache of watermarks.
+     * @return Key
+     */
+    private String key() {
+        return String.format(
+            "%s %s", this.origin.scm().uri(), this.origin.name()
+        );
+    }
+
+    /**
+     * Read next page of commits and find out which of them are known.
+     * @param commits All commits
+     * @param page Page to fill
+     * @return Names of known commits of the page
+     */
+    private Collection<String> page(final Iterator<Commit> commits,
+        final Queue<Commit> page) {
+        final Collection<String> names = new ArrayList<String>(Tv.HUNDRED);
+        while (commits.hasNext() && page.size() < Tv.HUNDRED) {
+            final Commit commit = commits.next();
+            page.add(commit);
+            names.add(UnseenCommits.name(commit));
+        }
+        final Collection<String> known;
+        if (names.isEmpty()) {
+            known = Collections.emptySet();
+        } else {
+            known = new HashSet<String>(this.notepad.known(names));
+        }
+        return known;
+    }
+
     /**
      * This HEAD commit was seen already?
      * @param head HEAD commit
+     * @param known Names of commits known in the notepad
      * @return TRUE if seen
      */
     @Step("commit `${args[0].name}` #if(!$result)NOT#end seen before")
-    private boolean seen(final Commit head) {
-        final String name;
-        try {
-            name = head.name();
-        } catch (final IOException ex) {
-            throw new IllegalStateException(ex);
-        }
-        final boolean seen = this.notepad.contains(name);
+    private boolean seen(final Commit head, final Collection<String> known) {
+        final String name = UnseenCommits.name(head);
+        final boolean seen = known.contains(name);
         if (!seen) {
             this.notepad.add(name);
         }
         return seen;
     }
 
+    /**
+     * Name of the commit.
+     * @param commit The commit
+     * @return Its name
+     */
+    private static String name(final Commit commit) {
+        try {
+            return commit.name();
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
 }
@@ -66,6 +66,22 @@ public interface Branch {
     @NotNull
     Iterable<Commit> log() throws IOException;
 
+    /**
+     * Branch that can return only commits made after the given one.
+     */
+    @Immutable
+    interface Incremental extends Branch {
+        /**
+         * Get history of commits made after the given one, the latest
+         * on top (or the entire history, if the commit is unknown).
+         * @param since Name of the commit to start after
+         * @return Commits
+         * @throws IOException If fails
+         */
+        @NotNull
+        Iterable<Commit> log(String since) throws IOException;
+    }
+
     /**
      * Passive branch, without any active components.
      */
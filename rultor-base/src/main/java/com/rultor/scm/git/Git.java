@@ -30,9 +30,8 @@
 package com.rultor.scm.git;
 
 import com.google.common.base.Function;
-import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Collections2;
-import com.google.common.collect.Iterables;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.RetryOnFailure;
@@ -48,9 +47,13 @@ import com.rultor.snapshot.Step;
 import com.rultor.snapshot.TagLine;
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import javax.validation.constraints.NotNull;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -72,6 +75,24 @@ import lombok.ToString;
 @SuppressWarnings("PMD.TooManyMethods")
 public final class Git implements SCM {
 
+    /**
+     * How many commits to read from Git in the first page (every next
+     * page is twice as big as the previous one).
+     */
+    private static final int PAGE = Tv.HUNDRED * Tv.FIVE;
+
+    /**
+     * Pattern of a commit name.
+     */
+    private static final Pattern SHA = Pattern.compile("[a-f0-9]{40}");
+
+    /**
+     * Pattern of a range line in output.
+     */
+    private static final Pattern RANGE = Pattern.compile(
+        "^RANGE ([a-f0-9]{40}(?:\\.\\.[a-f0-9]{40})?)$", Pattern.MULTILINE
+    );
+
     /**
      * Terminal to use.
      */
@@ -177,48 +198,111 @@ public final class Git implements SCM {
      * @return Iterable commits
      * @throws IOException If fails
      */
+    public Iterable<Commit> log(final String branch) throws IOException {
+        return this.log(branch, "");
+    }
+
+    /**
+     * Get log of the branch, since the given commit (excluding it).
+     *
+     * <p>All remotes are fetched only when remote HEAD of the branch is
+     * not yet in the local clone; the clone is always reset, switched to
+     * the branch and pulled. The log is not read at all when the HEAD
+     * is the commit we're asked to start from. When the commit is empty
+     * or unknown in the clone, the entire history is returned. Commits
+     * are read from Git by pages, each twice as big as the previous one,
+     * when the iterator gets to them, so that a reader of a few latest
+     * commits never parses the entire history.
+     *
+     * @param branch Branch name
+     * @param since Name of the commit to start after, or empty string
+     * @return Iterable commits
+     * @throws IOException If fails
+     */
     @RetryOnFailure(verbose = false)
     @Loggable(
         value = Loggable.DEBUG, limit = Tv.FIVE,
         ignore = IOException.class
     )
-    public Iterable<Commit> log(final String branch) throws IOException {
+    public Iterable<Commit> log(final String branch, final String since)
+        throws IOException {
+        String start = since;
+        if (!Git.SHA.matcher(start).matches()) {
+            start = "";
+        }
         final String stdout = this.terminal.exec(
-            new StringBuilder(this.reset())
+            new StringBuilder(this.enter())
                 .append(" && BRANCH=")
                 .append(Terminal.quotate(Terminal.escape(branch)))
-                // @checkstyle LineLength (3 lines)
+                .append(" && SINCE=").append(start)
+                // @checkstyle LineLength (7 lines)
+                .append(" && TIP=$(git ls-remote origin refs/heads/$BRANCH refs/tags/$BRANCH | head -1 | cut -f1)")
+                .append(" && if [ -z \"$TIP\" ] || ! git cat-file -e \"$TIP^{commit}\" 2>/dev/null; then ")
+                .append(this.fetch())
+                .append("; fi && ")
+                .append(this.clean())
                 .append(" && if [ $(git rev-parse --abbrev-ref HEAD) != $BRANCH ]; then git checkout $BRANCH; fi")
                 .append(" && if git for-each-ref refs/heads/$BRANCH | grep commit; then git pull; fi")
-                .append(" && git log --pretty=format:'%H %ae %cd %s' --date=iso8601")
+                .append(" && TIP=$(git rev-parse HEAD)")
+                // @checkstyle LineLength (3 lines)
+                .append(" && if [ -n \"$SINCE\" ] && git cat-file -e \"$SINCE^{commit}\" 2>/dev/null; then RANGE=$SINCE..$TIP; else RANGE=$TIP; fi")
+                .append(" && echo \"RANGE $RANGE\"")
+                .append(" && if [ \"$TIP\" != \"$SINCE\" ]; then ")
+                .append(Git.page("$RANGE", 0, Git.PAGE))
+                .append("; fi")
                 .toString()
         );
-        Logger.info(this, "Git log in branch `%s` retrieved", branch);
-        final Iterable<String> lines = Iterables.filter(
-            Arrays.asList(stdout.split("\n")),
-            new Predicate<String>() {
-                @Override
-                public boolean apply(final String line) {
-                    return GitCommit.LINE.matcher(line).matches();
-                }
-            }
+        final Matcher matcher = Git.RANGE.matcher(stdout);
+        if (!matcher.find()) {
+            throw new IOException(
+                String.format("no range in Git output: %s", stdout)
+            );
+        }
+        final String range = matcher.group(1);
+        final List<Commit> first = Git.commits(stdout);
+        Logger.info(
+            this, "Git log in branch `%s` retrieved from %s: %d commit(s)",
+            branch, range, first.size()
         );
         return new Iterable<Commit>() {
             @Override
             public Iterator<Commit> iterator() {
-                final Iterator<String> iterator = lines.iterator();
-                return new Iterator<Commit>() {
-                    @Override
-                    public boolean hasNext() {
-                        return iterator.hasNext();
-                    }
+                return new AbstractIterator<Commit>() {
+                    /**
+                     * Commits of the current page.
+                     */
+                    private transient Iterator<Commit> page =
+                        first.iterator();
+                    /**
+                     * How many commits were read from Git.
+                     */
+                    private transient int total = first.size();
+                    /**
+                     * The current page is the last one?
+                     */
+                    private transient boolean last = first.size() < Git.PAGE;
+                    /**
+                     * Size of the current page.
+                     */
+                    private transient int size = Git.PAGE;
                     @Override
-                    public Commit next() {
-                        return GitCommit.parse(iterator.next());
-                    }
-                    @Override
-                    public void remove() {
-                        throw new UnsupportedOperationException();
+                    protected Commit computeNext() {
+                        if (!this.page.hasNext() && !this.last) {
+                            this.size *= 2;
+                            final List<Commit> next = Git.this.more(
+                                range, this.total, this.size
+                            );
+                            this.page = next.iterator();
+                            this.total += next.size();
+                            this.last = next.size() < this.size;
+                        }
+                        final Commit commit;
+                        if (this.page.hasNext()) {
+                            commit = this.page.next();
+                        } else {
+                            commit = this.endOfData();
+                        }
+                        return commit;
                     }
                 };
             }
@@ -226,10 +310,101 @@ public final class Git implements SCM {
     }
 
     /**
-     * Start script, to clone the repo.
+     * Read the next page of commits from the local clone.
+     * @param range Range of commits
+     * @param skip How many commits to skip
+     * @param count How many commits to read
+     * @return Commits
+     */
+    @RetryOnFailure(verbose = false)
+    private List<Commit> more(final String range, final int skip,
+        final int count) {
+        try {
+            return Git.commits(
+                this.terminal.exec(
+                    new StringBuilder("DIR=$(pwd)/")
+                        .append(Terminal.quotate(Terminal.escape(this.dir)))
+                        .append(" && cd $DIR/repo && ")
+                        .append(Git.page(range, skip, count))
+                        .toString()
+                )
+            );
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Command to read one page of the log.
+     * @param range Range of commits
+     * @param skip How many commits to skip
+     * @param count How many commits to read
+     * @return Command
+     */
+    private static String page(final String range, final int skip,
+        final int count) {
+        return String.format(
+            // @checkstyle LineLength (1 line)
+            "git log --pretty=format:'%%H %%ae %%cd %%s' --date=iso8601 --skip=%d --max-count=%d %s",
+            skip, count, range
+        );
+    }
+
+    /**
+     * Parse commits in the output of git log.
+     * @param stdout Output
+     * @return Commits found
+     */
+    private static List<Commit> commits(final String stdout) {
+        final List<Commit> commits = new ArrayList<Commit>(Git.PAGE);
+        for (final String line : stdout.split("\n")) {
+            if (GitCommit.LINE.matcher(line).matches()) {
+                commits.add(GitCommit.parse(line));
+            }
+        }
+        return commits;
+    }
+
+    /**
+     * Start script, to clone the repo and fetch all changes.
      * @return Script to start
      */
     private String reset() {
+        return new StringBuilder(this.enter())
+            .append(" && ")
+            .append(this.fetch())
+            .append(" && ")
+            .append(this.clean())
+            .toString();
+    }
+
+    /**
+     * Script to fetch all changes into the clone.
+     * @return Script
+     */
+    private String fetch() {
+        return new StringBuilder()
+            .append("git remote update -p")
+            .append(" && git fetch origin --prune --tags")
+            .toString();
+    }
+
+    /**
+     * Script to drop all local changes in the clone.
+     * @return Script
+     */
+    private String clean() {
+        return new StringBuilder()
+            .append("git reset --hard")
+            .append(" && git clean -f -d")
+            .toString();
+    }
+
+    /**
+     * Script to clone the repo, if necessary, and go into it.
+     * @return Script to start
+     */
+    private String enter() {
         return new StringBuilder()
             .append("DIR=$(pwd)/")
             .append(Terminal.quotate(Terminal.escape(this.dir)))
@@ -244,10 +419,6 @@ public final class Git implements SCM {
             .append(" && if [ ! -d $DIR/repo ]; then git clone $URL $DIR/repo; fi")
             .append(" && cd $DIR/repo")
             .append(" && git remote set-url origin $URL")
-            .append(" && git remote update -p")
-            .append(" && git fetch origin --prune --tags")
-            .append(" && git reset --hard")
-            .append(" && git clean -f -d")
             .toString();
     }
 }
@@ -51,7 +51,7 @@ import lombok.ToString;
 @ToString
 @EqualsAndHashCode(of = { "git", "label" })
 @Loggable(Loggable.DEBUG)
-final class GitBranch implements Branch {
+final class GitBranch implements Branch.Incremental {
 
     /**
      * Git.
@@ -83,6 +83,16 @@ final class GitBranch implements Branch {
         return this.git.log(this.label);
     }
 
+    @Override
+    @RetryOnFailure(verbose = false)
+    @Loggable(
+        value = Loggable.DEBUG, limit = Tv.FIVE,
+        ignore = IOException.class
+    )
+    public Iterable<Commit> log(final String since) throws IOException {
+        return this.git.log(this.label, since);
+    }
+
     @Override
     public String name() {
         return this.label;
@@ -42,19 +42,25 @@ import com.jcraft.jsch.Session;
 import com.jcraft.jsch.UserInfo;
 import com.rultor.shell.Shell;
 import java.io.File;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import javax.validation.constraints.NotNull;
 import lombok.EqualsAndHashCode;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.Validate;
 
 /**
  * Single SSH Channel.
  *
+ * <p>Commands are executed in channels of SSH sessions kept in a pool,
+ * one session per server and credentials, see {@link Sessions}.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -195,24 +201,33 @@ public final class SSHChannel implements Shell {
         @NotNull(message = "stdout can't be NULL") final OutputStream stdout,
         @NotNull(message = "stderr can't be NULL") final OutputStream stderr)
         throws IOException {
+        final CountDownLatch done = new CountDownLatch(1);
+        Sessions.Lease lease = this.lease();
+        SSHChannel.Exec exec;
         try {
-            final Session session = this.session();
+            exec = new SSHChannel.Exec(lease.session(), done)
+                .open(command, stdin, stdout, stderr);
+        } catch (final JSchException ex) {
+            Logger.warn(
+                this, "SSH channel failed, retrying in a new session: %s", ex
+            );
+            lease.fail();
+            lease.close();
+            lease = this.lease();
             try {
-                final ChannelExec channel = ChannelExec.class.cast(
-                    session.openChannel("exec")
-                );
-                channel.setErrStream(stderr, false);
-                channel.setOutputStream(stdout, false);
-                channel.setInputStream(stdin, false);
-                channel.setCommand(command);
-                channel.connect();
-                Logger.info(this, "$ %s", command);
-                return this.exec(channel, session);
-            } finally {
-                session.disconnect();
+                exec = new SSHChannel.Exec(lease.session(), done)
+                    .open(command, stdin, stdout, stderr);
+            } catch (final JSchException again) {
+                lease.fail();
+                lease.close();
+                throw new IOException(again);
             }
-        } catch (final JSchException ex) {
-            throw new IOException(ex);
+        }
+        try {
+            Logger.info(this, "$ %s", command);
+            return this.exec(exec.channel(), lease.session(), done);
+        } finally {
+            lease.close();
         }
     }
 
@@ -230,13 +245,14 @@ public final class SSHChannel implements Shell {
      * Exec this channel and return its exit code.
      * @param channel The channel to exec
      * @param session The session
+     * @param done Latch to be released when the channel is closed
      * @return Exit code (zero in case of success)
      * @throws IOException If fails
      */
-    private int exec(final ChannelExec channel, final Session session)
-        throws IOException {
+    private int exec(final ChannelExec channel, final Session session,
+        final CountDownLatch done) throws IOException {
         try {
-            return this.code(channel, session);
+            return this.code(channel, session, done);
         } finally {
             channel.disconnect();
         }
@@ -244,31 +260,67 @@ public final class SSHChannel implements Shell {
 
     /**
      * Wait until it's done and return its code.
+     *
+     * <p>JSch closes stderr of the channel right after the channel is
+     * closed by the server, when the exit status is already known. We wait
+     * for this event and send keep-alive messages while waiting.
+     *
      * @param exec The channel
      * @param session The session
+     * @param done Latch to be released when the channel is closed
      * @return The exit code
      * @throws IOException If some IO problem inside
      */
     @SuppressWarnings("PMD.AvoidCatchingGenericException")
-    private int code(final ChannelExec exec, final Session session)
-        throws IOException {
+    private int code(final ChannelExec exec, final Session session,
+        final CountDownLatch done) throws IOException {
         while (!exec.isClosed()) {
             try {
-                session.sendKeepAliveMsg();
-            // @checkstyle IllegalCatch (1 line)
-            } catch (final Exception ex) {
+                if (done.await((long) Tv.TEN, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
                 throw new IOException(ex);
             }
             try {
-                TimeUnit.SECONDS.sleep(1);
-            } catch (final InterruptedException ex) {
-                Thread.currentThread().interrupt();
+                session.sendKeepAliveMsg();
+            // @checkstyle IllegalCatch (1 line)
+            } catch (final Exception ex) {
                 throw new IOException(ex);
             }
         }
         return exec.getExitStatus();
     }
 
+    /**
+     * Lease a session from the pool.
+     * @return Lease
+     * @throws IOException If fails
+     */
+    private Sessions.Lease lease() throws IOException {
+        return Sessions.lease(
+            this.name(),
+            new Sessions.Connector() {
+                @Override
+                public Session connect() throws IOException {
+                    return SSHChannel.this.session();
+                }
+            }
+        );
+    }
+
+    /**
+     * Unique name of the server and credentials, for the pool of sessions.
+     * @return Name
+     */
+    private String name() {
+        return String.format(
+            "%s@%s:%d/%s", this.login, this.addr, this.port,
+            DigestUtils.md5Hex(this.key.asText())
+        );
+    }
+
     /**
      * Create and return a session, connected.
      * @return JSch session
@@ -310,4 +362,134 @@ public final class SSHChannel implements Shell {
         }
     }
 
+    /**
+     * Exec channel being opened.
+     */
+    private static final class Exec {
+        /**
+         * The session.
+         */
+        private final transient Session session;
+        /**
+         * Latch to be released when the channel is closed.
+         */
+        private final transient CountDownLatch latch;
+        /**
+         * The channel, NULL until opened.
+         */
+        private transient ChannelExec exec;
+        /**
+         * Ctor.
+         * @param ssn Session
+         * @param ltch Latch to release when the channel is closed
+         */
+        Exec(final Session ssn, final CountDownLatch ltch) {
+            this.session = ssn;
+            this.latch = ltch;
+        }
+        /**
+         * Open and connect the channel.
+         *
+         * <p>Output streams are closed only if the channel is connected,
+         * since JSch closes them when it fails to connect, and we may
+         * want to try again with the same streams.
+         *
+         * @param command Command to execute
+         * @param stdin Stdin
+         * @param stdout Stdout
+         * @param stderr Stderr
+         * @return This object
+         * @throws JSchException If fails
+         * @checkstyle ParameterNumber (4 lines)
+         */
+        public SSHChannel.Exec open(final String command,
+            final InputStream stdin, final OutputStream stdout,
+            final OutputStream stderr) throws JSchException {
+            final SSHChannel.Signal out =
+                new SSHChannel.Signal(stdout, new CountDownLatch(1));
+            final SSHChannel.Signal err =
+                new SSHChannel.Signal(stderr, this.latch);
+            this.exec = ChannelExec.class.cast(
+                this.session.openChannel("exec")
+            );
+            this.exec.setErrStream(err, false);
+            this.exec.setOutputStream(out, false);
+            this.exec.setInputStream(stdin, true);
+            this.exec.setCommand(command);
+            this.exec.connect();
+            out.arm();
+            err.arm();
+            return this;
+        }
+        /**
+         * Get the channel.
+         * @return Channel
+         */
+        public ChannelExec channel() {
+            return this.exec;
+        }
+    }
+
+    /**
+     * Stream that releases a latch when closed, and closes the underlying
+     * stream only when armed.
+     */
+    private static final class Signal extends FilterOutputStream {
+        /**
+         * Latch to release.
+         */
+        private final transient CountDownLatch latch;
+        /**
+         * Is it armed, to close the underlying stream?
+         */
+        private transient boolean armed;
+        /**
+         * Is it closed already?
+         */
+        private transient boolean closed;
+        /**
+         * Ctor.
+         * @param stream Stream to write to
+         * @param ltch Latch to release on close
+         */
+        Signal(final OutputStream stream, final CountDownLatch ltch) {
+            super(stream);
+            this.latch = ltch;
+        }
+        @Override
+        public void write(final byte[] bytes, final int off, final int len)
+            throws IOException {
+            this.out.write(bytes, off, len);
+        }
+        @Override
+        public synchronized void close() throws IOException {
+            this.closed = true;
+            try {
+                if (this.armed) {
+                    super.close();
+                }
+            } finally {
+                if (this.armed) {
+                    this.latch.countDown();
+                }
+            }
+        }
+        /**
+         * Arm it, when the channel is connected, closing the underlying
+         * stream if the channel is closed already.
+         */
+        public synchronized void arm() {
+            this.armed = true;
+            if (this.closed) {
+                try {
+                    super.close();
+                } catch (final IOException ex) {
+                    throw new IllegalStateException(ex);
+                } finally {
+                    this.latch.countDown();
+                }
+            }
+        }
+    }
+
 }
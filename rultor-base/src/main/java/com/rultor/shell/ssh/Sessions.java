@@ -0,0 +1,435 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.shell.ssh;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.ScheduleWithFixedDelay;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import com.jcraft.jsch.Session;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Pool of SSH sessions, one per server and credentials.
+ *
+ * <p>Every session is shared by up to {@link #CHANNELS} channels
+ * at the same time; a command waits for a free channel no longer than
+ * {@link #WAIT}. A session that fails a keep-alive check is replaced by
+ * a new one on the next lease. A session reported broken by one of its
+ * channels is not leased any more, but is disconnected only when all
+ * its other channels are released, so their commands are not killed.
+ * Sessions not used for {@link #IDLE} are disconnected in background,
+ * and entries of servers that nobody uses or waits for are removed.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ */
+@ToString
+@EqualsAndHashCode
+@SuppressWarnings("PMD.DoNotUseThreads")
+final class Sessions {
+
+    /**
+     * Maximum number of channels in one session (OpenSSH
+     * MaxSessions is ten by default).
+     */
+    private static final int CHANNELS = Tv.TEN;
+
+    /**
+     * How long to wait for a free channel, in milliseconds.
+     */
+    private static final long WAIT = TimeUnit.MINUTES.toMillis(Tv.THIRTY);
+
+    /**
+     * How long an unused session stays open, in milliseconds.
+     */
+    private static final long IDLE = TimeUnit.MINUTES.toMillis(Tv.FIVE);
+
+    /**
+     * All entries, by their names.
+     */
+    private static final ConcurrentMap<String, Sessions.Entry> ENTRIES =
+        new ConcurrentHashMap<String, Sessions.Entry>(0);
+
+    /**
+     * Cleaner of idle sessions.
+     */
+    private static final Runnable CLEANER = new Sessions.Cleaner();
+
+    /**
+     * Utility class.
+     */
+    private Sessions() {
+        // intentionally empty
+    }
+
+    /**
+     * Connector of new sessions.
+     */
+    interface Connector {
+        /**
+         * Open new connected session.
+         * @return The session
+         * @throws IOException If fails
+         */
+        Session connect() throws IOException;
+    }
+
+    /**
+     * Lease a connected session, waiting for a free channel in it.
+     * @param name Unique name of server and credentials
+     * @param connector Connector to use if there is no session yet
+     * @return Lease, which has to be closed after use
+     * @throws IOException If fails
+     */
+    public static Sessions.Lease lease(final String name,
+        final Sessions.Connector connector) throws IOException {
+        Sessions.Lease lease = null;
+        while (lease == null) {
+            final Sessions.Entry entry = Sessions.entry(name);
+            try {
+                if (!entry.channels.tryAcquire(
+                    Sessions.WAIT, TimeUnit.MILLISECONDS
+                )) {
+                    throw new IOException(
+                        Logger.format(
+                            "no free SSH channel in %s after %[ms]s",
+                            name, Sessions.WAIT
+                        )
+                    );
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            }
+            boolean leased = false;
+            try {
+                final Session session = entry.session(connector);
+                if (session != null) {
+                    lease = new Sessions.Lease(entry, session);
+                    leased = true;
+                }
+            } finally {
+                if (!leased) {
+                    entry.channels.release();
+                }
+            }
+        }
+        return lease;
+    }
+
+    /**
+     * Get an entry from the pool, adding it if it's absent.
+     * @param name Unique name of server and credentials
+     * @return Entry
+     */
+    private static Sessions.Entry entry(final String name) {
+        final Sessions.Entry fresh = new Sessions.Entry();
+        final Sessions.Entry entry =
+            Sessions.ENTRIES.putIfAbsent(name, fresh);
+        final Sessions.Entry result;
+        if (entry == null) {
+            result = fresh;
+        } else {
+            result = entry;
+        }
+        return result;
+    }
+
+    /**
+     * Session in use by one channel.
+     */
+    @ToString
+    @EqualsAndHashCode(of = "session")
+    static final class Lease {
+        /**
+         * Entry of the session.
+         */
+        private final transient Sessions.Entry entry;
+        /**
+         * The session.
+         */
+        private final transient Session session;
+        /**
+         * Is it closed already?
+         */
+        private transient boolean closed;
+        /**
+         * Ctor.
+         * @param ent Entry
+         * @param ssn Session
+         */
+        Lease(final Sessions.Entry ent, final Session ssn) {
+            this.entry = ent;
+            this.session = ssn;
+        }
+        /**
+         * Get the session.
+         * @return Session
+         */
+        public Session session() {
+            return this.session;
+        }
+        /**
+         * Report that the session is broken, a new one will be opened
+         * on the next lease.
+         */
+        public void fail() {
+            this.entry.retire(this.session);
+        }
+        /**
+         * Return the session to the pool.
+         */
+        public void close() {
+            if (!this.closed) {
+                this.closed = true;
+                this.entry.release(this.session);
+                this.entry.channels.release();
+            }
+        }
+    }
+
+    /**
+     * Session of a server, with its channels.
+     */
+    @ToString
+    @EqualsAndHashCode(of = "channels")
+    private static final class Entry {
+        /**
+         * Free channels.
+         */
+        private final transient Semaphore channels =
+            new Semaphore(Sessions.CHANNELS, true);
+        /**
+         * Session or NULL if it's not opened.
+         */
+        private transient Session ssh;
+        /**
+         * Numbers of channels leased in every session, including retired
+         * sessions, which are still in use.
+         */
+        private final transient Map<Session, Integer> leases =
+            new HashMap<Session, Integer>(0);
+        /**
+         * When it was used last time.
+         */
+        private transient volatile long used = System.currentTimeMillis();
+        /**
+         * Is it removed from the pool?
+         */
+        private transient boolean removed;
+        /**
+         * Get a connected session, opening it if necessary, and count
+         * one more channel in it.
+         *
+         * <p>A new session is connected outside of the lock, so that
+         * channels of the current session are leased and released while
+         * a slow connect is retried. When a few threads connect at the
+         * same time, the first session wins and the others are
+         * disconnected.
+         *
+         * @param connector Connector to use
+         * @return Session or NULL if the entry is removed from the pool
+         * @throws IOException If fails
+         */
+        public Session session(final Sessions.Connector connector)
+            throws IOException {
+            Session session = this.current();
+            if (session == null && !this.isRemoved()) {
+                final Session fresh = connector.connect();
+                synchronized (this) {
+                    if (this.ssh == null && !this.removed) {
+                        this.ssh = fresh;
+                    }
+                    session = this.ssh;
+                    if (session != null) {
+                        this.lease(session);
+                    }
+                }
+                if (!fresh.equals(session)) {
+                    fresh.disconnect();
+                }
+            }
+            return session;
+        }
+        /**
+         * Don't lease the session any more and disconnect it as soon as
+         * its last channel is released.
+         * @param session The session
+         */
+        public synchronized void retire(final Session session) {
+            if (session.equals(this.ssh)) {
+                this.ssh = null;
+            }
+            if (this.count(session) == 0) {
+                session.disconnect();
+            }
+        }
+        /**
+         * Count one channel less in the session.
+         * @param session The session
+         */
+        public synchronized void release(final Session session) {
+            final int count = this.count(session) - 1;
+            if (count > 0) {
+                this.leases.put(session, count);
+            } else {
+                this.leases.remove(session);
+                if (!session.equals(this.ssh)) {
+                    session.disconnect();
+                }
+            }
+            this.touch();
+        }
+        /**
+         * Mark it as used now.
+         */
+        public void touch() {
+            this.used = System.currentTimeMillis();
+        }
+        /**
+         * Disconnect the session if nobody uses it for a long time, and
+         * remove the entry from the pool if nobody waits for it either.
+         * @return TRUE if the entry has to be removed from the pool
+         */
+        public synchronized boolean evict() {
+            if (System.currentTimeMillis() - this.used > Sessions.IDLE) {
+                if (this.ssh != null && this.count(this.ssh) == 0) {
+                    Logger.info(this, "Closing idle SSH session %s", this.ssh);
+                    this.ssh.disconnect();
+                    this.ssh = null;
+                }
+                this.removed = this.ssh == null && this.leases.isEmpty()
+                    && this.channels.availablePermits() == Sessions.CHANNELS;
+            }
+            return this.removed;
+        }
+        /**
+         * Get the current session if it is alive and count one more
+         * channel in it.
+         * @return Session or NULL if there is no alive session
+         */
+        private synchronized Session current() {
+            if (this.ssh != null && !Sessions.Entry.alive(this.ssh)) {
+                Logger.warn(this, "SSH session %s is broken", this.ssh);
+                this.retire(this.ssh);
+            }
+            if (this.ssh != null) {
+                this.lease(this.ssh);
+            }
+            return this.ssh;
+        }
+        /**
+         * Is it removed from the pool?
+         * @return TRUE if removed
+         */
+        private synchronized boolean isRemoved() {
+            return this.removed;
+        }
+        /**
+         * Count one more channel in the session.
+         * @param session The session
+         */
+        private void lease(final Session session) {
+            this.leases.put(session, this.count(session) + 1);
+            this.touch();
+        }
+        /**
+         * How many channels are leased in the session.
+         * @param session The session
+         * @return Number of channels
+         */
+        private int count(final Session session) {
+            final Integer count = this.leases.get(session);
+            final int num;
+            if (count == null) {
+                num = 0;
+            } else {
+                num = count;
+            }
+            return num;
+        }
+        /**
+         * Is the session alive? It has to be connected and accept
+         * a keep-alive message.
+         * @param session The session
+         * @return TRUE if alive
+         */
+        @SuppressWarnings("PMD.AvoidCatchingGenericException")
+        private static boolean alive(final Session session) {
+            boolean alive = session.isConnected();
+            if (alive) {
+                try {
+                    session.sendKeepAliveMsg();
+                // @checkstyle IllegalCatch (1 line)
+                } catch (final Exception ex) {
+                    Logger.warn(
+                        Sessions.class, "SSH keep-alive failed: %s", ex
+                    );
+                    alive = false;
+                }
+            }
+            return alive;
+        }
+    }
+
+    /**
+     * Cleaner of idle sessions.
+     */
+    @ToString
+    @Immutable
+    @EqualsAndHashCode
+    @ScheduleWithFixedDelay(
+        delay = 1, unit = TimeUnit.MINUTES,
+        await = 1, awaitUnit = TimeUnit.MINUTES,
+        shutdownAttempts = Tv.FIVE
+    )
+    private static final class Cleaner implements Runnable {
+        @Override
+        public void run() {
+            for (final Map.Entry<String, Sessions.Entry> entry
+                : Sessions.ENTRIES.entrySet()) {
+                if (entry.getValue().evict()) {
+                    Sessions.ENTRIES.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+}
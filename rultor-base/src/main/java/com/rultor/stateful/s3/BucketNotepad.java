@@ -138,6 +138,11 @@ public final class BucketNotepad implements Notepad {
         return this.notepad().containsAll(list);
     }
 
+    @Override
+    public Collection<String> known(final Collection<String> lines) {
+        return this.notepad().known(lines);
+    }
+
     @Override
     public boolean addAll(final Collection<? extends String> list) {
         return this.notepad().addAll(list);
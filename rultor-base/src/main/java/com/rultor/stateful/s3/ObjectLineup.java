@@ -39,6 +39,8 @@ import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.Tv;
 import com.jcabi.log.Logger;
+import com.jcabi.log.VerboseRunnable;
+import com.jcabi.log.VerboseThreads;
 import com.rultor.aws.S3Client;
 import com.rultor.stateful.Lineup;
 import java.io.IOException;
@@ -46,7 +48,11 @@ import java.io.InputStream;
 import java.security.SecureRandom;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.core.MediaType;
 import lombok.EqualsAndHashCode;
@@ -58,6 +64,16 @@ import org.apache.commons.lang3.RandomStringUtils;
 /**
  * Lineup with synchronization through S3 object/lock.
  *
+ * <p>A lock older than five minutes is considered abandoned and removed.
+ * While the lock is held, it is saved again every minute, so that a long
+ * execution never looks abandoned. If the lock is taken by somebody else
+ * anyway, the thread running the callable is interrupted and the
+ * execution fails. Attempts to lock are repeated with exponential
+ * backoff and jitter.
+ * S3 can't write conditionally, so two writers may still race between
+ * the check and the write; use {@link com.rultor.stateful.sdb.LeaseLineup}
+ * when that matters.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -74,6 +90,29 @@ public final class ObjectLineup implements Lineup {
      */
     private static final Random RAND = new SecureRandom();
 
+    /**
+     * Age of a lock, after which it is considered abandoned, in msec.
+     */
+    private static final long TTL = TimeUnit.MINUTES.toMillis(Tv.FIVE);
+
+    /**
+     * Shortest delay between attempts, in milliseconds.
+     */
+    private static final long MIN_DELAY = (long) Tv.HUNDRED;
+
+    /**
+     * Renewals of locks being held.
+     */
+    private static final ScheduledExecutorService RENEWALS =
+        Executors.newSingleThreadScheduledExecutor(
+            new VerboseThreads(ObjectLineup.class)
+        );
+
+    /**
+     * Longest delay between attempts, in milliseconds.
+     */
+    private static final long MAX_DELAY = TimeUnit.SECONDS.toMillis(Tv.TEN);
+
     /**
      * S3 client.
      */
@@ -111,18 +150,94 @@ public final class ObjectLineup implements Lineup {
 
     @Override
     public <T> T exec(final Callable<T> callable) throws Exception {
+        final String marker = this.lock();
+        final AtomicBoolean held = new AtomicBoolean(true);
+        final AtomicBoolean lost = new AtomicBoolean();
+        final Thread thread = Thread.currentThread();
+        final ScheduledFuture<?> renewal = ObjectLineup.RENEWALS
+            .scheduleWithFixedDelay(
+                new VerboseRunnable(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (held) {
+                                if (held.get()
+                                    && !ObjectLineup.this.renew(marker)) {
+                                    held.set(false);
+                                    lost.set(true);
+                                    thread.interrupt();
+                                }
+                            }
+                        }
+                    },
+                    true
+                ),
+                1L, 1L, TimeUnit.MINUTES
+            );
+        try {
+            final T result = callable.call();
+            if (lost.get()) {
+                throw new IllegalStateException(
+                    String.format(
+                        "S3 object `%s/%s` was locked by somebody else",
+                        this.client.bucket(), this.key
+                    )
+                );
+            }
+            return result;
+        } finally {
+            renewal.cancel(false);
+            synchronized (held) {
+                held.set(false);
+                if (!lost.get()) {
+                    this.remove();
+                }
+            }
+            if (lost.get()) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    public void exec(final Runnable runnable) {
+        try {
+            this.exec(
+                new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        runnable.run();
+                        return null;
+                    }
+                }
+            );
+        // @checkstyle IllegalCatch (1 line)
+        } catch (final Exception ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    /**
+     * Wait for the object to disappear and lock it.
+     * @return Marker saved into the object
+     */
+    private String lock() {
+        long delay = ObjectLineup.MIN_DELAY;
+        String marker;
         while (true) {
             while (this.exists()) {
                 try {
                     TimeUnit.MILLISECONDS.sleep(
-                        ObjectLineup.RAND.nextInt(Tv.TEN * Tv.THOUSAND)
+                        (long) (ObjectLineup.RAND.nextDouble() * delay)
                     );
                 } catch (final InterruptedException ex) {
                     Thread.currentThread().interrupt();
                     throw new IllegalStateException(ex);
                 }
+                delay = Math.min(delay * 2, ObjectLineup.MAX_DELAY);
             }
-            final String marker = String.format(
+            marker = String.format(
                 "%d-%s",
                 System.nanoTime(),
                 RandomStringUtils.randomAlphanumeric(Tv.HUNDRED)
@@ -147,30 +262,25 @@ public final class ObjectLineup implements Lineup {
                 saved
             );
         }
-        try {
-            return callable.call();
-        } finally {
-            this.remove();
-        }
+        return marker;
     }
 
-    @Override
-    @SuppressWarnings("PMD.AvoidCatchingGenericException")
-    public void exec(final Runnable runnable) {
-        try {
-            this.exec(
-                new Callable<Void>() {
-                    @Override
-                    public Void call() throws Exception {
-                        runnable.run();
-                        return null;
-                    }
-                }
+    /**
+     * Save the lock again, if it is still ours.
+     * @param marker Our marker
+     * @return TRUE if the lock is still ours
+     */
+    private boolean renew(final String marker) {
+        final boolean ours = marker.equals(this.load());
+        if (ours) {
+            this.save(marker);
+        } else {
+            Logger.warn(
+                this, "S3 object `%s/%s` is locked by somebody else",
+                this.client.bucket(), this.key
             );
-        // @checkstyle IllegalCatch (1 line)
-        } catch (final Exception ex) {
-            throw new IllegalArgumentException(ex);
         }
+        return ours;
     }
 
     /**
@@ -181,7 +291,19 @@ public final class ObjectLineup implements Lineup {
         final AmazonS3 aws = this.client.get();
         final ObjectListing listing =
             aws.listObjects(this.client.bucket(), this.key);
-        final boolean exists = !listing.getObjectSummaries().isEmpty();
+        boolean exists = !listing.getObjectSummaries().isEmpty();
+        if (exists && System.currentTimeMillis() - listing.getObjectSummaries()
+            .get(0).getLastModified().getTime() > ObjectLineup.TTL) {
+            Logger.warn(
+                this,
+                "S3 object `%s/%s` is older than %[ms]s, removing it",
+                this.client.bucket(),
+                this.key,
+                ObjectLineup.TTL
+            );
+            this.remove();
+            exists = false;
+        }
         if (exists) {
             Logger.debug(
                 this,
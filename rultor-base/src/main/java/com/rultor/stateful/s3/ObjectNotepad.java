@@ -43,6 +43,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import javax.validation.constraints.NotNull;
@@ -159,6 +160,18 @@ public final class ObjectNotepad implements Notepad {
         return this.load().containsAll(list);
     }
 
+    @Override
+    public Collection<String> known(final Collection<String> lines) {
+        final Collection<String> remote = new HashSet<String>(this.load());
+        final Collection<String> known = new LinkedList<String>();
+        for (final String line : lines) {
+            if (remote.contains(line)) {
+                known.add(line);
+            }
+        }
+        return known;
+    }
+
     @Override
     public boolean addAll(final Collection<? extends String> list) {
         final Collection<String> remote = this.load();
@@ -29,39 +29,69 @@
  */
 package com.rultor.stateful.sdb;
 
+import com.amazonaws.services.simpledb.model.BatchDeleteAttributesRequest;
+import com.amazonaws.services.simpledb.model.BatchPutAttributesRequest;
+import com.amazonaws.services.simpledb.model.DeletableItem;
+import com.amazonaws.services.simpledb.model.ReplaceableAttribute;
+import com.amazonaws.services.simpledb.model.ReplaceableItem;
 import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.RetryOnFailure;
+import com.jcabi.aspects.Tv;
 import com.jcabi.simpledb.Domain;
 import com.jcabi.simpledb.Item;
 import com.jcabi.simpledb.Region;
 import com.rultor.spi.Coordinates;
 import com.rultor.stateful.Notepad;
 import com.rultor.tools.Time;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import javax.validation.constraints.NotNull;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 
 /**
  * SimpleDB {@link Notepad}.
  *
+ * <p>Membership of lines is checked against a local Bloom filter of
+ * item names, one per domain, owner and rule, shared by all notepads
+ * of the JVM. The filter is loaded by one paged select and then
+ * refreshed by a select of items saved since the previous refresh.
+ * Lines that are not in the filter are reported absent without a remote
+ * call, while the rest are confirmed by a select of up to twenty items
+ * at a time. Lines are saved and deleted by batches of twenty five
+ * items, when the notepad is made from a {@link Region}.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
  * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ * @checkstyle MultipleStringLiterals (500 lines)
  */
 @Immutable
 @ToString
 @EqualsAndHashCode(of = { "domain", "work" })
 @Loggable(Loggable.DEBUG)
-@SuppressWarnings("PMD.TooManyMethods")
+@SuppressWarnings({ "PMD.TooManyMethods", "PMD.ExcessiveImports" })
 public final class DomainNotepad implements Notepad {
 
     /**
@@ -84,6 +114,30 @@ public final class DomainNotepad implements Notepad {
      */
     private static final String ATTR_TIME = "time";
 
+    /**
+     * Max number of items in one batch request (SimpleDB limit).
+     */
+    private static final int BATCH = 25;
+
+    /**
+     * Max number of values in one IN comparison (SimpleDB limit).
+     */
+    private static final int IN = 20;
+
+    /**
+     * Snapshots of membership, by domain, owner and rule.
+     */
+    private static final Cache<String, DomainNotepad.Snapshot> SNAPSHOTS =
+        CacheBuilder.newBuilder()
+            .expireAfterAccess(Tv.THIRTY, TimeUnit.MINUTES)
+            .maximumSize((long) Tv.THOUSAND)
+            .build();
+
+    /**
+     * SimpleDB region, or NULL if unknown.
+     */
+    private final transient Region region;
+
     /**
      * SimpleDB domain.
      */
@@ -104,53 +158,81 @@ public final class DomainNotepad implements Notepad {
         @NotNull(message = "domain can't be NULL") final Domain dmn) {
         this.work = wrk;
         this.domain = dmn;
+        this.region = null;
     }
 
     /**
      * Public ctor.
      * @param wrk Coordinates
-     * @param region Region
+     * @param rgn Region
      * @param name Name of domain
      */
-    public DomainNotepad(final Coordinates wrk,
-        @NotNull(message = "region can't be NULL") final Region region,
+    public DomainNotepad(
+        @NotNull(message = "work can't be NULL") final Coordinates wrk,
+        @NotNull(message = "region can't be NULL") final Region rgn,
         @NotNull(message = "domain can't be NULL") final String name) {
-        this(wrk, region.domain(name));
+        this.work = wrk;
+        this.domain = rgn.domain(name);
+        this.region = rgn;
     }
 
     @Override
+    @RetryOnFailure(verbose = false)
     public int size() {
-        return Iterators.size(this.iterator());
+        int size = 0;
+        for (final Item item : this.select("count(*)", "")) {
+            size += Integer.parseInt(item.get("Count"));
+        }
+        return size;
     }
 
     @Override
     public boolean isEmpty() {
-        return Iterators.size(this.iterator()) == 0;
+        return this.size() == 0;
     }
 
     @Override
     public boolean contains(final Object object) {
-        return !this.domain.item(this.name(object.toString())).isEmpty();
+        return !this.known(
+            Collections.singleton(object.toString())
+        ).isEmpty();
     }
 
     @Override
     @RetryOnFailure(verbose = false)
-    public Iterator<String> iterator() {
-        final Iterable<Item> items = this.domain.select(
-            new SelectRequest().withSelectExpression(
+    public Collection<String> known(final Collection<String> lines) {
+        final DomainNotepad.Snapshot snapshot = this.snapshot();
+        final Map<String, String> maybe = new HashMap<String, String>(0);
+        for (final String line : lines) {
+            final String name = this.name(line);
+            if (snapshot.mightContain(name)) {
+                maybe.put(name, line);
+            }
+        }
+        final Collection<String> known = new LinkedList<String>();
+        for (final List<String> names
+            : Iterables.partition(maybe.keySet(), DomainNotepad.IN)) {
+            final Iterable<Item> items = this.select(
+                "itemName()",
                 String.format(
-                    "SELECT `%s` FROM `%s` WHERE `%s`='%s' AND `%s`='%s'",
-                    DomainNotepad.ATTR_TEXT,
-                    this.domain.name(),
-                    DomainNotepad.ATTR_OWNER,
-                    this.work.owner(),
-                    DomainNotepad.ATTR_RULE,
-                    this.work.rule()
+                    " AND itemName() IN ('%s')",
+                    StringUtils.join(names, "','")
                 )
-            ).withConsistentRead(true)
-        );
+            );
+            for (final Item item : items) {
+                known.add(maybe.get(item.name()));
+            }
+        }
+        return known;
+    }
+
+    @Override
+    @RetryOnFailure(verbose = false)
+    public Iterator<String> iterator() {
         final Collection<String> texts = new LinkedList<String>();
-        for (final Item item : items) {
+        for (final Item item : this.select(
+            String.format("`%s`", DomainNotepad.ATTR_TEXT), ""
+        )) {
             final String text = this.name(item.get(DomainNotepad.ATTR_TEXT));
             if (item.name().equals(text)) {
                 texts.add(item.get(DomainNotepad.ATTR_TEXT));
@@ -173,7 +255,8 @@ public final class DomainNotepad implements Notepad {
     @Override
     @RetryOnFailure(verbose = false)
     public boolean add(final String line) {
-        this.domain.item(this.name(line)).putAll(
+        final String name = this.name(line);
+        this.domain.item(name).putAll(
             new ImmutableMap.Builder<String, String>()
                 .put(DomainNotepad.ATTR_TEXT, line)
                 .put(DomainNotepad.ATTR_OWNER, this.work.owner().toString())
@@ -181,6 +264,7 @@ public final class DomainNotepad implements Notepad {
                 .put(DomainNotepad.ATTR_TIME, new Time().toString())
                 .build()
         );
+        this.remember(Collections.singleton(name));
         return true;
     }
 
@@ -193,21 +277,59 @@ public final class DomainNotepad implements Notepad {
 
     @Override
     public boolean containsAll(final Collection<?> list) {
-        throw new UnsupportedOperationException();
+        final Collection<String> lines = new HashSet<String>(list.size());
+        for (final Object line : list) {
+            lines.add(line.toString());
+        }
+        return new HashSet<String>(this.known(lines)).size() == lines.size();
     }
 
     @Override
     public boolean addAll(final Collection<? extends String> list) {
-        for (final String line : list) {
-            this.add(line);
+        if (this.region == null) {
+            for (final String line : list) {
+                this.add(line);
+            }
+        } else {
+            final String time = new Time().toString();
+            for (final List<? extends String> lines
+                : Iterables.partition(list, DomainNotepad.BATCH)) {
+                final Collection<ReplaceableItem> items =
+                    new ArrayList<ReplaceableItem>(lines.size());
+                final Collection<String> names =
+                    new ArrayList<String>(lines.size());
+                for (final String line : lines) {
+                    final String name = this.name(line);
+                    items.add(this.item(name, line, time));
+                    names.add(name);
+                }
+                this.put(items);
+                this.remember(names);
+            }
         }
         return true;
     }
 
     @Override
     public boolean removeAll(final Collection<?> list) {
-        for (final Object line : list) {
-            this.remove(line);
+        if (this.region == null) {
+            for (final Object line : list) {
+                this.remove(line);
+            }
+        } else {
+            for (final List<?> lines
+                : Iterables.partition(list, DomainNotepad.BATCH)) {
+                final Collection<DeletableItem> items =
+                    new ArrayList<DeletableItem>(lines.size());
+                for (final Object line : lines) {
+                    items.add(
+                        new DeletableItem().withName(
+                            this.name(line.toString())
+                        )
+                    );
+                }
+                this.delete(items);
+            }
         }
         return true;
     }
@@ -219,9 +341,137 @@ public final class DomainNotepad implements Notepad {
 
     @Override
     public void clear() {
+        final Collection<String> lines = new LinkedList<String>();
         for (final String line : this) {
-            this.remove(line);
+            lines.add(line);
         }
+        this.removeAll(lines);
+    }
+
+    /**
+     * Save items in one batch.
+     * @param items Items to save
+     */
+    @RetryOnFailure(verbose = false)
+    private void put(final Collection<ReplaceableItem> items) {
+        this.region.aws().batchPutAttributes(
+            new BatchPutAttributesRequest()
+                .withDomainName(this.domain.name())
+                .withItems(items)
+        );
+    }
+
+    /**
+     * Delete items in one batch.
+     * @param items Items to delete
+     */
+    @RetryOnFailure(verbose = false)
+    private void delete(final Collection<DeletableItem> items) {
+        this.region.aws().batchDeleteAttributes(
+            new BatchDeleteAttributesRequest()
+                .withDomainName(this.domain.name())
+                .withItems(items)
+        );
+    }
+
+    /**
+     * Make an item to save.
+     * @param name Name of the item
+     * @param line Text of the line
+     * @param time Time of saving
+     * @return Item
+     */
+    private ReplaceableItem item(final String name, final String line,
+        final String time) {
+        return new ReplaceableItem().withName(name).withAttributes(
+            new ReplaceableAttribute(DomainNotepad.ATTR_TEXT, line, true),
+            new ReplaceableAttribute(
+                DomainNotepad.ATTR_OWNER, this.work.owner().toString(), true
+            ),
+            new ReplaceableAttribute(
+                DomainNotepad.ATTR_RULE, this.work.rule(), true
+            ),
+            new ReplaceableAttribute(DomainNotepad.ATTR_TIME, time, true)
+        );
+    }
+
+    /**
+     * Select items of this notepad, consistently.
+     * @param what What to select
+     * @param extra Extra condition, starting with AND, or empty
+     * @return Items
+     */
+    private Iterable<Item> select(final String what, final String extra) {
+        return this.domain.select(
+            new SelectRequest().withSelectExpression(
+                String.format(
+                    "SELECT %s FROM `%s` WHERE `%s`='%s' AND `%s`='%s'%s",
+                    what,
+                    this.domain.name(),
+                    DomainNotepad.ATTR_OWNER,
+                    this.work.owner(),
+                    DomainNotepad.ATTR_RULE,
+                    this.work.rule(),
+                    extra
+                )
+            ).withConsistentRead(true)
+        );
+    }
+
+    /**
+     * Get fresh snapshot of membership, loading or refreshing it.
+     * @return Snapshot
+     */
+    private DomainNotepad.Snapshot snapshot() {
+        final String key = this.key();
+        DomainNotepad.Snapshot snapshot =
+            DomainNotepad.SNAPSHOTS.getIfPresent(key);
+        if (snapshot == null || snapshot.full()) {
+            final Time time = new Time();
+            final Collection<String> names = new LinkedList<String>();
+            for (final Item item : this.select("itemName()", "")) {
+                names.add(item.name());
+            }
+            snapshot = new DomainNotepad.Snapshot(names, time);
+            DomainNotepad.SNAPSHOTS.put(key, snapshot);
+        } else {
+            final Time time = new Time();
+            final Collection<String> names = new LinkedList<String>();
+            for (final Item item : this.select(
+                "itemName()",
+                String.format(
+                    " AND `%s` >= '%s'",
+                    DomainNotepad.ATTR_TIME, snapshot.since()
+                )
+            )) {
+                names.add(item.name());
+            }
+            snapshot.refresh(names, time);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Remember names in the snapshot, if it is loaded.
+     * @param names Names of items just saved
+     */
+    private void remember(final Collection<String> names) {
+        final DomainNotepad.Snapshot snapshot =
+            DomainNotepad.SNAPSHOTS.getIfPresent(this.key());
+        if (snapshot != null) {
+            snapshot.refresh(names, null);
+        }
+    }
+
+    /**
+     * Key of snapshot.
+     * @return The key
+     */
+    private String key() {
+        return String.format(
+            "%s %s %s",
+            this.domain.name(), this.work.owner(), this.work.rule()
+        );
     }
 
     /**
@@ -240,4 +490,86 @@ public final class DomainNotepad implements Notepad {
         );
     }
 
+    /**
+     * Membership of item names, in a Bloom filter.
+     */
+    @ToString(of = { "count", "since" })
+    private static final class Snapshot {
+        /**
+         * Clock skew allowed between servers, in milliseconds.
+         */
+        private static final long SKEW = TimeUnit.MINUTES.toMillis(1L);
+        /**
+         * Probability of false positives.
+         */
+        private static final double FPP = 0.001d;
+        /**
+         * Bloom filter.
+         */
+        private final transient BloomFilter<CharSequence> bloom;
+        /**
+         * How many names the filter was made for.
+         */
+        private final transient int capacity;
+        /**
+         * How many names were put.
+         */
+        private transient int count;
+        /**
+         * Time of the latest refresh.
+         */
+        private transient Time since;
+        /**
+         * Ctor.
+         * @param names All names
+         * @param time When they were selected
+         */
+        Snapshot(final Collection<String> names, final Time time) {
+            this.capacity = Math.max(names.size() * 2, Tv.TEN * Tv.THOUSAND);
+            this.bloom = BloomFilter.create(
+                Funnels.stringFunnel(Charsets.UTF_8),
+                this.capacity, DomainNotepad.Snapshot.FPP
+            );
+            this.refresh(names, time);
+        }
+        /**
+         * Is it over capacity and has to be loaded again?
+         * @return TRUE if full
+         */
+        public synchronized boolean full() {
+            return this.count > this.capacity;
+        }
+        /**
+         * Time to select changes since (with clock skew margin).
+         * @return Time
+         */
+        public synchronized Time since() {
+            return new Time(this.since.millis() - DomainNotepad.Snapshot.SKEW);
+        }
+        /**
+         * Add names.
+         * @param names Names to add
+         * @param time When they were selected or NULL if saved locally
+         */
+        public synchronized void refresh(final Collection<String> names,
+            final Time time) {
+            for (final String name : names) {
+                if (this.bloom.put(name)) {
+                    ++this.count;
+                }
+            }
+            if (time != null) {
+                this.since = time;
+            }
+        }
+        /**
+         * Name may be present?
+         * @param name Name of item
+         * @return FALSE if it is certainly absent
+         */
+        public synchronized boolean mightContain(final String name) {
+            return this.bloom.mightContain(name);
+        }
+    }
+
 }
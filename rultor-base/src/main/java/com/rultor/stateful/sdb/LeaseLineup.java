@@ -0,0 +1,528 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.stateful.sdb;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.GetAttributesRequest;
+import com.amazonaws.services.simpledb.model.PutAttributesRequest;
+import com.amazonaws.services.simpledb.model.ReplaceableAttribute;
+import com.amazonaws.services.simpledb.model.UpdateCondition;
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.RetryOnFailure;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import com.jcabi.log.VerboseRunnable;
+import com.jcabi.log.VerboseThreads;
+import com.jcabi.simpledb.Region;
+import com.rultor.stateful.Lineup;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.validation.constraints.NotNull;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.apache.commons.lang3.RandomStringUtils;
+
+/**
+ * Lineup with a lease in Amazon SimpleDB item.
+ *
+ * <p>The item keeps the owner of the lease, the time it expires at and
+ * a fencing token, which grows by one with every new lease. The lease is
+ * taken, renewed and released only by conditional puts, which expect
+ * the token to be exactly the one seen before, so two owners can't
+ * take it at the same time and an owner who lost the lease can't damage
+ * the lease of the next one. A lease that is not renewed by its owner
+ * (because the owner crashed, for example) expires after its TTL and is
+ * taken by the next contender. While the lease is held, it is renewed
+ * every third part of its TTL. If the lease is lost anyway (taken by
+ * somebody else, or not renewed in time because of failures), the
+ * thread running the callable is interrupted and the execution fails.
+ * A conditional put that fails because of a lease already written by
+ * the same owner (the response to the previous attempt was lost) is
+ * considered successful.
+ *
+ * <p>Contenders retry with exponential backoff and full jitter, from
+ * fifty milliseconds up to five seconds. In fair mode, threads of one
+ * JVM wait for the lease in order of their arrival and only the first
+ * of them competes for it remotely.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ * @checkstyle MultipleStringLiterals (500 lines)
+ */
+@Immutable
+@ToString
+@EqualsAndHashCode(of = { "region", "domain", "name", "ttl", "fair" })
+@Loggable(Loggable.DEBUG)
+@SuppressWarnings({ "PMD.DoNotUseThreads", "PMD.TooManyMethods" })
+public final class LeaseLineup implements Lineup {
+
+    /**
+     * Attribute name.
+     */
+    private static final String OWNER = "owner";
+
+    /**
+     * Attribute name.
+     */
+    private static final String TOKEN = "token";
+
+    /**
+     * Attribute name.
+     */
+    private static final String EXPIRES = "expires";
+
+    /**
+     * Shortest delay between attempts, in milliseconds.
+     */
+    private static final long MIN_DELAY = (long) Tv.FIFTY;
+
+    /**
+     * Longest delay between attempts, in milliseconds.
+     */
+    private static final long MAX_DELAY = TimeUnit.SECONDS.toMillis(Tv.FIVE);
+
+    /**
+     * Randomizer.
+     */
+    private static final Random RAND = new SecureRandom();
+
+    /**
+     * Renewals of leases being held.
+     */
+    private static final ScheduledExecutorService RENEWALS =
+        Executors.newSingleThreadScheduledExecutor(
+            new VerboseThreads(LeaseLineup.class)
+        );
+
+    /**
+     * Local queues of fair lineups, by domain and item.
+     */
+    private static final ConcurrentMap<String, ReentrantLock> QUEUES =
+        new ConcurrentHashMap<String, ReentrantLock>(0);
+
+    /**
+     * Leases taken.
+     */
+    private static final AtomicLong LEASES = new AtomicLong();
+
+    /**
+     * Failed attempts to take a lease.
+     */
+    private static final AtomicLong CONFLICTS = new AtomicLong();
+
+    /**
+     * Leases taken after expiry of previous ones.
+     */
+    private static final AtomicLong EXPIRED = new AtomicLong();
+
+    /**
+     * Total time of waiting for leases, in milliseconds.
+     */
+    private static final AtomicLong WAITED = new AtomicLong();
+
+    /**
+     * SimpleDB region.
+     */
+    private final transient Region region;
+
+    /**
+     * Domain name.
+     */
+    private final transient String domain;
+
+    /**
+     * Item name.
+     */
+    private final transient String name;
+
+    /**
+     * Time to live of a lease, in milliseconds.
+     */
+    private final transient long ttl;
+
+    /**
+     * Wait in order of arrival?
+     */
+    private final transient boolean fair;
+
+    /**
+     * Public ctor.
+     * @param rgn Region
+     * @param dmn Domain name
+     * @param item Item name
+     */
+    public LeaseLineup(final Region rgn, final String dmn, final String item) {
+        this(rgn, dmn, item, TimeUnit.MINUTES.toSeconds(Tv.FIVE), false);
+    }
+
+    /**
+     * Public ctor.
+     * @param rgn Region
+     * @param dmn Domain name
+     * @param item Item name
+     * @param seconds Time to live of a lease, in seconds
+     * @param fifo Wait in order of arrival
+     * @checkstyle ParameterNumber (5 lines)
+     */
+    public LeaseLineup(
+        @NotNull(message = "region can't be NULL") final Region rgn,
+        @NotNull(message = "domain can't be NULL") final String dmn,
+        @NotNull(message = "item can't be NULL") final String item,
+        final long seconds, final boolean fifo) {
+        this.region = rgn;
+        this.domain = dmn;
+        this.name = item;
+        this.ttl = TimeUnit.SECONDS.toMillis(seconds);
+        this.fair = fifo;
+    }
+
+    @Override
+    @Loggable(value = Loggable.DEBUG, limit = Integer.MAX_VALUE)
+    public <T> T exec(final Callable<T> callable) throws Exception {
+        final ReentrantLock queue = this.queue();
+        queue.lockInterruptibly();
+        try {
+            final String owner = String.format(
+                "%s %s", RandomStringUtils.randomAlphanumeric(Tv.TEN), callable
+            );
+            final long start = System.currentTimeMillis();
+            final long token = this.acquire(owner);
+            final AtomicBoolean held = new AtomicBoolean(true);
+            final AtomicBoolean lost = new AtomicBoolean();
+            final AtomicLong deadline = new AtomicLong(start + this.ttl);
+            final Thread thread = Thread.currentThread();
+            final ScheduledFuture<?> renewal = LeaseLineup.RENEWALS
+                .scheduleWithFixedDelay(
+                    new VerboseRunnable(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                synchronized (held) {
+                                    if (held.get() && !LeaseLineup.this
+                                        .renew(token, owner, deadline)) {
+                                        held.set(false);
+                                        lost.set(true);
+                                        thread.interrupt();
+                                    }
+                                }
+                            }
+                        },
+                        true
+                    ),
+                    this.ttl / Tv.THREE, this.ttl / Tv.THREE,
+                    TimeUnit.MILLISECONDS
+                );
+            try {
+                final T result = callable.call();
+                if (lost.get()) {
+                    throw new IllegalStateException(
+                        String.format(
+                            "lease #%d on %s/%s was lost during execution",
+                            token, this.domain, this.name
+                        )
+                    );
+                }
+                return result;
+            } finally {
+                renewal.cancel(false);
+                synchronized (held) {
+                    held.set(false);
+                    this.release(token, owner);
+                }
+                if (lost.get()) {
+                    Thread.interrupted();
+                }
+            }
+        } finally {
+            queue.unlock();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    @Loggable(value = Loggable.DEBUG, limit = Integer.MAX_VALUE)
+    public void exec(final Runnable runnable) {
+        try {
+            this.exec(
+                new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        runnable.run();
+                        return null;
+                    }
+                    @Override
+                    public String toString() {
+                        return runnable.toString();
+                    }
+                }
+            );
+        // @checkstyle IllegalCatch (1 line)
+        } catch (final Exception ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    /**
+     * Summary of all leases taken in this JVM.
+     * @return Text with metrics
+     */
+    public static String metrics() {
+        final long leases = LeaseLineup.LEASES.get();
+        return Logger.format(
+            "%d lease(s), %d conflict(s), %d expired, %[ms]s waited on average",
+            leases, LeaseLineup.CONFLICTS.get(), LeaseLineup.EXPIRED.get(),
+            LeaseLineup.WAITED.get() / Math.max(leases, 1L)
+        );
+    }
+
+    /**
+     * Take the lease, waiting for it as long as necessary.
+     * @param owner Owner of the lease
+     * @return Fencing token of the lease
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private long acquire(final String owner) throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        long delay = LeaseLineup.MIN_DELAY;
+        int conflicts = 0;
+        long token = 0L;
+        while (token == 0L) {
+            final Map<String, String> lease = this.read();
+            final String before = lease.get(LeaseLineup.TOKEN);
+            if (LeaseLineup.expires(lease) < System.currentTimeMillis()) {
+                long next = 1L;
+                if (before != null) {
+                    next = Long.parseLong(before) + 1L;
+                }
+                if (this.write(next, owner, before)) {
+                    token = next;
+                    if (!lease.get(LeaseLineup.OWNER).isEmpty()) {
+                        LeaseLineup.EXPIRED.incrementAndGet();
+                        Logger.warn(
+                            this, "lease of `%s` on %s/%s expired",
+                            lease.get(LeaseLineup.OWNER),
+                            this.domain, this.name
+                        );
+                    }
+                    break;
+                }
+            }
+            ++conflicts;
+            TimeUnit.MILLISECONDS.sleep(
+                (long) (LeaseLineup.RAND.nextDouble() * delay)
+            );
+            delay = Math.min(delay * 2, LeaseLineup.MAX_DELAY);
+        }
+        final long waited = System.currentTimeMillis() - start;
+        LeaseLineup.LEASES.incrementAndGet();
+        LeaseLineup.CONFLICTS.addAndGet(conflicts);
+        LeaseLineup.WAITED.addAndGet(waited);
+        if (conflicts > 0) {
+            Logger.info(
+                this,
+                "lease #%d on %s/%s taken in %[ms]s after %d attempt(s); %s",
+                token, this.domain, this.name, waited, conflicts,
+                LeaseLineup.metrics()
+            );
+        }
+        return token;
+    }
+
+    /**
+     * Extend the lease, if it is still ours.
+     * @param token Fencing token
+     * @param owner Owner of the lease
+     * @param deadline When the lease expires, to be updated
+     * @return TRUE if the lease is still ours
+     */
+    private boolean renew(final long token, final String owner,
+        final AtomicLong deadline) {
+        final long start = System.currentTimeMillis();
+        boolean renewed;
+        try {
+            renewed = this.write(token, owner, Long.toString(token));
+            if (renewed) {
+                deadline.set(start + this.ttl);
+            } else {
+                Logger.warn(
+                    this, "lease #%d on %s/%s is taken by somebody else",
+                    token, this.domain, this.name
+                );
+            }
+        } catch (final AmazonClientException ex) {
+            renewed = start < deadline.get();
+            Logger.warn(
+                this,
+                "failed to renew lease #%d on %s/%s, expires in %[ms]s: %s",
+                token, this.domain, this.name, deadline.get() - start,
+                ex.getMessage()
+            );
+        }
+        return renewed;
+    }
+
+    /**
+     * Release the lease, if it is still ours.
+     * @param token Fencing token
+     * @param owner Owner of the lease
+     */
+    private void release(final long token, final String owner) {
+        if (!this.write(token, "", Long.toString(token))) {
+            Logger.warn(
+                this, "lease #%d of `%s` on %s/%s was lost before release",
+                token, owner, this.domain, this.name
+            );
+        }
+    }
+
+    /**
+     * Read the lease, consistently.
+     * @return Attributes of the lease, empty owner if there is no lease
+     */
+    @RetryOnFailure(verbose = false)
+    private Map<String, String> read() {
+        final Map<String, String> lease = new HashMap<String, String>(0);
+        lease.put(LeaseLineup.OWNER, "");
+        final Iterable<Attribute> attrs = this.region.aws().getAttributes(
+            new GetAttributesRequest()
+                .withDomainName(this.domain)
+                .withItemName(this.name)
+                .withConsistentRead(true)
+        ).getAttributes();
+        for (final Attribute attr : attrs) {
+            lease.put(attr.getName(), attr.getValue());
+        }
+        return lease;
+    }
+
+    /**
+     * Write the lease, if its token is still the expected one.
+     * @param token Fencing token to write
+     * @param owner Owner of the lease, or empty if it is released
+     * @param expected Expected token, or NULL if there is no lease yet
+     * @return TRUE if written (now or by the previous attempt), FALSE if
+     *  the token is different
+     */
+    @RetryOnFailure(verbose = false)
+    private boolean write(final long token, final String owner,
+        final String expected) {
+        final UpdateCondition condition = new UpdateCondition()
+            .withName(LeaseLineup.TOKEN);
+        if (expected == null) {
+            condition.setExists(false);
+        } else {
+            condition.withValue(expected).setExists(true);
+        }
+        long expires = 0L;
+        if (!owner.isEmpty()) {
+            expires = System.currentTimeMillis() + this.ttl;
+        }
+        boolean written = true;
+        try {
+            this.region.aws().putAttributes(
+                new PutAttributesRequest()
+                    .withDomainName(this.domain)
+                    .withItemName(this.name)
+                    .withExpected(condition)
+                    .withAttributes(
+                        Arrays.asList(
+                            new ReplaceableAttribute(
+                                LeaseLineup.TOKEN, Long.toString(token), true
+                            ),
+                            new ReplaceableAttribute(
+                                LeaseLineup.OWNER, owner, true
+                            ),
+                            new ReplaceableAttribute(
+                                LeaseLineup.EXPIRES,
+                                Long.toString(expires), true
+                            )
+                        )
+                    )
+            );
+        } catch (final AmazonServiceException ex) {
+            if (!"ConditionalCheckFailed".equals(ex.getErrorCode())
+                && !"AttributeDoesNotExist".equals(ex.getErrorCode())) {
+                throw ex;
+            }
+            final Map<String, String> lease = this.read();
+            written = Long.toString(token).equals(lease.get(LeaseLineup.TOKEN))
+                && owner.equals(lease.get(LeaseLineup.OWNER));
+        }
+        return written;
+    }
+
+    /**
+     * Local queue of this lineup.
+     * @return Lock to wait on
+     */
+    private ReentrantLock queue() {
+        final ReentrantLock queue;
+        if (this.fair) {
+            final String key = String.format("%s/%s", this.domain, this.name);
+            LeaseLineup.QUEUES.putIfAbsent(key, new ReentrantLock(true));
+            queue = LeaseLineup.QUEUES.get(key);
+        } else {
+            queue = new ReentrantLock();
+        }
+        return queue;
+    }
+
+    /**
+     * When the lease expires.
+     * @param lease Attributes of the lease
+     * @return Time in milliseconds, zero if there is no lease
+     */
+    private static long expires(final Map<String, String> lease) {
+        long expires = 0L;
+        if (lease.containsKey(LeaseLineup.EXPIRES)) {
+            expires = Long.parseLong(lease.get(LeaseLineup.EXPIRES));
+        }
+        return expires;
+    }
+
+}
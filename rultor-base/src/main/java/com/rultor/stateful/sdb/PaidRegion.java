@@ -29,6 +29,7 @@
  */
 package com.rultor.stateful.sdb;
 
+import com.amazonaws.AmazonWebServiceRequest;
 import com.amazonaws.services.simpledb.AmazonSimpleDB;
 import com.amazonaws.services.simpledb.model.SelectRequest;
 import com.jcabi.aspects.Immutable;
@@ -40,6 +41,10 @@ import com.jcabi.simpledb.Item;
 import com.jcabi.simpledb.Region;
 import com.rultor.spi.Wallet;
 import com.rultor.tools.Dollars;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
@@ -85,9 +90,48 @@ public final class PaidRegion implements Region {
         this.origin = region;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Every request sent through the client, like a batch of saved
+     * or deleted items, is charged the same way as an operation with
+     * a single item.
+     */
     @Override
     public AmazonSimpleDB aws() {
-        return this.origin.aws();
+        final AmazonSimpleDB aws = this.origin.aws();
+        return AmazonSimpleDB.class.cast(
+            Proxy.newProxyInstance(
+                AmazonSimpleDB.class.getClassLoader(),
+                new Class<?>[] {AmazonSimpleDB.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy,
+                        final Method method, final Object[] args)
+                        throws Throwable {
+                        final long start = System.currentTimeMillis();
+                        final Object result;
+                        try {
+                            result = method.invoke(aws, args);
+                        } catch (final InvocationTargetException ex) {
+                            throw ex.getCause();
+                        }
+                        if (args != null && args.length == 1
+                            && args[0] instanceof AmazonWebServiceRequest) {
+                            PaidRegion.this.wallet.charge(
+                                Logger.format(
+                                    "sent SimpleDB %s in %[ms]s",
+                                    method.getName(),
+                                    System.currentTimeMillis() - start
+                                ),
+                                new Dollars(Tv.FIVE)
+                            );
+                        }
+                        return result;
+                    }
+                }
+            )
+        );
     }
 
     @Override
@@ -29,14 +29,22 @@
  */
 package com.rultor.ci;
 
+import com.jcabi.aspects.Tv;
 import com.rultor.scm.Branch;
 import com.rultor.scm.Commit;
+import com.rultor.scm.SCM;
 import com.rultor.stateful.Notepad;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Test case for {@link UnseenCommits}.
@@ -58,11 +66,12 @@ public final class UnseenCommitsTest {
         Mockito.doReturn(name).when(commit).name();
         Mockito.doReturn(Arrays.asList(commit)).when(origin).log();
         final Notepad notepad = Mockito.mock(Notepad.class);
-        Mockito.doReturn(false).when(notepad).contains(name);
+        Mockito.doReturn(new ArrayList<String>(0))
+            .when(notepad).known(Mockito.<Collection<String>>any());
         final Branch branch = new UnseenCommits(origin, notepad);
         MatcherAssert.assertThat(branch.log(), Matchers.hasItem(commit));
         Mockito.verify(origin).log();
-        Mockito.verify(notepad).contains(name);
+        Mockito.verify(notepad).known(Arrays.asList(name));
         Mockito.verify(notepad).add(name);
     }
 
@@ -80,12 +89,145 @@ public final class UnseenCommitsTest {
         Mockito.doReturn("f6eff8c4").when(second).name();
         Mockito.doReturn(Arrays.asList(first, second)).when(origin).log();
         final Notepad notepad = Mockito.mock(Notepad.class);
-        Mockito.doReturn(true).when(notepad).contains(Mockito.anyString());
+        Mockito.doReturn(Arrays.asList("f6ef4abe4", "f6eff8c4"))
+            .when(notepad).known(Mockito.<Collection<String>>any());
         final Branch branch = new UnseenCommits(origin, notepad);
         MatcherAssert.assertThat(branch.log(), Matchers.emptyIterable());
         Mockito.verify(origin).log();
-        Mockito.verify(notepad, Mockito.times(2)).contains(Mockito.anyString());
+        Mockito.verify(notepad).known(Mockito.<Collection<String>>any());
         Mockito.verify(notepad, Mockito.never()).add(Mockito.anyString());
     }
 
+    /**
+     * UnseenCommits can check commits in the notepad by pages.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void checksCommitsByPages() throws Exception {
+        final Branch origin = Mockito.mock(Branch.class);
+        final Collection<Commit> commits = new ArrayList<Commit>(0);
+        for (int idx = 0; idx < Tv.HUNDRED * 2 + 1; ++idx) {
+            final Commit commit = Mockito.mock(Commit.class);
+            Mockito.doReturn(String.format("%08x", idx)).when(commit).name();
+            commits.add(commit);
+        }
+        Mockito.doReturn(commits).when(origin).log();
+        final Notepad notepad = Mockito.mock(Notepad.class);
+        Mockito.doReturn(Arrays.asList("00000000"))
+            .when(notepad).known(Mockito.<Collection<String>>any());
+        MatcherAssert.assertThat(
+            new UnseenCommits(origin, notepad).log(),
+            Matchers.<Commit>iterableWithSize(Tv.HUNDRED * 2)
+        );
+        Mockito.verify(notepad, Mockito.times(Tv.THREE))
+            .known(Mockito.<Collection<String>>any());
+        Mockito.verify(notepad, Mockito.times(Tv.HUNDRED * 2))
+            .add(Mockito.anyString());
+    }
+
+    /**
+     * UnseenCommits can read only new commits of a fully read branch.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void readsOnlyNewCommits() throws Exception {
+        final Branch.Incremental origin =
+            UnseenCommitsTest.origin("http://localhost/new.git");
+        final Commit commit = Mockito.mock(Commit.class);
+        final String name = "a7c5e8d1f";
+        Mockito.doReturn(name).when(commit).name();
+        Mockito.doReturn(Arrays.asList(commit)).when(origin).log("");
+        Mockito.doReturn(new ArrayList<Commit>(0))
+            .when(origin).log(name);
+        final Collection<String> lines = new HashSet<String>(0);
+        MatcherAssert.assertThat(
+            new UnseenCommits(origin, UnseenCommitsTest.notepad(lines)).log(),
+            Matchers.contains(commit)
+        );
+        MatcherAssert.assertThat(
+            new UnseenCommits(origin, UnseenCommitsTest.notepad(lines)).log(),
+            Matchers.emptyIterable()
+        );
+        Mockito.verify(origin).log("");
+        Mockito.verify(origin).log(name);
+    }
+
+    /**
+     * UnseenCommits can ignore watermarks of other notepads.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void ignoresWatermarksOfOtherNotepads() throws Exception {
+        final Branch.Incremental origin =
+            UnseenCommitsTest.origin("http://localhost/shared.git");
+        final Commit commit = Mockito.mock(Commit.class);
+        Mockito.doReturn("c4e7f0a9b").when(commit).name();
+        Mockito.doReturn(Arrays.asList(commit)).when(origin).log("");
+        MatcherAssert.assertThat(
+            new UnseenCommits(
+                origin, UnseenCommitsTest.notepad(new HashSet<String>(0))
+            ).log(),
+            Matchers.contains(commit)
+        );
+        MatcherAssert.assertThat(
+            new UnseenCommits(
+                origin, UnseenCommitsTest.notepad(new HashSet<String>(0))
+            ).log(),
+            Matchers.contains(commit)
+        );
+        Mockito.verify(origin, Mockito.times(2)).log("");
+    }
+
+    /**
+     * Create incremental branch.
+     * @param uri URI of its SCM
+     * @return Branch
+     */
+    private static Branch.Incremental origin(final String uri) {
+        final Branch.Incremental origin =
+            Mockito.mock(Branch.Incremental.class);
+        Mockito.doReturn("master").when(origin).name();
+        final SCM scm = Mockito.mock(SCM.class);
+        Mockito.doReturn(URI.create(uri)).when(scm).uri();
+        Mockito.doReturn(scm).when(origin).scm();
+        return origin;
+    }
+
+    /**
+     * Create notepad with the given lines.
+     * @param lines Lines of the notepad
+     * @return Notepad
+     */
+    private static Notepad notepad(final Collection<String> lines) {
+        final Notepad notepad = Mockito.mock(Notepad.class);
+        Mockito.doAnswer(
+            new Answer<Collection<String>>() {
+                @Override
+                public Collection<String> answer(
+                    final InvocationOnMock invocation) {
+                    final Collection<String> known = new ArrayList<String>(0);
+                    for (final Object line : Collection.class.cast(
+                        invocation.getArguments()[0]
+                    )) {
+                        if (lines.contains(line.toString())) {
+                            known.add(line.toString());
+                        }
+                    }
+                    return known;
+                }
+            }
+        ).when(notepad).known(Mockito.<Collection<String>>any());
+        Mockito.doAnswer(
+            new Answer<Boolean>() {
+                @Override
+                public Boolean answer(final InvocationOnMock invocation) {
+                    return lines.add(
+                        invocation.getArguments()[0].toString()
+                    );
+                }
+            }
+        ).when(notepad).add(Mockito.anyString());
+        return notepad;
+    }
+
 }
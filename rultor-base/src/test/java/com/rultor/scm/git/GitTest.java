@@ -29,9 +29,14 @@
  */
 package com.rultor.scm.git;
 
+import com.google.common.collect.Iterables;
 import com.google.common.io.Files;
+import com.jcabi.aspects.Tv;
 import com.rultor.scm.Branch;
+import com.rultor.scm.Commit;
 import com.rultor.shell.ShellMocker;
+import com.rultor.shell.Terminal;
+import java.io.File;
 import java.net.URI;
 import java.util.Collection;
 import javax.validation.ConstraintViolationException;
@@ -93,4 +98,43 @@ public final class GitTest {
             Matchers.notNullValue(Collection.class)
         );
     }
+
+    /**
+     * Can read log by pages and since the given commit.
+     * @throws Exception if some problem inside
+     */
+    @Test
+    public void readsLogSinceCommit() throws Exception {
+        final File dir = Files.createTempDir();
+        final Terminal terminal = new Terminal(new ShellMocker.Bash(dir));
+        terminal.exec(
+            // @checkstyle LineLength (1 line)
+            "git init -q origin && cd origin && git symbolic-ref HEAD refs/heads/master && for i in $(seq 1 501); do git -c user.email=me@rultor.com -c user.name=me commit -q --allow-empty -m \"commit $i\"; done"
+        );
+        final Git git = new Git(
+            new ShellMocker.Bash(dir),
+            URI.create(String.format("file://%s/origin", dir)),
+            "clone"
+        );
+        final Iterable<Commit> log = git.log("master");
+        MatcherAssert.assertThat(
+            Iterables.size(log), Matchers.equalTo(Tv.HUNDRED * Tv.FIVE + 1)
+        );
+        final String head = log.iterator().next().name();
+        final String first = Iterables.getLast(log).name();
+        MatcherAssert.assertThat(
+            Iterables.size(git.log("master", first)),
+            Matchers.equalTo(Tv.HUNDRED * Tv.FIVE)
+        );
+        MatcherAssert.assertThat(
+            git.log("master", head), Matchers.emptyIterable()
+        );
+        terminal.exec(
+            // @checkstyle LineLength (1 line)
+            "cd origin && git -c user.email=me@rultor.com -c user.name=me commit -q --allow-empty -m last"
+        );
+        MatcherAssert.assertThat(
+            Iterables.size(git.log("master", head)), Matchers.equalTo(1)
+        );
+    }
 }
@@ -29,7 +29,9 @@
  */
 package com.rultor.shell.ssh;
 
+import com.google.common.collect.Ordering;
 import com.google.common.io.Files;
+import com.jcabi.aspects.Tv;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
@@ -39,6 +41,9 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.security.PublicKey;
 import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.IOUtils;
 import org.apache.sshd.SshServer;
 import org.apache.sshd.common.NamedFactory;
@@ -98,6 +103,70 @@ public final class SSHChannelTest {
         MatcherAssert.assertThat(output.toString(), Matchers.equalTo(cmd));
     }
 
+    /**
+     * SSHChannel can run many commands through one SSH session.
+     * @throws Exception In case of error.
+     */
+    @Test
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public void reusesSessionForManyCommands() throws Exception {
+        final int port = this.port();
+        final SshServer sshd = this.sshServer(port);
+        final Set<ServerSession> sessions =
+            new ConcurrentSkipListSet<ServerSession>(
+                Ordering.usingToString()
+            );
+        sshd.setPublickeyAuthenticator(
+            new PublickeyAuthenticator() {
+                @Override
+                public boolean authenticate(final String user,
+                    final PublicKey pkey, final ServerSession session) {
+                    sessions.add(session);
+                    return true;
+                }
+            }
+        );
+        sshd.setCommandFactory(new SSHChannelTest.EchoCommandCreator());
+        sshd.start();
+        final SSHChannel shell = new SSHChannel(
+            InetAddress.getLocalHost(),
+            port,
+            "test",
+            new PrivateKey(
+                IOUtils.toString(
+                    this.getClass().getResourceAsStream("private.key")
+                )
+            )
+        );
+        try {
+            final long start = System.currentTimeMillis();
+            for (int idx = 0; idx < Tv.FIVE; ++idx) {
+                final ByteArrayOutputStream output =
+                    new ByteArrayOutputStream();
+                final String cmd = String.format("echo %d", idx);
+                MatcherAssert.assertThat(
+                    shell.exec(
+                        cmd,
+                        Mockito.mock(InputStream.class),
+                        output,
+                        Mockito.mock(OutputStream.class)
+                    ),
+                    Matchers.equalTo(0)
+                );
+                MatcherAssert.assertThat(
+                    output.toString(), Matchers.equalTo(cmd)
+                );
+            }
+            MatcherAssert.assertThat(
+                System.currentTimeMillis() - start,
+                Matchers.lessThan(TimeUnit.SECONDS.toMillis(Tv.FIVE))
+            );
+            MatcherAssert.assertThat(sessions, Matchers.hasSize(1));
+        } finally {
+            sshd.stop();
+        }
+    }
+
     /**
      * Setup SSH server.
      * @param port Port to listen on.
@@ -123,7 +192,8 @@ public final class SSHChannelTest {
         );
         sshd.setKeyPairProvider(
             new SimpleGeneratorHostKeyProvider(
-                new File(Files.createTempDir(), "hostkey.ser").getAbsolutePath()
+                new File(Files.createTempDir(), "hostkey.ser").getAbsolutePath(),
+                "RSA"
             )
         );
         return sshd;
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.shell.ssh;
+
+import com.jcabi.aspects.Tv;
+import com.jcraft.jsch.Session;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Test case for {@link Sessions}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ */
+public final class SessionsTest {
+
+    /**
+     * Sessions can keep a failed session until its last lease is closed.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void disconnectsFailedSessionAfterLastLease() throws Exception {
+        final Session first = SessionsTest.session();
+        final Session second = SessionsTest.session();
+        final Sessions.Connector connector = SessionsTest.connector(
+            first, second
+        );
+        final String name = RandomStringUtils.randomAlphabetic(Tv.TEN);
+        final Sessions.Lease broken = Sessions.lease(name, connector);
+        final Sessions.Lease busy = Sessions.lease(name, connector);
+        broken.fail();
+        broken.close();
+        Mockito.verify(first, Mockito.never()).disconnect();
+        final Sessions.Lease fresh = Sessions.lease(name, connector);
+        MatcherAssert.assertThat(fresh.session(), Matchers.is(second));
+        busy.close();
+        Mockito.verify(first).disconnect();
+        fresh.close();
+        Mockito.verify(second, Mockito.never()).disconnect();
+    }
+
+    /**
+     * Sessions can replace a session which fails a keep-alive check.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void replacesSessionFailingKeepAlive() throws Exception {
+        final Session first = SessionsTest.session();
+        final Session second = SessionsTest.session();
+        final Sessions.Connector connector = SessionsTest.connector(
+            first, second
+        );
+        final String name = RandomStringUtils.randomAlphabetic(Tv.TEN);
+        Sessions.lease(name, connector).close();
+        Mockito.doThrow(new IOException("half-dead"))
+            .when(first).sendKeepAliveMsg();
+        final Sessions.Lease lease = Sessions.lease(name, connector);
+        MatcherAssert.assertThat(lease.session(), Matchers.is(second));
+        Mockito.verify(first).disconnect();
+        lease.close();
+    }
+
+    /**
+     * Sessions can lease while another thread is connecting.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void leasesWhileAnotherThreadConnects() throws Exception {
+        final Session slow = SessionsTest.session();
+        final Session fast = SessionsTest.session();
+        final CountDownLatch connecting = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final String name = RandomStringUtils.randomAlphabetic(Tv.TEN);
+        final ExecutorService service = Executors.newSingleThreadExecutor();
+        final Future<Session> future = service.submit(
+            new Callable<Session>() {
+                @Override
+                public Session call() throws Exception {
+                    final Sessions.Lease lease = Sessions.lease(
+                        name,
+                        new Sessions.Connector() {
+                            @Override
+                            public Session connect() throws IOException {
+                                connecting.countDown();
+                                try {
+                                    proceed.await();
+                                } catch (final InterruptedException ex) {
+                                    Thread.currentThread().interrupt();
+                                    throw new IOException(ex);
+                                }
+                                return slow;
+                            }
+                        }
+                    );
+                    lease.close();
+                    return lease.session();
+                }
+            }
+        );
+        connecting.await();
+        final Sessions.Lease lease = Sessions.lease(
+            name, SessionsTest.connector(fast)
+        );
+        MatcherAssert.assertThat(lease.session(), Matchers.is(fast));
+        proceed.countDown();
+        MatcherAssert.assertThat(
+            future.get(1L, TimeUnit.MINUTES), Matchers.is(fast)
+        );
+        Mockito.verify(slow).disconnect();
+        lease.close();
+        Mockito.verify(fast, Mockito.never()).disconnect();
+        service.shutdown();
+    }
+
+    /**
+     * Make connected session.
+     * @return Session
+     */
+    private static Session session() {
+        final Session session = Mockito.mock(Session.class);
+        Mockito.doReturn(true).when(session).isConnected();
+        return session;
+    }
+
+    /**
+     * Make connector, which returns these sessions, one by one.
+     * @param sessions Sessions to return
+     * @return Connector
+     */
+    private static Sessions.Connector connector(final Session... sessions) {
+        final AtomicInteger next = new AtomicInteger();
+        return new Sessions.Connector() {
+            @Override
+            public Session connect() {
+                return sessions[next.getAndIncrement()];
+            }
+        };
+    }
+
+}
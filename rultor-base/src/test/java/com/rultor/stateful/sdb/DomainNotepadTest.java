@@ -0,0 +1,404 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.stateful.sdb;
+
+import com.amazonaws.services.simpledb.AmazonSimpleDB;
+import com.amazonaws.services.simpledb.model.BatchDeleteAttributesRequest;
+import com.amazonaws.services.simpledb.model.BatchPutAttributesRequest;
+import com.amazonaws.services.simpledb.model.DeletableItem;
+import com.amazonaws.services.simpledb.model.ReplaceableAttribute;
+import com.amazonaws.services.simpledb.model.ReplaceableItem;
+import com.amazonaws.services.simpledb.model.SelectRequest;
+import com.jcabi.aspects.Tv;
+import com.jcabi.simpledb.Domain;
+import com.jcabi.simpledb.Item;
+import com.jcabi.simpledb.Region;
+import com.rultor.spi.Coordinates;
+import com.rultor.stateful.Notepad;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test case for {@link DomainNotepad}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ * @checkstyle MultipleStringLiterals (500 lines)
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+public final class DomainNotepadTest {
+
+    /**
+     * DomainNotepad can save lines in batches and find them.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void savesAndFindsLinesInBatches() throws Exception {
+        final DomainNotepadTest.FakeRegion region =
+            new DomainNotepadTest.FakeRegion();
+        final Notepad notepad = new DomainNotepad(
+            new Coordinates.Simple(), region, DomainNotepadTest.name()
+        );
+        final Collection<String> lines = new ArrayList<String>(0);
+        final Collection<String> others = new ArrayList<String>(0);
+        for (int idx = 0; idx < Tv.FIFTY; ++idx) {
+            lines.add(String.format("line \u20ac %d", idx));
+            others.add(String.format("other %d", idx));
+        }
+        notepad.addAll(lines);
+        MatcherAssert.assertThat(region.batches(), Matchers.equalTo(2));
+        MatcherAssert.assertThat(notepad, Matchers.hasSize(Tv.FIFTY));
+        final Collection<String> all = new ArrayList<String>(lines);
+        all.addAll(others);
+        MatcherAssert.assertThat(
+            notepad.known(all),
+            Matchers.containsInAnyOrder(lines.toArray())
+        );
+        MatcherAssert.assertThat(
+            notepad.contains("line \u20ac 7"), Matchers.is(true)
+        );
+        MatcherAssert.assertThat(
+            notepad.contains("line \u20ac 77"), Matchers.is(false)
+        );
+        MatcherAssert.assertThat(notepad.containsAll(lines), Matchers.is(true));
+        MatcherAssert.assertThat(notepad.containsAll(all), Matchers.is(false));
+    }
+
+    /**
+     * DomainNotepad can report absent lines without remote lookups.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void reportsAbsentLinesLocally() throws Exception {
+        final DomainNotepadTest.FakeRegion region =
+            new DomainNotepadTest.FakeRegion();
+        final Notepad notepad = new DomainNotepad(
+            new Coordinates.Simple(), region, DomainNotepadTest.name()
+        );
+        notepad.add("first");
+        notepad.contains("first");
+        final int before = region.selects();
+        final Collection<String> absent = new ArrayList<String>(0);
+        for (int idx = 0; idx < Tv.THOUSAND; ++idx) {
+            absent.add(String.format("absent %d", idx));
+        }
+        MatcherAssert.assertThat(notepad.known(absent), Matchers.empty());
+        MatcherAssert.assertThat(
+            region.selects() - before, Matchers.lessThan(Tv.THREE)
+        );
+    }
+
+    /**
+     * DomainNotepad can see lines saved by other notepads.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void seesLinesOfOtherNotepads() throws Exception {
+        final DomainNotepadTest.FakeRegion region =
+            new DomainNotepadTest.FakeRegion();
+        final String name = DomainNotepadTest.name();
+        final Notepad notepad = new DomainNotepad(
+            new Coordinates.Simple(), region, name
+        );
+        MatcherAssert.assertThat(notepad.contains("x"), Matchers.is(false));
+        new DomainNotepad(new Coordinates.Simple(), region.domain(name))
+            .add("x");
+        MatcherAssert.assertThat(notepad.contains("x"), Matchers.is(true));
+    }
+
+    /**
+     * DomainNotepad can clean itself in batches.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void cleansItself() throws Exception {
+        final DomainNotepadTest.FakeRegion region =
+            new DomainNotepadTest.FakeRegion();
+        final Notepad notepad = new DomainNotepad(
+            new Coordinates.Simple(), region, DomainNotepadTest.name()
+        );
+        notepad.addAll(Arrays.asList("a", "b", "c"));
+        MatcherAssert.assertThat(notepad, Matchers.hasItem("b"));
+        notepad.clear();
+        MatcherAssert.assertThat(notepad.isEmpty(), Matchers.is(true));
+        MatcherAssert.assertThat(notepad.contains("b"), Matchers.is(false));
+        MatcherAssert.assertThat(region.batches(), Matchers.equalTo(2));
+    }
+
+    /**
+     * Make random domain name.
+     * @return Name
+     */
+    private static String name() {
+        return RandomStringUtils.randomAlphabetic(Tv.EIGHT);
+    }
+
+    /**
+     * In-memory region, which understands selects of DomainNotepad only.
+     */
+    private static final class FakeRegion implements Region {
+        /**
+         * Items by domain and name.
+         */
+        private final transient ConcurrentMap<String,
+            ConcurrentMap<String, DomainNotepadTest.FakeItem>> domains =
+            new ConcurrentHashMap<String,
+                ConcurrentMap<String, DomainNotepadTest.FakeItem>>(0);
+        /**
+         * Selects made.
+         */
+        private final transient AtomicInteger select = new AtomicInteger();
+        /**
+         * Batches made.
+         */
+        private final transient AtomicInteger batch = new AtomicInteger();
+        /**
+         * How many selects were made.
+         * @return Count
+         */
+        public int selects() {
+            return this.select.get();
+        }
+        /**
+         * How many batches were made.
+         * @return Count
+         */
+        public int batches() {
+            return this.batch.get();
+        }
+        @Override
+        public AmazonSimpleDB aws() {
+            final AmazonSimpleDB aws = Mockito.mock(AmazonSimpleDB.class);
+            Mockito.doAnswer(
+                new Answer<Void>() {
+                    @Override
+                    public Void answer(final InvocationOnMock inv) {
+                        final BatchPutAttributesRequest req =
+                            BatchPutAttributesRequest.class.cast(
+                                inv.getArguments()[0]
+                            );
+                        FakeRegion.this.batch.incrementAndGet();
+                        for (final ReplaceableItem item : req.getItems()) {
+                            final Item saved = FakeRegion.this
+                                .domain(req.getDomainName())
+                                .item(item.getName());
+                            for (final ReplaceableAttribute attr
+                                : item.getAttributes()) {
+                                saved.put(attr.getName(), attr.getValue());
+                            }
+                        }
+                        return null;
+                    }
+                }
+            ).when(aws).batchPutAttributes(
+                Mockito.any(BatchPutAttributesRequest.class)
+            );
+            Mockito.doAnswer(
+                new Answer<Void>() {
+                    @Override
+                    public Void answer(final InvocationOnMock inv) {
+                        final BatchDeleteAttributesRequest req =
+                            BatchDeleteAttributesRequest.class.cast(
+                                inv.getArguments()[0]
+                            );
+                        FakeRegion.this.batch.incrementAndGet();
+                        for (final DeletableItem item : req.getItems()) {
+                            FakeRegion.this.items(req.getDomainName())
+                                .remove(item.getName());
+                        }
+                        return null;
+                    }
+                }
+            ).when(aws).batchDeleteAttributes(
+                Mockito.any(BatchDeleteAttributesRequest.class)
+            );
+            return aws;
+        }
+        @Override
+        public Domain domain(final String name) {
+            return new DomainNotepadTest.FakeDomain(this, name);
+        }
+        /**
+         * Items of the domain.
+         * @param name Name of domain
+         * @return Items
+         */
+        public ConcurrentMap<String, DomainNotepadTest.FakeItem> items(
+            final String name) {
+            this.domains.putIfAbsent(
+                name,
+                new ConcurrentHashMap<String, DomainNotepadTest.FakeItem>(0)
+            );
+            return this.domains.get(name);
+        }
+    }
+
+    /**
+     * In-memory domain.
+     */
+    private static final class FakeDomain implements Domain {
+        /**
+         * Condition on attribute.
+         */
+        private static final Pattern ATTR = Pattern.compile(
+            "`(\\w+)`\\s*(=|>=)\\s*'([^']*)'"
+        );
+        /**
+         * Condition on names.
+         */
+        private static final Pattern NAMES = Pattern.compile(
+            "itemName\\(\\) IN \\(([^)]*)\\)"
+        );
+        /**
+         * Region.
+         */
+        private final transient DomainNotepadTest.FakeRegion region;
+        /**
+         * Name of it.
+         */
+        private final transient String label;
+        /**
+         * Ctor.
+         * @param rgn Region
+         * @param name Name
+         */
+        FakeDomain(final DomainNotepadTest.FakeRegion rgn,
+            final String name) {
+            this.region = rgn;
+            this.label = name;
+        }
+        @Override
+        public void create() {
+            this.region.items(this.label);
+        }
+        @Override
+        public void drop() {
+            this.region.items(this.label).clear();
+        }
+        @Override
+        public String name() {
+            return this.label;
+        }
+        @Override
+        public Item item(final String name) {
+            final ConcurrentMap<String, DomainNotepadTest.FakeItem> items =
+                this.region.items(this.label);
+            items.putIfAbsent(name, new DomainNotepadTest.FakeItem(name));
+            return items.get(name);
+        }
+        @Override
+        public Iterable<Item> select(final SelectRequest request) {
+            this.region.select.incrementAndGet();
+            final String query = request.getSelectExpression();
+            final Collection<Item> found = new ArrayList<Item>(0);
+            for (final Item item : this.region.items(this.label).values()) {
+                if (!item.isEmpty() && FakeDomain.matches(query, item)) {
+                    found.add(item);
+                }
+            }
+            final Collection<Item> result;
+            if (query.startsWith("SELECT count(*)")) {
+                final Item count = new DomainNotepadTest.FakeItem("Domain");
+                count.put("Count", Integer.toString(found.size()));
+                result = Arrays.asList(count);
+            } else {
+                result = found;
+            }
+            return result;
+        }
+        /**
+         * Item matches conditions of the query?
+         * @param query Query
+         * @param item Item
+         * @return TRUE if it matches
+         */
+        private static boolean matches(final String query, final Item item) {
+            boolean matches = true;
+            final Matcher attr = FakeDomain.ATTR.matcher(query);
+            while (attr.find()) {
+                final String value = item.get(attr.group(1));
+                if ("=".equals(attr.group(2))) {
+                    matches &= attr.group(Tv.THREE).equals(value);
+                } else {
+                    matches &= value.compareTo(attr.group(Tv.THREE)) >= 0;
+                }
+            }
+            final Matcher names = FakeDomain.NAMES.matcher(query);
+            if (names.find()) {
+                matches &= Arrays.asList(names.group(1).split(","))
+                    .contains(String.format("'%s'", item.name()));
+            }
+            return matches;
+        }
+    }
+
+    /**
+     * In-memory item.
+     */
+    @SuppressWarnings("PMD.AvoidFieldNameMatchingMethodName")
+    private static final class FakeItem extends ConcurrentHashMap<String,
+        String> implements Item {
+        /**
+         * Serialization marker.
+         */
+        private static final long serialVersionUID = 0x7562eaa1dd83e4ffL;
+        /**
+         * Name of it.
+         */
+        private final transient String label;
+        /**
+         * Ctor.
+         * @param name Name
+         */
+        FakeItem(final String name) {
+            super(new HashMap<String, String>(0));
+            this.label = name;
+        }
+        @Override
+        public String name() {
+            return this.label;
+        }
+    }
+
+}
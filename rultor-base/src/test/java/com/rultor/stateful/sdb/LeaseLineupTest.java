@@ -0,0 +1,443 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.stateful.sdb;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.simpledb.AmazonSimpleDB;
+import com.amazonaws.services.simpledb.model.Attribute;
+import com.amazonaws.services.simpledb.model.GetAttributesRequest;
+import com.amazonaws.services.simpledb.model.GetAttributesResult;
+import com.amazonaws.services.simpledb.model.PutAttributesRequest;
+import com.amazonaws.services.simpledb.model.ReplaceableAttribute;
+import com.amazonaws.services.simpledb.model.UpdateCondition;
+import com.jcabi.aspects.Tv;
+import com.jcabi.simpledb.Region;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test case for {@link LeaseLineup}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+public final class LeaseLineupTest {
+
+    /**
+     * LeaseLineup can let only one thread in at a time.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void letsOneThreadInAtTime() throws Exception {
+        final LeaseLineupTest.Store store = new LeaseLineupTest.Store();
+        LeaseLineupTest.contend(
+            new LeaseLineup(store.region(), "d", "i"), Tv.FIVE
+        );
+        MatcherAssert.assertThat(
+            store.attrs().get("token"),
+            Matchers.equalTo(Integer.toString(Tv.FIVE * Tv.TEN))
+        );
+        MatcherAssert.assertThat(
+            LeaseLineup.metrics(), Matchers.containsString("lease(s)")
+        );
+    }
+
+    /**
+     * LeaseLineup can let threads in one by one in fair mode.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void letsThreadsInFairly() throws Exception {
+        final LeaseLineupTest.Store store = new LeaseLineupTest.Store();
+        LeaseLineupTest.contend(
+            new LeaseLineup(store.region(), "d", "f", 1L, true), Tv.EIGHT
+        );
+        MatcherAssert.assertThat(
+            store.conflicts(), Matchers.equalTo(0)
+        );
+    }
+
+    /**
+     * LeaseLineup can take a lease abandoned by its owner.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void takesExpiredLease() throws Exception {
+        final LeaseLineupTest.Store store = new LeaseLineupTest.Store();
+        store.attrs().put("token", "7");
+        store.attrs().put("owner", "crashed");
+        store.attrs().put(
+            "expires", Long.toString(System.currentTimeMillis() - 1L)
+        );
+        MatcherAssert.assertThat(
+            new LeaseLineup(store.region(), "d", "x").exec(
+                new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return store.attrs().get("token");
+                    }
+                }
+            ),
+            Matchers.equalTo("8")
+        );
+        MatcherAssert.assertThat(
+            store.attrs().get("owner"), Matchers.isEmptyString()
+        );
+    }
+
+    /**
+     * LeaseLineup can keep the lease of a long execution.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void renewsLeaseOfLongExecution() throws Exception {
+        final LeaseLineupTest.Store store = new LeaseLineupTest.Store();
+        final LeaseLineup lineup = new LeaseLineup(
+            store.region(), "d", "r", 1L, false
+        );
+        final long expires = lineup.exec(
+            new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    TimeUnit.MILLISECONDS.sleep((long) Tv.THOUSAND * 2);
+                    return Long.parseLong(store.attrs().get("expires"));
+                }
+            }
+        );
+        MatcherAssert.assertThat(
+            expires, Matchers.greaterThan(System.currentTimeMillis())
+        );
+    }
+
+    /**
+     * LeaseLineup can keep the lease when a renewal fails.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void survivesFailedRenewal() throws Exception {
+        final LeaseLineupTest.Store store = new LeaseLineupTest.Store();
+        final LeaseLineup lineup = new LeaseLineup(
+            store.region(), "d", "s", 2L, false
+        );
+        final long expires = lineup.exec(
+            new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    store.breaks(Tv.THREE);
+                    TimeUnit.SECONDS.sleep((long) Tv.FOUR);
+                    return Long.parseLong(store.attrs().get("expires"));
+                }
+            }
+        );
+        MatcherAssert.assertThat(
+            expires, Matchers.greaterThan(System.currentTimeMillis())
+        );
+    }
+
+    /**
+     * LeaseLineup can fail the execution whose lease expired while the
+     * network was broken.
+     * @throws Exception If some problem inside
+     */
+    @Test(expected = IllegalStateException.class)
+    public void failsExecutionWhenNetworkIsBroken() throws Exception {
+        final LeaseLineupTest.Store store = new LeaseLineupTest.Store();
+        new LeaseLineup(store.region(), "d", "n", 1L, false).exec(
+            new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.breaks(Tv.HUNDRED);
+                    try {
+                        TimeUnit.MINUTES.sleep(1L);
+                    } catch (final InterruptedException ex) {
+                        store.breaks(0);
+                        return null;
+                    }
+                    throw new IllegalArgumentException("not interrupted");
+                }
+            }
+        );
+    }
+
+    /**
+     * LeaseLineup can interrupt and fail the execution that lost its lease.
+     * @throws Exception If some problem inside
+     */
+    @Test(expected = IllegalStateException.class)
+    public void failsExecutionThatLostLease() throws Exception {
+        final LeaseLineupTest.Store store = new LeaseLineupTest.Store();
+        new LeaseLineup(store.region(), "d", "l", 1L, false).exec(
+            new Callable<Void>() {
+                @Override
+                public Void call() {
+                    store.attrs().put("token", "100");
+                    try {
+                        TimeUnit.MINUTES.sleep(1L);
+                    } catch (final InterruptedException ex) {
+                        return null;
+                    }
+                    throw new IllegalArgumentException("not interrupted");
+                }
+            }
+        );
+    }
+
+    /**
+     * LeaseLineup can take a lease when a response to its put is lost.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void takesLeaseWhenResponseIsLost() throws Exception {
+        final LeaseLineupTest.Store store = new LeaseLineupTest.Store();
+        store.loses(1);
+        final long start = System.currentTimeMillis();
+        MatcherAssert.assertThat(
+            new LeaseLineup(store.region(), "d", "o").exec(
+                new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return store.attrs().get("token");
+                    }
+                }
+            ),
+            Matchers.equalTo("1")
+        );
+        MatcherAssert.assertThat(
+            System.currentTimeMillis() - start,
+            Matchers.lessThan(TimeUnit.SECONDS.toMillis(Tv.TEN))
+        );
+    }
+
+    /**
+     * Run executions of the lineup in parallel threads and check that
+     * they never overlap.
+     * @param lineup The lineup
+     * @param threads How many threads
+     * @throws Exception If some problem inside
+     */
+    private static void contend(final LeaseLineup lineup, final int threads)
+        throws Exception {
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger total = new AtomicInteger();
+        final ExecutorService svc = Executors.newFixedThreadPool(threads);
+        final Collection<Future<Void>> futures =
+            new ArrayList<Future<Void>>(threads);
+        for (int thread = 0; thread < threads; ++thread) {
+            futures.add(
+                svc.submit(
+                    new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            for (int idx = 0; idx < Tv.TEN; ++idx) {
+                                lineup.exec(
+                                    new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            if (inside.incrementAndGet()
+                                                > 1) {
+                                                overlaps.incrementAndGet();
+                                            }
+                                            total.incrementAndGet();
+                                            inside.decrementAndGet();
+                                        }
+                                    }
+                                );
+                            }
+                            return null;
+                        }
+                    }
+                )
+            );
+        }
+        for (final Future<Void> future : futures) {
+            future.get();
+        }
+        svc.shutdown();
+        MatcherAssert.assertThat(overlaps.get(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(
+            total.get(), Matchers.equalTo(threads * Tv.TEN)
+        );
+    }
+
+    /**
+     * In-memory SimpleDB item with conditional puts.
+     */
+    private static final class Store {
+        /**
+         * Attributes of the item.
+         */
+        private final transient Map<String, String> map =
+            new HashMap<String, String>(0);
+        /**
+         * Failed conditional puts.
+         */
+        private final transient AtomicInteger failed = new AtomicInteger();
+        /**
+         * How many next puts fail before they are applied.
+         */
+        private final transient AtomicInteger broken = new AtomicInteger();
+        /**
+         * How many next puts fail after they are applied.
+         */
+        private final transient AtomicInteger lost = new AtomicInteger();
+        /**
+         * Attributes.
+         * @return Attributes of the item
+         */
+        public Map<String, String> attrs() {
+            return this.map;
+        }
+        /**
+         * How many conditional puts failed.
+         * @return Count
+         */
+        public int conflicts() {
+            return this.failed.get();
+        }
+        /**
+         * Fail next puts before applying them, as a broken network does.
+         * @param total How many puts
+         */
+        public void breaks(final int total) {
+            this.broken.set(total);
+        }
+        /**
+         * Fail next puts after applying them.
+         * @param total How many puts
+         */
+        public void loses(final int total) {
+            this.lost.set(total);
+        }
+        /**
+         * Region with this item.
+         * @return Region
+         */
+        public Region region() {
+            final AmazonSimpleDB aws = Mockito.mock(AmazonSimpleDB.class);
+            Mockito.doAnswer(
+                new Answer<GetAttributesResult>() {
+                    @Override
+                    public GetAttributesResult answer(
+                        final InvocationOnMock inv) {
+                        final Collection<Attribute> attrs =
+                            new ArrayList<Attribute>(0);
+                        synchronized (Store.this.map) {
+                            for (final Map.Entry<String, String> entry
+                                : Store.this.map.entrySet()) {
+                                attrs.add(
+                                    new Attribute(
+                                        entry.getKey(), entry.getValue()
+                                    )
+                                );
+                            }
+                        }
+                        return new GetAttributesResult().withAttributes(attrs);
+                    }
+                }
+            ).when(aws).getAttributes(Mockito.any(GetAttributesRequest.class));
+            Mockito.doAnswer(
+                new Answer<Void>() {
+                    @Override
+                    public Void answer(final InvocationOnMock inv) {
+                        Store.this.put(
+                            PutAttributesRequest.class.cast(
+                                inv.getArguments()[0]
+                            )
+                        );
+                        return null;
+                    }
+                }
+            ).when(aws).putAttributes(Mockito.any(PutAttributesRequest.class));
+            final Region region = Mockito.mock(Region.class);
+            Mockito.doReturn(aws).when(region).aws();
+            return region;
+        }
+        /**
+         * Put attributes, if condition holds.
+         * @param req Request
+         */
+        private void put(final PutAttributesRequest req) {
+            if (this.broken.getAndDecrement() > 0) {
+                throw new AmazonClientException("connection reset");
+            }
+            final UpdateCondition cond = req.getExpected();
+            synchronized (this.map) {
+                final String value = this.map.get(cond.getName());
+                final boolean holds;
+                if (cond.getExists()) {
+                    holds = cond.getValue().equals(value);
+                } else {
+                    holds = value == null;
+                }
+                if (!holds) {
+                    this.failed.incrementAndGet();
+                    final AmazonServiceException ex =
+                        new AmazonServiceException("conditional check");
+                    ex.setErrorCode("ConditionalCheckFailed");
+                    throw ex;
+                }
+                for (final ReplaceableAttribute attr : req.getAttributes()) {
+                    this.map.put(attr.getName(), attr.getValue());
+                }
+            }
+            if (this.lost.getAndDecrement() > 0) {
+                throw Store.unavailable();
+            }
+        }
+        /**
+         * Exception of unavailable service.
+         * @return Exception
+         */
+        private static AmazonServiceException unavailable() {
+            final AmazonServiceException ex =
+                new AmazonServiceException("unavailable");
+            ex.setErrorCode("ServiceUnavailable");
+            return ex;
+        }
+    }
+
+}
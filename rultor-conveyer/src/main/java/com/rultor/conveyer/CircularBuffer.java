@@ -30,19 +30,28 @@
 package com.rultor.conveyer;
 
 import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
 /**
- * Thread-safe circular buffer of bytes.
+ * Thread-safe circular buffer of bytes, with many independent readers.
+ *
+ * <p>Writers copy bytes in bulk and never wait for readers: when the buffer
+ * is full, the oldest bytes are overwritten. Every reader has its own
+ * {@link CircularBuffer.Cursor} and skips bytes that were overwritten
+ * before it managed to read them. Readers copy bytes in bulk under the
+ * same lock as writers, so they never see a half-written chunk; both
+ * hold it only for the time of one array copy. Readers waiting for new
+ * bytes are woken up by writers.
  *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
  * @checkstyle ClassDataAbstractionCoupling (500 lines)
  */
-@ToString
-@EqualsAndHashCode(of = { "data", "head", "tail" })
+@ToString(of = { "written", "closed" })
+@EqualsAndHashCode(of = "data")
 final class CircularBuffer {
 
     /**
@@ -51,14 +60,19 @@ final class CircularBuffer {
     private final transient byte[] data;
 
     /**
-     * Next byte to write to.
+     * Lock for writers, readers and readers waiting for new bytes.
+     */
+    private final transient Object lock = new Object();
+
+    /**
+     * How many bytes were ever written.
      */
-    private transient int head;
+    private transient volatile long written;
 
     /**
-     * Next byte to read from.
+     * Is it closed for writing?
      */
-    private transient int tail;
+    private transient volatile boolean closed;
 
     /**
      * Ctor.
@@ -73,51 +87,166 @@ final class CircularBuffer {
      * @param item Byte to write
      */
     public void write(final byte item) {
-        synchronized (this.data) {
-            this.data[this.head] = item;
-            ++this.head;
-            if (this.head == this.data.length) {
-                this.head = 0;
-            }
-            if (this.head == this.tail) {
-                ++this.tail;
-            }
-            if (this.tail == this.data.length) {
-                this.tail = 0;
-            }
+        this.write(new byte[] {item}, 0, 1);
+    }
+
+    /**
+     * Add bytes.
+     * @param bytes Bytes to write
+     * @param off Offset of the first one in the array
+     * @param len How many of them to write
+     */
+    public void write(final byte[] bytes, final int off, final int len) {
+        final int length = Math.min(len, this.data.length);
+        synchronized (this.lock) {
+            final long end = this.written + len;
+            final int first = (int) ((end - length) % this.data.length);
+            final int chunk = Math.min(length, this.data.length - first);
+            System.arraycopy(
+                bytes, off + len - length, this.data, first, chunk
+            );
+            System.arraycopy(
+                bytes, off + len - length + chunk, this.data, 0, length - chunk
+            );
+            this.written = end;
+            this.lock.notifyAll();
         }
     }
 
     /**
-     * Does it have any bytes to read?
-     * @return TRUE if it's empty
+     * Close it, readers will get the end of stream after all
+     * available bytes.
      */
-    public boolean isEmpty() {
-        synchronized (this.data) {
-            return this.head == this.tail;
+    public void close() {
+        synchronized (this.lock) {
+            this.closed = true;
+            this.lock.notifyAll();
         }
     }
 
     /**
-     * Read the next available byte.
-     * @return The byte
+     * Make a new reader, positioned at the oldest available byte.
+     * @return Cursor
      */
-    public byte read() {
-        synchronized (this.data) {
-            if (this.isEmpty()) {
+    public CircularBuffer.Cursor cursor() {
+        return new CircularBuffer.Cursor(
+            Math.max(0L, this.written - this.data.length)
+        );
+    }
+
+    /**
+     * Reader of the buffer, to be used by one thread.
+     */
+    @ToString
+    @EqualsAndHashCode(of = "position")
+    final class Cursor {
+        /**
+         * Number of the next byte to read.
+         */
+        private transient long position;
+        /**
+         * Ctor.
+         * @param pos Number of the first byte to read
+         */
+        private Cursor(final long pos) {
+            this.position = pos;
+        }
+        /**
+         * Does it have any bytes to read?
+         * @return TRUE if it's empty
+         */
+        public boolean isEmpty() {
+            return this.position >= CircularBuffer.this.written;
+        }
+        /**
+         * How many bytes can be read without waiting.
+         * @return Number of bytes
+         */
+        public int available() {
+            final long end = CircularBuffer.this.written;
+            return (int) (end - Math.max(
+                this.position, end - CircularBuffer.this.data.length
+            ));
+        }
+        /**
+         * Is it over (the buffer is closed and all bytes were read)?
+         * @return TRUE if it's over
+         */
+        public boolean isOver() {
+            return CircularBuffer.this.closed && this.isEmpty();
+        }
+        /**
+         * Read the next available byte.
+         * @return The byte
+         */
+        public byte read() {
+            final byte[] one = new byte[1];
+            if (this.read(one, 0, 1) == 0) {
                 throw new NoSuchElementException(
-                    String.format(
-                        "circular buffer is empty, size=%d, head=%d, tail=%d",
-                        this.data.length, this.head, this.tail
-                    )
+                    String.format("circular buffer is empty: %s", this)
                 );
             }
-            final byte item = this.data[this.tail];
-            ++this.tail;
-            if (this.tail == this.data.length) {
-                this.tail = 0;
+            return one[0];
+        }
+        /**
+         * Read available bytes, without waiting.
+         * @param bytes Where to read them
+         * @param off Offset in the array
+         * @param len Maximum number of bytes to read
+         * @return How many bytes were read, zero if none available
+         */
+        public int read(final byte[] bytes, final int off, final int len) {
+            final byte[] ring = CircularBuffer.this.data;
+            int count;
+            synchronized (CircularBuffer.this.lock) {
+                final long end = CircularBuffer.this.written;
+                this.position = Math.max(this.position, end - ring.length);
+                count = (int) Math.max(
+                    0L, Math.min((long) len, end - this.position)
+                );
+                final int first = (int) (this.position % ring.length);
+                final int chunk = Math.min(count, ring.length - first);
+                System.arraycopy(ring, first, bytes, off, chunk);
+                System.arraycopy(ring, 0, bytes, off + chunk, count - chunk);
+            }
+            this.position += count;
+            return count;
+        }
+        /**
+         * Read available bytes, waiting for them if necessary.
+         * @param bytes Where to read them
+         * @param off Offset in the array
+         * @param len Maximum number of bytes to read
+         * @param msec How long to wait, in milliseconds
+         * @return How many bytes were read, zero if none arrived in time,
+         *  or -1 if the buffer is closed and all bytes were read
+         * @throws InterruptedException If interrupted while waiting
+         * @checkstyle ParameterNumber (4 lines)
+         */
+        public int read(final byte[] bytes, final int off, final int len,
+            final long msec) throws InterruptedException {
+            final long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(msec);
+            int count = this.read(bytes, off, len);
+            while (count == 0 && len > 0) {
+                synchronized (CircularBuffer.this.lock) {
+                    final long left = TimeUnit.NANOSECONDS.toMillis(
+                        deadline - System.nanoTime()
+                    );
+                    if (this.isEmpty() && CircularBuffer.this.closed) {
+                        count = -1;
+                        break;
+                    }
+                    if (left <= 0) {
+                        break;
+                    }
+                    if (this.isEmpty()) {
+                        CircularBuffer.this.lock.wait(left);
+                    }
+                }
+                count = this.read(bytes, off, len);
             }
-            return item;
+            return count;
         }
     }
 
@@ -46,6 +46,7 @@ import com.rultor.users.AwsUsers;
 import com.rultor.users.pgsql.PgClient;
 import com.rultor.users.pgsql.PgUsers;
 import java.io.File;
+import java.util.Collection;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import joptsimple.OptionSet;
@@ -152,7 +153,12 @@ final class ConveyerBuilder {
                 new PgUsers(
                     new PgClient.Simple(
                         this.options.valueOf("pgsql-url").toString(),
-                        this.options.valueOf("pgsql-password").toString()
+                        this.options.valueOf("pgsql-password").toString(),
+                        null,
+                        Integer.parseInt(
+                            this.options.valueOf("pgsql-connections")
+                                .toString()
+                        )
                     ),
                     receipts,
                     new AwsUsers(new ReRegion(region), receipts)
@@ -180,6 +186,10 @@ final class ConveyerBuilder {
                     throw new UnsupportedOperationException();
                 }
                 @Override
+                public void push(final Collection<Coordinates> works) {
+                    throw new UnsupportedOperationException();
+                }
+                @Override
                 public Coordinates pull(final int limit, final TimeUnit unit) {
                     final Coordinates pulled;
                     if (done.compareAndSet(false, true)) {
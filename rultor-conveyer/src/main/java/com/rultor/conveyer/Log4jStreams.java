@@ -31,10 +31,11 @@ package com.rultor.conveyer;
 
 import com.google.common.collect.ImmutableBiMap;
 import com.jcabi.aspects.Tv;
+import com.rultor.conveyer.http.Live;
 import com.rultor.conveyer.http.Streams;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -106,7 +107,10 @@ final class Log4jStreams extends AppenderSkeleton implements Streams {
         if (!this.groups.remove(group, key)) {
             throw new IllegalStateException("call register() first");
         }
-        this.buffers.remove(key);
+        final CircularBuffer buffer = this.buffers.remove(key);
+        if (buffer != null) {
+            buffer.close();
+        }
     }
 
     @Override
@@ -126,20 +130,12 @@ final class Log4jStreams extends AppenderSkeleton implements Streams {
                     String.format("buffer is absent for key '%s'", key)
                 );
             }
-            stream = new SequenceInputStream(
-                IOUtils.toInputStream(
-                    String.format(
-                        "Listening to %s, key=%s, threads=%d...\n\n",
-                        group, key, group.activeCount()
-                    ),
-                    CharEncoding.UTF_8
-                ),
-                new InputStream() {
-                    @Override
-                    public int read() throws IOException {
-                        return Log4jStreams.this.read(buffer);
-                    }
-                }
+            stream = new Log4jStreams.Tail(
+                String.format(
+                    "Listening to %s, key=%s, threads=%d...\n\n",
+                    group, key, group.activeCount()
+                ).getBytes(CharEncoding.UTF_8),
+                buffer.cursor()
             );
         }
         return stream;
@@ -174,9 +170,7 @@ final class Log4jStreams extends AppenderSkeleton implements Streams {
                 } catch (final UnsupportedEncodingException ex) {
                     throw new IllegalStateException(ex);
                 }
-                for (final byte data : bytes) {
-                    buffer.write(data);
-                }
+                buffer.write(bytes, 0, bytes.length);
             }
         }
     }
@@ -204,20 +198,66 @@ final class Log4jStreams extends AppenderSkeleton implements Streams {
     }
 
     /**
-     * Read next byte from the buffer.
-     * @param buffer The buffer to read from
-     * @return The byte
+     * Stream that follows a buffer, until it is closed.
      */
-    private byte read(final CircularBuffer buffer) {
-        while (buffer.isEmpty()) {
-            try {
-                TimeUnit.SECONDS.sleep(1);
-            } catch (final InterruptedException ex) {
-                Thread.currentThread().interrupt();
-                throw new IllegalStateException(ex);
+    private static final class Tail extends InputStream implements Live {
+        /**
+         * Bytes to deliver before the buffer.
+         */
+        private final transient ByteArrayInputStream head;
+        /**
+         * Cursor in the buffer.
+         */
+        private final transient CircularBuffer.Cursor cursor;
+        /**
+         * Ctor.
+         * @param prefix Bytes to deliver before the buffer
+         * @param crs Cursor to read with
+         */
+        Tail(final byte[] prefix, final CircularBuffer.Cursor crs) {
+            super();
+            this.head = new ByteArrayInputStream(prefix);
+            this.cursor = crs;
+        }
+        @Override
+        public boolean isOver() {
+            return this.head.available() == 0 && this.cursor.isOver();
+        }
+        @Override
+        public int available() {
+            return this.head.available() + this.cursor.available();
+        }
+        @Override
+        public int read() throws IOException {
+            final byte[] one = new byte[1];
+            final int data;
+            if (this.read(one, 0, 1) < 0) {
+                data = -1;
+            } else {
+                // @checkstyle MagicNumber (1 line)
+                data = one[0] & 0xff;
+            }
+            return data;
+        }
+        @Override
+        public int read(final byte[] bytes, final int off, final int len)
+            throws IOException {
+            int count = 0;
+            if (this.head.available() > 0) {
+                count = this.head.read(bytes, off, len);
+            }
+            while (count == 0 && len > 0) {
+                try {
+                    count = this.cursor.read(
+                        bytes, off, len, TimeUnit.MINUTES.toMillis(1L)
+                    );
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ex);
+                }
             }
+            return count;
         }
-        return buffer.read();
     }
 
 }
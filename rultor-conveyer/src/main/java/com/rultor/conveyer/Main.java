@@ -151,6 +151,8 @@ public final class Main {
             .withRequiredArg().ofType(String.class);
         parser.accepts("pgsql-password", "PostgreSQL password")
             .withRequiredArg().ofType(String.class);
+        parser.accepts("pgsql-connections", "PostgreSQL connections in pool")
+            .withRequiredArg().defaultsTo("3").ofType(String.class);
         return parser;
     }
 
@@ -182,6 +182,9 @@ final class SimpleConveyer implements Closeable {
             Thread.currentThread().interrupt();
             throw new IOException(ex);
         }
+        if (this.queue instanceof Closeable) {
+            Closeable.class.cast(this.queue).close();
+        }
         this.server.close();
         this.streams.close();
     }
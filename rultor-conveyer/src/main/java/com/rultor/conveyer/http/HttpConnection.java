@@ -0,0 +1,381 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.conveyer.http;
+
+import com.jcabi.aspects.Tv;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * One HTTP connection, with the state of its request and response.
+ *
+ * <p>The response is sent with chunked transfer encoding. A new chunk is
+ * taken from the stream only when the previous one is completely written
+ * to the socket, so a slow client never makes the server buffer more
+ * than one chunk for it.
+ *
+ * <p>Streams are opened and interrupted in a pool of workers, since
+ * they may block, while the selector thread only checks whether
+ * the stream is ready. Malformed requests get an error response.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+@ToString(of = { "body", "over" })
+@EqualsAndHashCode(of = { "request", "body" })
+final class HttpConnection {
+
+    /**
+     * TOP line pattern.
+     */
+    private static final Pattern TOP = Pattern.compile(
+        "(?:GET|POST|PUT|OPTIONS|HEAD) /([^ ]*) HTTP/1\\.(?:0|1)"
+    );
+
+    /**
+     * Maximum size of a chunk.
+     */
+    private static final int CHUNK = Tv.FOUR * Tv.THOUSAND;
+
+    /**
+     * Encoding of the protocol.
+     */
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    /**
+     * Streams to work with.
+     */
+    private final transient Streams streams;
+
+    /**
+     * Workers, to open streams in.
+     */
+    private final transient ExecutorService workers;
+
+    /**
+     * Body of the response being opened by a worker, or NULL.
+     */
+    private transient Future<InputStream> opening;
+
+    /**
+     * Bytes of the request received so far, until the TOP line is complete.
+     */
+    private final transient ByteBuffer request =
+        ByteBuffer.allocate(Tv.FOUR * Tv.THOUSAND);
+
+    /**
+     * Buffer for a chunk of the body.
+     */
+    private final transient byte[] chunk = new byte[HttpConnection.CHUNK];
+
+    /**
+     * Bytes waiting to be written to the socket.
+     */
+    private transient ByteBuffer pending = ByteBuffer.allocate(0);
+
+    /**
+     * Body of the response, NULL until the request is received.
+     */
+    private transient InputStream body;
+
+    /**
+     * Is the response over (the last chunk is in pending bytes)?
+     */
+    private transient boolean over;
+
+    /**
+     * Ctor.
+     * @param strms Streams
+     * @param svc Workers, to open streams in
+     */
+    HttpConnection(final Streams strms, final ExecutorService svc) {
+        this.streams = strms;
+        this.workers = svc;
+    }
+
+    /**
+     * Receive bytes of the request from the channel.
+     * @param channel Channel to read from
+     * @return FALSE if the client won't send anything else
+     * @throws IOException If fails
+     */
+    public boolean receive(final ReadableByteChannel channel)
+        throws IOException {
+        final boolean more;
+        if (this.body == null && this.opening == null && !this.over) {
+            more = channel.read(this.request) >= 0;
+            final String top = this.top();
+            if (top != null) {
+                this.respond(top);
+            } else if (!more) {
+                this.over = true;
+            } else if (!this.request.hasRemaining()) {
+                this.fail(
+                    HttpURLConnection.HTTP_REQ_TOO_LONG,
+                    "Request-URI Too Long", "request line is too long"
+                );
+            }
+        } else {
+            final ByteBuffer ignored = ByteBuffer.allocate(Tv.THOUSAND);
+            more = channel.read(ignored) >= 0;
+        }
+        return more;
+    }
+
+    /**
+     * Take the next chunk of the body, if the previous one is sent and
+     * there is something to send, without blocking.
+     * @throws IOException If fails
+     */
+    public void pump() throws IOException {
+        if (this.opening != null && this.opening.isDone()) {
+            this.open();
+        }
+        if (this.body != null && !this.over && !this.pending.hasRemaining()) {
+            final int available = this.body.available();
+            int len = 0;
+            if (available > 0) {
+                len = this.body.read(
+                    this.chunk, 0, Math.min(available, this.chunk.length)
+                );
+            } else if (!(this.body instanceof Live)
+                || Live.class.cast(this.body).isOver()) {
+                len = this.body.read(this.chunk, 0, this.chunk.length);
+            }
+            if (len > 0) {
+                final byte[] size = String.format("%x\r\n", len)
+                    .getBytes(HttpConnection.ASCII);
+                this.pending = ByteBuffer.allocate(size.length + len + 2);
+                this.pending.put(size).put(this.chunk, 0, len)
+                    .put((byte) '\r').put((byte) '\n').flip();
+            } else if (len < 0) {
+                this.pending = ByteBuffer.wrap(
+                    "0\r\n\r\n".getBytes(HttpConnection.ASCII)
+                );
+                this.over = true;
+            }
+        }
+    }
+
+    /**
+     * Send pending bytes to the channel, as many as it accepts.
+     * @param channel Channel to write to
+     * @throws IOException If fails
+     */
+    public void send(final WritableByteChannel channel) throws IOException {
+        channel.write(this.pending);
+    }
+
+    /**
+     * Are there any bytes waiting to be sent?
+     * @return TRUE if there are
+     */
+    public boolean waiting() {
+        return this.pending.hasRemaining();
+    }
+
+    /**
+     * Is it done and may be closed?
+     * @return TRUE if it's done
+     */
+    public boolean done() {
+        return this.over && !this.pending.hasRemaining();
+    }
+
+    /**
+     * Release the body.
+     */
+    public void close() {
+        IOUtils.closeQuietly(this.body);
+        if (this.opening != null && !this.opening.cancel(true)) {
+            try {
+                IOUtils.closeQuietly(this.opening.get());
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException ex) {
+                assert ex != null;
+            }
+        }
+    }
+
+    /**
+     * Get TOP line of the request, if it's received already.
+     * @return The line or NULL if it's not complete yet
+     */
+    private String top() {
+        String top = null;
+        final byte[] bytes = this.request.array();
+        for (int pos = 0; pos < this.request.position(); ++pos) {
+            if (bytes[pos] == '\n') {
+                top = new String(bytes, 0, pos, HttpConnection.ASCII).trim();
+                break;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Prepare the response to the request with this TOP line.
+     * @param top TOP line
+     */
+    private void respond(final String top) {
+        final Matcher matcher = HttpConnection.TOP.matcher(top);
+        if (matcher.matches()) {
+            final String query = matcher.group(1);
+            this.opening = this.workers.submit(
+                new Callable<InputStream>() {
+                    @Override
+                    public InputStream call() throws IOException {
+                        final InputStream stream =
+                            HttpConnection.this.stream(query);
+                        if (Thread.currentThread().isInterrupted()) {
+                            stream.close();
+                        }
+                        return stream;
+                    }
+                }
+            );
+        } else {
+            this.fail(
+                HttpURLConnection.HTTP_BAD_REQUEST, "Bad Request",
+                String.format("malformed request line: %s", top)
+            );
+        }
+    }
+
+    /**
+     * Start the response, when its body is opened by a worker.
+     */
+    private void open() {
+        try {
+            this.body = this.opening.get();
+            this.pending = HttpConnection.head(
+                HttpURLConnection.HTTP_OK, "OK"
+            );
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            this.fail(
+                HttpURLConnection.HTTP_UNAVAILABLE, "Service Unavailable",
+                ex.toString()
+            );
+        } catch (final ExecutionException ex) {
+            this.fail(
+                HttpURLConnection.HTTP_INTERNAL_ERROR, "Internal Server Error",
+                ex.getCause().toString()
+            );
+        } finally {
+            this.opening = null;
+        }
+    }
+
+    /**
+     * Open the stream for this query (may block, runs in a worker).
+     * @param query Query from the TOP line
+     * @return Stream
+     * @throws IOException If fails
+     */
+    private InputStream stream(final String query) throws IOException {
+        final InputStream stream;
+        if (query.endsWith("?interrupt")) {
+            stream = IOUtils.toInputStream(
+                String.format(
+                    "%s\n",
+                    this.streams.interrupt(
+                        query.substring(0, query.indexOf('?'))
+                    )
+                ),
+                CharEncoding.UTF_8
+            );
+        } else if (query.isEmpty()) {
+            stream = IOUtils.toInputStream(
+                this.streams.toString(), CharEncoding.UTF_8
+            );
+        } else {
+            stream = this.streams.stream(query);
+        }
+        return stream;
+    }
+
+    /**
+     * Respond with an error.
+     * @param code HTTP status code
+     * @param reason Reason phrase
+     * @param message Message to send in the body
+     */
+    private void fail(final int code, final String reason,
+        final String message) {
+        try {
+            this.body = IOUtils.toInputStream(
+                String.format("%s\n", message), CharEncoding.UTF_8
+            );
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        this.pending = HttpConnection.head(code, reason);
+    }
+
+    /**
+     * Make head of the response.
+     * @param code HTTP status code
+     * @param reason Reason phrase
+     * @return Bytes of the head
+     */
+    private static ByteBuffer head(final int code, final String reason) {
+        return ByteBuffer.wrap(
+            new StringBuilder(0)
+                .append(String.format("HTTP/1.1 %d %s\r\n", code, reason))
+                .append("Content-Type: text/plain; charset=UTF-8\r\n")
+                .append("Cache-Control: no-cache\r\n")
+                .append("Transfer-Encoding: chunked\r\n")
+                .append("Connection: close\r\n")
+                .append("\r\n")
+                .toString()
+                .getBytes(HttpConnection.ASCII)
+        );
+    }
+
+}
@@ -36,12 +36,15 @@ import com.jcabi.log.VerboseRunnable;
 import com.jcabi.log.VerboseThreads;
 import java.io.Closeable;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.BlockingQueue;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -49,6 +52,14 @@ import lombok.ToString;
 /**
  * Http server in front of streams.
  *
+ * <p>All connections are served by one thread, with non-blocking sockets
+ * and a selector, so thousands of clients may tail their streams at the
+ * same time. Streams are never read in a blocking way: a {@link Live}
+ * stream is read only as much as it has available, and is checked again
+ * every {@link #TICK} milliseconds. Responses are chunked. Streams are
+ * opened in a small pool of workers, since that may block, and a failure
+ * of one connection never stops the loop serving the others.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -56,76 +67,59 @@ import lombok.ToString;
  */
 @ToString
 @Loggable(Loggable.INFO)
-@EqualsAndHashCode(of = { "frontend", "backend", "sockets", "server" })
+@EqualsAndHashCode(of = { "service", "selector", "server" })
 @SuppressWarnings("PMD.DoNotUseThreads")
 public final class HttpServer implements Closeable {
 
     /**
-     * How many threads to use.
+     * How long to wait for sockets in one cycle, in milliseconds.
      */
-    private static final int THREADS = Math.min(
-        Runtime.getRuntime().availableProcessors() * 8,
-        Tv.THIRTY
-    );
+    private static final long TICK = 100L;
 
     /**
-     * Executor service, with socket openers.
+     * Executor service, with the only thread serving all sockets.
      */
-    private final transient ScheduledExecutorService frontend =
-        Executors.newSingleThreadScheduledExecutor(new VerboseThreads("front"));
+    private final transient ScheduledExecutorService service =
+        Executors.newSingleThreadScheduledExecutor(new VerboseThreads("http"));
 
     /**
-     * Executor service, with consuming threads.
+     * Workers, to open streams and interrupt threads in.
      */
-    private final transient ScheduledExecutorService backend =
-        Executors.newScheduledThreadPool(
-            HttpServer.THREADS,
-            new VerboseThreads("back")
-        );
+    private final transient ExecutorService workers =
+        Executors.newFixedThreadPool(Tv.TEN, new VerboseThreads("http-open"));
+
+    /**
+     * Selector of sockets.
+     */
+    private final transient Selector selector;
 
     /**
-     * Blocking queue of ready-to-be-processed sockets.
+     * Server socket channel.
      */
-    private final transient BlockingQueue<Socket> sockets =
-        new SynchronousQueue<Socket>();
+    private final transient ServerSocketChannel server;
 
     /**
-     * Server socket.
+     * Streams.
      */
-    private final transient ServerSocket server;
+    private final transient Streams streams;
 
     /**
      * Public ctor.
-     * @param streams Streams
+     * @param strms Streams
      * @param port Port we're at
      * @throws IOException If fails
      */
-    public HttpServer(final Streams streams, final int port)
+    public HttpServer(final Streams strms, final int port)
         throws IOException {
-        this.server = new ServerSocket(port);
-        final HttpThread thread = new HttpThread(this.sockets, streams);
-        final Runnable runnable = new VerboseRunnable(
-            new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        thread.dispatch();
-                    } catch (final InterruptedException ex) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-            },
-            true, false
-        );
-        for (int idx = 0; idx < HttpServer.THREADS; ++idx) {
-            this.backend.scheduleWithFixedDelay(
-                runnable,
-                TimeUnit.SECONDS.toNanos(Tv.FIVE), 1L, TimeUnit.NANOSECONDS
-            );
-        }
+        this.streams = strms;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        this.server.socket().setReuseAddress(true);
+        this.server.socket().bind(new InetSocketAddress(port), Tv.THOUSAND);
+        this.server.configureBlocking(false);
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
         Logger.info(
-            HttpServer.class, "HTTP srv scheduled on TCP port %d, %d thread(s)",
-            port, HttpServer.THREADS
+            HttpServer.class, "HTTP srv scheduled on TCP port %d", port
         );
     }
 
@@ -133,15 +127,15 @@ public final class HttpServer implements Closeable {
      * Start listening to the port.
      */
     public void listen() {
-        this.frontend.scheduleWithFixedDelay(
+        this.service.scheduleWithFixedDelay(
             new VerboseRunnable(
                 new Runnable() {
                     @Override
                     public void run() {
                         try {
-                            HttpServer.this.process();
-                        } catch (final InterruptedException ex) {
-                            Thread.currentThread().interrupt();
+                            HttpServer.this.cycle();
+                        } catch (final IOException ex) {
+                            throw new IllegalStateException(ex);
                         }
                     }
                 },
@@ -153,55 +147,140 @@ public final class HttpServer implements Closeable {
 
     @Override
     public void close() throws IOException {
+        this.workers.shutdownNow();
+        this.service.shutdown();
+        try {
+            if (!this.service.awaitTermination(1L, TimeUnit.SECONDS)) {
+                Logger.warn(this, "#close(): failed to stop in time");
+                this.service.shutdownNow();
+            }
+        } catch (final InterruptedException ex) {
+            this.service.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        for (final SelectionKey key : this.selector.keys()) {
+            if (key.attachment() != null) {
+                this.drop(key);
+            }
+        }
         this.server.close();
-        this.shutdown(this.frontend);
-        this.shutdown(this.backend);
+        this.selector.close();
     }
 
     /**
-     * Process one socket.
-     * @throws InterruptedException When thread is interrupted.
+     * Serve all sockets once.
+     * @throws IOException If fails
      */
-    private void process() throws InterruptedException {
-        Socket socket;
-        try {
-            socket = this.server.accept();
-        } catch (final IOException ex) {
-            throw new IllegalStateException(ex);
+    private void cycle() throws IOException {
+        this.selector.select(HttpServer.TICK);
+        final Iterator<SelectionKey> keys =
+            this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            if (key.isValid() && key.isAcceptable()) {
+                this.accept();
+            } else if (key.isValid() && key.attachment() != null) {
+                this.serve(key);
+            }
+        }
+        for (final SelectionKey key : this.selector.keys()) {
+            if (key.isValid() && key.attachment() != null) {
+                this.pump(key);
+            }
+        }
+    }
+
+    /**
+     * Accept all waiting sockets.
+     */
+    private void accept() {
+        while (true) {
+            try {
+                final SocketChannel channel = this.server.accept();
+                if (channel == null) {
+                    break;
+                }
+                channel.configureBlocking(false);
+                channel.register(
+                    this.selector, SelectionKey.OP_READ,
+                    new HttpConnection(this.streams, this.workers)
+                );
+            } catch (final IOException ex) {
+                Logger.warn(this, "#accept(): %s", ex);
+                break;
+            }
         }
+    }
+
+    /**
+     * Read from and write to a ready socket.
+     * @param key Key of the socket
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private void serve(final SelectionKey key) {
+        final HttpConnection conn = HttpConnection.class.cast(
+            key.attachment()
+        );
+        final SocketChannel channel = SocketChannel.class.cast(key.channel());
         try {
-            final boolean consumed = this.sockets
-                .offer(socket, 1L, TimeUnit.SECONDS);
-            if (!consumed) {
-                socket.close();
-                throw new IOException("too many sockets");
+            if (key.isReadable() && !conn.receive(channel)) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            if (key.isValid() && key.isWritable()) {
+                conn.send(channel);
             }
         } catch (final IOException ex) {
-            throw new IllegalStateException(ex);
+            Logger.warn(this, "#serve(): %s", ex);
+            this.drop(key);
+        } catch (final RuntimeException ex) {
+            Logger.error(this, "#serve(): %[exception]s", ex);
+            this.drop(key);
         }
     }
 
     /**
-     * Shutdown a service.
-     * @param service The service to shut down
+     * Move next chunk of the stream to the socket, if it's ready for it.
+     * @param key Key of the socket
      */
-    private void shutdown(final ScheduledExecutorService service) {
-        service.shutdown();
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private void pump(final SelectionKey key) {
+        final HttpConnection conn = HttpConnection.class.cast(
+            key.attachment()
+        );
+        final SocketChannel channel = SocketChannel.class.cast(key.channel());
         try {
-            if (service.awaitTermination(1L, TimeUnit.SECONDS)) {
-                Logger.info(this, "#shutdown(): succeeded");
+            conn.pump();
+            if (conn.waiting()) {
+                conn.send(channel);
+            }
+            if (conn.done()) {
+                this.drop(key);
+            } else if (conn.waiting()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
             } else {
-                Logger.warn(this, "#shutdown(): failed");
-                service.shutdownNow();
-                if (service.awaitTermination(1L, TimeUnit.SECONDS)) {
-                    Logger.info(this, "#shutdown(): shutdownNow() succeeded");
-                } else {
-                    Logger.error(this, "#shutdown(): failed to stop threads");
-                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
             }
-        } catch (final InterruptedException ex) {
-            service.shutdownNow();
-            Thread.currentThread().interrupt();
+        } catch (final IOException ex) {
+            Logger.warn(this, "#pump(): %s", ex);
+            this.drop(key);
+        } catch (final RuntimeException ex) {
+            Logger.error(this, "#pump(): %[exception]s", ex);
+            this.drop(key);
+        }
+    }
+
+    /**
+     * Close the socket and release its stream.
+     * @param key Key of the socket
+     */
+    private void drop(final SelectionKey key) {
+        HttpConnection.class.cast(key.attachment()).close();
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (final IOException ex) {
+            Logger.warn(this, "#drop(): %s", ex);
         }
     }
 
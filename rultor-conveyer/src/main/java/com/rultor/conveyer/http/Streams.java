@@ -63,6 +63,11 @@ public interface Streams extends Closeable {
 
     /**
      * Read stream by key (wait until it becomes available).
+     *
+     * <p>A stream that keeps growing should implement {@link Live} and
+     * report its {@link InputStream#available()} bytes correctly, otherwise
+     * it is treated as a finite one.
+     *
      * @param key Authentication key
      * @return Stream with data
      * @throws IOException If fails
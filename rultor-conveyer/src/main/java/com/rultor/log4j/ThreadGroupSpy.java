@@ -34,6 +34,7 @@ import com.jcabi.aspects.Quietly;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Drain;
 import com.rultor.spi.Instance;
+import java.io.Closeable;
 import java.io.IOException;
 import javax.validation.constraints.NotNull;
 import lombok.EqualsAndHashCode;
@@ -61,6 +62,9 @@ import org.apache.log4j.PatternLayout;
  * out. All others are rendered using the provided log4j pattern through
  * {@link PatternLayout}.
  *
+ * <p>When the pulse is finished and the drain is {@link Closeable}, it
+ * is closed, in order to let it flush or compact what was appended.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -154,6 +158,9 @@ public final class ThreadGroupSpy implements Instance {
         } finally {
             this.close(appender);
             root.removeAppender(appender);
+            if (this.drn instanceof Closeable) {
+                this.close(Closeable.class.cast(this.drn));
+            }
         }
     }
 
@@ -166,4 +173,14 @@ public final class ThreadGroupSpy implements Instance {
         appender.close();
     }
 
+    /**
+     * Close the drain.
+     * @param drain The drain to close
+     * @throws IOException If fails
+     */
+    @Quietly
+    private void close(final Closeable drain) throws IOException {
+        drain.close();
+    }
+
 }
@@ -30,6 +30,14 @@
 package com.rultor.conveyer;
 
 import com.jcabi.aspects.Tv;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -49,12 +57,13 @@ public final class CircularBufferTest {
     @Test
     public void writesAndReads() throws Exception {
         final CircularBuffer buf = new CircularBuffer(Tv.FIVE);
+        final CircularBuffer.Cursor cursor = buf.cursor();
         buf.write((byte) 1);
         buf.write((byte) 2);
-        MatcherAssert.assertThat(buf.read(), Matchers.equalTo((byte) 1));
-        MatcherAssert.assertThat(buf.isEmpty(), Matchers.equalTo(false));
-        MatcherAssert.assertThat(buf.read(), Matchers.equalTo((byte) 2));
-        MatcherAssert.assertThat(buf.isEmpty(), Matchers.equalTo(true));
+        MatcherAssert.assertThat(cursor.read(), Matchers.equalTo((byte) 1));
+        MatcherAssert.assertThat(cursor.isEmpty(), Matchers.equalTo(false));
+        MatcherAssert.assertThat(cursor.read(), Matchers.equalTo((byte) 2));
+        MatcherAssert.assertThat(cursor.isEmpty(), Matchers.equalTo(true));
     }
 
     /**
@@ -64,15 +73,167 @@ public final class CircularBufferTest {
     @Test
     public void writesAndReadsWithOverflow() throws Exception {
         final CircularBuffer buf = new CircularBuffer(Tv.THREE);
+        final CircularBuffer.Cursor cursor = buf.cursor();
         final byte data = 1;
         for (int idx = 0; idx < Tv.TEN; ++idx) {
             buf.write(data);
         }
-        MatcherAssert.assertThat(buf.isEmpty(), Matchers.equalTo(false));
-        for (int idx = 0; idx < 2; ++idx) {
-            MatcherAssert.assertThat(buf.read(), Matchers.equalTo(data));
+        MatcherAssert.assertThat(cursor.isEmpty(), Matchers.equalTo(false));
+        for (int idx = 0; idx < Tv.THREE; ++idx) {
+            MatcherAssert.assertThat(cursor.read(), Matchers.equalTo(data));
         }
-        MatcherAssert.assertThat(buf.isEmpty(), Matchers.equalTo(true));
+        MatcherAssert.assertThat(cursor.isEmpty(), Matchers.equalTo(true));
+    }
+
+    /**
+     * CircularBuffer can write and read in bulk, wrapping around.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void writesAndReadsInBulk() throws Exception {
+        final CircularBuffer buf = new CircularBuffer(Tv.FIVE);
+        final CircularBuffer.Cursor cursor = buf.cursor();
+        buf.write(new byte[] {1, 2, 3, 4}, 1, 2);
+        buf.write(new byte[] {5, 6, 7, 8, 9, 10}, 0, Tv.SIX);
+        final byte[] bytes = new byte[Tv.TEN];
+        MatcherAssert.assertThat(
+            cursor.read(bytes, 0, bytes.length), Matchers.equalTo(Tv.FIVE)
+        );
+        MatcherAssert.assertThat(
+            bytes,
+            Matchers.equalTo(new byte[] {6, 7, 8, 9, 10, 0, 0, 0, 0, 0})
+        );
+        MatcherAssert.assertThat(
+            cursor.read(bytes, 0, bytes.length), Matchers.equalTo(0)
+        );
+    }
+
+    /**
+     * CircularBuffer can serve many readers, each with its own cursor.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void servesManyReaders() throws Exception {
+        final CircularBuffer buf = new CircularBuffer(Tv.TEN);
+        final CircularBuffer.Cursor first = buf.cursor();
+        buf.write(new byte[] {1, 2, 3}, 0, Tv.THREE);
+        final CircularBuffer.Cursor second = buf.cursor();
+        MatcherAssert.assertThat(first.read(), Matchers.equalTo((byte) 1));
+        MatcherAssert.assertThat(second.read(), Matchers.equalTo((byte) 1));
+        MatcherAssert.assertThat(second.read(), Matchers.equalTo((byte) 2));
+        MatcherAssert.assertThat(first.read(), Matchers.equalTo((byte) 2));
+    }
+
+    /**
+     * CircularBuffer can wake up a waiting reader and report the end.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void wakesUpWaitingReader() throws Exception {
+        final CircularBuffer buf = new CircularBuffer(Tv.TEN);
+        final CircularBuffer.Cursor cursor = buf.cursor();
+        final ExecutorService svc = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Integer> future = svc.submit(
+                new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return cursor.read(
+                            new byte[Tv.TEN], 0, Tv.TEN,
+                            TimeUnit.MINUTES.toMillis(1L)
+                        );
+                    }
+                }
+            );
+            buf.write(new byte[] {1, 2}, 0, 2);
+            MatcherAssert.assertThat(
+                future.get(1L, TimeUnit.MINUTES),
+                Matchers.greaterThan(0)
+            );
+        } finally {
+            svc.shutdown();
+        }
+        buf.close();
+        cursor.read(new byte[Tv.TEN], 0, Tv.TEN);
+        MatcherAssert.assertThat(
+            cursor.read(new byte[1], 0, 1, 1L), Matchers.equalTo(-1)
+        );
+    }
+
+    /**
+     * CircularBuffer can be read while it is written, without torn bytes.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void readsConsistentContentWhileWriting() throws Exception {
+        final int total = Tv.THREE * Tv.MILLION;
+        final CircularBuffer buf = new CircularBuffer(Tv.EIGHT * Tv.SIX);
+        final ExecutorService svc = Executors.newFixedThreadPool(Tv.FIVE);
+        try {
+            final Collection<Future<Long>> readers =
+                new ArrayList<Future<Long>>(Tv.FOUR);
+            for (int idx = 0; idx < Tv.FOUR; ++idx) {
+                readers.add(svc.submit(CircularBufferTest.reader(buf, total)));
+            }
+            final ByteBuffer record = ByteBuffer.allocate(Tv.EIGHT * Tv.SIX);
+            for (long num = 1; num <= total; num += Tv.SIX) {
+                record.clear();
+                for (int pos = 0; pos < Tv.SIX; ++pos) {
+                    record.putLong(num + pos);
+                }
+                buf.write(record.array(), 0, record.capacity());
+            }
+            buf.close();
+            for (final Future<Long> reader : readers) {
+                MatcherAssert.assertThat(
+                    reader.get(1L, TimeUnit.MINUTES),
+                    Matchers.equalTo((long) total)
+                );
+            }
+        } finally {
+            svc.shutdown();
+        }
+    }
+
+    /**
+     * Make a reader, which checks that numbers only grow.
+     * @param buf Buffer to read
+     * @param total Maximum number expected
+     * @return Reader, which returns the last number it saw
+     */
+    private static Callable<Long> reader(final CircularBuffer buf,
+        final int total) {
+        final CircularBuffer.Cursor cursor = buf.cursor();
+        return new Callable<Long>() {
+            @Override
+            public Long call() throws Exception {
+                final byte[] bytes = new byte[Tv.EIGHT * Tv.FIVE];
+                long last = 0L;
+                while (true) {
+                    final int len = cursor.read(
+                        bytes, 0, bytes.length, TimeUnit.MINUTES.toMillis(1L)
+                    );
+                    if (len < 0) {
+                        break;
+                    }
+                    MatcherAssert.assertThat(
+                        len % Tv.EIGHT, Matchers.equalTo(0)
+                    );
+                    final ByteBuffer read = ByteBuffer.wrap(bytes, 0, len);
+                    while (read.hasRemaining()) {
+                        final long num = read.getLong();
+                        MatcherAssert.assertThat(
+                            num, Matchers.greaterThan(last)
+                        );
+                        MatcherAssert.assertThat(
+                            num, Matchers.lessThanOrEqualTo((long) total)
+                        );
+                        last = num;
+                    }
+                }
+                return last;
+            }
+        };
     }
 
 }
@@ -38,16 +38,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriBuilder;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -117,6 +122,163 @@ public final class HttpServerTest {
         server.close();
     }
 
+    /**
+     * HttpServer can serve many live streams at the same time.
+     * @throws Exception If there is some problem inside
+     */
+    @Test
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public void tailsManyLiveStreamsAtOnce() throws Exception {
+        final int port = this.reserve();
+        final AtomicBoolean over = new AtomicBoolean();
+        final Streams streams = Mockito.mock(Streams.class);
+        Mockito.doAnswer(
+            new Answer<InputStream>() {
+                @Override
+                public InputStream answer(final InvocationOnMock inv) {
+                    return new HttpServerTest.LiveStream("hello", over);
+                }
+            }
+        ).when(streams).stream("tail");
+        final HttpServer server = new HttpServer(streams, port);
+        server.listen();
+        final int total = Tv.HUNDRED * 2;
+        final Collection<Socket> sockets = new ArrayList<Socket>(total);
+        try {
+            for (int idx = 0; idx < total; ++idx) {
+                final Socket socket = new Socket("localhost", port);
+                socket.setSoTimeout((int) TimeUnit.MINUTES.toMillis(1L));
+                socket.getOutputStream().write(
+                    "GET /tail HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        .getBytes(CharEncoding.UTF_8)
+                );
+                sockets.add(socket);
+            }
+            for (final Socket socket : sockets) {
+                MatcherAssert.assertThat(
+                    this.until(socket.getInputStream(), "hello\r\n"),
+                    Matchers.allOf(
+                        Matchers.startsWith("HTTP/1.1 200 OK"),
+                        Matchers.containsString("Transfer-Encoding: chunked")
+                    )
+                );
+            }
+            over.set(true);
+            for (final Socket socket : sockets) {
+                MatcherAssert.assertThat(
+                    IOUtils.toString(socket.getInputStream()),
+                    Matchers.equalTo("0\r\n\r\n")
+                );
+            }
+        } finally {
+            for (final Socket socket : sockets) {
+                socket.close();
+            }
+            server.close();
+        }
+    }
+
+    /**
+     * HttpServer can answer errors and keep serving while a stream blocks.
+     * @throws Exception If there is some problem inside
+     */
+    @Test
+    public void answersErrorsAndServesWhileStreamBlocks() throws Exception {
+        final int port = this.reserve();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Streams streams = Mockito.mock(Streams.class);
+        Mockito.doAnswer(
+            new Answer<InputStream>() {
+                @Override
+                public InputStream answer(final InvocationOnMock inv)
+                    throws InterruptedException {
+                    release.await(1L, TimeUnit.MINUTES);
+                    return IOUtils.toInputStream("slow");
+                }
+            }
+        ).when(streams).stream("slow");
+        Mockito.doReturn(IOUtils.toInputStream("fast"))
+            .when(streams).stream("fast");
+        Mockito.doThrow(new IllegalArgumentException("broken"))
+            .when(streams).stream("broken");
+        final HttpServer server = new HttpServer(streams, port);
+        server.listen();
+        try {
+            final Socket slow = this.request(port, "GET /slow HTTP/1.1");
+            MatcherAssert.assertThat(
+                IOUtils.toString(
+                    this.request(port, "GET /fast HTTP/1.1").getInputStream()
+                ),
+                Matchers.allOf(
+                    Matchers.startsWith("HTTP/1.1 200 OK"),
+                    Matchers.containsString("fast")
+                )
+            );
+            MatcherAssert.assertThat(
+                IOUtils.toString(
+                    this.request(port, "HELLO").getInputStream()
+                ),
+                Matchers.startsWith("HTTP/1.1 400 Bad Request")
+            );
+            MatcherAssert.assertThat(
+                IOUtils.toString(
+                    this.request(port, "GET /broken HTTP/1.1")
+                        .getInputStream()
+                ),
+                Matchers.allOf(
+                    Matchers.startsWith("HTTP/1.1 500"),
+                    Matchers.containsString("broken")
+                )
+            );
+            release.countDown();
+            MatcherAssert.assertThat(
+                IOUtils.toString(slow.getInputStream()),
+                Matchers.containsString("slow")
+            );
+        } finally {
+            release.countDown();
+            server.close();
+        }
+    }
+
+    /**
+     * Open a socket and send a request with this TOP line.
+     * @param port Port of the server
+     * @param top TOP line
+     * @return Socket
+     * @throws IOException If fails
+     */
+    private Socket request(final int port, final String top)
+        throws IOException {
+        final Socket socket = new Socket("localhost", port);
+        socket.setSoTimeout((int) TimeUnit.MINUTES.toMillis(1L));
+        socket.getOutputStream().write(
+            String.format("%s\r\nHost: localhost\r\n\r\n", top)
+                .getBytes(CharEncoding.UTF_8)
+        );
+        return socket;
+    }
+
+    /**
+     * Read stream until the given suffix.
+     * @param input Stream to read
+     * @param suffix The suffix to stop at
+     * @return Everything read
+     * @throws IOException If fails
+     */
+    private String until(final InputStream input, final String suffix)
+        throws IOException {
+        final StringBuilder text = new StringBuilder(0);
+        while (!text.toString().endsWith(suffix)) {
+            final int data = input.read();
+            if (data < 0) {
+                throw new IOException(text.toString());
+            }
+            text.append((char) data);
+        }
+        return text.toString();
+    }
+
     /**
      * Find and return the first available port.
      * @return The port number
@@ -133,4 +295,44 @@ public final class HttpServerTest {
         return port;
     }
 
+    /**
+     * Live stream, with some text, which is over when the flag is set.
+     */
+    private static final class LiveStream extends InputStream
+        implements Live {
+        /**
+         * Text to deliver.
+         */
+        private final transient InputStream text;
+        /**
+         * Is it over?
+         */
+        private final transient AtomicBoolean over;
+        /**
+         * Ctor.
+         * @param txt Text to deliver
+         * @param flag Is it over
+         */
+        LiveStream(final String txt, final AtomicBoolean flag) {
+            super();
+            this.text = IOUtils.toInputStream(txt);
+            this.over = flag;
+        }
+        @Override
+        public boolean isOver() {
+            return this.over.get();
+        }
+        @Override
+        public int available() throws IOException {
+            return this.text.available();
+        }
+        @Override
+        public int read() throws IOException {
+            if (!this.over.get() && this.text.available() == 0) {
+                throw new IllegalStateException("blocking read");
+            }
+            return this.text.read();
+        }
+    }
+
 }
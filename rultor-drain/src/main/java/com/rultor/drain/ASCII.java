@@ -37,6 +37,7 @@ import com.jcabi.aspects.Tv;
 import com.rultor.spi.Drain;
 import com.rultor.spi.Pageable;
 import com.rultor.tools.Time;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
@@ -58,7 +59,7 @@ import org.apache.commons.lang3.CharEncoding;
 @ToString
 @EqualsAndHashCode(of = "origin")
 @Loggable(Loggable.DEBUG)
-public final class ASCII implements Drain {
+public final class ASCII implements Drain, Closeable {
 
     /**
      * Original drain.
@@ -94,6 +95,13 @@ public final class ASCII implements Drain {
         );
     }
 
+    @Override
+    public void close() throws IOException {
+        if (this.origin instanceof Closeable) {
+            Closeable.class.cast(this.origin).close();
+        }
+    }
+
     @Override
     public InputStream read() throws IOException {
         return new SequenceInputStream(
@@ -122,8 +122,11 @@ public final class BufferedRead implements Drain, Closeable {
     }
 
     @Override
-    public void close() {
+    public void close() throws IOException {
         BufferedRead.CLEANER.run();
+        if (this.origin instanceof Closeable) {
+            Closeable.class.cast(this.origin).close();
+        }
     }
 
     @Override
@@ -124,8 +124,11 @@ public final class BufferedWrite implements Drain, Closeable {
     }
 
     @Override
-    public void close() {
+    public void close() throws IOException {
         BufferedWrite.FLUSH.flush(true);
+        if (this.origin instanceof Closeable) {
+            Closeable.class.cast(this.origin).close();
+        }
     }
 
     @Override
@@ -38,6 +38,7 @@ import com.rultor.spi.Coordinates;
 import com.rultor.spi.Drain;
 import com.rultor.spi.Pageable;
 import com.rultor.tools.Time;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
@@ -65,7 +66,7 @@ import org.apache.commons.io.IOUtils;
 @ToString
 @EqualsAndHashCode(of = { "work", "pattern", "visible", "dirty", "clean" })
 @Loggable(Loggable.DEBUG)
-public final class NoiseReduction implements Drain {
+public final class NoiseReduction implements Drain, Closeable {
 
     /**
      * Static set of clean drains.
@@ -186,6 +187,16 @@ public final class NoiseReduction implements Drain {
         }
     }
 
+    @Override
+    public void close() throws IOException {
+        if (this.dirty instanceof Closeable) {
+            Closeable.class.cast(this.dirty).close();
+        }
+        if (this.clean instanceof Closeable) {
+            Closeable.class.cast(this.clean).close();
+        }
+    }
+
     @Override
     public InputStream read() throws IOException {
         final boolean exists = Iterables.contains(
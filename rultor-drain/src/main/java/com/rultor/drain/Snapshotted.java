@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import com.rultor.snapshot.XemblyLine;
+import com.rultor.spi.Drain;
+import com.rultor.spi.Pageable;
+import com.rultor.tools.Time;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedList;
+import javax.validation.constraints.NotNull;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Drain that keeps xembly lines of every pulse in a sidecar drain.
+ *
+ * <p>All lines go to the main drain, while lines with xembly
+ * go to the sidecar as well, so that a snapshot of a pulse can be
+ * built without reading its entire log, for example:
+ *
+ * <pre> com.rultor.drain.Snapshotted(
+ *   com.rultor.drain.s3.ObjectDrain(${s3}, "${work.rule}/${work.scheduled}"),
+ *   com.rultor.drain.s3.SegmentedDrain(${s3}, "${work.rule}/${work.scheduled}.xembly")
+ * )</pre>
+ *
+ * <p>The sidecar is appended to on every line with xembly, so it
+ * should be a drain that appends cheaply, like
+ * {@link com.rultor.drain.s3.SegmentedDrain}, which writes a small part
+ * per append instead of rewriting the whole object.
+ *
+ * <p>It has to be the outermost drain in the spec, to be visible as a
+ * {@link Drain.Sidecar} to the web front. Pulses written before the
+ * sidecar was configured are still shown, the web front parses their
+ * main drain when the sidecar is absent.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle LineLength (500 lines)
+ */
+@Immutable
+@ToString
+@EqualsAndHashCode(of = { "main", "sidecar" })
+@Loggable(Loggable.DEBUG)
+public final class Snapshotted implements Drain, Drain.Sidecar, Closeable {
+
+    /**
+     * Main drain.
+     */
+    private final transient Drain main;
+
+    /**
+     * Sidecar drain, with xembly lines only.
+     */
+    private final transient Drain sidecar;
+
+    /**
+     * Public ctor.
+     * @param body Main drain
+     * @param side Sidecar drain
+     */
+    public Snapshotted(
+        @NotNull(message = "body drain can't be NULL") final Drain body,
+        @NotNull(message = "sidecar can't be NULL") final Drain side) {
+        this.main = body;
+        this.sidecar = side;
+    }
+
+    @Override
+    public Pageable<Time, Time> pulses() throws IOException {
+        return this.main.pulses();
+    }
+
+    @Override
+    public void append(final Iterable<String> lines)
+        throws IOException {
+        this.main.append(lines);
+        final Collection<String> xembly = new LinkedList<String>();
+        for (final String line : lines) {
+            if (XemblyLine.existsIn(line)) {
+                xembly.add(line);
+            }
+        }
+        if (!xembly.isEmpty()) {
+            this.sidecar.append(xembly);
+        }
+    }
+
+    @Override
+    public InputStream read() throws IOException {
+        return this.main.read();
+    }
+
+    @Override
+    public InputStream xembly() throws IOException {
+        return this.sidecar.read();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.main instanceof Closeable) {
+            Closeable.class.cast(this.main).close();
+        }
+        if (this.sidecar instanceof Closeable) {
+            Closeable.class.cast(this.sidecar).close();
+        }
+    }
+
+}
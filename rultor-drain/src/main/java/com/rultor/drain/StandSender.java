@@ -0,0 +1,774 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain;
+
+import com.google.common.base.Charsets;
+import com.jcabi.aspects.RetryOnFailure;
+import com.jcabi.aspects.Tv;
+import com.jcabi.http.Request;
+import com.jcabi.http.Response;
+import com.jcabi.http.response.XmlResponse;
+import com.jcabi.log.Logger;
+import com.jcabi.log.VerboseRunnable;
+import com.jcabi.log.VerboseThreads;
+import com.rultor.spi.Coordinates;
+import com.rultor.tools.Exceptions;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.ws.rs.core.MediaType;
+import org.apache.commons.lang3.CharEncoding;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpHeaders;
+
+/**
+ * Bounded asynchronous sender of stand messages to SQS, shared by all
+ * {@link Standed} drains of the JVM.
+ *
+ * <p>Drains only offer xembly lines and never wait for the network.
+ * Lines wait in a bounded memory queue, from where a few sending threads
+ * take them, waiting a moment for more to come, pack lines of the
+ * same pulse into one message, as an array of lines with their own
+ * nanos and xembly scripts, and post up to ten messages (SQS limit)
+ * per {@code SendMessageBatch} request, never exceeding 256Kb of payload.
+ * Number of requests in flight is limited by the number of threads.
+ *
+ * <p>When SQS is slow and the memory queue is full, lines are spilled
+ * to a file on disk. While there are lines in the file, new lines go
+ * there too, and sending threads move the oldest of them back to the
+ * memory queue whenever it has space, so lines are sent in the order of
+ * arrival. When the file is full too, lines are dropped and counted, but
+ * the build is never stalled. Lines of requests that fail, after a few
+ * retries, are dropped and counted as well.
+ *
+ * <p>{@link #close()} stops sending threads and then sends everything
+ * that is still waiting in memory and on disk.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+@SuppressWarnings({ "PMD.ExcessiveImports", "PMD.TooManyMethods" })
+final class StandSender implements Closeable {
+
+    /**
+     * Max number of messages in one batch (SQS limit).
+     */
+    private static final int ENTRIES = 10;
+
+    /**
+     * Max total size of messages in one batch, in bytes (SQS limit).
+     */
+    private static final int PAYLOAD = 256 * 1024;
+
+    /**
+     * Max size of xembly coalesced into one message, in bytes.
+     */
+    private static final int XEMBLY = 24 * 1024;
+
+    /**
+     * Max number of lines waiting in memory.
+     */
+    private static final int CAPACITY = 10000;
+
+    /**
+     * How long to wait for more lines before sending, in milliseconds.
+     */
+    private static final long LINGER = 100L;
+
+    /**
+     * Max number of lines taken from the queue in one cycle.
+     */
+    private static final int CYCLE = 1000;
+
+    /**
+     * Max size of spill file, in bytes.
+     */
+    private static final long SPILL = 64L * 1024 * 1024;
+
+    /**
+     * How long to keep sending on close, in milliseconds.
+     */
+    private static final long DRAIN = TimeUnit.MINUTES.toMillis(1L);
+
+    /**
+     * HTTP queue that will receive data.
+     */
+    private final transient Request entry;
+
+    /**
+     * Lines waiting to be sent.
+     */
+    private final transient BlockingQueue<StandSender.Line> queue;
+
+    /**
+     * Sending threads.
+     */
+    private final transient ScheduledExecutorService service;
+
+    /**
+     * File with spilled lines (created on demand).
+     */
+    private transient File spill;
+
+    /**
+     * Writer to the spill file, if open.
+     */
+    private transient Writer writer;
+
+    /**
+     * Reader of the spill file, if open.
+     */
+    private transient BufferedReader reader;
+
+    /**
+     * Line read from the spill file, but not queued yet, or NULL.
+     */
+    private transient StandSender.Line unspilled;
+
+    /**
+     * Size of spill file, in bytes.
+     */
+    private transient long bytes;
+
+    /**
+     * Lines offered.
+     */
+    private final transient AtomicLong offered = new AtomicLong();
+
+    /**
+     * Messages sent.
+     */
+    private final transient AtomicLong sent = new AtomicLong();
+
+    /**
+     * HTTP requests made.
+     */
+    private final transient AtomicLong requests = new AtomicLong();
+
+    /**
+     * Lines waiting in spill file.
+     */
+    private final transient AtomicLong spilled = new AtomicLong();
+
+    /**
+     * Lines dropped or lost.
+     */
+    private final transient AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Public ctor.
+     * @param client HTTP queue
+     * @param threads How many requests may be in flight at the same time
+     */
+    StandSender(final Request client, final int threads) {
+        this(client, threads, StandSender.CAPACITY);
+    }
+
+    /**
+     * Ctor for tests.
+     * @param client HTTP queue
+     * @param threads How many requests may be in flight at the same time
+     * @param capacity How many lines may wait in memory
+     */
+    StandSender(final Request client, final int threads, final int capacity) {
+        this.entry = client;
+        this.queue = new LinkedBlockingQueue<StandSender.Line>(capacity);
+        this.service = Executors.newScheduledThreadPool(
+            threads + 1, new VerboseThreads(StandSender.class)
+        );
+        final Runnable cycle = new VerboseRunnable(
+            new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    StandSender.this.cycle();
+                    return null;
+                }
+            },
+            true, false
+        );
+        for (int thread = 0; thread < threads; ++thread) {
+            this.service.scheduleWithFixedDelay(
+                cycle, 0, 1, TimeUnit.MILLISECONDS
+            );
+        }
+        this.service.scheduleWithFixedDelay(
+            new VerboseRunnable(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        Logger.info(StandSender.this, "%s", StandSender.this);
+                    }
+                }
+            ),
+            1, 1, TimeUnit.MINUTES
+        );
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            // @checkstyle LineLength (1 line)
+            "%d line(s) offered, %d waiting, %d spilled, %d dropped, %d message(s) sent in %d request(s)",
+            this.offered.get(), this.queue.size(), this.spilled.get(),
+            this.dropped.get(), this.sent.get(), this.requests.get()
+        );
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.service.shutdown();
+        try {
+            if (!this.service.awaitTermination(1L, TimeUnit.MINUTES)) {
+                this.service.shutdownNow();
+            }
+        } catch (final InterruptedException ex) {
+            this.service.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        final long start = System.currentTimeMillis();
+        while ((!this.queue.isEmpty() || this.spilled.get() > 0)
+            && System.currentTimeMillis() - start < StandSender.DRAIN) {
+            this.unspill();
+            final List<StandSender.Line> lines =
+                new LinkedList<StandSender.Line>();
+            this.queue.drainTo(lines);
+            this.flush(lines);
+        }
+        synchronized (this) {
+            this.dropped.addAndGet(
+                (long) this.queue.size() + this.spilled.get()
+            );
+            this.queue.clear();
+            this.discard();
+        }
+    }
+
+    /**
+     * Offer a line for sending, without waiting.
+     * @param work Coordinates of the pulse
+     * @param stand Name of stand
+     * @param key Secret key of the stand
+     * @param xembly Xembly script
+     * @checkstyle ParameterNumber (4 lines)
+     */
+    public void offer(final Coordinates work, final String stand,
+        final String key, final String xembly) {
+        this.offered.incrementAndGet();
+        final StandSender.Line line = new StandSender.Line(
+            StandSender.head(work, stand, key),
+            System.nanoTime() * Tv.HUNDRED + Standed.RND.nextInt(Tv.HUNDRED),
+            xembly
+        );
+        if (this.spilled.get() > 0 || !this.queue.offer(line)) {
+            this.spill(line);
+        }
+    }
+
+    /**
+     * How many HTTP requests were made.
+     * @return Total number of them
+     */
+    public long requests() {
+        return this.requests.get();
+    }
+
+    /**
+     * How many messages were sent.
+     * @return Total number of them
+     */
+    public long sent() {
+        return this.sent.get();
+    }
+
+    /**
+     * How many lines were dropped or lost.
+     * @return Total number of them
+     */
+    public long dropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Take whatever is ready in the queue and send it.
+     * @throws InterruptedException If interrupted
+     */
+    private void cycle() throws InterruptedException {
+        this.unspill();
+        final StandSender.Line first = this.queue.poll(1, TimeUnit.SECONDS);
+        if (first != null) {
+            final List<StandSender.Line> lines =
+                new LinkedList<StandSender.Line>();
+            lines.add(first);
+            TimeUnit.MILLISECONDS.sleep(StandSender.LINGER);
+            this.queue.drainTo(lines, StandSender.CYCLE);
+            this.flush(lines);
+        }
+    }
+
+    /**
+     * Send lines in as few requests as possible, and count lines of
+     * failed requests as dropped.
+     * @param lines Lines to send, in order of arrival
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private void flush(final Iterable<StandSender.Line> lines) {
+        for (final List<StandSender.Line> batch
+            : StandSender.batches(StandSender.coalesce(lines))) {
+            try {
+                this.send(StandSender.body(batch));
+                this.sent.addAndGet(batch.size());
+            // @checkstyle IllegalCatch (1 line)
+            } catch (final Exception ex) {
+                long total = 0;
+                for (final StandSender.Line line : batch) {
+                    total += line.count();
+                }
+                this.dropped.addAndGet(total);
+                Exceptions.warn(this, ex);
+            }
+        }
+    }
+
+    /**
+     * Send the batch.
+     * @param body POST request body
+     * @throws IOException If fails
+     */
+    @RetryOnFailure(
+        verbose = false, attempts = Tv.TEN, types = IOException.class
+    )
+    private void send(final String body) throws IOException {
+        this.requests.incrementAndGet();
+        final Response response = this.entry.header(
+            HttpHeaders.CONTENT_ENCODING, CharEncoding.UTF_8
+        )
+            .header(
+                HttpHeaders.CONTENT_LENGTH,
+                body.getBytes(CharEncoding.UTF_8).length
+            )
+            .header(
+                HttpHeaders.CONTENT_TYPE,
+                MediaType.APPLICATION_FORM_URLENCODED
+            )
+            .method(Request.POST)
+            .body()
+            .set(body)
+            .back()
+            .fetch();
+        if (response.status() != HttpURLConnection.HTTP_OK) {
+            throw new IOException(
+                String.format(
+                    "SQS responded with %d %s: %s",
+                    response.status(), response.reason(), response.body()
+                )
+            );
+        }
+        final Collection<String> missed = response.as(XmlResponse.class)
+            .xml()
+            // @checkstyle LineLength (1 line)
+            .xpath("/SendMessageBatchResponse/BatchResultError/BatchResultErrorEntry/Id/text()");
+        if (!missed.isEmpty()) {
+            throw new IOException(
+                String.format(
+                    "Problem with sending of %d message(s): %s",
+                    missed.size(), StringUtils.join(missed, ", ")
+                )
+            );
+        }
+    }
+
+    /**
+     * Put the line into spill file, or drop it if the file is full.
+     * @param line The line
+     */
+    private synchronized void spill(final StandSender.Line line) {
+        try {
+            if (this.bytes < StandSender.SPILL) {
+                if (this.writer == null) {
+                    this.spill = File.createTempFile("rultor-stand-", ".txt");
+                    this.spill.deleteOnExit();
+                    this.writer = new BufferedWriter(
+                        new OutputStreamWriter(
+                            new FileOutputStream(this.spill),
+                            Charsets.UTF_8
+                        )
+                    );
+                }
+                final String json = line.json();
+                this.writer.write(json);
+                this.writer.write('\n');
+                this.bytes += json.getBytes(Charsets.UTF_8).length + 1;
+                this.spilled.incrementAndGet();
+            } else if (this.dropped.incrementAndGet() % Tv.THOUSAND == 1) {
+                Logger.warn(
+                    this, "stand queue is full, lines are dropped: %s", this
+                );
+            }
+        } catch (final IOException ex) {
+            this.dropped.incrementAndGet();
+            Exceptions.warn(this, ex);
+        }
+    }
+
+    /**
+     * Move the oldest spilled lines to the memory queue, while there is
+     * space in it, and delete the spill file when all of them are moved.
+     */
+    private synchronized void unspill() {
+        try {
+            if (this.spilled.get() > 0 && this.reader == null) {
+                this.reader = new BufferedReader(
+                    new InputStreamReader(
+                        new FileInputStream(this.spill), Charsets.UTF_8
+                    )
+                );
+            }
+            while (this.spilled.get() > 0) {
+                if (this.unspilled == null) {
+                    this.writer.flush();
+                    final String text = this.reader.readLine();
+                    if (text == null) {
+                        throw new IOException(
+                            String.format("%s is truncated", this.spill)
+                        );
+                    }
+                    this.unspilled = StandSender.Line.parse(text);
+                }
+                if (!this.queue.offer(this.unspilled)) {
+                    break;
+                }
+                this.unspilled = null;
+                this.spilled.decrementAndGet();
+            }
+            if (this.spilled.get() == 0) {
+                this.discard();
+            }
+        } catch (final IOException ex) {
+            this.dropped.addAndGet(this.spilled.getAndSet(0));
+            this.discard();
+            Exceptions.warn(this, ex);
+        }
+    }
+
+    /**
+     * Close and delete the spill file, if it exists.
+     */
+    private synchronized void discard() {
+        try {
+            if (this.writer != null) {
+                this.writer.close();
+            }
+            if (this.reader != null) {
+                this.reader.close();
+            }
+        } catch (final IOException ex) {
+            Exceptions.warn(this, ex);
+        }
+        if (this.spill != null && !this.spill.delete()) {
+            Logger.warn(this, "failed to delete %s", this.spill);
+        }
+        this.writer = null;
+        this.reader = null;
+        this.unspilled = null;
+        this.spill = null;
+        this.bytes = 0L;
+    }
+
+    /**
+     * Make a JSON head of all messages of the pulse.
+     * @param work Coordinates of the pulse
+     * @param stand Name of stand
+     * @param key Secret key of the stand
+     * @return JSON object with stand, key and work
+     */
+    private static JsonObject head(final Coordinates work,
+        final String stand, final String key) {
+        return Json.createObjectBuilder()
+            .add("stand", stand)
+            .add("key", key)
+            .add(
+                "work",
+                Json.createObjectBuilder()
+                    .add("owner", work.owner().toString())
+                    .add("rule", work.rule())
+                    .add("scheduled", work.scheduled().toString())
+            )
+            .build();
+    }
+
+    /**
+     * Coalesce lines of the same pulse into bigger lines.
+     * @param lines Lines in order of arrival
+     * @return Coalesced lines
+     */
+    private static Collection<StandSender.Line> coalesce(
+        final Iterable<StandSender.Line> lines) {
+        final Map<JsonObject, List<StandSender.Line>> pulses =
+            new LinkedHashMap<JsonObject, List<StandSender.Line>>(0);
+        for (final StandSender.Line line : lines) {
+            List<StandSender.Line> group = pulses.get(line.head);
+            if (group == null) {
+                group = new LinkedList<StandSender.Line>();
+                pulses.put(line.head, group);
+            }
+            final int last = group.size() - 1;
+            if (last >= 0 && group.get(last).fits(line)) {
+                group.set(last, group.get(last).merge(line));
+            } else {
+                group.add(line);
+            }
+        }
+        final Collection<StandSender.Line> all =
+            new LinkedList<StandSender.Line>();
+        for (final List<StandSender.Line> group : pulses.values()) {
+            all.addAll(group);
+        }
+        return all;
+    }
+
+    /**
+     * Pack lines into batches that SQS accepts.
+     * @param lines Lines to pack
+     * @return Batches of lines
+     */
+    private static Collection<List<StandSender.Line>> batches(
+        final Iterable<StandSender.Line> lines) {
+        final Collection<List<StandSender.Line>> batches =
+            new LinkedList<List<StandSender.Line>>();
+        List<StandSender.Line> batch = new ArrayList<StandSender.Line>(
+            StandSender.ENTRIES
+        );
+        int size = 0;
+        for (final StandSender.Line line : lines) {
+            final int bytes = line.json().getBytes(Charsets.UTF_8).length;
+            if (!batch.isEmpty() && (batch.size() == StandSender.ENTRIES
+                || size + bytes > StandSender.PAYLOAD)) {
+                batches.add(batch);
+                batch = new ArrayList<StandSender.Line>(StandSender.ENTRIES);
+                size = 0;
+            }
+            batch.add(line);
+            size += bytes;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Create POST request body.
+     * @param lines Lines to send, one message each
+     * @return POST request body
+     * @throws IOException If fails
+     */
+    private static String body(final List<StandSender.Line> lines)
+        throws IOException {
+        final StringBuilder body = new StringBuilder()
+            .append("Action=SendMessageBatch")
+            .append("&Version=2011-10-01");
+        for (int idx = 0; idx < lines.size(); ++idx) {
+            final int ent = idx + 1;
+            body.append('&')
+                .append("SendMessageBatchRequestEntry.")
+                .append(ent)
+                .append(".Id=")
+                .append(ent)
+                .append("&SendMessageBatchRequestEntry.")
+                .append(ent)
+                .append(".MessageBody=")
+                .append(
+                    URLEncoder.encode(lines.get(idx).json(), CharEncoding.UTF_8)
+                );
+        }
+        return body.toString();
+    }
+
+    /**
+     * Xembly lines of a pulse, sent in one message.
+     */
+    private static final class Line {
+        /**
+         * Stand, key and work of the pulse.
+         */
+        private final transient JsonObject head;
+        /**
+         * Lines, each one with its nano and xembly script.
+         */
+        private final transient List<JsonObject> lines;
+        /**
+         * Total length of xembly scripts.
+         */
+        private final transient int length;
+        /**
+         * Public ctor.
+         * @param json Stand, key and work
+         * @param time Nano of the line
+         * @param script Xembly script
+         */
+        Line(final JsonObject json, final long time, final String script) {
+            this(
+                json,
+                Collections.singletonList(
+                    Json.createObjectBuilder()
+                        .add("nano", time)
+                        .add("xembly", script)
+                        .build()
+                ),
+                script.length()
+            );
+        }
+        /**
+         * Public ctor.
+         * @param json Stand, key and work
+         * @param items Lines, with nano and xembly each
+         * @param len Total length of their xembly scripts
+         */
+        Line(final JsonObject json, final List<JsonObject> items,
+            final int len) {
+            this.head = json;
+            this.lines = items;
+            this.length = len;
+        }
+        /**
+         * How many lines of xembly are in this message.
+         * @return Number of lines
+         */
+        public int count() {
+            return this.lines.size();
+        }
+        /**
+         * Can this line absorb the given one?
+         * @param line The line that follows this one
+         * @return TRUE if it fits into one message together with this one
+         */
+        public boolean fits(final StandSender.Line line) {
+            return this.length + line.length < StandSender.XEMBLY;
+        }
+        /**
+         * Append the given line to this one.
+         * @param line The line that follows this one
+         * @return New line with lines of both
+         */
+        public StandSender.Line merge(final StandSender.Line line) {
+            final List<JsonObject> items = new ArrayList<JsonObject>(
+                this.lines.size() + line.lines.size()
+            );
+            items.addAll(this.lines);
+            items.addAll(line.lines);
+            return new StandSender.Line(
+                this.head, items, this.length + line.length
+            );
+        }
+        /**
+         * JSON message for SQS, in one line of text.
+         * @return JSON
+         */
+        public String json() {
+            final JsonArrayBuilder items = Json.createArrayBuilder();
+            for (final JsonObject item : this.lines) {
+                items.add(item);
+            }
+            final StringWriter writer = new StringWriter();
+            Json.createGenerator(writer)
+                .writeStartObject()
+                .write("stand", this.head.getString("stand"))
+                .write("key", this.head.getString("key"))
+                .write("work", this.head.getJsonObject("work"))
+                .write("lines", items.build())
+                .writeEnd()
+                .close();
+            return writer.toString();
+        }
+        /**
+         * Parse JSON message back.
+         * @param json JSON made by {@link #json()}
+         * @return The line
+         */
+        public static StandSender.Line parse(final String json) {
+            final JsonReader reader = Json.createReader(new StringReader(json));
+            try {
+                final JsonObject obj = reader.readObject();
+                final List<JsonObject> items = new ArrayList<JsonObject>(
+                    obj.getJsonArray("lines").getValuesAs(JsonObject.class)
+                );
+                int len = 0;
+                for (final JsonObject item : items) {
+                    len += item.getString("xembly").length();
+                }
+                return new StandSender.Line(
+                    Json.createObjectBuilder()
+                        .add("stand", obj.getString("stand"))
+                        .add("key", obj.getString("key"))
+                        .add("work", obj.getJsonObject("work"))
+                        .build(),
+                    items,
+                    len
+                );
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+}
@@ -33,16 +33,9 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
-import com.google.common.collect.Iterables;
-import com.google.common.util.concurrent.MoreExecutors;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
-import com.jcabi.aspects.RetryOnFailure;
-import com.jcabi.aspects.Tv;
-import com.jcabi.http.Request;
 import com.jcabi.http.request.JdkRequest;
-import com.jcabi.http.response.RestResponse;
-import com.jcabi.http.response.XmlResponse;
 import com.jcabi.log.VerboseRunnable;
 import com.rultor.snapshot.XemblyLine;
 import com.rultor.spi.Coordinates;
@@ -51,47 +44,38 @@ import com.rultor.spi.Pageable;
 import com.rultor.spi.Stand;
 import com.rultor.tools.Exceptions;
 import com.rultor.tools.Time;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
-import java.io.StringWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.URLEncoder;
 import java.security.SecureRandom;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import javax.json.Json;
 import javax.validation.constraints.NotNull;
-import javax.ws.rs.core.MediaType;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.CharEncoding;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.http.HttpHeaders;
 import org.xembly.SyntaxException;
 
 /**
  * Mirrored to a web {@link Stand}.
  *
+ * <p>Xembly lines are not sent to the stand by the thread that appends
+ * them, but offered to a bounded asynchronous sender, shared by all
+ * drains of the JVM, which coalesces them into SQS batches (see
+ * {@link StandSender}). Appending never waits for the network. The
+ * sender is closed, and so sends what is left, when the JVM exits.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
- * @todo #162:0.5hr As soon as rexsl #716 is resolved remove
- *  SQSEntry interface and use Request directly.
- * @checkstyle ClassDataAbstractionCoupling (500 lines)
  */
 @Immutable
 @ToString
 @EqualsAndHashCode(of = { "origin", "work", "stand", "key" })
 @Loggable(Loggable.DEBUG)
-@SuppressWarnings({ "PMD.ExcessiveImports", "PMD.TooManyMethods" })
-public final class Standed implements Drain {
+public final class Standed implements Drain, Closeable {
 
     /**
      * Randomizer for nanos.
@@ -104,9 +88,9 @@ public final class Standed implements Drain {
     public static final int THREADS = 10;
 
     /**
-     * Max message batch size.
+     * Sender shared by all drains of the JVM.
      */
-    private static final int MAX = 10;
+    private static final StandSender SENDER = Standed.sender();
 
     /**
      * Coordinates we're in.
@@ -129,14 +113,9 @@ public final class Standed implements Drain {
     private final transient String key;
 
     /**
-     * HTTP queue that will receive data.
+     * Sender of lines.
      */
-    private final transient Standed.SQSEntry entry;
-
-    /**
-     * Executor that runs tasks.
-     */
-    private final transient Standed.Exec exec;
+    private final transient Standed.Outbox outbox;
 
     /**
      * Public ctor.
@@ -145,19 +124,13 @@ public final class Standed implements Drain {
      * @param secret Secret key of the stand
      * @param drain Main drain
      * @checkstyle ParameterNumber (8 lines)
-     * @todo #285 Due to a problem with concurrency we're using this
-     *  same thread executor. When the problem is fixed we should use
-     *  Executors.newFixedThreadPool(Standed.THREADS, new VerboseThreads())
      */
     public Standed(
         @NotNull(message = "work can't be NULL") final Coordinates wrk,
         @NotNull(message = "name of stand can't be NULL") final String name,
         @NotNull(message = "key can't be NULL") final String secret,
         @NotNull(message = "drain can't be NULL") final Drain drain) {
-        this(
-            wrk, name, secret, drain, new JdkRequest(Stand.QUEUE),
-            MoreExecutors.sameThreadExecutor()
-        );
+        this(wrk, name, secret, drain, Standed.SENDER);
     }
 
     /**
@@ -166,28 +139,19 @@ public final class Standed implements Drain {
      * @param name Name of stand
      * @param secret Secret key of the stand
      * @param drain Main drain
-     * @param client HTTP queue
-     * @param executor Executor to use
+     * @param sender Sender to use
      * @checkstyle ParameterNumber (8 lines)
      */
-    public Standed(final Coordinates wrk, final String name,
-        final String secret,
-        final Drain drain, final Request client,
-        final ExecutorService executor) {
+    Standed(final Coordinates wrk, final String name, final String secret,
+        final Drain drain, final StandSender sender) {
         this.work = wrk;
         this.stand = name;
         this.key = secret;
         this.origin = drain;
-        this.entry = new Standed.SQSEntry() {
+        this.outbox = new Standed.Outbox() {
             @Override
-            public Request get() {
-                return client;
-            }
-        };
-        this.exec = new Standed.Exec() {
-            @Override
-            public ExecutorService get() {
-                return executor;
+            public StandSender get() {
+                return sender;
             }
         };
     }
@@ -199,37 +163,43 @@ public final class Standed implements Drain {
 
     @Override
     public void append(final Iterable<String> lines) throws IOException {
-        final Iterable<List<String>> batches = Iterables.partition(
-            FluentIterable.from(lines)
-                .filter(
-                    new Predicate<String>() {
-                        @Override
-                        public boolean apply(final String line) {
-                            return XemblyLine.existsIn(line);
-                        }
+        final Iterable<String> xemblies = FluentIterable.from(lines)
+            .filter(
+                new Predicate<String>() {
+                    @Override
+                    public boolean apply(final String line) {
+                        return XemblyLine.existsIn(line);
                     }
-                )
-                .transform(
-                    new Function<String, String>() {
-                        @Override
-                        public String apply(final String line) {
-                            try {
-                                return XemblyLine.parse(line).xembly();
-                            } catch (final SyntaxException ex) {
-                                Exceptions.warn(this, ex);
-                            }
-                            return null;
+                }
+            )
+            .transform(
+                new Function<String, String>() {
+                    @Override
+                    public String apply(final String line) {
+                        try {
+                            return XemblyLine.parse(line).xembly();
+                        } catch (final SyntaxException ex) {
+                            Exceptions.warn(this, ex);
                         }
+                        return null;
                     }
-                )
-                .filter(Predicates.notNull()), Standed.MAX
-        );
-        for (final List<String> batch : batches) {
-            this.send(batch);
+                }
+            )
+            .filter(Predicates.notNull());
+        final StandSender sender = this.outbox.get();
+        for (final String xembly : xemblies) {
+            sender.offer(this.work, this.stand, this.key, xembly);
         }
         this.origin.append(lines);
     }
 
+    @Override
+    public void close() throws IOException {
+        if (this.origin instanceof Closeable) {
+            Closeable.class.cast(this.origin).close();
+        }
+    }
+
     @Override
     public InputStream read() throws IOException {
         return new SequenceInputStream(
@@ -245,158 +215,40 @@ public final class Standed implements Drain {
     }
 
     /**
-     * Send lines to stand.
-     * @param xemblies The xembly scripts
-     * @throws IOException If fails
+     * Make a sender, which is closed when the JVM exits.
+     * @return Sender
      */
-    private void send(final Iterable<String> xemblies) throws IOException {
-        this.exec.get().submit(
-            new VerboseRunnable(
-                new Callable<Void>() {
-                    @Override
-                    public Void call() throws Exception {
-                        Standed.this.send(Standed.this.body(xemblies));
-                        return null;
-                    }
-                },
-                true, false
-            )
+    private static StandSender sender() {
+        final StandSender sender = new StandSender(
+            new JdkRequest(Stand.QUEUE), Standed.THREADS
         );
-    }
-
-    /**
-     * Send the message.
-     * @param body POST request body
-     * @throws IOException If fails
-     */
-    @RetryOnFailure(verbose = false, attempts = Tv.TEN)
-    private void send(final String body) throws IOException {
-        final Collection<String> missed = Standed.this.enqueue(
-            this.entry.get(), body
-        );
-        if (!missed.isEmpty()) {
-            throw new IOException(
-                String.format(
-                    "Problem with sending of %d message(s): %s",
-                    missed.size(), StringUtils.join(missed, ", ")
+        Runtime.getRuntime().addShutdownHook(
+            new Thread(
+                new VerboseRunnable(
+                    new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            sender.close();
+                            return null;
+                        }
+                    },
+                    true, false
                 )
-            );
-        }
-    }
-
-    /**
-     * Create POST request body.
-     * @param xemblies The xembly scripts
-     * @return POST request body
-     * @throws IOException If fails
-     */
-    private String body(final Iterable<String> xemblies) throws IOException {
-        final List<String> msgs = new ArrayList<String>(0);
-        for (final String xembly : xemblies) {
-            msgs.add(this.json(xembly));
-        }
-        final StringBuilder body = new StringBuilder()
-            .append("Action=SendMessageBatch")
-            .append("&Version=2011-10-01");
-        for (int idx = 0; idx < msgs.size(); ++idx) {
-            final int ent = idx + 1;
-            body.append('&')
-                .append("SendMessageBatchRequestEntry.")
-                .append(ent)
-                .append(".Id=")
-                .append(ent)
-                .append("&SendMessageBatchRequestEntry.")
-                .append(ent)
-                .append(".MessageBody=")
-                .append(URLEncoder.encode(msgs.get(idx), CharEncoding.UTF_8));
-        }
-        return body.toString();
-    }
-
-    /**
-     * Put messages on SQS.
-     * @param client HTTP client to use.
-     * @param body Body of the POST.
-     * @return List of message IDs that were not enqueued.
-     * @throws UnsupportedEncodingException When unable to find UTF-8 encoding.
-     */
-    private List<String> enqueue(final Request client, final String body)
-        throws UnsupportedEncodingException {
-        try {
-            return client.header(
-                HttpHeaders.CONTENT_ENCODING, CharEncoding.UTF_8
             )
-                .header(
-                    HttpHeaders.CONTENT_LENGTH,
-                    body.getBytes(CharEncoding.UTF_8).length
-                )
-                .header(
-                    HttpHeaders.CONTENT_TYPE,
-                    MediaType.APPLICATION_FORM_URLENCODED
-                )
-                .method(Request.POST)
-                .body()
-                .set(body)
-                .back()
-                .fetch()
-                .as(RestResponse.class)
-                .assertStatus(HttpURLConnection.HTTP_OK)
-                .as(XmlResponse.class)
-                .xml()
-                // @checkstyle LineLength (1 line)
-                .xpath("/SendMessageBatchResponse/BatchResultError/BatchResultErrorEntry/Id/text()");
-        } catch (final IOException ex) {
-            throw new IllegalStateException(ex);
-        }
-    }
-
-    /**
-     * Create a JSON representation of xembly.
-     * @param xembly Xembly to change into JSON.
-     * @return JSON of xembly.
-     */
-    private String json(final String xembly) {
-        final StringWriter writer = new StringWriter();
-        final long nano = System.nanoTime() * Tv.HUNDRED
-            + Standed.RND.nextInt(Tv.HUNDRED);
-        Json.createGenerator(writer)
-            .writeStartObject()
-            .write("stand", this.stand)
-            .write("nano", nano)
-            .write("key", this.key)
-            .write("xembly", xembly)
-            .writeStartObject("work")
-            .write("owner", this.work.owner().toString())
-            .write("rule", this.work.rule())
-            .write("scheduled", this.work.scheduled().toString())
-            .writeEnd()
-            .writeEnd()
-            .close();
-        return writer.toString();
-    }
-
-    /**
-     * SQS client connection container.
-     */
-    @Immutable
-    private interface SQSEntry {
-        /**
-         * Provide SQS connection.
-         * @return SQS connection.
-         */
-        Request get();
+        );
+        return sender;
     }
 
     /**
-     * Executor container.
+     * Sender container.
      */
     @Immutable
-    private interface Exec {
+    private interface Outbox {
         /**
-         * Provide executor.
-         * @return ExecutorService
+         * Provide sender.
+         * @return Sender
          */
-        ExecutorService get();
+        StandSender get();
     }
 
 }
@@ -34,31 +34,29 @@ import com.jcabi.aspects.Loggable;
 import com.rultor.spi.Drain;
 import com.rultor.spi.Pageable;
 import com.rultor.tools.Time;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
-import org.apache.commons.io.Charsets;
 
 /**
  * Syslog.
  *
+ * <p>Lines go either in UDP datagrams (by default) or, with
+ * {@code "tcp"} protocol, in octet-counted TCP frames, as explained
+ * in RFC 6587. All drains writing to the same server share one channel.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
- * @checkstyle ClassDataAbstractionCoupling (500 lines)
  * @see <a href="http://tools.ietf.org/html/rfc5424">RFC 5424</a>
+ * @see <a href="http://tools.ietf.org/html/rfc6587">RFC 6587</a>
  */
 @Immutable
 @ToString
-@EqualsAndHashCode(of = { "host", "port", "priority" })
+@EqualsAndHashCode(of = { "host", "port", "priority", "protocol" })
 @Loggable(Loggable.DEBUG)
 public final class Syslog implements Drain {
 
@@ -68,7 +66,7 @@ public final class Syslog implements Drain {
     private final transient String host;
 
     /**
-     * UDP port number.
+     * Port number.
      */
     private final transient int port;
 
@@ -77,18 +75,38 @@ public final class Syslog implements Drain {
      */
     private final transient int priority;
 
+    /**
+     * Protocol, either "udp" or "tcp".
+     */
+    private final transient String protocol;
+
     /**
      * Public ctor.
      * @param hst Host
      * @param prt Port
      * @param pri Priority
+     * @param proto Protocol, either "udp" or "tcp"
      */
     public Syslog(
         @NotNull(message = "host can't be NULL") final String hst,
-        final int prt, final int pri) {
+        final int prt, final int pri,
+        @NotNull(message = "protocol can't be NULL")
+        @Pattern(regexp = "udp|tcp", message = "only udp or tcp allowed")
+        final String proto) {
         this.host = hst;
         this.port = prt;
         this.priority = pri;
+        this.protocol = proto;
+    }
+
+    /**
+     * Public ctor.
+     * @param hst Host
+     * @param prt Port
+     * @param pri Priority
+     */
+    public Syslog(final String hst, final int prt, final int pri) {
+        this(hst, prt, pri, "udp");
     }
 
     /**
@@ -109,9 +127,9 @@ public final class Syslog implements Drain {
     @Override
     public void append(final Iterable<String> lines)
         throws IOException {
-        for (final String line : lines) {
-            this.send(this.compose(line));
-        }
+        SyslogChannel.get(
+            "tcp".equals(this.protocol), this.host, this.port
+        ).send(this.priority, lines);
     }
 
     @Override
@@ -119,43 +137,4 @@ public final class Syslog implements Drain {
         throw new IllegalArgumentException("there are no pulses");
     }
 
-    /**
-     * Send one packet.
-     * @param bytes Bytes to send
-     * @throws IOException If some IO problem
-     */
-    private void send(final byte[] bytes) throws IOException {
-        final DatagramSocket socket = new DatagramSocket();
-        socket.send(
-            new DatagramPacket(
-                bytes,
-                bytes.length,
-                InetAddress.getByName(this.host),
-                this.port
-            )
-        );
-    }
-
-    /**
-     * Compose a packet for Syslog.
-     * @param text Text to use
-     * @return Bytes for syslog
-     * @see <a href="http://tools.ietf.org/html/rfc5424">RFC 5424</a>
-     */
-    private byte[] compose(final String text) {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final PrintWriter writer = new PrintWriter(
-            new OutputStreamWriter(baos, Charsets.UTF_8)
-        );
-        writer.append(String.format("<%d>1 - - - - - - ", this.priority));
-        writer.flush();
-        // @checkstyle MagicNumber (3 lines)
-        baos.write(0xEF);
-        baos.write(0xBB);
-        baos.write(0xBF);
-        writer.append(text);
-        writer.flush();
-        return baos.toByteArray();
-    }
-
 }
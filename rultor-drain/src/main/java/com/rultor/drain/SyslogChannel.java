@@ -0,0 +1,516 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Lists;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import com.rultor.tools.Exceptions;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.apache.commons.io.Charsets;
+
+/**
+ * Channel to one syslog server, shared by all {@link Syslog} drains
+ * of the JVM that write to it.
+ *
+ * <p>In UDP mode every line goes in its own datagram through one
+ * {@link DatagramChannel}. In TCP mode lines are framed by octet
+ * counting (RFC 6587) and all lines of one append go in one write
+ * through a {@link SocketChannel}, which is re-opened if broken. Only
+ * lines that were not written completely before it broke are written
+ * again. Connecting and every write wait no longer than
+ * {@link #TIMEOUT}, and after a failed connect the server is not tried
+ * again for {@link #PAUSE}. Packets are composed in one reusable direct
+ * buffer, with headers encoded only once per priority. Server address
+ * is resolved again only after {@link #TTL}.
+ *
+ * <p>Channels are kept in a bounded cache and closed by its removal
+ * listener when they are not used for a while or evicted. A closed
+ * channel never opens a socket again, it passes lines to the channel
+ * that is in the cache now.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @see <a href="http://tools.ietf.org/html/rfc6587">RFC 6587</a>
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+@ToString(of = { "tcp", "host", "port" })
+@EqualsAndHashCode(of = { "tcp", "host", "port" })
+@SuppressWarnings({ "PMD.ExcessiveImports", "PMD.TooManyMethods" })
+final class SyslogChannel implements Closeable {
+
+    /**
+     * Max size of one packet, in bytes (max UDP payload).
+     */
+    private static final int PACKET = 65507;
+
+    /**
+     * How long resolved address is valid, in milliseconds.
+     */
+    private static final long TTL = TimeUnit.MINUTES.toMillis(1L);
+
+    /**
+     * How long to wait for TCP connect or write, in milliseconds.
+     */
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(Tv.FIVE);
+
+    /**
+     * How long not to connect after a failed connect, in milliseconds.
+     */
+    private static final long PAUSE = TimeUnit.SECONDS.toMillis(Tv.TEN);
+
+    /**
+     * All channels, by their destinations.
+     */
+    private static final Cache<String, SyslogChannel> CHANNELS =
+        CacheBuilder.newBuilder()
+            .maximumSize((long) Tv.HUNDRED)
+            .expireAfterAccess((long) Tv.TEN, TimeUnit.MINUTES)
+            .removalListener(
+                new RemovalListener<String, SyslogChannel>() {
+                    @Override
+                    public void onRemoval(
+                        final RemovalNotification<String, SyslogChannel> note) {
+                        try {
+                            note.getValue().close();
+                        } catch (final IOException ex) {
+                            Exceptions.warn(note.getValue(), ex);
+                        }
+                    }
+                }
+            )
+            .build();
+
+    /**
+     * Encoded headers, by priorities.
+     */
+    private static final ConcurrentMap<Integer, byte[]> HEADERS =
+        new ConcurrentHashMap<Integer, byte[]>(0);
+
+    /**
+     * Is it TCP?
+     */
+    private final transient boolean tcp;
+
+    /**
+     * Host name.
+     */
+    private final transient String host;
+
+    /**
+     * Port number.
+     */
+    private final transient int port;
+
+    /**
+     * Reusable buffer.
+     */
+    private final transient ByteBuffer buffer =
+        ByteBuffer.allocateDirect(SyslogChannel.PACKET);
+
+    /**
+     * Resolved address.
+     */
+    private transient InetSocketAddress address;
+
+    /**
+     * When the address was resolved.
+     */
+    private transient long resolved;
+
+    /**
+     * UDP channel, if open.
+     */
+    private transient DatagramChannel datagram;
+
+    /**
+     * TCP channel, if open.
+     */
+    private transient SocketChannel socket;
+
+    /**
+     * Selector of the TCP channel, if open.
+     */
+    private transient Selector selector;
+
+    /**
+     * When TCP connect failed last time.
+     */
+    private transient long failed;
+
+    /**
+     * How many lines of the current send are written completely.
+     */
+    private transient int framed;
+
+    /**
+     * Is it closed (removed from the cache)?
+     */
+    private transient boolean closed;
+
+    /**
+     * Private ctor.
+     * @param stream Is it TCP?
+     * @param hst Host
+     * @param prt Port
+     */
+    private SyslogChannel(final boolean stream, final String hst,
+        final int prt) {
+        this.tcp = stream;
+        this.host = hst;
+        this.port = prt;
+    }
+
+    /**
+     * Get a channel to the destination.
+     * @param stream Is it TCP?
+     * @param host Host
+     * @param port Port
+     * @return Shared channel
+     */
+    public static SyslogChannel get(final boolean stream, final String host,
+        final int port) {
+        try {
+            return SyslogChannel.CHANNELS.get(
+                SyslogChannel.key(stream, host, port),
+                new Callable<SyslogChannel>() {
+                    @Override
+                    public SyslogChannel call() {
+                        return new SyslogChannel(stream, host, port);
+                    }
+                }
+            );
+        } catch (final ExecutionException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Send lines.
+     *
+     * <p>If the channel was removed from the cache and closed while the
+     * caller was holding it, lines are sent through the channel that is
+     * in the cache now, so that a closed channel never opens a socket
+     * again, which nobody would close.
+     *
+     * @param priority Priority of them
+     * @param lines Lines to send
+     * @throws IOException If some IO problem
+     */
+    public void send(final int priority, final Iterable<String> lines)
+        throws IOException {
+        if (!this.deliver(priority, lines)) {
+            SyslogChannel.CHANNELS.asMap().remove(
+                SyslogChannel.key(this.tcp, this.host, this.port), this
+            );
+            SyslogChannel.get(this.tcp, this.host, this.port)
+                .send(priority, lines);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.closed = true;
+        if (this.datagram != null) {
+            this.datagram.close();
+            this.datagram = null;
+        }
+        this.disconnect();
+    }
+
+    /**
+     * Send lines through this channel, unless it is closed.
+     * @param priority Priority of them
+     * @param lines Lines to send
+     * @return FALSE if the channel is closed and nothing was sent
+     * @throws IOException If some IO problem
+     */
+    private synchronized boolean deliver(final int priority,
+        final Iterable<String> lines) throws IOException {
+        final boolean open = !this.closed;
+        if (open) {
+            this.transmit(priority, lines);
+        }
+        return open;
+    }
+
+    /**
+     * Send lines through this channel.
+     * @param priority Priority of them
+     * @param lines Lines to send
+     * @throws IOException If some IO problem
+     */
+    private void transmit(final int priority, final Iterable<String> lines)
+        throws IOException {
+        final byte[] header = SyslogChannel.header(priority);
+        if (this.tcp) {
+            final List<String> all = Lists.newArrayList(lines);
+            this.framed = 0;
+            try {
+                this.frames(header, all);
+            } catch (final IOException ex) {
+                Logger.warn(
+                    this, "re-connecting after %d of %d line(s): %s",
+                    this.framed, all.size(), ex.getMessage()
+                );
+                this.disconnect();
+                try {
+                    this.frames(header, all.subList(this.framed, all.size()));
+                } catch (final IOException again) {
+                    this.disconnect();
+                    throw again;
+                }
+            }
+        } else {
+            for (final String line : lines) {
+                this.buffer.clear();
+                this.buffer.put(header);
+                final byte[] bytes = line.getBytes(Charsets.UTF_8);
+                this.buffer.put(
+                    bytes, 0, Math.min(bytes.length, this.buffer.remaining())
+                );
+                this.buffer.flip();
+                this.datagram().send(this.buffer, this.address());
+            }
+        }
+    }
+
+    /**
+     * Send lines in TCP frames, as few writes as possible, and count
+     * lines written completely.
+     * @param header Header of every line
+     * @param lines Lines to send
+     * @throws IOException If some IO problem
+     */
+    private void frames(final byte[] header, final Iterable<String> lines)
+        throws IOException {
+        final SocketChannel channel = this.socket();
+        this.buffer.clear();
+        int buffered = 0;
+        for (final String line : lines) {
+            final byte[] bytes = line.getBytes(Charsets.UTF_8);
+            final byte[] length = String.format(
+                "%d ", header.length + bytes.length
+            ).getBytes(Charsets.UTF_8);
+            final int size = length.length + header.length + bytes.length;
+            if (size > this.buffer.remaining()) {
+                this.flush(channel);
+                this.framed += buffered;
+                buffered = 0;
+            }
+            if (size > this.buffer.remaining()) {
+                this.write(
+                    channel,
+                    (ByteBuffer) ByteBuffer.allocate(size)
+                        .put(length).put(header).put(bytes).flip()
+                );
+                ++this.framed;
+            } else {
+                this.buffer.put(length).put(header).put(bytes);
+                ++buffered;
+            }
+        }
+        this.flush(channel);
+        this.framed += buffered;
+    }
+
+    /**
+     * Write everything collected in the buffer and clear it.
+     * @param channel Channel to write to
+     * @throws IOException If fails
+     */
+    private void flush(final SocketChannel channel) throws IOException {
+        this.buffer.flip();
+        this.write(channel, this.buffer);
+        this.buffer.clear();
+    }
+
+    /**
+     * Write everything remaining in the buffer, waiting for the channel
+     * to accept more no longer than {@link #TIMEOUT}.
+     * @param channel Channel to write to, in non-blocking mode
+     * @param buf The buffer
+     * @throws IOException If fails
+     */
+    private void write(final SocketChannel channel, final ByteBuffer buf)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.write(buf) == 0) {
+                if (this.selector.select(SyslogChannel.TIMEOUT) == 0) {
+                    throw new SocketTimeoutException(
+                        String.format(
+                            "%s accepts nothing for %dms",
+                            this, SyslogChannel.TIMEOUT
+                        )
+                    );
+                }
+                this.selector.selectedKeys().clear();
+            }
+        }
+    }
+
+    /**
+     * Get open datagram channel.
+     * @return Channel
+     * @throws IOException If fails
+     */
+    private DatagramChannel datagram() throws IOException {
+        if (this.datagram == null) {
+            this.datagram = DatagramChannel.open();
+        }
+        return this.datagram;
+    }
+
+    /**
+     * Get connected socket channel, in non-blocking mode.
+     * @return Channel
+     * @throws IOException If fails
+     */
+    private SocketChannel socket() throws IOException {
+        if (this.socket == null) {
+            final long now = System.currentTimeMillis();
+            if (now - this.failed < SyslogChannel.PAUSE) {
+                throw new IOException(
+                    String.format("%s failed to connect recently", this)
+                );
+            }
+            final SocketChannel channel = SocketChannel.open();
+            try {
+                channel.socket().connect(
+                    this.address(), (int) SyslogChannel.TIMEOUT
+                );
+                channel.configureBlocking(false);
+                this.selector = Selector.open();
+                channel.register(this.selector, SelectionKey.OP_WRITE);
+            } catch (final IOException ex) {
+                this.failed = now;
+                channel.close();
+                if (this.selector != null) {
+                    this.selector.close();
+                    this.selector = null;
+                }
+                throw ex;
+            }
+            this.socket = channel;
+        }
+        return this.socket;
+    }
+
+    /**
+     * Close TCP channel, if it is open.
+     * @throws IOException If fails
+     */
+    private void disconnect() throws IOException {
+        if (this.socket != null) {
+            this.socket.close();
+            this.socket = null;
+        }
+        if (this.selector != null) {
+            this.selector.close();
+            this.selector = null;
+        }
+    }
+
+    /**
+     * Get resolved address.
+     * @return Address
+     * @throws IOException If fails
+     */
+    private InetSocketAddress address() throws IOException {
+        final long now = System.currentTimeMillis();
+        if (this.address == null || now - this.resolved > SyslogChannel.TTL) {
+            this.address = new InetSocketAddress(
+                InetAddress.getByName(this.host), this.port
+            );
+            this.resolved = now;
+        }
+        return this.address;
+    }
+
+    /**
+     * Key of a channel in the cache.
+     * @param stream Is it TCP?
+     * @param host Host
+     * @param port Port
+     * @return Key
+     */
+    private static String key(final boolean stream, final String host,
+        final int port) {
+        return String.format("%s:%s:%d", stream, host, port);
+    }
+
+    /**
+     * Encoded header of a message.
+     * @param priority Priority of it
+     * @return Bytes of header, with UTF-8 BOM in the end
+     * @see <a href="http://tools.ietf.org/html/rfc5424">RFC 5424</a>
+     */
+    private static byte[] header(final int priority) {
+        byte[] header = SyslogChannel.HEADERS.get(priority);
+        if (header == null) {
+            final byte[] prefix = String.format(
+                "<%d>1 - - - - - - ", priority
+            ).getBytes(Charsets.UTF_8);
+            header = new byte[prefix.length + Tv.THREE];
+            System.arraycopy(prefix, 0, header, 0, prefix.length);
+            // @checkstyle MagicNumber (3 lines)
+            header[prefix.length] = (byte) 0xEF;
+            header[prefix.length + 1] = (byte) 0xBB;
+            header[prefix.length + 2] = (byte) 0xBF;
+            SyslogChannel.HEADERS.putIfAbsent(priority, header);
+        }
+        return header;
+    }
+
+}
@@ -34,6 +34,7 @@ import com.jcabi.aspects.Loggable;
 import com.rultor.spi.Drain;
 import com.rultor.spi.Pageable;
 import com.rultor.tools.Time;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
@@ -55,7 +56,7 @@ import org.apache.commons.lang3.CharEncoding;
 @ToString
 @EqualsAndHashCode(of = { "main", "tail" })
 @Loggable(Loggable.DEBUG)
-public final class Tailed implements Drain {
+public final class Tailed implements Drain, Closeable {
 
     /**
      * Main drain.
@@ -91,6 +92,16 @@ public final class Tailed implements Drain {
         this.tail.append(lines);
     }
 
+    @Override
+    public void close() throws IOException {
+        if (this.main instanceof Closeable) {
+            Closeable.class.cast(this.main).close();
+        }
+        if (this.tail instanceof Closeable) {
+            Closeable.class.cast(this.tail).close();
+        }
+    }
+
     @Override
     public InputStream read() throws IOException {
         return new SequenceInputStream(
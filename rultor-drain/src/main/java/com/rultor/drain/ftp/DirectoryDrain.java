@@ -29,8 +29,13 @@
  */
 package com.rultor.drain.ftp;
 
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.Tv;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Drain;
 import com.rultor.spi.Pageable;
@@ -40,6 +45,7 @@ import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 import javax.validation.constraints.NotNull;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -53,6 +59,9 @@ import org.apache.commons.net.ftp.FTPReply;
 /**
  * Drain in an FTP directory.
  *
+ * <p>Listing of the directory is cached for a few seconds, since
+ * it is requested on every page view.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -64,6 +73,15 @@ import org.apache.commons.net.ftp.FTPReply;
 @Loggable(Loggable.DEBUG)
 public final class DirectoryDrain implements Drain {
 
+    /**
+     * Recent listings of directories, by server, credentials and prefix.
+     */
+    private static final Cache<String, Collection<Time>> LISTINGS =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(Tv.TEN, TimeUnit.SECONDS)
+            .maximumSize((long) Tv.THOUSAND)
+            .build();
+
     /**
      * The work it is busy with at the moment.
      */
@@ -135,8 +153,16 @@ public final class DirectoryDrain implements Drain {
 
     @Override
     public Pageable<Time, Time> pulses() throws IOException {
-        return new Pageable.Array<Time>(
-            new FtpBatch(this.host, this.login, this.password, this.port).exec(
+        final String key = String.format(
+            "%s@%s:%d/%s/%s", this.login, this.host, this.port,
+            Hashing.md5().hashString(this.password, Charsets.UTF_8),
+            this.prefix()
+        );
+        Collection<Time> times = DirectoryDrain.LISTINGS.getIfPresent(key);
+        if (times == null) {
+            times = new FtpBatch(
+                this.host, this.login, this.password, this.port
+            ).exec(
                 new FtpBatch.Script<Collection<Time>>() {
                     @Override
                     public Collection<Time> exec(final FTPClient ftp)
@@ -145,8 +171,10 @@ public final class DirectoryDrain implements Drain {
                     }
                 },
                 this.prefix()
-            )
-        );
+            );
+            DirectoryDrain.LISTINGS.put(key, times);
+        }
+        return new Pageable.Array<Time>(times);
     }
 
     @Override
@@ -29,7 +29,6 @@
  */
 package com.rultor.drain.ftp;
 
-import com.google.common.collect.Lists;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.RetryOnFailure;
@@ -37,18 +36,21 @@ import com.jcabi.log.Logger;
 import com.rultor.spi.Drain;
 import com.rultor.spi.Pageable;
 import com.rultor.tools.Time;
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.SequenceInputStream;
+import java.io.Writer;
 import javax.validation.constraints.NotNull;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.CharEncoding;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 
@@ -151,7 +153,7 @@ public final class FileDrain implements Drain {
     }
 
     /**
-     * Append lines to FTP.
+     * Append lines to FTP, streaming them through {@code APPE}.
      * @param ftp FTP client
      * @param lines Lines to append
      * @throws IOException If some I/O problem inside
@@ -160,7 +162,28 @@ public final class FileDrain implements Drain {
     private void append(final FTPClient ftp, final Iterable<String> lines)
         throws IOException {
         final String name = FilenameUtils.getBaseName(this.file);
-        if (!ftp.appendFile(name, this.toStream(lines))) {
+        final OutputStream stream = ftp.appendFileStream(name);
+        if (stream == null) {
+            throw new IOException(
+                String.format(
+                    "failed to start appending to %s at %s because of '%s'",
+                    this.file, this.batch,
+                    ftp.getReplyString().trim()
+                )
+            );
+        }
+        final Writer writer = new BufferedWriter(
+            new OutputStreamWriter(stream, CharEncoding.UTF_8)
+        );
+        try {
+            for (final String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        if (!ftp.completePendingCommand()) {
             throw new IOException(
                 String.format(
                     "failed to append to %s at %s because of '%s'",
@@ -202,20 +225,4 @@ public final class FileDrain implements Drain {
         return new ByteArrayInputStream(baos.toByteArray());
     }
 
-    /**
-     * Convert lines to an input stream to append.
-     * @param lines Lines to pack
-     * @return Input stream
-     * @throws IOException If fails
-     */
-    private InputStream toStream(final Iterable<String> lines)
-        throws IOException {
-        return IOUtils.toInputStream(
-            new StringBuilder(
-                StringUtils.join(Lists.newLinkedList(lines), "\n")
-            ).append('\n'),
-            CharEncoding.UTF_8
-        );
-    }
-
 }
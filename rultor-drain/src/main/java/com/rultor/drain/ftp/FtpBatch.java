@@ -29,6 +29,8 @@
  */
 package com.rultor.drain.ftp;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.log.Logger;
@@ -46,7 +48,7 @@ import org.apache.commons.net.ftp.FTPFile;
 import org.apache.commons.net.ftp.FTPReply;
 
 /**
- * Batch execution through FTP.
+ * Batch execution through FTP, in a pooled session.
  *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
@@ -96,7 +98,11 @@ final class FtpBatch {
     }
 
     /**
-     * Execute it.
+     * Execute it, in a pooled session.
+     *
+     * <p>If the script fails with any exception, the session is not
+     * returned to the pool, since its state is unknown.
+     *
      * @param script Script to execute
      * @param dir Directory to go to first
      * @return Result
@@ -105,6 +111,38 @@ final class FtpBatch {
      */
     public <T> T exec(final FtpBatch.Script<T> script, final String dir)
         throws IOException {
+        final FtpSessions.Lease lease = FtpSessions.lease(
+            String.format(
+                "%s@%s:%d/%s", this.login, this.host, this.port,
+                Hashing.md5().hashString(this.password, Charsets.UTF_8)
+            ),
+            new FtpSessions.Connector() {
+                @Override
+                public FTPClient connect() throws IOException {
+                    return FtpBatch.this.connect();
+                }
+            }
+        );
+        boolean done = false;
+        try {
+            this.chdir(lease.session(), dir);
+            final T result = script.exec(lease.session().client());
+            done = true;
+            return result;
+        } finally {
+            if (!done) {
+                lease.fail();
+            }
+            lease.close();
+        }
+    }
+
+    /**
+     * Connect and login.
+     * @return Logged in client
+     * @throws IOException If fails in IO operation
+     */
+    private FTPClient connect() throws IOException {
         final FTPClient ftp = new FTPClient();
         ftp.setControlKeepAliveTimeout(TimeUnit.MINUTES.toSeconds(1));
         ftp.setRemoteVerificationEnabled(false);
@@ -130,7 +168,7 @@ final class FtpBatch {
             }
             Logger.debug(
                 this,
-                "#exec(..): connected to ftp://%s:%d",
+                "#connect(): connected to ftp://%s:%d",
                 this.host, this.port
             );
             if (!ftp.login(this.login, this.password)) {
@@ -144,38 +182,55 @@ final class FtpBatch {
             }
             Logger.debug(
                 this,
-                "#exec(..): authenticated as '%s'",
+                "#connect(): authenticated as '%s'",
                 this.login
             );
-            try {
-                ftp.enterLocalPassiveMode();
-                this.chdir(ftp, dir);
-                return script.exec(ftp);
-            } finally {
-                ftp.logout();
-                Logger.debug(
-                    this,
-                    "#exec(..): logged out from ftp://%s:%d",
-                    this.host, this.port
+            ftp.enterLocalPassiveMode();
+        } catch (final IOException ex) {
+            ftp.disconnect();
+            throw ex;
+        }
+        return ftp;
+    }
+
+    /**
+     * CHDIR to the directory, creating it if necessary.
+     * @param session FTP session
+     * @param dir The directory, relative to home
+     * @throws IOException If IO problem inside
+     */
+    private void chdir(final FtpSessions.Session session, final String dir)
+        throws IOException {
+        final FTPClient ftp = session.client();
+        final String path = String.format(
+            "%s/%s", StringUtils.removeEnd(session.home(), "/"),
+            StringUtils.strip(dir, "/")
+        );
+        if (session.known(dir) && ftp.changeWorkingDirectory(path)) {
+            Logger.debug(this, "#chdir(..): changed current DIR to %s", path);
+        } else {
+            session.remember(null);
+            if (!ftp.changeWorkingDirectory(session.home())) {
+                throw new IOException(
+                    String.format(
+                        "failed to change dir to '%s' because of '%s'",
+                        session.home(),
+                        ftp.getReplyString().trim()
+                    )
                 );
             }
-        } finally {
-            ftp.disconnect();
-            Logger.debug(
-                this,
-                "#exec(..): disconnected ftp://%s:%d",
-                this.host, this.port
-            );
+            this.walk(ftp, dir);
+            session.remember(dir);
         }
     }
 
     /**
-     * CHDIR to the directory.
+     * Walk to the directory, step by step, creating it if necessary.
      * @param ftp FTP client
      * @param dir The directory
      * @throws IOException If IO problem inside
      */
-    private void chdir(final FTPClient ftp, final String dir)
+    private void walk(final FTPClient ftp, final String dir)
         throws IOException {
         for (final String part : StringUtils.split(dir, '/')) {
             if (!this.exists(ftp, part) && !ftp.makeDirectory(part)) {
@@ -197,7 +252,7 @@ final class FtpBatch {
                 );
             }
         }
-        Logger.debug(this, "#chdir(..): changed current DIR to %s", dir);
+        Logger.debug(this, "#walk(..): changed current DIR to %s", dir);
     }
 
     /**
@@ -0,0 +1,381 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain.ftp;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.ScheduleWithFixedDelay;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * Pool of logged in FTP sessions, by server and credentials.
+ *
+ * <p>Up to {@link #SESSIONS} sessions are open to one server at the same
+ * time. A session idle for more than {@link #NOOP} is checked with
+ * {@code NOOP} before it is leased again, and the one idle for more
+ * than {@link #IDLE} is logged out in background. Every session
+ * remembers directories it has already seen, to avoid listing and
+ * creating them again.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ */
+@ToString
+@EqualsAndHashCode
+final class FtpSessions {
+
+    /**
+     * Maximum number of sessions to one server.
+     */
+    private static final int SESSIONS = Tv.THREE;
+
+    /**
+     * How long a session may be idle before a NOOP check,
+     * in milliseconds.
+     */
+    private static final long NOOP = TimeUnit.SECONDS.toMillis(Tv.THIRTY);
+
+    /**
+     * How long an idle session stays open, in milliseconds.
+     */
+    private static final long IDLE = TimeUnit.MINUTES.toMillis(Tv.FIVE);
+
+    /**
+     * All pools, by their names.
+     */
+    private static final ConcurrentMap<String, FtpSessions.Pool> POOLS =
+        new ConcurrentHashMap<String, FtpSessions.Pool>(0);
+
+    /**
+     * Cleaner of idle sessions.
+     */
+    private static final Runnable CLEANER = new FtpSessions.Cleaner();
+
+    /**
+     * Utility class.
+     */
+    private FtpSessions() {
+        // intentionally empty
+    }
+
+    /**
+     * Connector of new sessions.
+     */
+    interface Connector {
+        /**
+         * Open new connected and logged in client.
+         * @return The client
+         * @throws IOException If fails
+         */
+        FTPClient connect() throws IOException;
+    }
+
+    /**
+     * Lease a session, waiting for it if all sessions are busy.
+     * @param name Unique name of server and credentials
+     * @param connector Connector to use if there is no idle session
+     * @return Lease, which has to be closed after use
+     * @throws IOException If fails
+     */
+    public static FtpSessions.Lease lease(final String name,
+        final FtpSessions.Connector connector) throws IOException {
+        FtpSessions.POOLS.putIfAbsent(name, new FtpSessions.Pool());
+        final FtpSessions.Pool pool = FtpSessions.POOLS.get(name);
+        try {
+            pool.permits.acquire();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+        try {
+            FtpSessions.Session session = pool.idle.pollFirst();
+            if (session != null && !session.alive()) {
+                session.close();
+                session = null;
+            }
+            if (session == null) {
+                session = new FtpSessions.Session(connector.connect());
+            }
+            return new FtpSessions.Lease(pool, session);
+        } catch (final IOException ex) {
+            pool.permits.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Session in use.
+     */
+    @ToString
+    @EqualsAndHashCode(of = "session")
+    static final class Lease {
+        /**
+         * Pool of the session.
+         */
+        private final transient FtpSessions.Pool pool;
+        /**
+         * The session.
+         */
+        private final transient FtpSessions.Session session;
+        /**
+         * Is it broken?
+         */
+        private transient boolean broken;
+        /**
+         * Is it closed already?
+         */
+        private transient boolean closed;
+        /**
+         * Ctor.
+         * @param pol Pool
+         * @param ssn Session
+         */
+        Lease(final FtpSessions.Pool pol, final FtpSessions.Session ssn) {
+            this.pool = pol;
+            this.session = ssn;
+        }
+        /**
+         * Get the session.
+         * @return Session
+         */
+        public FtpSessions.Session session() {
+            return this.session;
+        }
+        /**
+         * Report that the session is broken, it will not be used again.
+         */
+        public void fail() {
+            this.broken = true;
+        }
+        /**
+         * Return the session to the pool.
+         */
+        public void close() {
+            if (!this.closed) {
+                this.closed = true;
+                if (this.broken) {
+                    this.session.close();
+                } else {
+                    this.session.touch();
+                    this.pool.idle.offerFirst(this.session);
+                }
+                this.pool.permits.release();
+            }
+        }
+    }
+
+    /**
+     * Logged in session.
+     */
+    @ToString(of = "home")
+    @EqualsAndHashCode(of = "ftp")
+    static final class Session {
+        /**
+         * The client.
+         */
+        private final transient FTPClient ftp;
+        /**
+         * Home directory.
+         */
+        private final transient String home;
+        /**
+         * Directories known to exist, relative to home.
+         */
+        private final transient Set<String> dirs =
+            Collections.newSetFromMap(
+                new ConcurrentHashMap<String, Boolean>(0)
+            );
+        /**
+         * When it was used last time.
+         */
+        private transient volatile long used = System.currentTimeMillis();
+        /**
+         * Ctor.
+         * @param client Connected and logged in client
+         * @throws IOException If fails
+         */
+        Session(final FTPClient client) throws IOException {
+            this.ftp = client;
+            this.home = client.printWorkingDirectory();
+            if (this.home == null) {
+                throw new IOException(
+                    String.format(
+                        "failed to get current directory because of '%s'",
+                        client.getReplyString().trim()
+                    )
+                );
+            }
+        }
+        /**
+         * Get the client.
+         * @return FTP client
+         */
+        public FTPClient client() {
+            return this.ftp;
+        }
+        /**
+         * Home directory, where the session started.
+         * @return Absolute path
+         */
+        public String home() {
+            return this.home;
+        }
+        /**
+         * Directory is known to exist?
+         * @param dir Directory, relative to home
+         * @return TRUE if it was seen already
+         */
+        public boolean known(final String dir) {
+            return this.dirs.contains(dir);
+        }
+        /**
+         * Remember that directory exists (or forget all, if NULL).
+         * @param dir Directory, relative to home, or NULL
+         */
+        public void remember(final String dir) {
+            if (dir == null) {
+                this.dirs.clear();
+            } else {
+                this.dirs.add(dir);
+            }
+        }
+        /**
+         * Mark it as used now.
+         */
+        public void touch() {
+            this.used = System.currentTimeMillis();
+        }
+        /**
+         * Is it still alive?
+         * @return TRUE if connected and answering
+         */
+        public boolean alive() {
+            boolean alive = this.ftp.isConnected();
+            if (alive
+                && System.currentTimeMillis() - this.used > FtpSessions.NOOP) {
+                try {
+                    alive = this.ftp.sendNoOp();
+                } catch (final IOException ex) {
+                    alive = false;
+                }
+            }
+            return alive;
+        }
+        /**
+         * Is it idle for too long?
+         * @return TRUE if it has to be closed
+         */
+        public boolean expired() {
+            return System.currentTimeMillis() - this.used > FtpSessions.IDLE;
+        }
+        /**
+         * Log out and disconnect, ignoring errors.
+         */
+        public void close() {
+            try {
+                if (this.ftp.isConnected()) {
+                    this.ftp.logout();
+                }
+            } catch (final IOException ex) {
+                Logger.debug(this, "#close(): %s", ex.getMessage());
+            }
+            try {
+                this.ftp.disconnect();
+            } catch (final IOException ex) {
+                Logger.debug(this, "#close(): %s", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sessions of a server.
+     */
+    @ToString
+    @EqualsAndHashCode(of = "permits")
+    private static final class Pool {
+        /**
+         * Free sessions.
+         */
+        private final transient Semaphore permits =
+            new Semaphore(FtpSessions.SESSIONS, true);
+        /**
+         * Idle sessions, most recently used first.
+         */
+        private final transient BlockingDeque<FtpSessions.Session> idle =
+            new LinkedBlockingDeque<FtpSessions.Session>();
+        /**
+         * Close sessions that nobody uses for a long time.
+         */
+        public void evict() {
+            for (final FtpSessions.Session session : this.idle) {
+                if (session.expired() && this.idle.remove(session)) {
+                    Logger.info(this, "Closing idle FTP session %s", session);
+                    session.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cleaner of idle sessions.
+     */
+    @ToString
+    @Immutable
+    @EqualsAndHashCode
+    @ScheduleWithFixedDelay(
+        delay = 1, unit = TimeUnit.MINUTES,
+        await = 1, awaitUnit = TimeUnit.MINUTES,
+        shutdownAttempts = Tv.FIVE
+    )
+    private static final class Cleaner implements Runnable {
+        @Override
+        public void run() {
+            for (final Map.Entry<String, FtpSessions.Pool> entry
+                : FtpSessions.POOLS.entrySet()) {
+                entry.getValue().evict();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,563 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import com.jcabi.log.VerboseRunnable;
+import com.jcabi.log.VerboseThreads;
+import com.rultor.aws.S3Client;
+import com.rultor.spi.Drain;
+import com.rultor.spi.Pageable;
+import com.rultor.tools.Time;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.core.MediaType;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Drain in a single S3 object, appended by small immutable parts.
+ *
+ * <p>Unlike {@link ObjectDrain}, which downloads and re-uploads the entire
+ * object on every append, this drain writes every batch of lines into
+ * a new small S3 object, named <code>name.parts/time-seq.txt</code>.
+ * {@link #read()} stitches the main object and all parts together,
+ * downloading them lazily one by one. {@link #close()} merges all parts
+ * into the main object, it is called by
+ * {@link com.rultor.log4j.ThreadGroupSpy} when the pulse is finished
+ * (through all drains that wrap this one).
+ *
+ * <p>The main object knows the name of the last part merged into it,
+ * in its user metadata, and {@link #read()} skips parts merged already.
+ * Merged parts are deleted only when they are older than ten minutes,
+ * by a background task a few minutes after compaction or by the next
+ * compaction, so that a concurrent {@link #read()}, which may have
+ * listed them before, still finds them.
+ *
+ * <p>The drain is a drop-in replacement of {@link ObjectDrain}:
+ *
+ * <pre> com.rultor.drain.s3.SegmentedDrain(
+ *   com.rultor.aws.S3Client.Simple("key", "secret", "bucket"),
+ *   "logs/nightly-build.txt"
+ * )</pre>
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+@Immutable
+@ToString
+@EqualsAndHashCode(of = { "client", "key" })
+@Loggable(Loggable.DEBUG)
+@SuppressWarnings("PMD.TooManyMethods")
+public final class SegmentedDrain implements Drain, Closeable {
+
+    /**
+     * Suffix of the prefix of all parts.
+     */
+    private static final String SUFFIX = ".parts/";
+
+    /**
+     * Maximum number of keys S3 can delete in one request.
+     */
+    private static final int MAX_DELETE = 1000;
+
+    /**
+     * User metadata of the main object with the name of the last part
+     * merged into it.
+     */
+    private static final String MERGED = "merged";
+
+    /**
+     * Sequence of parts appended in this JVM.
+     */
+    private static final AtomicLong SEQ = new AtomicLong();
+
+    /**
+     * Deleter of merged parts, when their grace period is over.
+     */
+    private static final ScheduledExecutorService CLEANER =
+        Executors.newSingleThreadScheduledExecutor(
+            new VerboseThreads(SegmentedDrain.class)
+        );
+
+    /**
+     * S3 client.
+     */
+    private final transient S3Client client;
+
+    /**
+     * S3 object name.
+     */
+    private final transient String key;
+
+    /**
+     * How long merged parts are kept, in milliseconds.
+     */
+    private final transient long grace;
+
+    /**
+     * Public ctor.
+     * @param clnt S3 client
+     * @param name S3 object name
+     */
+    public SegmentedDrain(
+        @NotNull(message = "S3 client can't be NULL") final S3Client clnt,
+        @NotNull(message = "object name can't be NULL") final String name) {
+        this(clnt, name, TimeUnit.MINUTES.toMillis((long) Tv.TEN));
+    }
+
+    /**
+     * Ctor.
+     * @param clnt S3 client
+     * @param name S3 object name
+     * @param msec How long merged parts are kept, in milliseconds
+     */
+    SegmentedDrain(final S3Client clnt, final String name, final long msec) {
+        this.client = clnt;
+        Validate.matchesPattern(
+            name, "([^/]+/)*[^/]+", "invalid S3 object name '%s'", name
+        );
+        this.key = name;
+        this.grace = msec;
+    }
+
+    @Override
+    public Pageable<Time, Time> pulses() {
+        return new Pageable.Array<Time>();
+    }
+
+    @Override
+    public void append(final Iterable<String> lines) throws IOException {
+        final byte[] body = new StringBuilder(StringUtils.join(lines, "\n"))
+            .append('\n')
+            .toString()
+            .getBytes(CharEncoding.UTF_8);
+        final String part = String.format(
+            "%s%013d-%09d.txt",
+            this.prefix(),
+            System.currentTimeMillis(),
+            SegmentedDrain.SEQ.incrementAndGet() % Tv.BILLION
+        );
+        try {
+            this.client.get().putObject(
+                this.client.bucket(), part,
+                new ByteArrayInputStream(body),
+                SegmentedDrain.meta(body.length)
+            );
+        } catch (final AmazonS3Exception ex) {
+            throw new IOException(
+                String.format(
+                    "failed to append %d byte(s) to `%s` in `%s`: %s",
+                    body.length, part, this.client.bucket(), ex
+                ),
+                ex
+            );
+        }
+    }
+
+    @Override
+    public InputStream read() throws IOException {
+        final AmazonS3 aws = this.client.get();
+        final S3Object main;
+        final Collection<String> parts = new LinkedList<String>();
+        try {
+            main = this.main(aws);
+            final String merged = SegmentedDrain.merged(main);
+            for (final S3ObjectSummary part : this.parts(aws)) {
+                if (part.getKey().compareTo(merged) > 0) {
+                    parts.add(part.getKey());
+                }
+            }
+        } catch (final AmazonS3Exception ex) {
+            throw new IOException(
+                String.format(
+                    "failed to list %s in %s: %s",
+                    this.key, this.client.bucket(), ex
+                ),
+                ex
+            );
+        }
+        if (main == null && parts.isEmpty()) {
+            throw new IOException(
+                String.format(
+                    "S3 object %s not found in %s",
+                    this.key, this.client.bucket()
+                )
+            );
+        }
+        final InputStream head;
+        int objects = parts.size();
+        if (main == null) {
+            head = new ByteArrayInputStream(new byte[0]);
+        } else {
+            head = main.getObjectContent();
+            ++objects;
+        }
+        return new SequenceInputStream(
+            IOUtils.toInputStream(
+                String.format(
+                    "SegmentedDrain: key='%s', client='%s', objects=%d\n",
+                    this.key, this.client, objects
+                ),
+                CharEncoding.UTF_8
+            ),
+            new SequenceInputStream(
+                head,
+                new SequenceInputStream(
+                    new SegmentedDrain.Objects(
+                        aws, this.client.bucket(), parts.iterator()
+                    )
+                )
+            )
+        );
+    }
+
+    /**
+     * Merge all new parts into the main object.
+     *
+     * <p>Should be called when nobody appends to the drain any more,
+     * otherwise parts appended during compaction stay as they are
+     * and will be merged next time. Merged parts older than the grace
+     * period are deleted now, younger ones a bit later, in background.
+     *
+     * @throws IOException If fails
+     */
+    @Override
+    public void close() throws IOException {
+        final AmazonS3 aws = this.client.get();
+        try {
+            this.compact(aws);
+            if (this.clean(aws)) {
+                SegmentedDrain.CLEANER.schedule(
+                    new VerboseRunnable(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                SegmentedDrain.this.clean(
+                                    SegmentedDrain.this.client.get()
+                                );
+                            }
+                        },
+                        true, false
+                    ),
+                    this.grace, TimeUnit.MILLISECONDS
+                );
+            }
+        } catch (final AmazonS3Exception ex) {
+            throw new IOException(
+                String.format(
+                    "failed to compact %s in %s: %s",
+                    this.key, this.client.bucket(), ex
+                ),
+                ex
+            );
+        }
+    }
+
+    /**
+     * Merge parts that are not merged yet into the main object.
+     * @param aws AWS S3 client
+     */
+    private void compact(final AmazonS3 aws) {
+        final S3Object main = this.main(aws);
+        final String merged = SegmentedDrain.merged(main);
+        final List<String> fresh = new LinkedList<String>();
+        long size = 0L;
+        for (final S3ObjectSummary part : this.parts(aws)) {
+            if (part.getKey().compareTo(merged) > 0) {
+                fresh.add(part.getKey());
+                size += part.getSize();
+            }
+        }
+        final InputStream head;
+        if (main == null) {
+            head = new ByteArrayInputStream(new byte[0]);
+        } else {
+            head = main.getObjectContent();
+            size += main.getObjectMetadata().getContentLength();
+        }
+        try {
+            if (!fresh.isEmpty()) {
+                final ObjectMetadata meta = SegmentedDrain.meta(size);
+                meta.addUserMetadata(
+                    SegmentedDrain.MERGED, fresh.get(fresh.size() - 1)
+                );
+                aws.putObject(
+                    this.client.bucket(), this.key,
+                    new SequenceInputStream(
+                        head,
+                        new SequenceInputStream(
+                            new SegmentedDrain.Objects(
+                                aws, this.client.bucket(), fresh.iterator()
+                            )
+                        )
+                    ),
+                    meta
+                );
+                Logger.info(
+                    this,
+                    "`%s` compacted with %d new part(s) in S3, size is %s",
+                    this.key, fresh.size(),
+                    FileUtils.byteCountToDisplaySize(size)
+                );
+            }
+        } finally {
+            IOUtils.closeQuietly(head);
+        }
+    }
+
+    /**
+     * Delete parts merged into the main object and older than the
+     * grace period.
+     * @param aws AWS S3 client
+     * @return TRUE if some merged parts are still too young to be deleted
+     */
+    private boolean clean(final AmazonS3 aws) {
+        String merged = "";
+        if (this.exists(aws)) {
+            merged = SegmentedDrain.merged(
+                aws.getObjectMetadata(this.client.bucket(), this.key)
+            );
+        }
+        final long threshold = System.currentTimeMillis() - this.grace;
+        final List<String> old = new ArrayList<String>(0);
+        boolean young = false;
+        for (final S3ObjectSummary part : this.parts(aws)) {
+            final String name = part.getKey();
+            if (name.compareTo(merged) <= 0) {
+                if (this.time(name) <= threshold) {
+                    old.add(name);
+                } else {
+                    young = true;
+                }
+            }
+        }
+        for (int pos = 0; pos < old.size();
+            pos += SegmentedDrain.MAX_DELETE) {
+            aws.deleteObjects(
+                new DeleteObjectsRequest(this.client.bucket())
+                    .withKeys(
+                        old.subList(
+                            pos,
+                            Math.min(
+                                pos + SegmentedDrain.MAX_DELETE, old.size()
+                            )
+                        ).toArray(new String[old.size()])
+                    )
+            );
+        }
+        return young;
+    }
+
+    /**
+     * Get the main object, if it exists.
+     * @param aws AWS S3 client
+     * @return The object or NULL if it doesn't exist yet
+     */
+    private S3Object main(final AmazonS3 aws) {
+        S3Object main = null;
+        if (this.exists(aws)) {
+            main = aws.getObject(this.client.bucket(), this.key);
+        }
+        return main;
+    }
+
+    /**
+     * Main object exists?
+     * @param aws AWS S3 client
+     * @return TRUE if it exists
+     */
+    private boolean exists(final AmazonS3 aws) {
+        boolean exists = false;
+        for (final S3ObjectSummary sum : aws.listObjects(
+            this.client.bucket(), this.key).getObjectSummaries()) {
+            if (sum.getKey().equals(this.key)) {
+                exists = true;
+                break;
+            }
+        }
+        return exists;
+    }
+
+    /**
+     * When the part was appended.
+     * @param part Name of the part
+     * @return Time in milliseconds
+     */
+    private long time(final String part) {
+        final int start = this.prefix().length();
+        return Long.parseLong(part.substring(start, part.indexOf('-', start)));
+    }
+
+    /**
+     * Name of the last part merged into the main object.
+     * @param main The main object or NULL if it doesn't exist
+     * @return Name of the part or empty string if nothing was merged
+     */
+    private static String merged(final S3Object main) {
+        String merged = "";
+        if (main != null) {
+            merged = SegmentedDrain.merged(main.getObjectMetadata());
+        }
+        return merged;
+    }
+
+    /**
+     * Name of the last part merged into the main object.
+     * @param meta Metadata of the main object
+     * @return Name of the part or empty string if nothing was merged
+     */
+    private static String merged(final ObjectMetadata meta) {
+        String merged = meta.getUserMetadata().get(SegmentedDrain.MERGED);
+        if (merged == null) {
+            merged = "";
+        }
+        return merged;
+    }
+
+    /**
+     * List all parts, in the order of appending.
+     * @param aws AWS S3 client
+     * @return Parts
+     */
+    private List<S3ObjectSummary> parts(final AmazonS3 aws) {
+        final List<S3ObjectSummary> parts = new LinkedList<S3ObjectSummary>();
+        ObjectListing listing = aws.listObjects(
+            new ListObjectsRequest()
+                .withBucketName(this.client.bucket())
+                .withPrefix(this.prefix())
+        );
+        while (true) {
+            parts.addAll(listing.getObjectSummaries());
+            if (!listing.isTruncated()) {
+                break;
+            }
+            listing = aws.listNextBatchOfObjects(listing);
+        }
+        return parts;
+    }
+
+    /**
+     * Prefix of all parts.
+     * @return Prefix
+     */
+    private String prefix() {
+        return new StringBuilder(this.key)
+            .append(SegmentedDrain.SUFFIX)
+            .toString();
+    }
+
+    /**
+     * Make metadata of a text object.
+     * @param size Size of it, in bytes
+     * @return Metadata
+     */
+    private static ObjectMetadata meta(final long size) {
+        final ObjectMetadata meta = new ObjectMetadata();
+        meta.setContentEncoding(CharEncoding.UTF_8);
+        meta.setContentType(MediaType.TEXT_PLAIN);
+        meta.setContentLength(size);
+        return meta;
+    }
+
+    /**
+     * Lazy enumeration of S3 objects, each one is downloaded only
+     * when the previous one is fully read.
+     */
+    private static final class Objects implements Enumeration<InputStream> {
+        /**
+         * AWS S3 client, encapsulated in order not to loose HTTP
+         * connection while we're reading.
+         */
+        private final transient AmazonS3 aws;
+        /**
+         * Bucket name.
+         */
+        private final transient String bucket;
+        /**
+         * Keys to download.
+         */
+        private final transient Iterator<String> keys;
+        /**
+         * Public ctor.
+         * @param amazon AWS S3 client
+         * @param bkt Bucket name
+         * @param names Keys to download
+         */
+        Objects(final AmazonS3 amazon, final String bkt,
+            final Iterator<String> names) {
+            this.aws = amazon;
+            this.bucket = bkt;
+            this.keys = names;
+        }
+        @Override
+        public boolean hasMoreElements() {
+            return this.keys.hasNext();
+        }
+        @Override
+        public InputStream nextElement() {
+            return this.aws.getObject(this.bucket, this.keys.next())
+                .getObjectContent();
+        }
+    }
+
+}
@@ -38,6 +38,7 @@ import com.rultor.spi.Drain;
 import com.rultor.spi.Pageable;
 import com.rultor.stateful.Spinbox;
 import com.rultor.tools.Time;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
@@ -61,7 +62,7 @@ import org.xembly.Directives;
 @ToString
 @EqualsAndHashCode(of = { "delta", "spinbox", "origin" })
 @Loggable(Loggable.DEBUG)
-public final class LinesSensor implements Drain {
+public final class LinesSensor implements Drain, Closeable {
 
     /**
      * Delta.
@@ -118,6 +119,13 @@ public final class LinesSensor implements Drain {
         this.origin.append(lines);
     }
 
+    @Override
+    public void close() throws IOException {
+        if (this.origin instanceof Closeable) {
+            Closeable.class.cast(this.origin).close();
+        }
+    }
+
     @Override
     public InputStream read() throws IOException {
         return new SequenceInputStream(
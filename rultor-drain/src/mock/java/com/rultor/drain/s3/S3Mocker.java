@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.rultor.aws.S3Client;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Mocker of {@link S3Client}, which keeps all objects in a local directory.
+ *
+ * <p>Only the methods used by S3 drains are supported: object listing
+ * (with prefix, marker and max keys), putting, getting, getting metadata
+ * (including user metadata) and deleting objects. All other methods
+ * return NULL.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+public final class S3Mocker {
+
+    /**
+     * Directory with objects.
+     */
+    private final transient File dir;
+
+    /**
+     * User metadata of objects, by their keys.
+     */
+    private final transient ConcurrentMap<String, Map<String, String>> meta =
+        new ConcurrentHashMap<String, Map<String, String>>(0);
+
+    /**
+     * Public ctor.
+     * @param home Directory to keep objects in
+     */
+    public S3Mocker(final File home) {
+        this.dir = home;
+    }
+
+    /**
+     * Make a mocked S3 client.
+     * @return S3 client
+     */
+    public S3Client mock() {
+        final AmazonS3 aws = Mockito.mock(
+            AmazonS3.class,
+            new Answer<Object>() {
+                @Override
+                public Object answer(final InvocationOnMock inv)
+                    throws IOException {
+                    return S3Mocker.this.dispatch(inv);
+                }
+            }
+        );
+        final S3Client client = Mockito.mock(S3Client.class);
+        Mockito.doReturn(aws).when(client).get();
+        Mockito.doReturn("local-bucket").when(client).bucket();
+        return client;
+    }
+
+    /**
+     * Dispatch a call to AmazonS3.
+     * @param inv Invocation
+     * @return Result
+     * @throws IOException If fails
+     * @checkstyle CyclomaticComplexity (50 lines)
+     */
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private Object dispatch(final InvocationOnMock inv) throws IOException {
+        final String name = inv.getMethod().getName();
+        final Object[] args = inv.getArguments();
+        Object result = null;
+        if ("listObjects".equals(name)
+            && args[0] instanceof ListObjectsRequest) {
+            result = this.list(ListObjectsRequest.class.cast(args[0]));
+        } else if ("listObjects".equals(name)) {
+            result = this.list(
+                new ListObjectsRequest()
+                    .withBucketName(args[0].toString())
+                    .withPrefix(args[1].toString())
+            );
+        } else if ("listNextBatchOfObjects".equals(name)) {
+            final ObjectListing prev = ObjectListing.class.cast(args[0]);
+            result = this.list(
+                new ListObjectsRequest()
+                    .withBucketName(prev.getBucketName())
+                    .withPrefix(prev.getPrefix())
+                    .withMarker(prev.getNextMarker())
+                    .withMaxKeys(prev.getMaxKeys())
+            );
+        } else if ("putObject".equals(name) && args.length == 4) {
+            result = this.put(
+                args[1].toString(), InputStream.class.cast(args[2])
+            );
+            if (args[3] != null) {
+                this.meta.put(
+                    args[1].toString(),
+                    new HashMap<String, String>(
+                        ObjectMetadata.class.cast(args[3]).getUserMetadata()
+                    )
+                );
+            }
+        } else if ("getObject".equals(name) && args.length == 2) {
+            result = this.get(args[1].toString());
+        } else if ("getObjectMetadata".equals(name) && args.length == 2) {
+            final S3Object object = this.get(args[1].toString());
+            object.getObjectContent().close();
+            result = object.getObjectMetadata();
+        } else if ("deleteObject".equals(name)) {
+            FileUtils.forceDelete(this.file(args[1].toString()));
+        } else if ("deleteObjects".equals(name)) {
+            for (final DeleteObjectsRequest.KeyVersion ver
+                : DeleteObjectsRequest.class.cast(args[0]).getKeys()) {
+                FileUtils.forceDelete(this.file(ver.getKey()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * List objects.
+     * @param request Request
+     * @return Listing
+     */
+    private ObjectListing list(final ListObjectsRequest request) {
+        final List<String> keys = new LinkedList<String>();
+        final String prefix = request.getPrefix();
+        for (final File file : FileUtils.listFiles(this.dir, null, true)) {
+            final String key = this.key(file);
+            if ((prefix == null || key.startsWith(prefix))
+                && (request.getMarker() == null
+                || key.compareTo(request.getMarker()) > 0)) {
+                keys.add(key);
+            }
+        }
+        Collections.sort(keys);
+        int max = Integer.MAX_VALUE;
+        if (request.getMaxKeys() != null) {
+            max = request.getMaxKeys();
+        }
+        final ObjectListing listing = new ObjectListing();
+        listing.setBucketName(request.getBucketName());
+        listing.setPrefix(prefix);
+        listing.setMaxKeys(max);
+        listing.setMarker(request.getMarker());
+        final Collection<S3ObjectSummary> sums = listing.getObjectSummaries();
+        String last = null;
+        for (final String key : keys) {
+            if (sums.size() == max) {
+                listing.setTruncated(true);
+                listing.setNextMarker(last);
+                break;
+            }
+            last = key;
+            final S3ObjectSummary sum = new S3ObjectSummary();
+            sum.setBucketName(request.getBucketName());
+            sum.setKey(key);
+            sum.setSize(this.file(key).length());
+            sums.add(sum);
+        }
+        return listing;
+    }
+
+    /**
+     * Save object.
+     * @param key Key
+     * @param input Content
+     * @return Result
+     * @throws IOException If fails
+     */
+    private PutObjectResult put(final String key, final InputStream input)
+        throws IOException {
+        final File file = this.file(key);
+        FileUtils.forceMkdir(file.getParentFile());
+        final File temp = File.createTempFile("s3mock", ".tmp");
+        final OutputStream output = new FileOutputStream(temp);
+        try {
+            IOUtils.copy(input, output);
+        } finally {
+            output.close();
+            input.close();
+        }
+        FileUtils.deleteQuietly(file);
+        FileUtils.moveFile(temp, file);
+        final PutObjectResult result = new PutObjectResult();
+        result.setETag(Long.toString(file.lastModified()));
+        return result;
+    }
+
+    /**
+     * Load object.
+     * @param key Key
+     * @return Object
+     * @throws IOException If fails
+     */
+    private S3Object get(final String key) throws IOException {
+        final File file = this.file(key);
+        if (!file.exists()) {
+            throw new IOException(String.format("object %s not found", key));
+        }
+        final ObjectMetadata data = new ObjectMetadata();
+        data.setContentLength(file.length());
+        if (this.meta.containsKey(key)) {
+            data.setUserMetadata(this.meta.get(key));
+        }
+        final S3Object object = new S3Object();
+        object.setKey(key);
+        object.setObjectMetadata(data);
+        object.setObjectContent(new FileInputStream(file));
+        return object;
+    }
+
+    /**
+     * File of the key.
+     * @param key S3 key
+     * @return File
+     */
+    private File file(final String key) {
+        return new File(this.dir, key);
+    }
+
+    /**
+     * Key of the file.
+     * @param file File
+     * @return S3 key
+     */
+    private String key(final File file) {
+        return this.dir.toURI().relativize(file.toURI()).getPath();
+    }
+
+}
@@ -30,6 +30,7 @@
 package com.rultor.drain;
 
 import com.rultor.spi.Drain;
+import java.io.Closeable;
 import java.util.Arrays;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
@@ -73,4 +74,18 @@ public final class ASCIITest {
         );
     }
 
+    /**
+     * ASCII can close the drain it wraps.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void closesOriginDrain() throws Exception {
+        final Drain drain = Mockito.mock(
+            Drain.class,
+            Mockito.withSettings().extraInterfaces(Closeable.class)
+        );
+        new ASCII(drain).close();
+        Mockito.verify(Closeable.class.cast(drain)).close();
+    }
+
 }
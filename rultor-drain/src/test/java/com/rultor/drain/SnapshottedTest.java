@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain;
+
+import com.rultor.snapshot.XemblyLine;
+import com.rultor.spi.Drain;
+import java.util.Arrays;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.xembly.Directives;
+
+/**
+ * Test case for {@link Snapshotted}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ */
+public final class SnapshottedTest {
+
+    /**
+     * Snapshotted can send xembly lines to the sidecar.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void sendsXemblyLinesToSidecar() throws Exception {
+        final Drain main = Mockito.mock(Drain.class);
+        final Drain sidecar = Mockito.mock(Drain.class);
+        final Snapshotted drain = new Snapshotted(main, sidecar);
+        final String plain = "just a line of log";
+        final String xembly = new XemblyLine(
+            new Directives().xpath("/snapshot").add("test")
+        ).toString();
+        drain.append(Arrays.asList(plain, xembly));
+        Mockito.verify(main).append(
+            Mockito.argThat(Matchers.hasItems(plain, xembly))
+        );
+        Mockito.verify(sidecar).append(
+            Mockito.argThat(Matchers.hasItems(xembly))
+        );
+        Mockito.verify(sidecar, Mockito.never()).append(
+            Mockito.argThat(Matchers.hasItems(plain))
+        );
+        drain.append(Arrays.asList(plain));
+        Mockito.verify(sidecar, Mockito.times(1))
+            .append(Mockito.any(Iterable.class));
+    }
+
+    /**
+     * Snapshotted can read xembly from the sidecar only.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void readsXemblyFromSidecar() throws Exception {
+        final Drain main = Mockito.mock(Drain.class);
+        final Drain sidecar = Mockito.mock(Drain.class);
+        Mockito.doReturn(IOUtils.toInputStream("sidecar", CharEncoding.UTF_8))
+            .when(sidecar).read();
+        MatcherAssert.assertThat(
+            IOUtils.toString(
+                new Snapshotted(main, sidecar).xembly(), CharEncoding.UTF_8
+            ),
+            Matchers.equalTo("sidecar")
+        );
+        Mockito.verify(main, Mockito.never()).read();
+    }
+
+}
@@ -29,21 +29,41 @@
  */
 package com.rultor.drain;
 
-import com.google.common.util.concurrent.MoreExecutors;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.Timeable;
 import com.jcabi.aspects.Tv;
 import com.jcabi.http.Request;
+import com.jcabi.http.request.JdkRequest;
+import com.jcabi.log.Logger;
 import com.jcabi.urn.URN;
 import com.rultor.snapshot.XemblyLine;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Drain;
 import com.rultor.tools.Time;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.xembly.Directives;
@@ -148,31 +168,358 @@ public final class StandedTest {
         final Request client = Mockito.mock(Request.class);
         Mockito.doThrow(new IllegalStateException("failure!")).when(client)
             .header(Mockito.anyString(), Mockito.anyString());
-        new Callable<Void>() {
-            @Override
-            @Timeable(limit = Tv.FIVE, unit = TimeUnit.SECONDS)
-            @Loggable(Loggable.DEBUG)
-            public Void call() throws IOException {
-                StandedTest.this.standed(client).append(
-                    StandedTest.this.xemblies(1)
+        final StandSender sender = new StandSender(client, 1);
+        try {
+            new Callable<Void>() {
+                @Override
+                @Timeable(limit = Tv.FIVE, unit = TimeUnit.SECONDS)
+                @Loggable(Loggable.DEBUG)
+                public Void call() throws IOException {
+                    StandedTest.this.standed(sender).append(
+                        StandedTest.this.xemblies(1)
+                    );
+                    return null;
+                }
+            } .call();
+        } finally {
+            sender.close();
+        }
+        MatcherAssert.assertThat(sender.dropped(), Matchers.equalTo(1L));
+    }
+
+    /**
+     * Standed can send lines again when the queue rejects them.
+     * @throws Exception In case of error
+     */
+    @Test
+    public void resendsLinesRejectedByQueue() throws Exception {
+        final AtomicInteger lines = new AtomicInteger();
+        final HttpHandler counter = StandedTest.counter(lines, 0L);
+        final AtomicBoolean rejected = new AtomicBoolean();
+        final HttpServer server = StandedTest.server(
+            new HttpHandler() {
+                @Override
+                public void handle(final HttpExchange exchange)
+                    throws IOException {
+                    if (rejected.compareAndSet(false, true)) {
+                        exchange.sendResponseHeaders(
+                            HttpURLConnection.HTTP_UNAVAILABLE, -1
+                        );
+                        exchange.close();
+                    } else {
+                        counter.handle(exchange);
+                    }
+                }
+            }
+        );
+        final StandSender sender = StandedTest.sender(server);
+        try {
+            this.standed(sender).append(this.xemblies(Tv.FIVE));
+        } finally {
+            sender.close();
+            server.stop(0);
+        }
+        MatcherAssert.assertThat(rejected.get(), Matchers.is(true));
+        MatcherAssert.assertThat(lines.get(), Matchers.equalTo(Tv.FIVE));
+        MatcherAssert.assertThat(sender.dropped(), Matchers.equalTo(0L));
+    }
+
+    /**
+     * Standed can coalesce lines of many pulses into few requests.
+     * @throws Exception In case of error
+     */
+    @Test
+    public void coalescesLinesOfManyPulses() throws Exception {
+        final AtomicInteger lines = new AtomicInteger();
+        final HttpServer server = StandedTest.server(
+            StandedTest.counter(lines, 0L)
+        );
+        final StandSender sender = StandedTest.sender(server);
+        try {
+            final Collection<Standed> drains = new ArrayList<Standed>(0);
+            for (int idx = 0; idx < Tv.FIVE; ++idx) {
+                drains.add(
+                    new Standed(
+                        new Coordinates.Simple(
+                            new URN(), String.format("rule-%d", idx),
+                            new Time()
+                        ),
+                        "stand", "key", Mockito.mock(Drain.class), sender
+                    )
+                );
+            }
+            final int total = Tv.HUNDRED;
+            for (int idx = 0; idx < total / drains.size(); ++idx) {
+                for (final Standed drain : drains) {
+                    drain.append(this.xemblies(1));
+                }
+            }
+            while (lines.get() < total) {
+                TimeUnit.MILLISECONDS.sleep(Tv.TEN);
+            }
+            Logger.info(this, "%d appends: %s", total, sender);
+            MatcherAssert.assertThat(
+                sender.requests(),
+                Matchers.lessThanOrEqualTo((long) total / Tv.TEN)
+            );
+            MatcherAssert.assertThat(
+                sender.sent(), Matchers.lessThan((long) total)
+            );
+        } finally {
+            sender.close();
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Standed never waits for a slow queue, and sends everything on close.
+     * @throws Exception In case of error
+     */
+    @Test
+    public void neverWaitsForSlowQueue() throws Exception {
+        final AtomicInteger lines = new AtomicInteger();
+        final HttpServer server = StandedTest.server(
+            StandedTest.counter(lines, TimeUnit.SECONDS.toMillis(1L))
+        );
+        final int total = Tv.THOUSAND;
+        final StandSender sender = new StandSender(
+            StandedTest.request(server), 1, total / 2
+        );
+        try {
+            final Standed drain = new Standed(
+                new Coordinates.Simple(new URN(), "slow", new Time()),
+                "stand-slow", "key", Mockito.mock(Drain.class), sender
+            );
+            final long start = System.currentTimeMillis();
+            for (int idx = 0; idx < total; ++idx) {
+                drain.append(Arrays.asList(this.xembly()));
+            }
+            final long msec = System.currentTimeMillis() - start;
+            Logger.info(this, "%d appends in %[ms]s: %s", total, msec, sender);
+            MatcherAssert.assertThat(
+                msec, Matchers.lessThan(TimeUnit.SECONDS.toMillis(Tv.FIVE))
+            );
+            MatcherAssert.assertThat(lines.get(), Matchers.lessThan(total));
+        } finally {
+            sender.close();
+            server.stop(0);
+        }
+        MatcherAssert.assertThat(lines.get(), Matchers.equalTo(total));
+        MatcherAssert.assertThat(sender.dropped(), Matchers.equalTo(0L));
+    }
+
+    /**
+     * Standed can send spilled lines in order of their arrival.
+     * @throws Exception In case of error
+     */
+    @Test
+    public void sendsSpilledLinesInOrder() throws Exception {
+        final List<Integer> numbers =
+            Collections.synchronizedList(new LinkedList<Integer>());
+        final HttpServer server = StandedTest.server(
+            StandedTest.recorder(numbers)
+        );
+        final StandSender sender = new StandSender(
+            StandedTest.request(server), 1, Tv.TEN
+        );
+        final int total = Tv.HUNDRED;
+        final List<Integer> expected = new ArrayList<Integer>(total);
+        try {
+            final Standed drain = this.standed(sender);
+            for (int idx = 0; idx < total; ++idx) {
+                drain.append(
+                    Arrays.asList(
+                        new XemblyLine(
+                            new Directives().set(
+                                String.format("line-%d", idx)
+                            )
+                        ).toString()
+                    )
                 );
-                return null;
+                expected.add(idx);
+            }
+            while (numbers.size() < total) {
+                TimeUnit.MILLISECONDS.sleep(Tv.TEN);
+            }
+        } finally {
+            sender.close();
+            server.stop(0);
+        }
+        MatcherAssert.assertThat(numbers, Matchers.equalTo(expected));
+    }
+
+    /**
+     * Standed can pack lines of a pulse with their own nanos.
+     * @throws Exception In case of error
+     */
+    @Test
+    public void packsLinesWithTheirOwnNanos() throws Exception {
+        final Collection<String> bodies =
+            Collections.synchronizedList(new LinkedList<String>());
+        final HttpServer server = StandedTest.server(
+            new HttpHandler() {
+                @Override
+                public void handle(final HttpExchange exchange)
+                    throws IOException {
+                    bodies.add(
+                        URLDecoder.decode(
+                            IOUtils.toString(
+                                exchange.getRequestBody(), CharEncoding.UTF_8
+                            ),
+                            CharEncoding.UTF_8
+                        )
+                    );
+                    StandedTest.accept(exchange);
+                }
             }
-        } .call();
+        );
+        final StandSender sender = StandedTest.sender(server);
+        try {
+            this.standed(sender).append(this.xemblies(Tv.FIVE));
+        } finally {
+            sender.close();
+            server.stop(0);
+        }
+        final Collection<String> nanos = new HashSet<String>(0);
+        for (final String body : bodies) {
+            final Matcher matcher = Pattern.compile("\"nano\":(\\d+)")
+                .matcher(body);
+            while (matcher.find()) {
+                nanos.add(matcher.group(1));
+            }
+        }
+        MatcherAssert.assertThat(nanos.size(), Matchers.equalTo(Tv.FIVE));
+        MatcherAssert.assertThat(
+            sender.sent(), Matchers.lessThan((long) Tv.FIVE)
+        );
     }
 
     /**
      * Create instance of standed.
-     * @param client Request instance to use
+     * @param sender Sender to use
      * @return Standed instance
      */
-    private Standed standed(final Request client) {
+    private Standed standed(final StandSender sender) {
         return new Standed(
             new Coordinates.Simple(new URN(), "simple-rule", new Time()),
             "name", "pass",
             Mockito.mock(Drain.class),
-            client,
-            MoreExecutors.sameThreadExecutor()
+            sender
+        );
+    }
+
+    /**
+     * Start HTTP server imitating SQS.
+     * @param handler Handler of requests
+     * @return Server started
+     * @throws IOException If fails
+     */
+    private static HttpServer server(final HttpHandler handler)
+        throws IOException {
+        final HttpServer server = HttpServer.create(
+            new InetSocketAddress("127.0.0.1", 0), 0
+        );
+        server.createContext("/", handler);
+        server.start();
+        return server;
+    }
+
+    /**
+     * Handler that counts xembly lines and accepts them all.
+     * @param lines Counter of received xembly lines
+     * @param delay Delay of every response, in milliseconds
+     * @return Handler
+     */
+    private static HttpHandler counter(final AtomicInteger lines,
+        final long delay) {
+        return new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange)
+                throws IOException {
+                final Matcher matcher = Pattern.compile("\\bline\\b")
+                    .matcher(
+                        URLDecoder.decode(
+                            IOUtils.toString(
+                                exchange.getRequestBody(), CharEncoding.UTF_8
+                            ),
+                            CharEncoding.UTF_8
+                        )
+                    );
+                while (matcher.find()) {
+                    lines.incrementAndGet();
+                }
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(ex);
+                }
+                StandedTest.accept(exchange);
+            }
+        };
+    }
+
+    /**
+     * Handler that records numbers of "line-N" xembly lines, in order.
+     * @param numbers Numbers received
+     * @return Handler
+     */
+    private static HttpHandler recorder(final Collection<Integer> numbers) {
+        return new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange)
+                throws IOException {
+                final Matcher matcher = Pattern.compile("line-(\\d+)")
+                    .matcher(
+                        URLDecoder.decode(
+                            IOUtils.toString(
+                                exchange.getRequestBody(), CharEncoding.UTF_8
+                            ),
+                            CharEncoding.UTF_8
+                        )
+                    );
+                while (matcher.find()) {
+                    numbers.add(Integer.valueOf(matcher.group(1)));
+                }
+                StandedTest.accept(exchange);
+            }
+        };
+    }
+
+    /**
+     * Respond to SQS request with success.
+     * @param exchange The exchange
+     * @throws IOException If fails
+     */
+    private static void accept(final HttpExchange exchange)
+        throws IOException {
+        final byte[] xml = "<SendMessageBatchResponse/>"
+            .getBytes(CharEncoding.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/xml");
+        exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, xml.length);
+        exchange.getResponseBody().write(xml);
+        exchange.close();
+    }
+
+    /**
+     * Create sender posting to the server.
+     * @param server The server
+     * @return Sender
+     */
+    private static StandSender sender(final HttpServer server) {
+        return new StandSender(StandedTest.request(server), Tv.FOUR);
+    }
+
+    /**
+     * Create request to the server.
+     * @param server The server
+     * @return Request
+     */
+    private static Request request(final HttpServer server) {
+        return new JdkRequest(
+            String.format(
+                "http://127.0.0.1:%d/", server.getAddress().getPort()
+            )
         );
     }
 
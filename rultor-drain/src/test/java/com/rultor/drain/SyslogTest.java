@@ -0,0 +1,196 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain;
+
+import com.jcabi.aspects.Tv;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.Charsets;
+import org.apache.commons.io.IOUtils;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link Syslog}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ */
+public final class SyslogTest {
+
+    /**
+     * Syslog can send lines in UDP datagrams, through one socket.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sendsLinesInDatagrams() throws Exception {
+        final DatagramSocket server = new DatagramSocket(
+            0, InetAddress.getByName("127.0.0.1")
+        );
+        try {
+            server.setSoTimeout((int) TimeUnit.SECONDS.toMillis(Tv.FIVE));
+            new Syslog("127.0.0.1", server.getLocalPort(), Tv.TEN).append(
+                Arrays.asList("first \u20ac", "second")
+            );
+            final byte[] data = new byte[Tv.THOUSAND];
+            final DatagramPacket first = new DatagramPacket(data, data.length);
+            server.receive(first);
+            MatcherAssert.assertThat(
+                new String(data, 0, first.getLength(), Charsets.UTF_8),
+                Matchers.equalTo("<10>1 - - - - - - \uFEFFfirst \u20ac")
+            );
+            final DatagramPacket second =
+                new DatagramPacket(data, data.length);
+            server.receive(second);
+            MatcherAssert.assertThat(
+                second.getPort(), Matchers.equalTo(first.getPort())
+            );
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * SyslogChannel can send lines through the cached channel when it
+     * is closed already, without opening a socket again.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sendsThroughCacheWhenClosed() throws Exception {
+        final DatagramSocket server = new DatagramSocket(
+            0, InetAddress.getByName("127.0.0.1")
+        );
+        try {
+            server.setSoTimeout((int) TimeUnit.SECONDS.toMillis(Tv.FIVE));
+            final SyslogChannel closed = SyslogChannel.get(
+                false, "127.0.0.1", server.getLocalPort()
+            );
+            closed.close();
+            closed.send(Tv.TEN, Arrays.asList("after close"));
+            final byte[] data = new byte[Tv.THOUSAND];
+            final DatagramPacket packet =
+                new DatagramPacket(data, data.length);
+            server.receive(packet);
+            MatcherAssert.assertThat(
+                new String(data, 0, packet.getLength(), Charsets.UTF_8),
+                Matchers.endsWith("after close")
+            );
+            MatcherAssert.assertThat(
+                SyslogChannel.get(false, "127.0.0.1", server.getLocalPort()),
+                Matchers.not(Matchers.sameInstance(closed))
+            );
+        } finally {
+            server.close();
+        }
+    }
+
+    /**
+     * Syslog can send lines in octet-counted TCP frames.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sendsLinesInTcpFrames() throws Exception {
+        final ServerSocket server = new ServerSocket(
+            0, 1, InetAddress.getByName("127.0.0.1")
+        );
+        final ExecutorService exec = Executors.newSingleThreadExecutor();
+        try {
+            final Future<String> received = exec.submit(
+                new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        final Socket socket = server.accept();
+                        try {
+                            return IOUtils.toString(
+                                socket.getInputStream(), Charsets.UTF_8
+                            );
+                        } finally {
+                            socket.close();
+                        }
+                    }
+                }
+            );
+            final Syslog syslog = new Syslog(
+                "127.0.0.1", server.getLocalPort(), Tv.TEN, "tcp"
+            );
+            syslog.append(Arrays.asList("alpha", "beta \u20ac"));
+            syslog.append(Arrays.asList("gamma"));
+            SyslogChannel.get(true, "127.0.0.1", server.getLocalPort())
+                .close();
+            MatcherAssert.assertThat(
+                received.get(Tv.FIVE, TimeUnit.SECONDS),
+                Matchers.equalTo(
+                    // @checkstyle LineLength (1 line)
+                    "26 <10>1 - - - - - - \uFEFFalpha29 <10>1 - - - - - - \uFEFFbeta \u20ac26 <10>1 - - - - - - \uFEFFgamma"
+                )
+            );
+        } finally {
+            exec.shutdown();
+            server.close();
+        }
+    }
+
+    /**
+     * Syslog can fail fast when TCP server is down.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void failsFastWhenTcpServerIsDown() throws Exception {
+        final ServerSocket server = new ServerSocket(
+            0, 1, InetAddress.getByName("127.0.0.1")
+        );
+        final int port = server.getLocalPort();
+        server.close();
+        final Syslog syslog = new Syslog("127.0.0.1", port, Tv.TEN, "tcp");
+        int failures = 0;
+        for (int attempt = 0; attempt < 2; ++attempt) {
+            try {
+                syslog.append(Arrays.asList("lost"));
+            } catch (final IOException ex) {
+                MatcherAssert.assertThat(
+                    ex.getMessage(), Matchers.containsString("recently")
+                );
+                ++failures;
+            }
+        }
+        MatcherAssert.assertThat(failures, Matchers.equalTo(2));
+    }
+
+}
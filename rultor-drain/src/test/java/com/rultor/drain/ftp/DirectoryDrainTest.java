@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain.ftp;
+
+import com.jcabi.aspects.Tv;
+import com.jcabi.urn.URN;
+import com.rultor.spi.Coordinates;
+import com.rultor.spi.Drain;
+import com.rultor.tools.Time;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockftpserver.core.command.Command;
+import org.mockftpserver.core.command.CommandNames;
+import org.mockftpserver.core.session.Session;
+import org.mockftpserver.fake.FakeFtpServer;
+import org.mockftpserver.fake.UserAccount;
+import org.mockftpserver.fake.command.PassCommandHandler;
+import org.mockftpserver.fake.filesystem.DirectoryEntry;
+import org.mockftpserver.fake.filesystem.FileSystem;
+import org.mockftpserver.fake.filesystem.UnixFakeFileSystem;
+
+/**
+ * Test case for {@link DirectoryDrain}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+public final class DirectoryDrainTest {
+
+    /**
+     * DirectoryDrain can append and read through one FTP session.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void appendsThroughOneSession() throws Exception {
+        final AtomicInteger logins = new AtomicInteger();
+        final FakeFtpServer server = DirectoryDrainTest.server(logins);
+        try {
+            final Coordinates work = new Coordinates.Simple(
+                new URN("urn:test:1"), "some-rule", new Time(1)
+            );
+            final Drain drain = new DirectoryDrain(
+                work, "127.0.0.1", "rultor", "secret",
+                server.getServerControlPort(), "logs/drain"
+            );
+            for (int idx = 0; idx < Tv.TWENTY; ++idx) {
+                drain.append(
+                    Arrays.asList(String.format("line #%d \u20ac", idx), "")
+                );
+            }
+            MatcherAssert.assertThat(
+                IOUtils.toString(drain.read(), CharEncoding.UTF_8),
+                Matchers.allOf(
+                    Matchers.containsString("line #0 \u20ac\n\nline #1"),
+                    Matchers.containsString("line #19 \u20ac\n")
+                )
+            );
+            MatcherAssert.assertThat(
+                drain.pulses(), Matchers.hasItem(work.scheduled())
+            );
+            MatcherAssert.assertThat(logins.get(), Matchers.equalTo(1));
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Start FTP server.
+     * @param logins Counter of logins
+     * @return Server started
+     * @throws Exception If fails
+     */
+    static FakeFtpServer server(final AtomicInteger logins)
+        throws Exception {
+        final FakeFtpServer server = new FakeFtpServer();
+        server.setServerControlPort(0);
+        server.addUserAccount(new UserAccount("rultor", "secret", "/home"));
+        final FileSystem files = new UnixFakeFileSystem();
+        files.add(new DirectoryEntry("/home"));
+        server.setFileSystem(files);
+        server.setCommandHandler(
+            CommandNames.PASS,
+            new PassCommandHandler() {
+                @Override
+                protected void handle(final Command command,
+                    final Session session) {
+                    logins.incrementAndGet();
+                    super.handle(command, session);
+                }
+            }
+        );
+        server.start();
+        while (!server.isStarted()) {
+            TimeUnit.MILLISECONDS.sleep(Tv.TEN);
+        }
+        return server;
+    }
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain.ftp;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.net.ftp.FTPClient;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockftpserver.fake.FakeFtpServer;
+
+/**
+ * Test case for {@link FtpBatch}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ */
+public final class FtpBatchTest {
+
+    /**
+     * FtpBatch can drop a session after a runtime exception in a script.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void dropsSessionAfterRuntimeException() throws Exception {
+        final AtomicInteger logins = new AtomicInteger();
+        final FakeFtpServer server = DirectoryDrainTest.server(logins);
+        try {
+            final FtpBatch batch = new FtpBatch(
+                "127.0.0.1", "rultor", "secret",
+                server.getServerControlPort()
+            );
+            try {
+                batch.exec(
+                    new FtpBatch.Script<Void>() {
+                        @Override
+                        public Void exec(final FTPClient ftp) {
+                            throw new IllegalStateException("broken reply");
+                        }
+                    },
+                    "logs"
+                );
+            } catch (final IllegalStateException ex) {
+                assert ex != null;
+            }
+            MatcherAssert.assertThat(
+                batch.exec(
+                    new FtpBatch.Script<String>() {
+                        @Override
+                        public String exec(final FTPClient ftp)
+                            throws IOException {
+                            return ftp.printWorkingDirectory();
+                        }
+                    },
+                    "logs"
+                ),
+                Matchers.equalTo("/home/logs")
+            );
+            MatcherAssert.assertThat(logins.get(), Matchers.equalTo(2));
+        } finally {
+            server.stop();
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.drain.s3;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsRequest;
+import com.google.common.io.Files;
+import com.jcabi.aspects.Tv;
+import com.rultor.aws.S3Client;
+import com.rultor.spi.Drain;
+import java.io.InputStream;
+import java.util.Arrays;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link SegmentedDrain}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ */
+public final class SegmentedDrainTest {
+
+    /**
+     * SegmentedDrain can append and read lines.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void appendsAndReadsLines() throws Exception {
+        final S3Client client = new S3Mocker(Files.createTempDir()).mock();
+        final Drain drain = new SegmentedDrain(client, "logs/a.txt");
+        for (int idx = 0; idx < Tv.TWENTY; ++idx) {
+            drain.append(Arrays.asList(String.format("line #%d €", idx)));
+        }
+        final String log = IOUtils.toString(drain.read(), CharEncoding.UTF_8);
+        MatcherAssert.assertThat(
+            log,
+            Matchers.allOf(
+                Matchers.containsString("line #0 €\nline #1 €\n"),
+                Matchers.containsString("line #18 €\nline #19 €\n")
+            )
+        );
+    }
+
+    /**
+     * SegmentedDrain can compact parts into one object.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void compactsPartsIntoOneObject() throws Exception {
+        final S3Client client = new S3Mocker(Files.createTempDir()).mock();
+        final SegmentedDrain drain = new SegmentedDrain(client, "b.txt", 0L);
+        drain.append(Arrays.asList("first", "second"));
+        drain.append(Arrays.asList("third"));
+        drain.close();
+        drain.append(Arrays.asList("fourth"));
+        drain.close();
+        final AmazonS3 aws = client.get();
+        MatcherAssert.assertThat(
+            aws.listObjects(
+                new ListObjectsRequest().withBucketName(client.bucket())
+            ).getObjectSummaries(),
+            Matchers.hasSize(1)
+        );
+        MatcherAssert.assertThat(
+            IOUtils.toString(
+                aws.getObject(client.bucket(), "b.txt").getObjectContent(),
+                CharEncoding.UTF_8
+            ),
+            Matchers.equalTo("first\nsecond\nthird\nfourth\n")
+        );
+        MatcherAssert.assertThat(
+            IOUtils.toString(drain.read(), CharEncoding.UTF_8),
+            Matchers.endsWith("objects=1\nfirst\nsecond\nthird\nfourth\n")
+        );
+    }
+
+    /**
+     * SegmentedDrain can keep merged parts for a reader that listed them
+     * before compaction, and skip them in later reads.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void keepsMergedPartsForConcurrentReader() throws Exception {
+        final S3Client client = new S3Mocker(Files.createTempDir()).mock();
+        final SegmentedDrain drain = new SegmentedDrain(client, "c.txt");
+        drain.append(Arrays.asList("alpha"));
+        drain.close();
+        drain.append(Arrays.asList("beta"));
+        drain.append(Arrays.asList("gamma"));
+        final InputStream before = drain.read();
+        drain.close();
+        MatcherAssert.assertThat(
+            IOUtils.toString(before, CharEncoding.UTF_8),
+            Matchers.endsWith("objects=3\nalpha\nbeta\ngamma\n")
+        );
+        MatcherAssert.assertThat(
+            IOUtils.toString(drain.read(), CharEncoding.UTF_8),
+            Matchers.endsWith("objects=1\nalpha\nbeta\ngamma\n")
+        );
+    }
+
+}
@@ -30,15 +30,21 @@
 package com.rultor.queue;
 
 import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
 import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
 import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
-import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.RetryOnFailure;
 import com.jcabi.aspects.Tv;
@@ -50,8 +56,16 @@ import com.rultor.spi.Queue;
 import com.rultor.tools.Exceptions;
 import com.rultor.tools.NormJson;
 import com.rultor.tools.Time;
+import java.io.Closeable;
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.stream.JsonGenerator;
@@ -62,17 +76,23 @@ import lombok.ToString;
 /**
  * Queue in Amazon SQS.
  *
+ * <p>One AWS client is used for the entire life of the object, until
+ * {@link #close()}. Works are received in batches of up to ten messages,
+ * with long polling, by one thread at a time, into a prefetch buffer
+ * shared by all threads calling {@link #pull(int,TimeUnit)}. Received
+ * messages are deleted from SQS right after receiving, with one batch
+ * request. Works left in the buffer are sent back to SQS on close.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
  * @checkstyle ClassDataAbstractionCoupling (500 lines)
  */
-@Immutable
-@ToString
+@ToString(of = "client")
 @EqualsAndHashCode(of = "client")
 @Loggable(Loggable.DEBUG)
 @SuppressWarnings("PMD.ExcessiveImports")
-public final class SQSQueue implements Queue {
+public final class SQSQueue implements Queue, Closeable {
 
     /**
      * JSON schema-based reader.
@@ -101,14 +121,30 @@ public final class SQSQueue implements Queue {
      */
     private final transient SQSClient client;
 
+    /**
+     * AWS client, used until close.
+     */
+    private final transient AmazonSQS aws;
+
+    /**
+     * Works received from SQS, but not pulled yet.
+     */
+    private final transient BlockingQueue<Coordinates> prefetched =
+        new LinkedBlockingQueue<Coordinates>();
+
+    /**
+     * Lock for receiving, only one thread receives at a time.
+     */
+    private final transient Lock receiving = new ReentrantLock();
+
     /**
      * Public ctor.
      * @param clnt S3 client
      */
     public SQSQueue(@NotNull(message = "SQS client can't be NULL")
         final SQSClient clnt) {
-        final AmazonSQS aws = clnt.get();
-        final GetQueueAttributesResult result = aws.getQueueAttributes(
+        this.aws = clnt.get();
+        final GetQueueAttributesResult result = this.aws.getQueueAttributes(
             new GetQueueAttributesRequest()
                 .withQueueUrl(clnt.url())
         );
@@ -122,81 +158,168 @@ public final class SQSQueue implements Queue {
     @Override
     public void push(
         @NotNull(message = "work can't be NULL") final Coordinates work) {
-        final AmazonSQS aws = this.client.get();
-        try {
-            final SendMessageResult result = aws.sendMessage(
-                new SendMessageRequest()
-                    .withQueueUrl(this.client.url())
-                    .withMessageBody(SQSQueue.serialize(work))
+        final SendMessageResult result = this.aws.sendMessage(
+            new SendMessageRequest()
+                .withQueueUrl(this.client.url())
+                .withMessageBody(SQSQueue.serialize(work))
+        );
+        Logger.debug(
+            this,
+            "#push(%s): SQS message %s sent",
+            work, result.getMessageId()
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Works are sent in batches of ten messages (the maximum allowed
+     * by SQS).
+     */
+    @Override
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public void push(
+        @NotNull(message = "works can't be NULL")
+        final Collection<Coordinates> works) {
+        final List<Coordinates> all = new ArrayList<Coordinates>(works);
+        for (int start = 0; start < all.size(); start += Tv.TEN) {
+            final List<Coordinates> batch = all.subList(
+                start, Math.min(start + Tv.TEN, all.size())
             );
-            Logger.debug(
-                this,
-                "#push(%s): SQS message %s sent",
-                work, result.getMessageId()
+            final Collection<SendMessageBatchRequestEntry> entries =
+                new ArrayList<SendMessageBatchRequestEntry>(batch.size());
+            for (int idx = 0; idx < batch.size(); ++idx) {
+                entries.add(
+                    new SendMessageBatchRequestEntry()
+                        .withId(Integer.toString(idx))
+                        .withMessageBody(SQSQueue.serialize(batch.get(idx)))
+                );
+            }
+            final SendMessageBatchResult result = this.aws.sendMessageBatch(
+                new SendMessageBatchRequest()
+                    .withQueueUrl(this.client.url())
+                    .withEntries(entries)
             );
-        } finally {
-            aws.shutdown();
+            for (final SendMessageBatchResultEntry entry
+                : result.getSuccessful()) {
+                Logger.debug(
+                    this,
+                    "#push(..): SQS message %s sent",
+                    entry.getMessageId()
+                );
+            }
+            for (final BatchResultErrorEntry entry : result.getFailed()) {
+                final Coordinates work = batch.get(
+                    Integer.parseInt(entry.getId())
+                );
+                Logger.warn(
+                    this,
+                    "#push(..): failed to send %s in batch (%s), retrying",
+                    work, entry.getMessage()
+                );
+                this.push(work);
+            }
         }
     }
 
     @Override
     @NotNull
-    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
     @Loggable(value = Loggable.DEBUG, limit = Integer.MAX_VALUE)
     public Coordinates pull(final int limit,
         @NotNull(message = "unit can't be NULL") final TimeUnit unit)
         throws InterruptedException {
-        final long start = System.currentTimeMillis();
-        Coordinates work;
-        while (true) {
-            final long delay = System.currentTimeMillis() - start;
-            if (delay > unit.toMillis(limit)) {
+        final long deadline = System.currentTimeMillis()
+            + unit.toMillis(limit);
+        Coordinates work = this.prefetched.poll();
+        while (work == null) {
+            final long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
                 work = new Coordinates.None();
                 break;
             }
-            work = this.fetch((int) unit.toSeconds(limit));
-            if (!work.equals(new Coordinates.None())) {
-                break;
+            if (this.receiving.tryLock()) {
+                try {
+                    this.fetch(
+                        (int) Math.min(
+                            (long) Tv.TWENTY,
+                            Math.max(1L, TimeUnit.MILLISECONDS.toSeconds(left))
+                        )
+                    );
+                } finally {
+                    this.receiving.unlock();
+                }
+                work = this.prefetched.poll();
+            } else {
+                work = this.prefetched.poll(
+                    Math.min(left, TimeUnit.SECONDS.toMillis(1L)),
+                    TimeUnit.MILLISECONDS
+                );
             }
-            TimeUnit.SECONDS.sleep(Tv.FIVE);
         }
         return work;
     }
 
+    @Override
+    public void close() {
+        final Collection<Coordinates> works = new ArrayList<Coordinates>(0);
+        this.prefetched.drainTo(works);
+        if (!works.isEmpty()) {
+            Logger.info(
+                this, "#close(): returning %d prefetched work(s) to SQS",
+                works.size()
+            );
+            this.push(works);
+        }
+        this.aws.shutdown();
+    }
+
     /**
-     * Fetch next available work or NONE if nothing found.
+     * Receive up to ten available works into the prefetch buffer.
      * @param sec Seconds to wait
-     * @return Coordinates or Coordinates.None
      */
     @RetryOnFailure(verbose = false)
-    private Coordinates fetch(final int sec) {
-        final AmazonSQS aws = this.client.get();
-        Coordinates work = new Coordinates.None();
-        try {
-            final ReceiveMessageResult result = aws.receiveMessage(
-                new ReceiveMessageRequest()
-                    .withQueueUrl(this.client.url())
-                    .withMaxNumberOfMessages(1)
-                    .withWaitTimeSeconds(sec)
-            );
-            if (!result.getMessages().isEmpty()) {
-                final Message msg = result.getMessages().get(0);
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private void fetch(final int sec) {
+        final ReceiveMessageResult result = this.aws.receiveMessage(
+            new ReceiveMessageRequest()
+                .withQueueUrl(this.client.url())
+                .withMaxNumberOfMessages(Tv.TEN)
+                .withWaitTimeSeconds(sec)
+        );
+        final List<Message> msgs = result.getMessages();
+        if (!msgs.isEmpty()) {
+            final Collection<Coordinates> works =
+                new ArrayList<Coordinates>(msgs.size());
+            final Collection<DeleteMessageBatchRequestEntry> entries =
+                new ArrayList<DeleteMessageBatchRequestEntry>(msgs.size());
+            for (int idx = 0; idx < msgs.size(); ++idx) {
+                final Message msg = msgs.get(idx);
                 try {
-                    work = SQSQueue.unserialize(msg.getBody());
+                    works.add(SQSQueue.unserialize(msg.getBody()));
                 } catch (final NormJson.JsonException ex) {
                     Exceptions.warn(this, ex);
-                } finally {
-                    aws.deleteMessage(
-                        new DeleteMessageRequest()
-                            .withQueueUrl(this.client.url())
-                            .withReceiptHandle(msg.getReceiptHandle())
-                    );
                 }
+                entries.add(
+                    new DeleteMessageBatchRequestEntry()
+                        .withId(Integer.toString(idx))
+                        .withReceiptHandle(msg.getReceiptHandle())
+                );
             }
-        } finally {
-            aws.shutdown();
+            final DeleteMessageBatchResult deleted =
+                this.aws.deleteMessageBatch(
+                    new DeleteMessageBatchRequest()
+                        .withQueueUrl(this.client.url())
+                        .withEntries(entries)
+                );
+            for (final BatchResultErrorEntry entry : deleted.getFailed()) {
+                Logger.warn(
+                    this, "#fetch(): failed to delete SQS message %s: %s",
+                    msgs.get(Integer.parseInt(entry.getId())).getMessageId(),
+                    entry.getMessage()
+                );
+            }
+            this.prefetched.addAll(works);
         }
-        return work;
     }
 
     /**
@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.queue;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.rultor.aws.SQSClient;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Mocker of {@link SQSClient}, which keeps all messages in memory.
+ *
+ * <p>Only the methods used by {@link SQSQueue} are supported: sending
+ * (one by one and in batches), receiving with long polling, deleting
+ * (one by one and in batches) and getting queue attributes. All other
+ * methods return NULL. Every call is counted, see {@link #calls(String)}.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+@SuppressWarnings("PMD.TooManyMethods")
+public final class SQSMocker {
+
+    /**
+     * Messages waiting to be received.
+     */
+    private final transient BlockingQueue<Message> visible =
+        new LinkedBlockingQueue<Message>();
+
+    /**
+     * Received but not yet deleted messages, by their receipt handles.
+     */
+    private final transient ConcurrentMap<String, Message> inflight =
+        new ConcurrentHashMap<String, Message>(0);
+
+    /**
+     * Number of calls, by method name.
+     */
+    private final transient ConcurrentMap<String, AtomicInteger> counts =
+        new ConcurrentHashMap<String, AtomicInteger>(0);
+
+    /**
+     * Make a mocked SQS client.
+     * @return SQS client
+     */
+    public SQSClient mock() {
+        final AmazonSQS aws = Mockito.mock(
+            AmazonSQS.class,
+            new Answer<Object>() {
+                @Override
+                public Object answer(final InvocationOnMock inv)
+                    throws InterruptedException {
+                    return SQSMocker.this.dispatch(inv);
+                }
+            }
+        );
+        final SQSClient client = Mockito.mock(SQSClient.class);
+        Mockito.doReturn(aws).when(client).get();
+        Mockito.doReturn("local-queue").when(client).url();
+        return client;
+    }
+
+    /**
+     * How many times this method of AmazonSQS was called.
+     * @param method Name of the method
+     * @return Number of calls
+     */
+    public int calls(final String method) {
+        final AtomicInteger count = this.counts.get(method);
+        final int calls;
+        if (count == null) {
+            calls = 0;
+        } else {
+            calls = count.get();
+        }
+        return calls;
+    }
+
+    /**
+     * How many messages are in the queue, including received ones.
+     * @return Number of messages
+     */
+    public int size() {
+        return this.visible.size() + this.inflight.size();
+    }
+
+    /**
+     * Dispatch a call to AmazonSQS.
+     * @param inv Invocation
+     * @return Result
+     * @throws InterruptedException If interrupted while receiving
+     * @checkstyle CyclomaticComplexity (50 lines)
+     */
+    @SuppressWarnings("PMD.CyclomaticComplexity")
+    private Object dispatch(final InvocationOnMock inv)
+        throws InterruptedException {
+        final String name = inv.getMethod().getName();
+        this.counts.putIfAbsent(name, new AtomicInteger());
+        this.counts.get(name).incrementAndGet();
+        final Object arg;
+        if (inv.getArguments().length > 0) {
+            arg = inv.getArguments()[0];
+        } else {
+            arg = null;
+        }
+        Object result = null;
+        if (arg instanceof SendMessageRequest) {
+            result = this.send(SendMessageRequest.class.cast(arg));
+        } else if (arg instanceof SendMessageBatchRequest) {
+            result = this.send(SendMessageBatchRequest.class.cast(arg));
+        } else if (arg instanceof ReceiveMessageRequest) {
+            result = this.receive(ReceiveMessageRequest.class.cast(arg));
+        } else if (arg instanceof DeleteMessageRequest) {
+            this.inflight.remove(
+                DeleteMessageRequest.class.cast(arg).getReceiptHandle()
+            );
+        } else if (arg instanceof DeleteMessageBatchRequest) {
+            result = this.delete(DeleteMessageBatchRequest.class.cast(arg));
+        } else if ("getQueueAttributes".equals(name)) {
+            result = new GetQueueAttributesResult();
+        }
+        return result;
+    }
+
+    /**
+     * Send one message.
+     * @param request Request
+     * @return Result
+     */
+    private SendMessageResult send(final SendMessageRequest request) {
+        final Message msg = SQSMocker.message(request.getMessageBody());
+        this.visible.add(msg);
+        return new SendMessageResult().withMessageId(msg.getMessageId());
+    }
+
+    /**
+     * Send a batch of messages.
+     * @param request Request
+     * @return Result
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private SendMessageBatchResult send(
+        final SendMessageBatchRequest request) {
+        final Collection<SendMessageBatchResultEntry> sent =
+            new ArrayList<SendMessageBatchResultEntry>(0);
+        for (final SendMessageBatchRequestEntry entry
+            : request.getEntries()) {
+            final Message msg = SQSMocker.message(entry.getMessageBody());
+            this.visible.add(msg);
+            sent.add(
+                new SendMessageBatchResultEntry()
+                    .withId(entry.getId())
+                    .withMessageId(msg.getMessageId())
+            );
+        }
+        return new SendMessageBatchResult().withSuccessful(sent);
+    }
+
+    /**
+     * Receive messages, waiting for the first one if necessary.
+     * @param request Request
+     * @return Result
+     * @throws InterruptedException If interrupted
+     */
+    private ReceiveMessageResult receive(final ReceiveMessageRequest request)
+        throws InterruptedException {
+        int max = 1;
+        if (request.getMaxNumberOfMessages() != null) {
+            max = request.getMaxNumberOfMessages();
+        }
+        int wait = 0;
+        if (request.getWaitTimeSeconds() != null) {
+            wait = request.getWaitTimeSeconds();
+        }
+        final List<Message> msgs = new ArrayList<Message>(max);
+        final Message first = this.visible.poll(wait, TimeUnit.SECONDS);
+        if (first != null) {
+            msgs.add(first);
+            this.visible.drainTo(msgs, max - 1);
+        }
+        for (final Message msg : msgs) {
+            this.inflight.put(msg.getReceiptHandle(), msg);
+        }
+        return new ReceiveMessageResult().withMessages(msgs);
+    }
+
+    /**
+     * Delete a batch of messages.
+     * @param request Request
+     * @return Result
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private DeleteMessageBatchResult delete(
+        final DeleteMessageBatchRequest request) {
+        final Collection<DeleteMessageBatchResultEntry> deleted =
+            new ArrayList<DeleteMessageBatchResultEntry>(0);
+        for (final DeleteMessageBatchRequestEntry entry
+            : request.getEntries()) {
+            this.inflight.remove(entry.getReceiptHandle());
+            deleted.add(
+                new DeleteMessageBatchResultEntry().withId(entry.getId())
+            );
+        }
+        return new DeleteMessageBatchResult().withSuccessful(deleted);
+    }
+
+    /**
+     * Make a new message.
+     * @param body Body of it
+     * @return Message
+     */
+    private static Message message(final String body) {
+        return new Message()
+            .withMessageId(UUID.randomUUID().toString())
+            .withReceiptHandle(UUID.randomUUID().toString())
+            .withBody(body);
+    }
+
+}
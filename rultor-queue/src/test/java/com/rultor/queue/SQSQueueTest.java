@@ -30,19 +30,31 @@
 package com.rultor.queue;
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
 import com.amazonaws.services.sqs.model.GetQueueAttributesRequest;
 import com.amazonaws.services.sqs.model.GetQueueAttributesResult;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.amazonaws.services.sqs.model.SendMessageResult;
 import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
 import com.jcabi.urn.URN;
 import com.rultor.aws.SQSClient;
 import com.rultor.spi.Coordinates;
 import com.rultor.tools.Time;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -91,6 +103,41 @@ public final class SQSQueueTest {
         );
     }
 
+    /**
+     * SQSQueue can push works in batches.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public void pushesWorksInBatches() throws Exception {
+        final SQSClient client = Mockito.mock(SQSClient.class);
+        final AmazonSQS aws = Mockito.mock(AmazonSQS.class);
+        Mockito.doReturn(aws).when(client).get();
+        Mockito.doReturn(new SendMessageBatchResult())
+            .when(aws)
+            .sendMessageBatch(Mockito.any(SendMessageBatchRequest.class));
+        Mockito.doReturn(new GetQueueAttributesResult())
+            .when(aws)
+            .getQueueAttributes(Mockito.any(GetQueueAttributesRequest.class));
+        final Collection<Coordinates> works = new ArrayList<Coordinates>(0);
+        for (int idx = 0; idx < Tv.TWENTY + Tv.FIVE; ++idx) {
+            works.add(
+                new Coordinates.Simple(
+                    new URN("urn:facebook:7"),
+                    String.format("rule-%d", idx),
+                    new Time(Tv.MILLION)
+                )
+            );
+        }
+        new SQSQueue(client).push(works);
+        Mockito.verify(aws, Mockito.times(Tv.THREE)).sendMessageBatch(
+            Mockito.any(SendMessageBatchRequest.class)
+        );
+        Mockito.verify(aws, Mockito.never()).sendMessage(
+            Mockito.any(SendMessageRequest.class)
+        );
+    }
+
     /**
      * SQSQueue can restore JSON.
      * @throws Exception If some problem inside
@@ -103,6 +150,9 @@ public final class SQSQueueTest {
         Mockito.doReturn(new GetQueueAttributesResult())
             .when(aws)
             .getQueueAttributes(Mockito.any(GetQueueAttributesRequest.class));
+        Mockito.doReturn(new DeleteMessageBatchResult())
+            .when(aws)
+            .deleteMessageBatch(Mockito.any(DeleteMessageBatchRequest.class));
         final SQSQueue queue = new SQSQueue(client);
         Mockito.doReturn(
             new ReceiveMessageResult().withMessages(
@@ -123,4 +173,85 @@ public final class SQSQueueTest {
         );
     }
 
+    /**
+     * SQSQueue can deliver many works to many threads, with a few calls.
+     *
+     * <p>This is a throughput benchmark against an in-memory SQS, it
+     * logs how many works per second were pulled.
+     *
+     * @throws Exception If some problem inside
+     */
+    @Test
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public void deliversWorksToManyThreadsWithFewCalls() throws Exception {
+        final SQSMocker sqs = new SQSMocker();
+        final SQSQueue queue = new SQSQueue(sqs.mock());
+        final int total = Tv.THOUSAND;
+        final Collection<Coordinates> works = new ArrayList<Coordinates>(0);
+        for (int idx = 0; idx < total; ++idx) {
+            works.add(
+                new Coordinates.Simple(
+                    new URN("urn:facebook:9"),
+                    String.format("bench-%d", idx),
+                    new Time(Tv.MILLION)
+                )
+            );
+        }
+        queue.push(works);
+        final AtomicInteger pulled = new AtomicInteger();
+        final ExecutorService svc = Executors.newFixedThreadPool(Tv.TEN);
+        final Collection<Future<Integer>> futures =
+            new ArrayList<Future<Integer>>(0);
+        final long start = System.nanoTime();
+        for (int thread = 0; thread < Tv.TEN; ++thread) {
+            futures.add(
+                svc.submit(
+                    new Callable<Integer>() {
+                        @Override
+                        public Integer call() throws Exception {
+                            int mine = 0;
+                            while (pulled.get() < total) {
+                                final Coordinates work =
+                                    queue.pull(1, TimeUnit.SECONDS);
+                                if (!work.equals(new Coordinates.None())) {
+                                    pulled.incrementAndGet();
+                                    ++mine;
+                                }
+                            }
+                            return mine;
+                        }
+                    }
+                )
+            );
+        }
+        int sum = 0;
+        for (final Future<Integer> future : futures) {
+            sum += future.get();
+        }
+        final long nano = System.nanoTime() - start;
+        svc.shutdown();
+        queue.close();
+        Logger.info(
+            this, "%d works pulled by %d threads in %[nano]s: %.0f works/sec",
+            sum, Tv.TEN, nano,
+            (double) sum * TimeUnit.SECONDS.toNanos(1L) / nano
+        );
+        MatcherAssert.assertThat(sum, Matchers.equalTo(total));
+        MatcherAssert.assertThat(sqs.size(), Matchers.equalTo(0));
+        MatcherAssert.assertThat(
+            sqs.calls("sendMessageBatch"), Matchers.equalTo(total / Tv.TEN)
+        );
+        MatcherAssert.assertThat(
+            sqs.calls("receiveMessage"),
+            Matchers.lessThanOrEqualTo(total / Tv.TEN + Tv.TEN)
+        );
+        MatcherAssert.assertThat(
+            sqs.calls("deleteMessageBatch"),
+            Matchers.equalTo(total / Tv.TEN)
+        );
+        MatcherAssert.assertThat(
+            sqs.calls("deleteMessage"), Matchers.equalTo(0)
+        );
+    }
+
 }
@@ -29,8 +29,12 @@
  */
 package com.rultor.repo;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.Tv;
 import com.jcabi.urn.URN;
 import com.rultor.spi.SpecException;
 import com.rultor.spi.Variable;
@@ -46,6 +50,11 @@ import org.antlr.runtime.TokenStream;
 /**
  * Grammar in ANTLR.
  *
+ * <p>Parsed variables are immutable, so they are cached by owner and spec
+ * text in a bounded cache shared by all instances of the class. The same
+ * cache serves references to foreign rules, since the parser resolves them
+ * through this grammar.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -57,6 +66,15 @@ import org.antlr.runtime.TokenStream;
 @Loggable(Loggable.DEBUG)
 final class AntlrGrammar implements Grammar {
 
+    /**
+     * Compiled specs.
+     */
+    private static final Cache<AntlrGrammar.Key, Variable<?>> CACHE =
+        CacheBuilder.newBuilder()
+            .maximumSize((long) Tv.TEN * Tv.THOUSAND)
+            .recordStats()
+            .build();
+
     /**
      * {@inheritDoc}
      */
@@ -65,6 +83,32 @@ final class AntlrGrammar implements Grammar {
     public Variable<?> parse(
         @NotNull(message = "URN can't be NULL") final URN owner,
         @NotNull(message = "text can't be NULL") final String text)
+        throws SpecException {
+        final AntlrGrammar.Key key = new AntlrGrammar.Key(owner, text);
+        Variable<?> var = AntlrGrammar.CACHE.getIfPresent(key);
+        if (var == null) {
+            var = this.compile(owner, text);
+            AntlrGrammar.CACHE.put(key, var);
+        }
+        return var;
+    }
+
+    /**
+     * Statistics of the cache of compiled specs.
+     * @return Hits, misses and evictions
+     */
+    static CacheStats stats() {
+        return AntlrGrammar.CACHE.stats();
+    }
+
+    /**
+     * Parse the text.
+     * @param owner Owner of the spec
+     * @param text Text to parse
+     * @return The variable
+     * @throws SpecException If fails
+     */
+    private Variable<?> compile(final URN owner, final String text)
         throws SpecException {
         final CharStream input = new ANTLRStringStream(text);
         final SpecLexer lexer = new SpecLexer(input);
@@ -83,4 +127,30 @@ final class AntlrGrammar implements Grammar {
         return var;
     }
 
+    /**
+     * Key in the cache.
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = { "owner", "text" })
+    private static final class Key {
+        /**
+         * Owner of the spec.
+         */
+        private final transient String owner;
+        /**
+         * Text of the spec.
+         */
+        private final transient String text;
+        /**
+         * Public ctor.
+         * @param urn Owner of the spec
+         * @param txt Text of the spec
+         */
+        Key(final URN urn, final String txt) {
+            this.owner = urn.toString();
+            this.text = txt;
+        }
+    }
+
 }
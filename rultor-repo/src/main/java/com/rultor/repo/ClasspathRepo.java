@@ -83,4 +83,19 @@ public final class ClasspathRepo implements Repo {
         return this.grammar.parse(user.urn(), spec.asText());
     }
 
+    /**
+     * Statistics of caches of compiled specs and resolved constructors.
+     *
+     * <p>They are logged every minute by the pulse sensor of the web
+     * module, next to its own metrics.
+     *
+     * @return Hits, misses and evictions of both caches
+     */
+    public static String stats() {
+        return String.format(
+            "specs: %s, constructors: %s",
+            AntlrGrammar.stats(), Composite.stats()
+        );
+    }
+
 }
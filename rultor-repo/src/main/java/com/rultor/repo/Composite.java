@@ -29,8 +29,12 @@
  */
 package com.rultor.repo;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.Tv;
 import com.jcabi.immutable.Array;
 import com.rultor.spi.Arguments;
 import com.rultor.spi.Proxy;
@@ -42,6 +46,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
@@ -63,6 +68,15 @@ import lombok.ToString;
 @Loggable(Loggable.DEBUG)
 final class Composite implements Variable<Object> {
 
+    /**
+     * Constructors resolved before, by type name and argument types.
+     */
+    private static final Cache<List<Object>, Constructor<?>> CTORS =
+        CacheBuilder.newBuilder()
+            .maximumSize((long) Tv.THOUSAND)
+            .recordStats()
+            .build();
+
     /**
      * Type name.
      */
@@ -157,12 +171,40 @@ final class Composite implements Variable<Object> {
     }
 
     /**
-     * Find the best matching constructor.
+     * Statistics of the cache of resolved constructors.
+     * @return Hits, misses and evictions
+     */
+    static CacheStats stats() {
+        return Composite.CTORS.stats();
+    }
+
+    /**
+     * Find the best matching constructor, from cache if possible.
      * @param types Types
      * @return The ctor
      * @throws SpecException If can't get it
      */
     private Constructor<?> ctor(final Class<?>... types)
+        throws SpecException {
+        final Object[] parts = new Object[types.length + 1];
+        parts[0] = this.type;
+        System.arraycopy(types, 0, parts, 1, types.length);
+        final List<Object> key = Arrays.asList(parts);
+        Constructor<?> ctor = Composite.CTORS.getIfPresent(key);
+        if (ctor == null) {
+            ctor = this.resolve(types);
+            Composite.CTORS.put(key, ctor);
+        }
+        return ctor;
+    }
+
+    /**
+     * Find the best matching constructor.
+     * @param types Types
+     * @return The ctor
+     * @throws SpecException If can't get it
+     */
+    private Constructor<?> resolve(final Class<?>... types)
         throws SpecException {
         final Class<?> cls;
         try {
@@ -30,6 +30,7 @@
 package com.rultor.repo;
 
 import com.jcabi.urn.URN;
+import com.rultor.spi.Variable;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -69,4 +70,23 @@ public final class AntlrGrammarTest {
         }
     }
 
+    /**
+     * AntlrGrammar can reuse a compiled spec.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void reusesCompiledSpec() throws Exception {
+        final String text = "java.lang.String(\"compiled once\")";
+        final URN urn = new URN("urn:facebook:2");
+        final Variable<?> first = new AntlrGrammar().parse(urn, text);
+        MatcherAssert.assertThat(
+            new AntlrGrammar().parse(urn, text),
+            Matchers.<Variable<?>>sameInstance(first)
+        );
+        MatcherAssert.assertThat(
+            new AntlrGrammar().parse(new URN("urn:facebook:3"), text),
+            Matchers.not(Matchers.<Variable<?>>sameInstance(first))
+        );
+    }
+
 }
@@ -119,4 +119,30 @@ public final class CompositeTest {
         );
     }
 
+    /**
+     * Composite can reuse a resolved constructor.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void reusesResolvedConstructor() throws Exception {
+        final Variable<Object> var = new Composite(
+            "java.lang.StringBuilder",
+            Arrays.<Variable<?>>asList(new Text("cached"))
+        );
+        final Arguments args = new Arguments(
+            new Coordinates.None(), new Wallet.Empty()
+        );
+        final Users users = Mockito.mock(Users.class);
+        var.instantiate(users, args);
+        final long hits = Composite.stats().hitCount();
+        MatcherAssert.assertThat(
+            var.instantiate(users, args).toString(),
+            Matchers.equalTo("cached")
+        );
+        MatcherAssert.assertThat(
+            Composite.stats().hitCount(),
+            Matchers.greaterThan(hits)
+        );
+    }
+
 }
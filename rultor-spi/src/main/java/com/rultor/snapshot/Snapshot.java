@@ -46,7 +46,6 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMSource;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.CharEncoding;
 import org.w3c.dom.Document;
 import org.xembly.Directive;
@@ -122,15 +121,19 @@ public final class Snapshot {
         } catch (final ImpossibleModificationException ex) {
             throw new XemblyException(ex);
         }
-        final InputStream xsl = this.getClass().getResourceAsStream(
-            "remove-duplicate-tags.xsl"
-        );
         try {
-            return new XMLDocument(new DOMSource(new XSLT(dom, xsl).dom()));
+            return new XMLDocument(
+                new DOMSource(
+                    new XSLT(
+                        new DOMSource(dom),
+                        Stylesheets.get(
+                            Snapshot.class, "remove-duplicate-tags.xsl"
+                        )
+                    ).dom()
+                )
+            );
         } catch (final TransformerException ex) {
             throw new XemblyException(ex);
-        } finally {
-            IOUtils.closeQuietly(xsl);
         }
     }
 
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.snapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Registry of compiled XSL stylesheets, found in classpath.
+ *
+ * <p>Every stylesheet is compiled once, on first request, and then shared
+ * by all threads. {@link Templates} is thread-safe and makes a new
+ * transformer for every transformation without compiling the stylesheet
+ * again, for example, with {@link XSLT#XSLT(Snapshot,Templates)}.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ */
+public final class Stylesheets {
+
+    /**
+     * Factory.
+     */
+    private static final TransformerFactory FACTORY =
+        TransformerFactory.newInstance();
+
+    /**
+     * Compiled stylesheets, by URLs of their resources.
+     */
+    private static final ConcurrentMap<String, Templates> COMPILED =
+        new ConcurrentHashMap<String, Templates>(0);
+
+    /**
+     * This is utility class.
+     */
+    private Stylesheets() {
+        // intentionally empty
+    }
+
+    /**
+     * Get compiled stylesheet.
+     * @param base Class to find the resource by
+     * @param name Name of the resource, relative to the class
+     * @return Compiled stylesheet
+     * @throws TransformerConfigurationException If can't compile it
+     */
+    public static Templates get(final Class<?> base, final String name)
+        throws TransformerConfigurationException {
+        final URL url = base.getResource(name);
+        if (url == null) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "stylesheet `%s` not found near %s", name, base.getName()
+                )
+            );
+        }
+        final String key = url.toString();
+        Templates templates = Stylesheets.COMPILED.get(key);
+        if (templates == null) {
+            Stylesheets.COMPILED.putIfAbsent(key, Stylesheets.compile(url));
+            templates = Stylesheets.COMPILED.get(key);
+        }
+        return templates;
+    }
+
+    /**
+     * Compile stylesheet.
+     * @param url URL of it
+     * @return Compiled stylesheet
+     * @throws TransformerConfigurationException If can't compile it
+     */
+    private static Templates compile(final URL url)
+        throws TransformerConfigurationException {
+        final InputStream stream;
+        try {
+            stream = url.openStream();
+        } catch (final IOException ex) {
+            throw new TransformerConfigurationException(ex);
+        }
+        try {
+            return Stylesheets.FACTORY.newTemplates(
+                new StreamSource(stream, url.toString())
+            );
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+}
@@ -30,15 +30,17 @@
 package com.rultor.snapshot;
 
 import com.jcabi.aspects.Loggable;
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Properties;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMResult;
@@ -56,12 +58,16 @@ import org.w3c.dom.Node;
 /**
  * XSLT post processor of a snapshot.
  *
+ * <p>When the stylesheet is given as a source, it is compiled on every
+ * transformation. Stylesheets used more than once should be compiled
+ * once, with {@link Stylesheets}, and given as {@link Templates}.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
  */
 @ToString
-@EqualsAndHashCode(of = { "source", "xsl" })
+@EqualsAndHashCode(of = { "source", "templates" })
 @Loggable(Loggable.DEBUG)
 public final class XSLT {
 
@@ -85,7 +91,7 @@ public final class XSLT {
     /**
      * XSL.
      */
-    private final transient Source xsl;
+    private final transient Templates templates;
 
     /**
      * Ctor.
@@ -111,6 +117,18 @@ public final class XSLT {
         this(new DOMSource(snapshot.xml().node()), new StreamSource(stream));
     }
 
+    /**
+     * Ctor.
+     * @param snapshot Snapshot
+     * @param xsl Compiled XSL
+     * @throws XemblyException If can't build
+     * @checkstyle RedundantThrowsCheck (5 lines)
+     */
+    public XSLT(final Snapshot snapshot, final Templates xsl)
+        throws XemblyException {
+        this(new DOMSource(snapshot.xml().node()), xsl);
+    }
+
     /**
      * Ctor.
      * @param dom DOM source
@@ -126,8 +144,17 @@ public final class XSLT {
      * @param style Stylesheet
      */
     public XSLT(final Source src, final Source style) {
+        this(src, XSLT.uncompiled(style));
+    }
+
+    /**
+     * Ctor.
+     * @param src Source
+     * @param xsl Compiled stylesheet
+     */
+    public XSLT(final Source src, final Templates xsl) {
         this.source = src;
-        this.xsl = style;
+        this.templates = xsl;
     }
 
     /**
@@ -142,7 +169,7 @@ public final class XSLT {
         } catch (final ParserConfigurationException ex) {
             throw new IllegalStateException(ex);
         }
-        XSLT.FACTORY.newTransformer(this.xsl).transform(
+        this.templates.newTransformer().transform(
             this.source, new DOMResult(dom)
         );
         return dom;
@@ -154,21 +181,40 @@ public final class XSLT {
      * @throws TransformerException If fails
      */
     public String xml() throws TransformerException {
-        final Transformer trans = XSLT.FACTORY.newTransformer(this.xsl);
+        final StringWriter writer = new StringWriter();
+        this.xml(writer);
+        return writer.toString();
+    }
+
+    /**
+     * Write XML to the writer, without buffering it in memory.
+     * @param writer Where to write it
+     * @throws TransformerException If fails
+     */
+    public void xml(final Writer writer) throws TransformerException {
+        final Transformer trans = this.templates.newTransformer();
         trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
         trans.setOutputProperty(OutputKeys.ENCODING, CharEncoding.UTF_8);
-        final ByteArrayOutputStream output = new ByteArrayOutputStream();
-        try {
-            trans.transform(
-                this.source,
-                new StreamResult(
-                    new OutputStreamWriter(output, CharEncoding.UTF_8)
-                )
-            );
-            return output.toString(CharEncoding.UTF_8);
-        } catch (final UnsupportedEncodingException ex) {
-            throw new TransformerException(ex);
-        }
+        trans.transform(this.source, new StreamResult(writer));
+    }
+
+    /**
+     * Make templates that compile the stylesheet on every transformation.
+     * @param style Stylesheet
+     * @return Templates
+     */
+    private static Templates uncompiled(final Source style) {
+        return new Templates() {
+            @Override
+            public Transformer newTransformer()
+                throws TransformerConfigurationException {
+                return XSLT.FACTORY.newTransformer(style);
+            }
+            @Override
+            public Properties getOutputProperties() {
+                return new Properties();
+            }
+        };
     }
 
 }
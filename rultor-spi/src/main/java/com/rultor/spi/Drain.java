@@ -77,6 +77,21 @@ public interface Drain {
     @NotNull(message = "InputStream is never NULL")
     InputStream read() throws IOException;
 
+    /**
+     * Drain that keeps xembly lines of every pulse in a compact sidecar,
+     * next to the full log.
+     */
+    @Immutable
+    interface Sidecar {
+        /**
+         * Read xembly lines of the pulse, without the rest of the log.
+         * @return The input stream with xembly lines
+         * @throws IOException If some IO problem inside
+         */
+        @NotNull(message = "InputStream is never NULL")
+        InputStream xembly() throws IOException;
+    }
+
     /**
      * One line in the drain.
      */
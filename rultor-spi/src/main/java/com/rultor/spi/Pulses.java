@@ -100,6 +100,14 @@ public interface Pulses extends Pageable<Pulse, Coordinates> {
                 public Query withTag(final String label) {
                     return this;
                 }
+                @Override
+                public Query withLimit(final int maximum) {
+                    return this;
+                }
+                @Override
+                public Query withStands(final Collection<String> names) {
+                    return this;
+                }
             };
         }
     }
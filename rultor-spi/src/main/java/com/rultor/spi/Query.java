@@ -30,6 +30,7 @@
 package com.rultor.spi;
 
 import com.jcabi.aspects.Immutable;
+import java.util.Collection;
 import javax.validation.constraints.NotNull;
 
 /**
@@ -57,4 +58,22 @@ public interface Query {
     @NotNull(message = "query is never NULL")
     Query withTag(@NotNull(message = "label can't be NULL") String label);
 
+    /**
+     * Narrow down query to this many latest pulses, which is a hint to
+     * the storage on how many pulses the caller is going to read.
+     * @param maximum Maximum number of pulses
+     * @return New query
+     */
+    @NotNull(message = "query is never NULL")
+    Query withLimit(int maximum);
+
+    /**
+     * Narrow down query to pulses of these stands only.
+     * @param names Names of the stands
+     * @return New query
+     */
+    @NotNull(message = "query is never NULL")
+    Query withStands(
+        @NotNull(message = "names can't be NULL") Collection<String> names);
+
 }
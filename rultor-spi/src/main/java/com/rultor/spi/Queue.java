@@ -31,6 +31,7 @@ package com.rultor.spi;
 
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
+import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -54,6 +55,13 @@ public interface Queue {
      */
     void push(@NotNull(message = "work can't be NULL") Coordinates work);
 
+    /**
+     * Push a batch of new works into it.
+     * @param works The works to do
+     */
+    void push(@NotNull(message = "works can't be NULL")
+        Collection<Coordinates> works);
+
     /**
      * Pull the next available work (waits until it is available).
      * @param limit How many time rules to wait for, maximum
@@ -83,6 +91,11 @@ public interface Queue {
             this.list.add(work);
         }
         @Override
+        public void push(@NotNull(message = "works can't be NULL")
+            final Collection<Coordinates> works) {
+            this.list.addAll(works);
+        }
+        @Override
         @NotNull
         @Loggable(value = Loggable.DEBUG, limit = Integer.MAX_VALUE)
         public Coordinates pull(final int limit,
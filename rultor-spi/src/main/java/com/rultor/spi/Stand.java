@@ -32,6 +32,7 @@ package com.rultor.spi;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.urn.URN;
 import java.net.URI;
+import java.util.Collection;
 import javax.validation.constraints.NotNull;
 
 /**
@@ -106,6 +107,23 @@ public interface Stand {
     @NotNull(message = "spec of widgets is never NULL")
     Spec widgets();
 
+    /**
+     * Stand that keeps recent pulses of every tag, per work rule, updated
+     * by {@link Stand#post(Coordinates, long, String)}, so that they can
+     * be read without a search through all pulses.
+     */
+    @Immutable
+    interface Recent {
+        /**
+         * Recent pulses with this tag, one group per owner and rule.
+         * @param label Label of the tag
+         * @return Groups of pulses, each one ordered from the latest
+         */
+        @NotNull(message = "collection of pulses is never NULL")
+        Collection<Pulses> recent(
+            @NotNull(message = "label can't be NULL") String label);
+    }
+
     /**
      * When Xembly can't be accepted.
      */
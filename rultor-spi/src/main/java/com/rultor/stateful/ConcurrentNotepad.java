@@ -116,6 +116,10 @@ public interface ConcurrentNotepad extends Notepad {
             return this.notepad.contains(obj);
         }
         @Override
+        public Collection<String> known(final Collection<String> lines) {
+            return this.notepad.known(lines);
+        }
+        @Override
         public Iterator<String> iterator() {
             return this.notepad.iterator();
         }
@@ -45,6 +45,13 @@ import java.util.Iterator;
 @Immutable
 public interface Notepad extends Collection<String> {
 
+    /**
+     * Find out which of the given lines are in the notepad, in one go.
+     * @param lines Lines to check
+     * @return Those of them that are in the notepad
+     */
+    Collection<String> known(Collection<String> lines);
+
     /**
      * Always empty.
      */
@@ -57,6 +64,10 @@ public interface Notepad extends Collection<String> {
         public int size() {
             return 0;
         }
+        @Override
+        public Collection<String> known(final Collection<String> lines) {
+            return new ArrayList<String>(0);
+        }
     };
 
 }
@@ -29,24 +29,33 @@
  */
 package com.rultor.tools;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.Tv;
 import com.jcabi.log.Logger;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Map;
 import javax.validation.constraints.NotNull;
 import lombok.EqualsAndHashCode;
-import org.apache.commons.lang3.Validate;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.context.Context;
-import org.apache.velocity.exception.ParseErrorException;
 import org.apache.velocity.exception.VelocityException;
 import org.apache.velocity.runtime.RuntimeConstants;
+import org.apache.velocity.runtime.RuntimeInstance;
+import org.apache.velocity.runtime.parser.ParseException;
 
 /**
  * Velocity text.
  *
+ * <p>All instances share one Velocity runtime, and every template is
+ * parsed only once, when it is printed for the first time. Compiled
+ * templates are kept in a cache by their texts.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -56,6 +65,20 @@ import org.apache.velocity.runtime.RuntimeConstants;
 @Loggable(Loggable.DEBUG)
 public final class Vext {
 
+    /**
+     * Velocity runtime, shared by all templates.
+     */
+    private static final RuntimeInstance ENGINE = Vext.engine();
+
+    /**
+     * Compiled templates, by their texts.
+     */
+    private static final Cache<String, Template> CACHE =
+        CacheBuilder.newBuilder()
+            .maximumSize((long) Tv.TEN * Tv.THOUSAND)
+            .recordStats()
+            .build();
+
     /**
      * Template encapsulated.
      */
@@ -95,7 +118,56 @@ public final class Vext {
         for (final Map.Entry<String, T> entry : args.entrySet()) {
             context.put(entry.getKey(), entry.getValue());
         }
-        final VelocityEngine engine = new VelocityEngine();
+        this.compiled().merge(context, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Statistics of the cache of compiled templates.
+     * @return Stats
+     */
+    static CacheStats stats() {
+        return Vext.CACHE.stats();
+    }
+
+    /**
+     * Get compiled template, from cache if possible.
+     * @return Template
+     */
+    private Template compiled() {
+        Template compiled = Vext.CACHE.getIfPresent(this.template);
+        if (compiled == null) {
+            try {
+                compiled = new Template();
+                compiled.setName(this.getClass().getName());
+                compiled.setRuntimeServices(Vext.ENGINE);
+                compiled.setData(
+                    Vext.ENGINE.parse(
+                        new StringReader(this.template), compiled.getName()
+                    )
+                );
+                compiled.initDocument();
+            } catch (final ParseException ex) {
+                throw new VelocityException(
+                    String.format(
+                        "Invalid template: %s. %s",
+                        this.template,
+                        ex.getMessage()
+                    ),
+                    ex
+                );
+            }
+            Vext.CACHE.put(this.template, compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Make and initialize Velocity runtime.
+     * @return Runtime
+     */
+    private static RuntimeInstance engine() {
+        final RuntimeInstance engine = new RuntimeInstance();
         engine.setProperty(
             RuntimeConstants.RUNTIME_LOG_LOGSYSTEM_CLASS,
             "org.apache.velocity.runtime.log.Log4JLogChute"
@@ -105,23 +177,7 @@ public final class Vext {
             "org.apache.velocity"
         );
         engine.init();
-        try {
-            final boolean success = engine.evaluate(
-                context, writer,
-                this.getClass().getName(), this.template
-            );
-            Validate.isTrue(success, "failed to compile VTL");
-        } catch (final ParseErrorException ex) {
-            throw new VelocityException(
-                String.format(
-                    "Invalid template: %s. %s",
-                    this.template,
-                    ex.getMessage()
-                ),
-                ex
-            );
-        }
-        return writer.toString();
+        return engine;
     }
 
 }
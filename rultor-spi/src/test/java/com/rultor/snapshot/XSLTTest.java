@@ -29,7 +29,16 @@
  */
 package com.rultor.snapshot;
 
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
 import com.rexsl.test.XhtmlMatchers;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+import org.apache.commons.io.IOUtils;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -91,4 +100,63 @@ public final class XSLTTest {
         );
     }
 
+    /**
+     * XSLT can render a big snapshot faster with a compiled stylesheet.
+     *
+     * <p>This is a throughput benchmark, it renders a snapshot of 500 steps
+     * many times, with a stylesheet compiled once and with a stylesheet
+     * compiled on every rendering, and logs both throughputs.
+     *
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void rendersBigSnapshotWithCompiledStylesheet() throws Exception {
+        final Directives dirs = new Directives().xpath("/snapshot")
+            .add("steps");
+        for (int idx = 0; idx < Tv.FIVE * Tv.HUNDRED; ++idx) {
+            dirs.add("step").attr("id", Integer.toString(idx))
+                .add("summary").set(String.format("step #%d", idx)).up()
+                .add("start").set("2013-08-23T13:00:00Z").up()
+                .up();
+        }
+        final Source dom = new DOMSource(new Snapshot(dirs).xml().node());
+        final String name = "remove-duplicate-tags.xsl";
+        final Templates compiled = Stylesheets.get(Snapshot.class, name);
+        final String expected = new XSLT(dom, compiled).xml();
+        final int total = Tv.TWENTY;
+        long start = System.nanoTime();
+        for (int idx = 0; idx < total; ++idx) {
+            final InputStream xsl = Snapshot.class.getResourceAsStream(name);
+            try {
+                MatcherAssert.assertThat(
+                    new XSLT(dom, new StreamSource(xsl)).xml(),
+                    Matchers.equalTo(expected)
+                );
+            } finally {
+                IOUtils.closeQuietly(xsl);
+            }
+        }
+        final long uncompiled = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int idx = 0; idx < total; ++idx) {
+            MatcherAssert.assertThat(
+                new XSLT(dom, Stylesheets.get(Snapshot.class, name)).xml(),
+                Matchers.equalTo(expected)
+            );
+        }
+        final long fast = System.nanoTime() - start;
+        Logger.info(
+            this,
+            // @checkstyle LineLength (1 line)
+            "%d renderings of 500 steps: %.1f/sec compiled once, %.1f/sec compiled every time",
+            total,
+            (double) total * TimeUnit.SECONDS.toNanos(1L) / fast,
+            (double) total * TimeUnit.SECONDS.toNanos(1L) / uncompiled
+        );
+        MatcherAssert.assertThat(
+            Stylesheets.get(Snapshot.class, name),
+            Matchers.sameInstance(compiled)
+        );
+    }
+
 }
@@ -29,6 +29,19 @@
  */
 package com.rultor.tools;
 
+import com.github.fge.jackson.JsonLoader;
+import com.github.fge.jsonschema.main.JsonSchemaFactory;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.json.Json;
+import javax.json.JsonObject;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.apache.commons.lang3.StringUtils;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -83,4 +96,91 @@ public final class NormJsonTest {
         ).readObject("{\"alpha\":\"ура!\"}");
     }
 
+    /**
+     * NormJson can read a stream of objects.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void readsStreamOfObjects() throws Exception {
+        final List<JsonObject> objects = new NormJson(
+            "{\"properties\":{\"a\":{\"type\":\"array\"}}}"
+        ).readObjects(
+            new StringReader("{\"a\":[1, 2.5, null]}\n{\"b\":{\"c\":true}}")
+        );
+        MatcherAssert.assertThat(objects, Matchers.hasSize(2));
+        MatcherAssert.assertThat(
+            objects.get(0).getJsonArray("a").getJsonNumber(1).doubleValue(),
+            Matchers.equalTo(2.5d)
+        );
+        MatcherAssert.assertThat(
+            objects.get(1).getJsonObject("b").getBoolean("c"),
+            Matchers.is(true)
+        );
+    }
+
+    /**
+     * NormJson can read many pulse messages quickly.
+     *
+     * <p>This is a throughput benchmark, it reads 100k synthetic pulse
+     * messages one by one and in one stream, and a sample of them the way
+     * it was done before (schema loaded for every message and the message
+     * parsed twice), and logs all three throughputs.
+     *
+     * @throws Exception If some problem inside
+     */
+    @Test
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public void readsManyPulsesQuickly() throws Exception {
+        final String schema = IOUtils.toString(
+            this.getClass().getResourceAsStream("pulse.json"),
+            CharEncoding.UTF_8
+        );
+        final int total = Tv.HUNDRED * Tv.THOUSAND;
+        final List<String> pulses = new ArrayList<String>(total);
+        for (int idx = 0; idx < total; ++idx) {
+            pulses.add(
+                String.format(
+                    // @checkstyle LineLength (1 line)
+                    "{\"work\":{\"owner\":\"urn:test:%d\",\"rule\":\"rule-%d\",\"scheduled\":\"2013-08-23T13:00:00Z\"},\"stand\":\"main\",\"key\":\"k%d\",\"nano\":%d,\"xembly\":\"XPATH '/snapshot';\"}",
+                    idx % Tv.TEN, idx, idx, idx + 1
+                )
+            );
+        }
+        final NormJson norm = new NormJson(schema);
+        long start = System.nanoTime();
+        for (final String pulse : pulses) {
+            norm.readObject(pulse);
+        }
+        final long single = System.nanoTime() - start;
+        start = System.nanoTime();
+        final List<JsonObject> objects = norm.readObjects(
+            new StringReader(StringUtils.join(pulses, "\n"))
+        );
+        final long stream = System.nanoTime() - start;
+        final int sample = Tv.THOUSAND;
+        start = System.nanoTime();
+        for (final String pulse : pulses.subList(0, sample)) {
+            JsonSchemaFactory.byDefault()
+                .getJsonSchema(JsonLoader.fromString(schema))
+                .validate(JsonLoader.fromString(pulse));
+            Json.createReader(new StringReader(pulse)).readObject();
+        }
+        final long before = System.nanoTime() - start;
+        final long sec = TimeUnit.SECONDS.toNanos(1L);
+        Logger.info(
+            this,
+            // @checkstyle LineLength (1 line)
+            "%d pulses: %.0f/sec one by one, %.0f/sec in a stream, %.0f/sec before",
+            total,
+            (double) total * sec / single,
+            (double) total * sec / stream,
+            (double) sample * sec / before
+        );
+        MatcherAssert.assertThat(objects, Matchers.hasSize(total));
+        MatcherAssert.assertThat(
+            objects.get(total - 1).getJsonNumber("nano").longValue(),
+            Matchers.equalTo((long) total)
+        );
+    }
+
 }
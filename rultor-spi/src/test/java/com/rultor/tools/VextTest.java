@@ -30,7 +30,13 @@
 package com.rultor.tools;
 
 import com.google.common.collect.ImmutableMap;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import java.io.StringWriter;
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.app.VelocityEngine;
 import org.apache.velocity.exception.VelocityException;
+import org.apache.velocity.runtime.RuntimeConstants;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -75,4 +81,87 @@ public final class VextTest {
             );
         }
     }
+
+    /**
+     * Vext can print many times with a template compiled once.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void printsManyTimesWithCompiledTemplate() throws Exception {
+        final String text = "fetched ${args[0]} from #if($this)${this}#end";
+        final ImmutableMap<String, Object> map =
+            new ImmutableMap.Builder<String, Object>()
+                .put("this", "git")
+                .put("args", new Object[] {"master"})
+                .build();
+        final long hits = Vext.stats().hitCount();
+        for (int idx = 0; idx < Tv.FIVE; ++idx) {
+            MatcherAssert.assertThat(
+                new Vext(text).print(map),
+                Matchers.equalTo("fetched master from git")
+            );
+        }
+        MatcherAssert.assertThat(
+            Vext.stats().hitCount() - hits,
+            Matchers.equalTo((long) Tv.FOUR)
+        );
+    }
+
+    /**
+     * Vext can print faster than a fresh Velocity engine.
+     *
+     * <p>This is a throughput benchmark, it prints a template of a step
+     * summary a hundred times, with a fresh Velocity engine for every
+     * print (as it was done before) and with Vext, and logs both
+     * throughputs.
+     *
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void printsFasterThanFreshEngine() throws Exception {
+        final String text = "pushed ${args[0]} to #if($this)${this}#end";
+        final ImmutableMap<String, Object> map =
+            new ImmutableMap.Builder<String, Object>()
+                .put("this", "origin")
+                .put("args", new Object[] {"master"})
+                .build();
+        final String expected = "pushed master to origin";
+        final int total = Tv.HUNDRED;
+        long start = System.nanoTime();
+        for (int idx = 0; idx < total; ++idx) {
+            final VelocityEngine engine = new VelocityEngine();
+            engine.setProperty(
+                RuntimeConstants.RUNTIME_LOG_LOGSYSTEM_CLASS,
+                "org.apache.velocity.runtime.log.Log4JLogChute"
+            );
+            engine.setProperty(
+                "runtime.log.logsystem.log4j.logger",
+                "org.apache.velocity"
+            );
+            engine.init();
+            final StringWriter writer = new StringWriter();
+            engine.evaluate(
+                new VelocityContext(map), writer, this.getClass().getName(),
+                text
+            );
+            MatcherAssert.assertThat(
+                writer.toString(), Matchers.equalTo(expected)
+            );
+        }
+        final long fresh = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int idx = 0; idx < total; ++idx) {
+            MatcherAssert.assertThat(
+                new Vext(text).print(map), Matchers.equalTo(expected)
+            );
+        }
+        final long cached = System.nanoTime() - start;
+        Logger.info(
+            this,
+            // @checkstyle LineLength (1 line)
+            "%d prints: %[nano]s per print compiled once, %[nano]s per print with new engine",
+            total, cached / total, fresh / total
+        );
+    }
+
 }
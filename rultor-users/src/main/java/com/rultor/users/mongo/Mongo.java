@@ -125,7 +125,10 @@ public interface Mongo {
                     )
                 );
             }
-            return client.getDB(this.name);
+            final DB database = client.getDB(this.name);
+            new MongoIndexes().ensure(database);
+            MongoAggregates.backfill(database);
+            return database;
         }
     }
 
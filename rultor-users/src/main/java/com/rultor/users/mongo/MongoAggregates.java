@@ -0,0 +1,379 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.users.mongo;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import com.jcabi.log.VerboseRunnable;
+import com.jcabi.log.VerboseThreads;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
+import com.rultor.spi.Coordinates;
+import com.rultor.spi.Pulse;
+import com.rultor.spi.Pulses;
+import com.rultor.spi.Tag;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Recent pulses of a stand, per tag and work rule, in Mongo.
+ *
+ * <pre>
+ * aggregates {
+ *   _id: String,
+ *   stand: String,
+ *   label: String,
+ *   pulses: { coordinates: Coords, stand: String, tags: Tag[],
+ *     updated: Time }[]
+ * };
+ * </pre>
+ *
+ * <p>There is one document per stand, label of a tag, owner and rule,
+ * with up to a hundred entries, ordered by time of update. Every change
+ * of a tag pushes a new entry with one atomic update, which also sorts
+ * and trims the list, unless the list already has a newer entry of the
+ * same pulse. Older entries of a pulse are skipped when the list is read.
+ *
+ * <p>Pulses posted before this class appeared are aggregated once, in
+ * background, when the database is connected (see
+ * {@link #backfill(DB)}). The backfill never pushes an entry of a pulse
+ * that is already in the list, so it can't overwrite newer entries.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+@Immutable
+@ToString
+@EqualsAndHashCode(of = { "mongo", "stand" })
+@Loggable(Loggable.DEBUG)
+@SuppressWarnings("PMD.DoNotUseThreads")
+final class MongoAggregates {
+
+    /**
+     * MongoDB table name.
+     */
+    public static final String TABLE = "aggregates";
+
+    /**
+     * MongoDB table column.
+     */
+    public static final String ATTR_STAND = "stand";
+
+    /**
+     * MongoDB table column.
+     */
+    public static final String ATTR_LABEL = "label";
+
+    /**
+     * MongoDB table column.
+     */
+    public static final String ATTR_PULSES = "pulses";
+
+    /**
+     * MongoDB ID column.
+     */
+    private static final String ATTR_ID = "_id";
+
+    /**
+     * ID of the document that marks the end of backfill.
+     */
+    private static final String BACKFILLED = "backfilled";
+
+    /**
+     * How many entries to keep per tag and rule.
+     */
+    private static final int SIZE = Tv.HUNDRED;
+
+    /**
+     * Mongo container.
+     */
+    private final transient Mongo mongo;
+
+    /**
+     * Name of the stand.
+     */
+    private final transient String stand;
+
+    /**
+     * Public ctor.
+     * @param mng Mongo container
+     * @param name Name of the stand
+     */
+    protected MongoAggregates(final Mongo mng, final String name) {
+        this.mongo = mng;
+        this.stand = name;
+    }
+
+    /**
+     * Remember tags of the pulse that changed.
+     * @param pulse Coordinates of the pulse
+     * @param before Tags before the change
+     * @param after Tags after the change
+     * @param time Time of update of the pulse
+     * @checkstyle ParameterNumber (4 lines)
+     */
+    public void update(final Coordinates pulse, final Collection<Tag> before,
+        final Collection<Tag> after, final String time) {
+        final DBObject coords = new MongoCoords(pulse).asObject();
+        for (final Tag tag : after) {
+            if (!before.contains(tag)) {
+                MongoAggregates.remember(
+                    this.collection(), this.stand, coords,
+                    new MongoTag(tag).asObject(), time,
+                    new BasicDBObject("$gt", time)
+                );
+            }
+        }
+    }
+
+    /**
+     * Recent pulses with the tag, one group per owner and rule.
+     * @param label Label of the tag
+     * @return Groups of pulses, each one ordered from the latest
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public Collection<Pulses> recent(final String label) {
+        final DBCursor cursor = this.collection().find(
+            new BasicDBObject()
+                .append(MongoAggregates.ATTR_STAND, this.stand)
+                .append(MongoAggregates.ATTR_LABEL, label)
+        );
+        final Collection<Pulses> groups = new LinkedList<Pulses>();
+        try {
+            while (cursor.hasNext()) {
+                final Map<Object, DBObject> entries =
+                    new LinkedHashMap<Object, DBObject>(0);
+                for (final Object object : Collection.class.cast(
+                    cursor.next().get(MongoAggregates.ATTR_PULSES)
+                )) {
+                    final DBObject entry = DBObject.class.cast(object);
+                    final Object coords = entry.get(MongoStand.ATTR_COORDS);
+                    entries.remove(coords);
+                    entries.put(coords, entry);
+                }
+                final List<Pulse> pulses =
+                    new ArrayList<Pulse>(entries.size());
+                for (final DBObject entry : entries.values()) {
+                    pulses.add(0, new MongoPulse(this.mongo, entry));
+                }
+                groups.add(new Pulses.Row(pulses));
+            }
+        } finally {
+            cursor.close();
+        }
+        return groups;
+    }
+
+    /**
+     * Aggregate tags of all pulses posted before the aggregates were
+     * maintained, in background, unless it is done already.
+     * @param database Database
+     */
+    public static void backfill(final DB database) {
+        final ExecutorService service = Executors.newSingleThreadExecutor(
+            new VerboseThreads(MongoAggregates.class)
+        );
+        service.submit(
+            new VerboseRunnable(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        MongoAggregates.recompute(database);
+                    }
+                },
+                true
+            )
+        );
+        service.shutdown();
+    }
+
+    /**
+     * Aggregate tags of all pulses and mark the database as aggregated.
+     * @param database Database
+     */
+    private static void recompute(final DB database) {
+        final DBCollection col = database.getCollection(MongoAggregates.TABLE);
+        final DBObject marker = new BasicDBObject(
+            MongoAggregates.ATTR_ID, MongoAggregates.BACKFILLED
+        );
+        if (col.findOne(marker) == null) {
+            final DBCursor cursor = database.getCollection(MongoStand.TABLE)
+                .find(
+                    new BasicDBObject(
+                        MongoStand.ATTR_TAGS, new BasicDBObject("$ne", null)
+                    ),
+                    new BasicDBObject()
+                        .append(MongoStand.ATTR_STAND, true)
+                        .append(MongoStand.ATTR_COORDS, true)
+                        .append(MongoStand.ATTR_TAGS, true)
+                        .append(MongoStand.ATTR_UPDATED, true)
+                );
+            int total = 0;
+            try {
+                while (cursor.hasNext()) {
+                    MongoAggregates.recompute(col, cursor.next());
+                    ++total;
+                }
+            } finally {
+                cursor.close();
+            }
+            col.save(marker);
+            Logger.info(
+                MongoAggregates.class, "tags of %d pulse(s) aggregated", total
+            );
+        }
+    }
+
+    /**
+     * Aggregate tags of one pulse, unless it is aggregated already.
+     * @param col Collection of aggregates
+     * @param pulse Mongo object of the pulse
+     */
+    private static void recompute(final DBCollection col,
+        final DBObject pulse) {
+        final DBObject coords =
+            DBObject.class.cast(pulse.get(MongoStand.ATTR_COORDS));
+        for (final Object tag
+            : Collection.class.cast(pulse.get(MongoStand.ATTR_TAGS))) {
+            MongoAggregates.remember(
+                col, pulse.get(MongoStand.ATTR_STAND).toString(), coords,
+                DBObject.class.cast(tag),
+                pulse.get(MongoStand.ATTR_UPDATED).toString(),
+                new BasicDBObject("$exists", true)
+            );
+        }
+    }
+
+    /**
+     * Remember the pulse with this tag, unless the list of the tag has
+     * an entry of the same pulse, which matches the condition.
+     * @param col Collection of aggregates
+     * @param stand Name of the stand
+     * @param coords Coordinates of the pulse
+     * @param tag The tag
+     * @param time Time of update of the pulse
+     * @param newer Condition of time of update of a newer entry
+     * @checkstyle ParameterNumber (4 lines)
+     */
+    private static void remember(final DBCollection col, final String stand,
+        final DBObject coords, final DBObject tag, final String time,
+        final DBObject newer) {
+        final String label = tag.get(MongoTag.ATTR_LABEL).toString();
+        final DBObject query = new BasicDBObject()
+            .append(
+                MongoAggregates.ATTR_ID,
+                String.format(
+                    "%s %s %s %s", stand, label,
+                    coords.get(MongoCoords.ATTR_OWNER),
+                    coords.get(MongoCoords.ATTR_RULE)
+                )
+            )
+            .append(
+                MongoAggregates.ATTR_PULSES,
+                new BasicDBObject(
+                    "$not",
+                    new BasicDBObject(
+                        "$elemMatch",
+                        new BasicDBObject()
+                            .append(MongoStand.ATTR_COORDS, coords)
+                            .append(MongoStand.ATTR_UPDATED, newer)
+                    )
+                )
+            );
+        final DBObject update = new BasicDBObject()
+            .append(
+                "$set",
+                new BasicDBObject()
+                    .append(MongoAggregates.ATTR_STAND, stand)
+                    .append(MongoAggregates.ATTR_LABEL, label)
+            )
+            .append(
+                "$push",
+                new BasicDBObject(
+                    MongoAggregates.ATTR_PULSES,
+                    new BasicDBObject()
+                        .append(
+                            "$each",
+                            Arrays.asList(
+                                new BasicDBObject()
+                                    .append(MongoStand.ATTR_COORDS, coords)
+                                    .append(MongoStand.ATTR_STAND, stand)
+                                    .append(
+                                        MongoStand.ATTR_TAGS,
+                                        Arrays.asList(tag)
+                                    )
+                                    .append(MongoStand.ATTR_UPDATED, time)
+                            )
+                        )
+                        .append(
+                            "$sort",
+                            new BasicDBObject(MongoStand.ATTR_UPDATED, 1)
+                        )
+                        .append("$slice", -MongoAggregates.SIZE)
+                )
+            );
+        try {
+            col.update(query, update, true, false);
+        } catch (final DuplicateKeyException ex) {
+            col.update(query, update, false, false);
+        }
+    }
+
+    /**
+     * Collection of aggregates.
+     * @return Mongo collection
+     */
+    private DBCollection collection() {
+        try {
+            return this.mongo.get().getCollection(MongoAggregates.TABLE);
+        } catch (final IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.users.mongo;
+
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import com.jcabi.log.Logger;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Indexes of Mongo collections.
+ *
+ * <p>Every query of {@link MongoPulses}, {@link MongoStand} and
+ * {@link MongoAggregates} has to be covered by one of these, including
+ * the sorting by time of update.
+ * Indexes are created in background, if they don't exist yet.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ */
+@Immutable
+@ToString
+@EqualsAndHashCode
+@Loggable(Loggable.DEBUG)
+final class MongoIndexes {
+
+    /**
+     * Latest pulses of all stands.
+     */
+    public static final String UPDATED = "updated";
+
+    /**
+     * Latest pulses of a stand.
+     */
+    public static final String STAND_UPDATED = "stand_updated";
+
+    /**
+     * Latest pulses of a stand with tags.
+     */
+    public static final String STAND_TAGS_UPDATED = "stand_tags_updated";
+
+    /**
+     * Pulse of a stand by coordinates.
+     */
+    public static final String STAND_COORDS = "stand_coords";
+
+    /**
+     * Pulse of any stand by coordinates.
+     */
+    public static final String COORDS = "coords";
+
+    /**
+     * Recent pulses of a stand by tag.
+     */
+    public static final String AGGREGATES = "stand_label";
+
+    /**
+     * Create all indexes, if they are absent.
+     * @param database Database
+     */
+    public void ensure(final DB database) {
+        final DBCollection stands = database.getCollection(MongoStand.TABLE);
+        MongoIndexes.create(
+            stands, MongoIndexes.UPDATED,
+            new BasicDBObject(MongoStand.ATTR_UPDATED, -1)
+        );
+        MongoIndexes.create(
+            stands, MongoIndexes.STAND_UPDATED,
+            new BasicDBObject()
+                .append(MongoStand.ATTR_STAND, 1)
+                .append(MongoStand.ATTR_UPDATED, -1)
+        );
+        MongoIndexes.create(
+            stands, MongoIndexes.STAND_TAGS_UPDATED,
+            new BasicDBObject()
+                .append(MongoStand.ATTR_STAND, 1)
+                .append(
+                    String.format(
+                        "%s.%s", MongoStand.ATTR_TAGS, MongoTag.ATTR_LABEL
+                    ),
+                    1
+                )
+                .append(MongoStand.ATTR_UPDATED, -1)
+        );
+        MongoIndexes.create(
+            stands, MongoIndexes.STAND_COORDS,
+            new BasicDBObject()
+                .append(MongoStand.ATTR_STAND, 1)
+                .append(MongoStand.ATTR_COORDS, 1)
+        );
+        MongoIndexes.create(
+            stands, MongoIndexes.COORDS,
+            new BasicDBObject(MongoStand.ATTR_COORDS, 1)
+        );
+        MongoIndexes.create(
+            database.getCollection(MongoAggregates.TABLE),
+            MongoIndexes.AGGREGATES,
+            new BasicDBObject()
+                .append(MongoAggregates.ATTR_STAND, 1)
+                .append(MongoAggregates.ATTR_LABEL, 1)
+        );
+    }
+
+    /**
+     * Create one index.
+     * @param collection Collection
+     * @param name Name of the index
+     * @param keys Keys
+     */
+    private static void create(final DBCollection collection,
+        final String name, final DBObject keys) {
+        collection.createIndex(
+            keys,
+            new BasicDBObject()
+                .append("name", name)
+                .append("background", true)
+        );
+        Logger.info(
+            MongoIndexes.class, "index `%s` ensured in `%s`: %s",
+            name, collection.getName(), keys
+        );
+    }
+
+}
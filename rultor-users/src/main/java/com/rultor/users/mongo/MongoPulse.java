@@ -81,18 +81,35 @@ final class MongoPulse implements Pulse {
         this.map = new ArrayMap<String, Object>(object.toMap());
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The pulse is found by its ID or, if it was read from
+     * {@link MongoAggregates} without the ID, by its stand and coordinates.
+     */
     @Override
     public String xembly() throws IOException {
+        final DBObject query;
+        // @checkstyle MultipleStringLiterals (1 line)
+        if (this.map.containsKey("_id")) {
+            query = new BasicDBObject().append("_id", this.map.get("_id"));
+        } else {
+            query = new BasicDBObject()
+                .append(MongoStand.ATTR_STAND, this.stand())
+                .append(
+                    MongoStand.ATTR_COORDS,
+                    this.map.get(MongoStand.ATTR_COORDS)
+                );
+        }
         final DBObject object = this.collection().findOne(
-            // @checkstyle MultipleStringLiterals (1 line)
-            new BasicDBObject().append("_id", this.map.get("_id")),
+            query,
             new BasicDBObject()
                 .append(MongoStand.ATTR_XEMBLY, true)
+                .append(MongoStand.ATTR_LINES, true)
                 .append(MongoStand.ATTR_UPDATED, true)
         );
-        final String xembly = object.get(MongoStand.ATTR_XEMBLY).toString();
         return new StringBuilder()
-            .append(MongoStand.decode(xembly))
+            .append(MongoStand.decode(object))
             .append("XPATH '/snapshot'; ADDIF 'updated';")
             .append("SET '")
             .append(object.get(MongoStand.ATTR_UPDATED))
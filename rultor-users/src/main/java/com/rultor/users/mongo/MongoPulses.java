@@ -31,9 +31,12 @@ package com.rultor.users.mongo;
 
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.VerboseThreads;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Pageable;
 import com.rultor.spi.Pulse;
@@ -42,8 +45,9 @@ import com.rultor.spi.Query;
 import com.rultor.spi.Stand;
 import java.io.IOException;
 import java.util.Iterator;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -51,6 +55,15 @@ import lombok.ToString;
 /**
  * Pulses in Mongo stand.
  *
+ * <p>Pulses are read by one query, flattened from predicates into
+ * plain equality conditions, which are covered by indexes declared
+ * in {@link MongoIndexes} together with the sorting. When the query
+ * is limited, the cursor asks the server for exactly that many pulses
+ * in one batch. Cursors are closed as soon as they are read to the end
+ * or, if abandoned by the reader, in a minute by a shared closer.
+ * A tail starts at the head pulse and goes on with pulses updated
+ * before it, so the head works as a cursor key for paging.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -58,10 +71,23 @@ import lombok.ToString;
  */
 @Immutable
 @ToString
-@EqualsAndHashCode(of = { "mongo", "mandatory", "optional" })
+@EqualsAndHashCode(of = { "mongo", "mandatory", "optional", "limit" })
 @Loggable(Loggable.DEBUG)
 final class MongoPulses implements Pulses {
 
+    /**
+     * Batch size of unlimited queries.
+     */
+    private static final int BATCH = Tv.HUNDRED;
+
+    /**
+     * Closer of abandoned cursors.
+     */
+    private static final ScheduledExecutorService CLOSER =
+        Executors.newSingleThreadScheduledExecutor(
+            new VerboseThreads(MongoPulses.class)
+        );
+
     /**
      * Mongo container.
      */
@@ -77,6 +103,11 @@ final class MongoPulses implements Pulses {
      */
     private final transient Predicate optional;
 
+    /**
+     * Maximum number of pulses, or zero if unlimited.
+     */
+    private final transient int limit;
+
     /**
      * Public ctor.
      * @param mng Mongo container
@@ -98,9 +129,23 @@ final class MongoPulses implements Pulses {
      */
     protected MongoPulses(final Mongo mng, final Predicate mnd,
         final Predicate opt) {
+        this(mng, mnd, opt, 0);
+    }
+
+    /**
+     * Private ctor.
+     * @param mng Mongo
+     * @param mnd Mandatory predicate
+     * @param opt Optional predicate
+     * @param max Maximum number of pulses, or zero if unlimited
+     * @checkstyle ParameterNumber (4 lines)
+     */
+    protected MongoPulses(final Mongo mng, final Predicate mnd,
+        final Predicate opt, final int max) {
         this.mongo = mng;
         this.mandatory = mnd;
         this.optional = opt;
+        this.limit = max;
     }
 
     @Override
@@ -113,20 +158,34 @@ final class MongoPulses implements Pulses {
                 .append(MongoStand.ATTR_TAGS, true)
         );
         cursor.sort(new BasicDBObject(MongoStand.ATTR_UPDATED, -1));
-        new Timer().schedule(
-            new TimerTask() {
+        if (this.limit > 0) {
+            cursor.limit(this.limit).batchSize(this.limit);
+        } else {
+            cursor.batchSize(MongoPulses.BATCH);
+        }
+        final Future<?> closer = MongoPulses.CLOSER.schedule(
+            new Runnable() {
                 @Override
                 public void run() {
                     cursor.close();
                 }
             },
-            TimeUnit.MINUTES.toMillis(1)
+            1L, TimeUnit.MINUTES
         );
         // @checkstyle AnonInnerLength (50 lines)
         return new Iterator<Pulse>() {
+            /**
+             * The cursor is read to the end and closed?
+             */
+            private transient boolean done;
             @Override
             public boolean hasNext() {
-                return cursor.hasNext();
+                if (!this.done && !cursor.hasNext()) {
+                    closer.cancel(false);
+                    cursor.close();
+                    this.done = true;
+                }
+                return !this.done;
             }
             @Override
             public Pulse next() {
@@ -141,18 +200,32 @@ final class MongoPulses implements Pulses {
 
     @Override
     public Pageable<Pulse, Coordinates> tail(final Coordinates top) {
+        final DBObject head = this.collection().findOne(
+            new Predicate.And(this.mandatory, new Predicate.Tail(top)).query(),
+            new BasicDBObject(MongoStand.ATTR_UPDATED, true)
+        );
+        final Predicate tail;
+        if (head == null) {
+            tail = new Predicate.Tail(top);
+        } else {
+            tail = new Predicate.Older(
+                top, head.get(MongoStand.ATTR_UPDATED).toString()
+            );
+        }
         return new MongoPulses(
             this.mongo,
-            new Predicate.And(this.mandatory, new Predicate.Tail(top)),
-            this.optional
+            new Predicate.And(this.mandatory, tail),
+            this.optional,
+            this.limit
         );
     }
 
     @Override
     public Query query() {
-        return new MongoQuery(this.mongo, this.mandatory, this.optional);
+        return new MongoQuery(
+            this.mongo, this.mandatory, this.optional, this.limit
+        );
     }
-
     /**
      * Collection.
      * @return Mongo collection
@@ -33,6 +33,7 @@ import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.rultor.spi.Pulses;
 import com.rultor.spi.Query;
+import java.util.Collection;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
@@ -46,7 +47,7 @@ import lombok.ToString;
  */
 @Immutable
 @ToString
-@EqualsAndHashCode(of = { "mongo", "mandatory", "optional" })
+@EqualsAndHashCode(of = { "mongo", "mandatory", "optional", "limit" })
 @Loggable(Loggable.DEBUG)
 final class MongoQuery implements Query {
 
@@ -65,30 +66,58 @@ final class MongoQuery implements Query {
      */
     private final transient Predicate optional;
 
+    /**
+     * Maximum number of pulses, or zero if unlimited.
+     */
+    private final transient int limit;
+
     /**
      * Public ctor.
      * @param mng Mongo
      * @param mnd Mandatory
      * @param opt Optional
+     * @param max Maximum number of pulses, or zero if unlimited
+     * @checkstyle ParameterNumber (4 lines)
      */
     protected MongoQuery(final Mongo mng, final Predicate mnd,
-        final Predicate opt) {
+        final Predicate opt, final int max) {
         this.mongo = mng;
         this.mandatory = mnd;
         this.optional = opt;
+        this.limit = max;
     }
 
     @Override
     public Query withTag(final String name) {
         return new MongoQuery(
             this.mongo, this.mandatory,
-            new Predicate.And(this.optional, new Predicate.WithTag(name))
+            new Predicate.And(this.optional, new Predicate.WithTag(name)),
+            this.limit
+        );
+    }
+
+    @Override
+    public Query withLimit(final int maximum) {
+        return new MongoQuery(
+            this.mongo, this.mandatory, this.optional, maximum
+        );
+    }
+
+    @Override
+    public Query withStands(final Collection<String> names) {
+        return new MongoQuery(
+            this.mongo,
+            new Predicate.And(this.mandatory, new Predicate.InStands(names)),
+            this.optional,
+            this.limit
         );
     }
 
     @Override
     public Pulses fetch() {
-        return new MongoPulses(this.mongo, this.mandatory, this.optional);
+        return new MongoPulses(
+            this.mongo, this.mandatory, this.optional, this.limit
+        );
     }
 
 }
@@ -29,15 +29,16 @@
  */
 package com.rultor.users.mongo;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.Tv;
 import com.jcabi.urn.URN;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.WriteResult;
-import com.rultor.snapshot.Snapshot;
-import com.rultor.snapshot.XemblyException;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Pulses;
 import com.rultor.spi.Spec;
@@ -47,13 +48,14 @@ import com.rultor.tools.Time;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
-import org.xembly.SyntaxException;
 
 /**
  * Stand in Mongo.
@@ -64,10 +66,16 @@ import org.xembly.SyntaxException;
  *   stand: String,
  *   updated: Time,
  *   xembly: String,
+ *   lines: { nano: Long, text: String }[],
+ *   count: Long,
  *   tags: String[]
  * };
  * </pre>
  *
+ * <p>Attribute <code>xembly</code> contains lines posted before
+ * <code>lines</code> array was introduced, prefixed by their nano IDs.
+ * Recent pulses of every tag are also kept in {@link MongoAggregates}.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @since 1.0
@@ -79,7 +87,7 @@ import org.xembly.SyntaxException;
 @EqualsAndHashCode(of = { "mongo", "origin" })
 @Loggable(Loggable.DEBUG)
 @SuppressWarnings({ "PMD.TooManyMethods", "PMD.ExcessiveImports" })
-final class MongoStand implements Stand {
+final class MongoStand implements Stand, Stand.Recent {
 
     /**
      * MongoDB table name.
@@ -111,6 +119,35 @@ final class MongoStand implements Stand {
      */
     public static final String ATTR_TAGS = "tags";
 
+    /**
+     * MongoDB table column.
+     */
+    public static final String ATTR_LINES = "lines";
+
+    /**
+     * MongoDB attribute of a line.
+     */
+    private static final String ATTR_NANO = "nano";
+
+    /**
+     * MongoDB attribute of a line.
+     */
+    private static final String ATTR_TEXT = "text";
+
+    /**
+     * MongoDB table column.
+     */
+    private static final String ATTR_COUNT = "count";
+
+    /**
+     * In-memory snapshots of recently updated pulses.
+     */
+    private static final Cache<String, PulseTags> STATES =
+        CacheBuilder.newBuilder()
+            .maximumSize(Tv.THOUSAND)
+            .expireAfterAccess(1L, TimeUnit.HOURS)
+            .build();
+
     /**
      * Mongo container.
      */
@@ -133,17 +170,90 @@ final class MongoStand implements Stand {
 
     /**
      * {@inheritDoc}
+     *
+     * <p>The line is pushed to the end of the array of lines and the
+     * counter of lines is incremented, atomically, without reading
+     * the lines back. The snapshot of the pulse kept in memory knows
+     * how many lines it reflects: if it is exactly the line before this
+     * one, only this new line is applied to it. Otherwise (the snapshot
+     * is not in memory yet, some lines were posted through other nodes
+     * or the line arrived out of order) the snapshot is re-built from
+     * all lines stored in Mongo. Tags are saved only if no other line
+     * arrived meanwhile, since the author of that line has a more
+     * complete view of the pulse. Tags that changed are remembered
+     * in {@link MongoAggregates}.
      */
     @Override
     public void post(final Coordinates pulse, final long nano,
         final String xembly) {
-        while (true) {
-            if (this.save(pulse, nano, xembly)) {
-                break;
-            }
+        final String time = new Time().toString();
+        final DBObject object = this.collection().findAndModify(
+            this.query(pulse),
+            new BasicDBObject()
+                .append(MongoStand.ATTR_TAGS, 1)
+                .append(MongoStand.ATTR_COUNT, 1),
+            new BasicDBObject(),
+            false,
+            new BasicDBObject()
+                .append(
+                    "$setOnInsert",
+                    new BasicDBObject(MongoStand.ATTR_XEMBLY, "")
+                )
+                .append(
+                    "$push",
+                    new BasicDBObject(
+                        MongoStand.ATTR_LINES,
+                        new BasicDBObject()
+                            .append(MongoStand.ATTR_NANO, nano)
+                            .append(MongoStand.ATTR_TEXT, xembly)
+                    )
+                )
+                .append("$inc", new BasicDBObject(MongoStand.ATTR_COUNT, 1))
+                .append(
+                    "$set",
+                    new BasicDBObject(MongoStand.ATTR_UPDATED, time)
+                ),
+            true,
+            true
+        );
+        final String key = String.format("%s %s", this.name(), pulse);
+        PulseTags state = MongoStand.STATES.getIfPresent(key);
+        if (state == null || !state.append(
+            Number.class.cast(object.get(MongoStand.ATTR_COUNT)).longValue(),
+            nano, xembly
+        )) {
+            state = this.reload(pulse);
+            MongoStand.STATES.put(key, state);
+        }
+        final Collection<Tag> after;
+        final long count;
+        synchronized (state) {
+            after = state.tags();
+            count = state.lines();
+        }
+        final WriteResult result = this.collection().update(
+            this.query(pulse).append(MongoStand.ATTR_COUNT, count),
+            new BasicDBObject(
+                "$set",
+                new BasicDBObject(MongoStand.ATTR_TAGS, MongoStand.tags(after))
+            )
+        );
+        Validate.isTrue(
+            result.getLastConcern().callGetLastError(),
+            "failed to update tags of pulse `%s`: %s",
+            pulse, result.getLastConcern().getWString()
+        );
+        if (result.getN() == 1) {
+            new MongoAggregates(this.mongo, this.name())
+                .update(pulse, MongoStand.tags(object), after, time);
         }
     }
 
+    @Override
+    public Collection<Pulses> recent(final String label) {
+        return new MongoAggregates(this.mongo, this.name()).recent(label);
+    }
+
     @Override
     public Pulses pulses() {
         return new MongoPulses(this.mongo, this.origin);
@@ -180,97 +290,129 @@ final class MongoStand implements Stand {
      * @return Clean xembly
      */
     public static String decode(final String script) {
+        return StringUtils.join(MongoStand.lines(script).values(), "\n");
+    }
+
+    /**
+     * Decode the pulse object into clean xembly.
+     * @param object Mongo object with legacy xembly text and lines
+     * @return Clean xembly
+     */
+    public static String decode(final DBObject object) {
+        return StringUtils.join(MongoStand.lines(object).values(), "\n");
+    }
+
+    /**
+     * Get all lines of a pulse object, ordered by their nano IDs.
+     * @param object Mongo object with legacy xembly text and lines
+     * @return Lines
+     */
+    private static ConcurrentMap<Long, String> lines(final DBObject object) {
+        final ConcurrentMap<Long, String> lines;
+        final Object legacy = object.get(MongoStand.ATTR_XEMBLY);
+        if (legacy == null) {
+            lines = new ConcurrentSkipListMap<Long, String>();
+        } else {
+            lines = MongoStand.lines(legacy.toString());
+        }
+        final Object array = object.get(MongoStand.ATTR_LINES);
+        if (array != null) {
+            for (final Object line : Collection.class.cast(array)) {
+                final DBObject obj = DBObject.class.cast(line);
+                lines.put(
+                    Number.class.cast(obj.get(MongoStand.ATTR_NANO))
+                        .longValue(),
+                    obj.get(MongoStand.ATTR_TEXT).toString()
+                );
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Parse legacy text with lines prefixed by nano IDs.
+     * @param script Script with prefixes
+     * @return Lines
+     */
+    private static ConcurrentMap<Long, String> lines(final String script) {
         final ConcurrentMap<Long, String> lines =
             new ConcurrentSkipListMap<Long, String>();
         for (final String line : script.split("\n+")) {
-            final String[] parts = line.split(" ", 2);
-            lines.put(Long.parseLong(parts[0]), parts[1]);
+            if (!line.isEmpty()) {
+                final String[] parts = line.split(" ", 2);
+                lines.put(Long.parseLong(parts[0]), parts[1]);
+            }
         }
-        return StringUtils.join(lines.values(), "\n");
+        return lines;
     }
 
     /**
-     * Attempt to save.
-     * @param pulse The pulse name
-     * @param nano Nano ID
-     * @param xembly Xembly script to append
-     * @return TRUE if success
+     * Re-build snapshot of the pulse from all lines stored in Mongo.
+     * @param pulse The pulse
+     * @return Snapshot
      */
-    @SuppressWarnings("unchecked")
-    private boolean save(final Coordinates pulse, final long nano,
-        final String xembly) {
-        final DBObject object = this.collection().findAndModify(
-            new BasicDBObject()
-                .append(MongoStand.ATTR_STAND, this.name())
-                .append(
-                    MongoStand.ATTR_COORDS,
-                    new MongoCoords(pulse).asObject()
-                ),
+    private PulseTags reload(final Coordinates pulse) {
+        final DBObject object = this.collection().findOne(
+            this.query(pulse),
             new BasicDBObject()
-                .append(MongoStand.ATTR_COORDS, 1)
-                .append(MongoStand.ATTR_STAND, 1)
-                .append(MongoStand.ATTR_TAGS, 1)
-                .append(MongoStand.ATTR_XEMBLY, 1),
-            new BasicDBObject(),
-            false,
-            new BasicDBObject().append(
-                "$setOnInsert",
-                new BasicDBObject().append(MongoStand.ATTR_XEMBLY, "")
-            ),
-            true,
-            true
+                .append(MongoStand.ATTR_XEMBLY, 1)
+                .append(MongoStand.ATTR_LINES, 1)
+                .append(MongoStand.ATTR_COUNT, 1)
         );
-        final String after = new StringBuilder()
-            .append(object.get(MongoStand.ATTR_XEMBLY))
-            .append(nano).append(' ')
-            .append(xembly).append('\n').toString();
-        final WriteResult result = this.collection().update(
-            object,
-            new BasicDBObject()
-                .append(MongoStand.ATTR_STAND, this.name())
-                .append(MongoStand.ATTR_UPDATED, new Time().toString())
-                .append(MongoStand.ATTR_XEMBLY, after)
-                .append(
-                    MongoStand.ATTR_COORDS,
-                    new MongoCoords(pulse).asObject()
-                )
-                .append(
-                    MongoStand.ATTR_TAGS,
-                    this.tags(MongoStand.decode(after))
-                )
+        final PulseTags state = new PulseTags(
+            Number.class.cast(object.get(MongoStand.ATTR_COUNT)).longValue()
         );
-        Validate.isTrue(
-            result.getLastConcern().callGetLastError(),
-            "failed to update pulse `%s`: %s",
-            pulse, result.getLastConcern().getWString()
-        );
-        return result.getN() == 1;
+        for (final Map.Entry<Long, String> line
+            : MongoStand.lines(object).entrySet()) {
+            state.apply(line.getKey(), line.getValue());
+        }
+        return state;
     }
 
     /**
-     * Fetch all visible tags.
-     *
-     * <p>All exceptions are swallowed here since we can't be sure
-     * that at this moment Xembly script is fully complete. It may contain
-     * broken parts, which will be completed later. That's why we're
-     * returning our best guess here.
-     *
-     * @param after Xembly after changes
+     * Query to find the pulse.
+     * @param pulse The pulse
+     * @return Query
+     */
+    private BasicDBObject query(final Coordinates pulse) {
+        return new BasicDBObject()
+            .append(MongoStand.ATTR_STAND, this.name())
+            .append(MongoStand.ATTR_COORDS, new MongoCoords(pulse).asObject());
+    }
+
+    /**
+     * Convert tags to Mongo objects.
+     * @param tags Tags
      * @return Array of tags
      */
     @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-    private Collection<DBObject> tags(final String after) {
-        final Collection<Tag> found = new LinkedList<Tag>();
-        try {
-            found.addAll(new Snapshot(after).tags());
-        } catch (final XemblyException ex) {
-            assert ex != null;
-        } catch (final SyntaxException ex) {
-            assert ex != null;
+    private static Collection<DBObject> tags(final Collection<Tag> tags) {
+        final Collection<DBObject> objects = new LinkedList<DBObject>();
+        for (final Tag tag : tags) {
+            objects.add(new MongoTag(tag).asObject());
         }
-        final Collection<DBObject> tags = new LinkedList<DBObject>();
-        for (final Tag tag : found) {
-            tags.add(new MongoTag(tag).asObject());
+        return objects;
+    }
+
+    /**
+     * Get tags stored in the pulse object before the change.
+     * @param object Mongo object of the pulse
+     * @return Tags
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private static Collection<Tag> tags(final DBObject object) {
+        final Collection<Tag> tags = new LinkedList<Tag>();
+        final Object array = object.get(MongoStand.ATTR_TAGS);
+        if (array != null) {
+            for (final Object obj : Collection.class.cast(array)) {
+                final Tag tag = new MongoTag(DBObject.class.cast(obj));
+                tags.add(
+                    new Tag.Simple(
+                        tag.label(), tag.level(),
+                        tag.attributes(), tag.markdown()
+                    )
+                );
+            }
         }
         return tags;
     }
@@ -32,11 +32,14 @@ package com.rultor.users.mongo;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.immutable.Array;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import com.rultor.spi.Coordinates;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
@@ -72,12 +75,26 @@ interface Predicate {
 
     /**
      * AND predicate.
+     *
+     * <p>The query is flat: conditions of all nested predicates go into
+     * one document, so that Mongo can match them against a compound index.
+     * Equality conditions on the same attribute are merged into one
+     * {@code $all} condition and the rest of conflicting conditions go
+     * into {@code $and}.
      */
     @Immutable
     @ToString
     @EqualsAndHashCode(of = { "left", "right" })
     @Loggable(Loggable.DEBUG)
     final class And implements Predicate {
+        /**
+         * AND operator.
+         */
+        private static final String AND = "$and";
+        /**
+         * ALL operator.
+         */
+        private static final String ALL = "$all";
         /**
          * Left predicate.
          */
@@ -97,9 +114,74 @@ interface Predicate {
         }
         @Override
         public DBObject query() {
-            return new BasicDBObject().append(
-                "$and", Arrays.asList(this.left.query(), this.right.query())
-            );
+            final DBObject query = new BasicDBObject();
+            final Collection<DBObject> rest = new LinkedList<DBObject>();
+            for (final DBObject part : this.parts()) {
+                for (final String key : part.keySet()) {
+                    Predicate.And.merge(query, rest, key, part.get(key));
+                }
+            }
+            if (!rest.isEmpty()) {
+                query.put(Predicate.And.AND, rest);
+            }
+            return query;
+        }
+        /**
+         * Queries of all nested predicates, except ANDs.
+         * @return Queries
+         */
+        private Collection<DBObject> parts() {
+            final Collection<DBObject> parts = new LinkedList<DBObject>();
+            for (final Predicate pred : Arrays.asList(this.left, this.right)) {
+                if (pred instanceof Predicate.And) {
+                    parts.addAll(Predicate.And.class.cast(pred).parts());
+                } else {
+                    parts.add(pred.query());
+                }
+            }
+            return parts;
+        }
+        /**
+         * Add condition to the query.
+         * @param query The query
+         * @param rest Conditions that can't be added to the query
+         * @param key Attribute
+         * @param value Condition
+         * @checkstyle ParameterNumber (4 lines)
+         */
+        private static void merge(final DBObject query,
+            final Collection<DBObject> rest, final String key,
+            final Object value) {
+            final Object before = query.get(key);
+            if (before == null) {
+                query.put(key, value);
+            } else if (value instanceof DBObject
+                || Predicate.And.values(before) == null) {
+                rest.add(new BasicDBObject(key, value));
+            } else {
+                final Collection<Object> all =
+                    new LinkedList<Object>(Predicate.And.values(before));
+                all.add(value);
+                query.put(key, new BasicDBObject(Predicate.And.ALL, all));
+            }
+        }
+        /**
+         * Values the attribute must be equal to, according to condition.
+         * @param cond The condition
+         * @return Values or NULL if the condition is not about equality
+         */
+        @SuppressWarnings("unchecked")
+        private static Collection<Object> values(final Object cond) {
+            Collection<Object> values = null;
+            if (!(cond instanceof DBObject)) {
+                values = Collections.singleton(cond);
+            } else if (DBObject.class.cast(cond).keySet()
+                .equals(Collections.singleton(Predicate.And.ALL))) {
+                values = Collection.class.cast(
+                    DBObject.class.cast(cond).get(Predicate.And.ALL)
+                );
+            }
+            return values;
         }
     }
 
@@ -130,6 +212,55 @@ interface Predicate {
         }
     }
 
+    /**
+     * Head pulse and all pulses updated before it.
+     *
+     * <p>The head is found by its coordinates and the rest by the time of
+     * update, which is the key of sorting, so the head is always the first
+     * one in the result and the next page starts right after the last
+     * pulse of the previous one.
+     */
+    @Immutable
+    @ToString
+    @EqualsAndHashCode(of = { "head", "updated" })
+    @Loggable(Loggable.DEBUG)
+    final class Older implements Predicate {
+        /**
+         * Coords of the head.
+         */
+        private final transient Coordinates head;
+        /**
+         * Time of update of the head.
+         */
+        private final transient String updated;
+        /**
+         * Public ctor.
+         * @param coords Head
+         * @param time Time of update of the head
+         */
+        public Older(final Coordinates coords, final String time) {
+            this.head = coords;
+            this.updated = time;
+        }
+        @Override
+        public DBObject query() {
+            final BasicDBList any = new BasicDBList();
+            any.add(
+                new BasicDBObject().append(
+                    MongoStand.ATTR_COORDS,
+                    new MongoCoords(this.head).asObject()
+                )
+            );
+            any.add(
+                new BasicDBObject().append(
+                    MongoStand.ATTR_UPDATED,
+                    new BasicDBObject().append("$lt", this.updated)
+                )
+            );
+            return new BasicDBObject().append("$or", any);
+        }
+    }
+
     /**
      * In stand predicate.
      */
@@ -187,6 +318,9 @@ interface Predicate {
 
     /**
      * With tag predicate.
+     *
+     * <p>The condition is on {@code tags.label} attribute, which is
+     * in the index, instead of {@code $elemMatch} on the tags.
      */
     @Immutable
     @ToString
@@ -207,13 +341,10 @@ interface Predicate {
         @Override
         public DBObject query() {
             return new BasicDBObject().append(
-                MongoStand.ATTR_TAGS,
-                new BasicDBObject().append(
-                    "$elemMatch",
-                    new BasicDBObject().append(
-                        MongoTag.ATTR_LABEL, this.label
-                    )
-                )
+                String.format(
+                    "%s.%s", MongoStand.ATTR_TAGS, MongoTag.ATTR_LABEL
+                ),
+                this.label
             );
         }
     }
@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.users.mongo;
+
+import com.google.common.collect.ImmutableMap;
+import com.rultor.spi.Tag;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xembly.Directives;
+import org.xembly.ImpossibleModificationException;
+import org.xembly.SyntaxException;
+import org.xembly.Xembler;
+
+/**
+ * Incrementally maintained snapshot of a pulse, and its tags.
+ *
+ * <p>The class keeps a DOM document of the pulse snapshot in memory,
+ * together with the number of stored lines it reflects. A new line is
+ * applied to it by {@link #append(long, long, String)} only if it is
+ * the very next stored line and its nano ID is bigger than the nano IDs
+ * of all lines applied before; otherwise the snapshot has to be built
+ * again from all stored lines. Tags are extracted from the DOM directly,
+ * without an XSLT pass, with the same rule as in
+ * <code>remove-duplicate-tags.xsl</code>: the last tag with a given label
+ * wins, while the order of labels is the order of their first appearance.
+ *
+ * <p>The class is thread-safe.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ */
+@ToString(of = { "last", "count" })
+@EqualsAndHashCode(of = { "dom", "last", "count" })
+final class PulseTags {
+
+    /**
+     * DOM document of the snapshot.
+     */
+    private final transient Document dom;
+
+    /**
+     * Nano ID of the last applied line, or negative if nothing applied.
+     */
+    private transient long last;
+
+    /**
+     * How many stored lines are applied.
+     */
+    private transient long count;
+
+    /**
+     * Public ctor.
+     * @param lines How many stored lines will be applied to it
+     */
+    PulseTags(final long lines) {
+        try {
+            this.dom = DocumentBuilderFactory.newInstance()
+                .newDocumentBuilder().newDocument();
+        } catch (final ParserConfigurationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        this.dom.appendChild(this.dom.createElement("snapshot"));
+        this.last = Long.MIN_VALUE;
+        this.count = lines;
+    }
+
+    /**
+     * How many stored lines are applied.
+     * @return Number of lines
+     */
+    public synchronized long lines() {
+        return this.count;
+    }
+
+    /**
+     * Apply the next stored line, if it is really the next one.
+     * @param number Number of the line among stored lines, starting from one
+     * @param nano Nano ID of the line
+     * @param xembly Xembly script
+     * @return TRUE if applied, FALSE if the snapshot has to be re-built
+     */
+    public synchronized boolean append(final long number, final long nano,
+        final String xembly) {
+        final boolean next = number == this.count + 1 && nano > this.last;
+        if (next) {
+            this.apply(nano, xembly);
+            this.count = number;
+        }
+        return next;
+    }
+
+    /**
+     * Apply one more xembly line.
+     *
+     * <p>All exceptions are swallowed here since we can't be sure
+     * that at this moment Xembly script is fully complete. It may contain
+     * broken parts, which will be completed later.
+     *
+     * @param nano Nano ID of the line
+     * @param xembly Xembly script
+     */
+    public synchronized void apply(final long nano, final String xembly) {
+        try {
+            new Xembler(new Directives(xembly)).apply(this.dom);
+        } catch (final SyntaxException ex) {
+            assert ex != null;
+        } catch (final ImpossibleModificationException ex) {
+            assert ex != null;
+        }
+        this.last = Math.max(this.last, nano);
+    }
+
+    /**
+     * Get all visible tags.
+     * @return Tags
+     */
+    public synchronized Collection<Tag> tags() {
+        final Map<String, Tag> tags = new LinkedHashMap<String, Tag>(0);
+        for (final Element list : PulseTags.children(
+            this.dom.getDocumentElement(), "tags")) {
+            for (final Element node : PulseTags.children(list, "tag")) {
+                final Tag tag = PulseTags.tag(node);
+                if (tag != null) {
+                    tags.put(tag.label(), tag);
+                }
+            }
+        }
+        return new ArrayList<Tag>(tags.values());
+    }
+
+    /**
+     * Make a tag from DOM element.
+     * @param node The element
+     * @return Tag or NULL if the element is not complete yet
+     */
+    private static Tag tag(final Element node) {
+        final String label = PulseTags.text(node, "label");
+        Tag tag = null;
+        if (label != null) {
+            final String level = PulseTags.text(node, "level");
+            final String markdown = PulseTags.text(node, "markdown");
+            final ImmutableMap.Builder<String, String> attrs =
+                new ImmutableMap.Builder<String, String>();
+            for (final Element list : PulseTags.children(node, "attributes")) {
+                for (final Element attr
+                    : PulseTags.children(list, "attribute")) {
+                    final String name = PulseTags.text(attr, "name");
+                    final String value = PulseTags.text(attr, "value");
+                    if (name != null && value != null) {
+                        attrs.put(name, value);
+                    }
+                }
+            }
+            final Level lvl;
+            if (level == null) {
+                lvl = Level.INFO;
+            } else {
+                lvl = Level.parse(level);
+            }
+            final String text;
+            if (markdown == null) {
+                text = "";
+            } else {
+                text = markdown;
+            }
+            tag = new Tag.Simple(label, lvl, attrs.build(), text);
+        }
+        return tag;
+    }
+
+    /**
+     * Get text of the first child element with the given name.
+     * @param node Parent element
+     * @param name Name of the child
+     * @return Text or NULL if absent
+     */
+    private static String text(final Element node, final String name) {
+        final Collection<Element> kids = PulseTags.children(node, name);
+        String text = null;
+        if (!kids.isEmpty()) {
+            text = kids.iterator().next().getTextContent();
+        }
+        return text;
+    }
+
+    /**
+     * Get child elements with the given name.
+     * @param node Parent element
+     * @param name Name of children
+     * @return Child elements
+     */
+    private static Collection<Element> children(final Element node,
+        final String name) {
+        final Collection<Element> kids = new ArrayList<Element>(0);
+        for (Node kid = node.getFirstChild(); kid != null;
+            kid = kid.getNextSibling()) {
+            if (kid.getNodeType() == Node.ELEMENT_NODE
+                && name.equals(kid.getNodeName())) {
+                kids.add(Element.class.cast(kid));
+            }
+        }
+        return kids;
+    }
+
+}
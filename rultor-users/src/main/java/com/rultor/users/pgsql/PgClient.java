@@ -74,6 +74,10 @@ public interface PgClient {
          * JDBC user.
          */
         private final transient String user;
+        /**
+         * Maximum number of connections in the pool.
+         */
+        private final transient int connections;
 
         /**
          * Public ctor.
@@ -91,14 +95,27 @@ public interface PgClient {
          * @param usr Username
          */
         public Simple(final String url, final String pwd, final String usr) {
+            this(url, pwd, usr, Tv.THREE);
+        }
+
+        /**
+         * Constructor.
+         * @param url JDBC URL
+         * @param pwd Password
+         * @param usr Username
+         * @param max Maximum number of connections in the pool
+         */
+        public Simple(final String url, final String pwd, final String usr,
+            final int max) {
             this.jdbc = url;
             this.password = pwd;
             this.user = usr;
+            this.connections = max;
         }
         /**
          * {@inheritDoc}
          *
-         * <p>Don't increase numbers here, since Heroku limits
+         * <p>Keep the number of connections small, since Heroku limits
          * the number of connections to PostgreSQL. Maximum we can have is
          * twenty, but keep in mind that this class is used by multiple
          * instances of the module, including web and conveyer. And each
@@ -116,7 +133,7 @@ public interface PgClient {
                 src.setUser(this.user);
             }
             src.setPassword(this.password);
-            src.setPartitionCount(Tv.THREE);
+            src.setPartitionCount(this.connections);
             src.setMaxConnectionsPerPartition(1);
             src.setMinConnectionsPerPartition(1);
             src.setAcquireIncrement(1);
@@ -44,6 +44,9 @@ import com.rultor.tools.Exceptions;
 import com.rultor.tools.NormJson;
 import com.rultor.tools.Time;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.json.JsonObject;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -90,6 +93,11 @@ final class SQSReceipts {
 
     /**
      * Fetch and process next portions of them.
+     *
+     * <p>All receipts received in one call are posted to PostgreSQL
+     * as one batch, in one transaction. If the batch is rejected, they
+     * are posted one by one, in order to isolate the broken one.
+     *
      * @return How many messages were processed
      * @throws SQLException If fails
      */
@@ -104,32 +112,113 @@ final class SQSReceipts {
                 .withVisibilityTimeout(Tv.FIVE)
                 .withMaxNumberOfMessages(Tv.TEN)
         );
+        final Map<Message, JsonObject> batch =
+            new LinkedHashMap<Message, JsonObject>(0);
         for (final Message msg : result.getMessages()) {
             try {
-                this.process(SQSReceipts.NORM.readObject(msg.getBody()));
+                batch.put(msg, SQSReceipts.NORM.readObject(msg.getBody()));
             } catch (final NormJson.JsonException ex) {
                 Exceptions.warn(this, ex);
-            } finally {
-                aws.deleteMessage(
-                    new DeleteMessageRequest()
-                        .withQueueUrl(this.queue.url())
-                        .withReceiptHandle(msg.getReceiptHandle())
-                );
+                this.delete(aws, msg);
             }
         }
+        if (!batch.isEmpty()) {
+            this.process(aws, batch);
+        }
         aws.shutdown();
         return result.getMessages().size();
     }
 
+    /**
+     * Process a batch of JSON messages.
+     * @param aws AWS SQS client
+     * @param batch Messages and their JSON bodies
+     * @throws SQLException If fails
+     */
+    private void process(final AmazonSQS aws,
+        final Map<Message, JsonObject> batch) throws SQLException {
+        boolean posted = false;
+        try {
+            this.post(batch.values());
+            posted = true;
+        } catch (final SQLException ex) {
+            Exceptions.warn(this, ex);
+        }
+        if (posted) {
+            for (final Message msg : batch.keySet()) {
+                this.delete(aws, msg);
+            }
+        } else {
+            for (final Map.Entry<Message, JsonObject> entry
+                : batch.entrySet()) {
+                try {
+                    this.process(entry.getValue());
+                } finally {
+                    this.delete(aws, entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Post all JSON messages in one transaction.
+     *
+     * <p>Receipts go into a temporary table first, with one multi-row
+     * INSERT, and then function {@code add_batch()} moves them all
+     * into {@code receipt} and updates cached balances, once per batch.
+     *
+     * @param jsons Messages in JSON
+     * @throws SQLException If fails
+     */
+    private void post(final Collection<JsonObject> jsons)
+        throws SQLException {
+        final StringBuilder sql = new StringBuilder(
+            "INSERT INTO batch (ord, wowner, wrule, wscheduled, ct, ctrule,"
+        ).append(" dt, dtrule, amount, details) VALUES ");
+        for (int idx = 0; idx < jsons.size(); ++idx) {
+            if (idx > 0) {
+                sql.append(", ");
+            }
+            sql.append("(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        final JdbcSession session = new JdbcSession(this.client.get())
+            .autocommit(false)
+            .sql("SELECT start_batch()")
+            .execute()
+            .sql(sql.toString());
+        int ord = 0;
+        for (final JsonObject json : jsons) {
+            SQSReceipts.set(session.set(ord), json);
+            ++ord;
+        }
+        session.execute();
+        session.sql("SELECT add_batch()").execute();
+        session.commit();
+    }
+
     /**
      * Process one JSON message.
      * @param json Message in JSON
      * @throws SQLException If fails
      */
     private void process(final JsonObject json) throws SQLException {
+        SQSReceipts.set(
+            new JdbcSession(this.client.get())
+                .sql("SELECT add(?, ?, ?, ?, ?, ?, ?, ?, ?)"),
+            json
+        ).execute();
+    }
+
+    /**
+     * Set receipt arguments of the JSON message to the session.
+     * @param session JDBC session
+     * @param json Message in JSON
+     * @return The same session
+     */
+    private static JdbcSession set(final JdbcSession session,
+        final JsonObject json) {
         final JsonObject work = json.getJsonObject("work");
-        new JdbcSession(this.client.get())
-            .sql("SELECT add(?, ?, ?, ?, ?, ?, ?, ?, ?)")
+        return session
             .set(work.getString("owner"))
             .set(work.getString("rule"))
             .set(new Time(work.getString("scheduled")).toString())
@@ -138,8 +227,20 @@ final class SQSReceipts {
             .set(json.getString("dt"))
             .set(json.getString("dtrule"))
             .set(json.getJsonNumber("amount").longValue())
-            .set(json.getString("details"))
-            .execute();
+            .set(json.getString("details"));
+    }
+
+    /**
+     * Delete message from the queue.
+     * @param aws AWS SQS client
+     * @param msg The message
+     */
+    private void delete(final AmazonSQS aws, final Message msg) {
+        aws.deleteMessage(
+            new DeleteMessageRequest()
+                .withQueueUrl(this.queue.url())
+                .withReceiptHandle(msg.getReceiptHandle())
+        );
     }
 
 }
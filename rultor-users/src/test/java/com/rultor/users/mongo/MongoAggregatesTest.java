@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.users.mongo;
+
+import com.jcabi.urn.URN;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.rultor.spi.Coordinates;
+import com.rultor.spi.Tag;
+import com.rultor.tools.Time;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Test case for {@link MongoAggregates}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ */
+public final class MongoAggregatesTest {
+
+    /**
+     * MongoAggregates can push a changed tag with one guarded update.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void pushesChangedTagWithOneUpdate() throws Exception {
+        final DBCollection col = Mockito.mock(DBCollection.class);
+        final DB database = Mockito.mock(DB.class);
+        Mockito.doReturn(col).when(database)
+            .getCollection(MongoAggregates.TABLE);
+        final Mongo mongo = Mockito.mock(Mongo.class);
+        Mockito.doReturn(database).when(mongo).get();
+        final Tag tag = new Tag.Simple("on-commit", Level.INFO);
+        new MongoAggregates(mongo, "stand").update(
+            new Coordinates.Simple(URN.create("urn:test:1"), "rule"),
+            new ArrayList<Tag>(0), Arrays.asList(tag),
+            new Time().toString()
+        );
+        final ArgumentCaptor<DBObject> query =
+            ArgumentCaptor.forClass(DBObject.class);
+        final ArgumentCaptor<DBObject> update =
+            ArgumentCaptor.forClass(DBObject.class);
+        Mockito.verify(col).update(
+            query.capture(), update.capture(),
+            Mockito.eq(true), Mockito.eq(false)
+        );
+        MatcherAssert.assertThat(
+            query.getValue().toString(), Matchers.containsString("$elemMatch")
+        );
+        MatcherAssert.assertThat(
+            update.getValue().keySet(),
+            Matchers.containsInAnyOrder("$set", "$push")
+        );
+    }
+
+    /**
+     * MongoAggregates can ignore tags that didn't change.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void ignoresTagsThatDidNotChange() throws Exception {
+        final DBCollection col = Mockito.mock(DBCollection.class);
+        final DB database = Mockito.mock(DB.class);
+        Mockito.doReturn(col).when(database)
+            .getCollection(MongoAggregates.TABLE);
+        final Mongo mongo = Mockito.mock(Mongo.class);
+        Mockito.doReturn(database).when(mongo).get();
+        final Tag tag = new Tag.Simple("deploy", Level.SEVERE);
+        new MongoAggregates(mongo, "other").update(
+            new Coordinates.Simple(URN.create("urn:test:2"), "r"),
+            Arrays.asList(tag), Arrays.asList(tag), new Time().toString()
+        );
+        Mockito.verifyZeroInteractions(col);
+    }
+
+}
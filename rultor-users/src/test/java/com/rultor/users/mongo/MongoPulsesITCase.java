@@ -30,10 +30,16 @@
 package com.rultor.users.mongo;
 
 import com.jcabi.aspects.Tv;
+import com.jcabi.urn.URN;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.rultor.spi.Coordinates;
 import com.rultor.spi.Pulse;
+import com.rultor.spi.Pulses;
+import com.rultor.tools.Time;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.logging.Level;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
@@ -148,6 +154,131 @@ public final class MongoPulsesITCase {
         );
     }
 
+    /**
+     * MongoPulses can find pulses by indexes, without sorting in memory.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void findsPulsesByIndexes() throws Exception {
+        final Mongo mongo = this.mongo();
+        final DBCollection col = mongo.get().getCollection(MongoStand.TABLE);
+        col.remove(new BasicDBObject());
+        for (int idx = 0; idx < Tv.HUNDRED; ++idx) {
+            col.insert(
+                new BasicDBObject()
+                    .append(
+                        MongoStand.ATTR_STAND,
+                        String.format("stand-%d", idx % Tv.FIVE)
+                    )
+                    .append(MongoStand.ATTR_UPDATED, new Time(idx).toString())
+                    .append(
+                        MongoStand.ATTR_TAGS,
+                        Arrays.asList(
+                            new MongoTag(
+                                String.format("tag-%d", idx % Tv.THREE),
+                                Level.INFO
+                            ).asObject()
+                        )
+                    )
+            );
+        }
+        final Predicate stand = new Predicate.InStand("stand-1");
+        MongoPulsesITCase.assertIndexed(
+            col, new Predicate.And(stand, new Predicate.Any())
+        );
+        MongoPulsesITCase.assertIndexed(
+            col,
+            new Predicate.And(
+                stand,
+                new Predicate.And(
+                    new Predicate.Any(), new Predicate.WithTag("tag-1")
+                )
+            )
+        );
+        MongoPulsesITCase.assertIndexed(
+            col, new Predicate.And(new Predicate.Any(), new Predicate.Any())
+        );
+        MatcherAssert.assertThat(
+            new MongoPulses(mongo, stand, new Predicate.Any(), Tv.THREE),
+            Matchers.<Pulse>iterableWithSize(Tv.THREE)
+        );
+        MatcherAssert.assertThat(
+            new MongoPulses(
+                mongo, stand, new Predicate.WithTag("tag-2")
+            ),
+            Matchers.<Pulse>iterableWithSize(Tv.SIX)
+        );
+    }
+
+    /**
+     * MongoPulses can page pulses of given stands, by the head pulse.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void pagesPulsesOfStandsByHead() throws Exception {
+        final Mongo mongo = this.mongo();
+        final DBCollection col = mongo.get().getCollection(MongoStand.TABLE);
+        col.remove(new BasicDBObject());
+        final URN owner = URN.create("urn:test:1");
+        for (int idx = 0; idx < Tv.TEN; ++idx) {
+            col.insert(
+                new BasicDBObject()
+                    .append(
+                        MongoStand.ATTR_STAND,
+                        String.format("stand-%d", idx % Tv.FIVE)
+                    )
+                    .append(
+                        MongoStand.ATTR_COORDS,
+                        new MongoCoords(
+                            new Coordinates.Simple(owner, "r", new Time(idx))
+                        ).asObject()
+                    )
+                    .append(MongoStand.ATTR_UPDATED, new Time(idx).toString())
+            );
+        }
+        final Pulses pulses = new MongoPulses(
+            mongo, new Predicate.Any(), new Predicate.Any()
+        ).query().withStands(Arrays.asList("stand-1", "stand-2")).fetch();
+        MatcherAssert.assertThat(
+            pulses, Matchers.<Pulse>iterableWithSize(Tv.FOUR)
+        );
+        final Iterator<Pulse> tail = pulses.tail(
+            new Coordinates.Simple(owner, "r", new Time(Tv.SIX))
+        ).iterator();
+        MatcherAssert.assertThat(
+            tail.next().coordinates().scheduled(),
+            Matchers.equalTo(new Time(Tv.SIX))
+        );
+        MatcherAssert.assertThat(
+            tail.next().coordinates().scheduled(),
+            Matchers.equalTo(new Time(2))
+        );
+        MatcherAssert.assertThat(
+            tail.next().coordinates().scheduled(),
+            Matchers.equalTo(new Time(1))
+        );
+        MatcherAssert.assertThat(tail.hasNext(), Matchers.is(false));
+    }
+
+    /**
+     * Assert that pulses are found by index and sorted by it.
+     * @param col Collection
+     * @param pred Predicate
+     */
+    private static void assertIndexed(final DBCollection col,
+        final Predicate pred) {
+        final DBObject plan = col.find(pred.query())
+            .sort(new BasicDBObject(MongoStand.ATTR_UPDATED, -1))
+            .explain();
+        MatcherAssert.assertThat(
+            plan.get("cursor").toString(),
+            Matchers.startsWith("BtreeCursor")
+        );
+        MatcherAssert.assertThat(
+            plan.get("scanAndOrder"), Matchers.<Object>equalTo(false)
+        );
+    }
+
     /**
      * Get Mongo client to test against.
      * @return Client
@@ -36,7 +36,10 @@ import com.rexsl.test.XhtmlMatchers;
 import com.rultor.snapshot.Snapshot;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Pulse;
+import com.rultor.spi.Pulses;
 import com.rultor.spi.Stand;
+import com.rultor.spi.Tag;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -128,6 +131,60 @@ public final class MongoStandITCase {
         );
     }
 
+    /**
+     * MongoStand can keep recent pulses of every tag.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void keepsRecentPulsesOfTags() throws Exception {
+        final Stand stand = this.stand();
+        final Coordinates first = this.pulse();
+        final Coordinates second = this.pulse();
+        final String tag = "ADD 'tags'; ADD 'tag'; ADD 'label'; SET 'bar';";
+        stand.post(first, 1, tag);
+        stand.post(
+            first, 2, "XPATH '/snapshot/tags/tag'; ADD 'markdown'; SET 'x';"
+        );
+        stand.post(second, 1, tag);
+        stand.post(second, 2, "ADD 'other';");
+        final Collection<Pulses> groups =
+            Stand.Recent.class.cast(stand).recent("bar");
+        MatcherAssert.assertThat(groups, Matchers.hasSize(2));
+        for (final Pulses group : groups) {
+            MatcherAssert.assertThat(
+                group, Matchers.<Pulse>iterableWithSize(1)
+            );
+        }
+        MatcherAssert.assertThat(
+            Stand.Recent.class.cast(stand).recent("nothing"),
+            Matchers.<Pulses>empty()
+        );
+    }
+
+    /**
+     * MongoStand can build tags from lines posted through different nodes.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void buildsTagsFromLinesOfAllNodes() throws Exception {
+        final String name = RandomStringUtils.randomAlphabetic(Tv.FIVE);
+        final Stand first = this.stand(name);
+        final Stand second = this.stand(name);
+        final Coordinates pulse = this.pulse();
+        first.post(pulse, 1, "ADD 'tags'; ADD 'tag'; ADD 'label'; SET 'a';");
+        second.post(
+            pulse, 2, "XPATH '/snapshot/tags'; ADD 'tag'; ADD 'label'; SET 'b';"
+        );
+        first.post(
+            pulse, Tv.THREE,
+            "XPATH '/snapshot/tags'; ADD 'tag'; ADD 'label'; SET 'c';"
+        );
+        MatcherAssert.assertThat(
+            first.pulses().tail(pulse).iterator().next().tags(),
+            Matchers.<Tag>iterableWithSize(Tv.THREE)
+        );
+    }
+
     /**
      * Post the next message to a stand.
      * @param stand Stand to post to
@@ -154,10 +211,19 @@ public final class MongoStandITCase {
      * @throws Exception If some problem inside
      */
     private Stand stand() throws Exception {
+        return this.stand(RandomStringUtils.randomAlphabetic(Tv.FIVE));
+    }
+
+    /**
+     * Get stand to test against, with a connection of its own.
+     * @param name Name of the stand
+     * @return Stand to test
+     * @throws Exception If some problem inside
+     */
+    private Stand stand(final String name) throws Exception {
         Assume.assumeNotNull(MongoStandITCase.HOST);
         final Stand origin = Mockito.mock(Stand.class);
-        Mockito.doReturn(RandomStringUtils.randomAlphabetic(Tv.FIVE))
-            .when(origin).name();
+        Mockito.doReturn(name).when(origin).name();
         return new MongoStand(
             new Mongo.Simple(
                 MongoStandITCase.HOST,
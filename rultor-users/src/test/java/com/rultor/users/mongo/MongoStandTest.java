@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.users.mongo;
+
+import com.jcabi.urn.URN;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+import com.rultor.spi.Coordinates;
+import com.rultor.spi.Stand;
+import com.rultor.tools.Time;
+import java.util.Arrays;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/**
+ * Test case for {@link MongoStand}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ */
+public final class MongoStandTest {
+
+    /**
+     * MongoStand can apply only the new line, and re-read all lines
+     * only when some lines were missed.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void readsAllLinesOnlyAfterGap() throws Exception {
+        final DBCollection col = Mockito.mock(DBCollection.class);
+        final DB database = Mockito.mock(DB.class);
+        Mockito.doReturn(col).when(database).getCollection(MongoStand.TABLE);
+        final Mongo mongo = Mockito.mock(Mongo.class);
+        Mockito.doReturn(database).when(mongo).get();
+        Mockito.doReturn(MongoStandTest.counted(1L))
+            .doReturn(MongoStandTest.counted(2L))
+            .doReturn(MongoStandTest.counted(2L + 2L))
+            .when(col).findAndModify(
+                Mockito.any(DBObject.class), Mockito.any(DBObject.class),
+                Mockito.any(DBObject.class), Mockito.anyBoolean(),
+                Mockito.any(DBObject.class), Mockito.anyBoolean(),
+                Mockito.anyBoolean()
+            );
+        Mockito.doReturn(
+            MongoStandTest.counted(1L).append(
+                "lines",
+                Arrays.asList(
+                    new BasicDBObject("nano", 1L).append("text", "ADD 'a';")
+                )
+            )
+        ).when(col).findOne(
+            Mockito.any(DBObject.class), Mockito.any(DBObject.class)
+        );
+        final WriteResult result = Mockito.mock(WriteResult.class);
+        Mockito.doReturn(WriteConcern.ACKNOWLEDGED).when(result)
+            .getLastConcern();
+        Mockito.doReturn(result).when(col).update(
+            Mockito.any(DBObject.class), Mockito.any(DBObject.class)
+        );
+        final Stand origin = Mockito.mock(Stand.class);
+        Mockito.doReturn("gaps").when(origin).name();
+        final Stand stand = new MongoStand(mongo, origin);
+        final Coordinates pulse = new Coordinates.Simple(
+            URN.create("urn:test:1"), "rule", new Time()
+        );
+        stand.post(pulse, 1L, "ADD 'a';");
+        stand.post(pulse, 2L, "ADD 'b';");
+        Mockito.verify(col, Mockito.times(1)).findOne(
+            Mockito.any(DBObject.class), Mockito.any(DBObject.class)
+        );
+        stand.post(pulse, 2L + 2L, "ADD 'd';");
+        Mockito.verify(col, Mockito.times(2)).findOne(
+            Mockito.any(DBObject.class), Mockito.any(DBObject.class)
+        );
+        final ArgumentCaptor<DBObject> fields =
+            ArgumentCaptor.forClass(DBObject.class);
+        Mockito.verify(col, Mockito.times(2 + 1)).findAndModify(
+            Mockito.any(DBObject.class), fields.capture(),
+            Mockito.any(DBObject.class), Mockito.anyBoolean(),
+            Mockito.any(DBObject.class), Mockito.anyBoolean(),
+            Mockito.anyBoolean()
+        );
+        MatcherAssert.assertThat(
+            fields.getValue().keySet(),
+            Matchers.not(Matchers.hasItems("lines", "xembly"))
+        );
+    }
+
+    /**
+     * Make Mongo object of a pulse with this counter of lines.
+     * @param count Counter of lines
+     * @return Object
+     */
+    private static BasicDBObject counted(final long count) {
+        return new BasicDBObject("count", count);
+    }
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.users.mongo;
+
+import com.rultor.snapshot.Snapshot;
+import com.rultor.snapshot.TagLine;
+import com.rultor.spi.Tag;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.logging.Level;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link PulseTags}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ */
+public final class PulseTagsTest {
+
+    /**
+     * PulseTags can find the same tags as Snapshot does.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void findsSameTagsAsSnapshot() throws Exception {
+        final String[] lines = {
+            new TagLine("first").attr("alpha", "1").toString(),
+            "XPATH '/snapshot'; ADDIF 'steps'; ADD 'step'; SET 'hi';",
+            new TagLine("second").fine(true).markdown("**ok**").toString(),
+            new TagLine("first").attr("alpha", "2").fine(false).toString(),
+        };
+        final PulseTags state = new PulseTags(0L);
+        final StringBuilder script = new StringBuilder();
+        for (int idx = 0; idx < lines.length; ++idx) {
+            state.apply(idx, lines[idx]);
+            script.append(lines[idx]);
+        }
+        final Collection<Tag> tags = state.tags();
+        MatcherAssert.assertThat(
+            tags,
+            Matchers.<Collection<Tag>>equalTo(
+                new ArrayList<Tag>(new Snapshot(script.toString()).tags())
+            )
+        );
+        final Tag first = tags.iterator().next();
+        MatcherAssert.assertThat(first.label(), Matchers.equalTo("first"));
+        MatcherAssert.assertThat(first.level(), Matchers.equalTo(Level.SEVERE));
+        MatcherAssert.assertThat(
+            first.attributes(), Matchers.hasEntry("alpha", "2")
+        );
+    }
+
+    /**
+     * PulseTags can refuse lines that arrived out of order or after a gap.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void refusesLinesOutOfOrder() throws Exception {
+        final PulseTags state = new PulseTags(1L);
+        state.apply(2, new TagLine("done").toString());
+        MatcherAssert.assertThat(
+            state.append(2, 1, new TagLine("early").toString()),
+            Matchers.is(false)
+        );
+        MatcherAssert.assertThat(
+            state.append(2 + 1, 2 + 1, new TagLine("gap").toString()),
+            Matchers.is(false)
+        );
+        MatcherAssert.assertThat(
+            state.append(2, 2 + 1, new TagLine("next").toString()),
+            Matchers.is(true)
+        );
+        MatcherAssert.assertThat(state.lines(), Matchers.equalTo(2L));
+        MatcherAssert.assertThat(
+            state.tags(), Matchers.<Tag>iterableWithSize(2)
+        );
+    }
+
+    /**
+     * PulseTags can survive broken xembly lines.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void survivesBrokenLines() throws Exception {
+        final PulseTags state = new PulseTags(0L);
+        state.apply(1, "XPATH 'broken");
+        state.apply(2, "XPATH '/absent'; STRICT '1'; ADD 'x';");
+        state.apply(2 + 1, new TagLine("alive").toString());
+        MatcherAssert.assertThat(
+            state.tags(), Matchers.<Tag>iterableWithSize(1)
+        );
+    }
+
+}
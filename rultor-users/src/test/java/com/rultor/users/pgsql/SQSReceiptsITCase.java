@@ -30,10 +30,25 @@
 package com.rultor.users.pgsql;
 
 import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.jcabi.aspects.Tv;
+import com.jcabi.jdbc.JdbcSession;
+import com.jcabi.jdbc.SingleOutcome;
+import com.jcabi.log.VerboseThreads;
 import com.rultor.aws.SQSClient;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Assume;
@@ -91,6 +106,183 @@ public final class SQSReceiptsITCase {
         MatcherAssert.assertThat(receipts.process(), Matchers.equalTo(1));
     }
 
+    /**
+     * SQSReceipts can post a batch of receipts and update balances.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void postsBatchAndUpdatesBalances() throws Exception {
+        final SQSClient client = Mockito.mock(SQSClient.class);
+        final AmazonSQS aws = Mockito.mock(AmazonSQS.class);
+        Mockito.doReturn(aws).when(client).get();
+        final long base = Math.abs(new SecureRandom().nextInt());
+        final String first = String.format("urn:test:%d", base);
+        final String second = String.format("urn:test:%d", base + 1);
+        final String third = String.format("urn:test:%d", base + 2);
+        Mockito.doReturn(
+            new ReceiveMessageResult().withMessages(
+                SQSReceiptsITCase.message(first, second, Tv.TEN),
+                SQSReceiptsITCase.message(second, third, Tv.FOUR),
+                SQSReceiptsITCase.message(first, third, Tv.FIVE)
+            )
+        ).when(aws).receiveMessage(Mockito.any(ReceiveMessageRequest.class));
+        final PgClient pgsql = this.pgsql();
+        MatcherAssert.assertThat(
+            new SQSReceipts(pgsql, client).process(),
+            Matchers.equalTo(Tv.THREE)
+        );
+        MatcherAssert.assertThat(
+            SQSReceiptsITCase.balance(pgsql, first),
+            Matchers.equalTo(-(long) Tv.FIFTEEN)
+        );
+        MatcherAssert.assertThat(
+            SQSReceiptsITCase.balance(pgsql, second),
+            Matchers.equalTo((long) Tv.SIX)
+        );
+        MatcherAssert.assertThat(
+            SQSReceiptsITCase.balance(pgsql, third),
+            Matchers.equalTo((long) Tv.NINE)
+        );
+        Mockito.verify(aws, Mockito.times(Tv.THREE))
+            .deleteMessage(Mockito.any(DeleteMessageRequest.class));
+    }
+
+    /**
+     * Balances stay correct when receipts for new URNs are posted
+     * concurrently, with plain INSERTs, function add() and batches.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void keepsBalancesOfConcurrentReceipts() throws Exception {
+        Assume.assumeNotNull(SQSReceiptsITCase.URL);
+        final PgClient pgsql = new PgClient.Simple(
+            SQSReceiptsITCase.URL, SQSReceiptsITCase.PASSWORD,
+            SQSReceiptsITCase.USERNAME, Tv.TEN
+        );
+        final long base = Math.abs(new SecureRandom().nextInt());
+        final String first = String.format("urn:test:%d", base);
+        final String second = String.format("urn:test:%d", base + 1);
+        final int threads = Tv.TEN;
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService svc =
+            Executors.newFixedThreadPool(threads, new VerboseThreads());
+        final Collection<Future<?>> futures = new ArrayList<Future<?>>(0);
+        for (int thread = 0; thread < threads; ++thread) {
+            final int mode = thread % Tv.THREE;
+            futures.add(
+                svc.submit(
+                    new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            start.await();
+                            SQSReceiptsITCase.post(
+                                pgsql, mode, first, second
+                            );
+                            return null;
+                        }
+                    }
+                )
+            );
+        }
+        start.countDown();
+        for (final Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        svc.shutdown();
+        MatcherAssert.assertThat(
+            SQSReceiptsITCase.balance(pgsql, first),
+            Matchers.equalTo(-(long) threads)
+        );
+        MatcherAssert.assertThat(
+            SQSReceiptsITCase.balance(pgsql, second),
+            Matchers.equalTo((long) threads)
+        );
+        MatcherAssert.assertThat(
+            new JdbcSession(pgsql.get())
+                .sql("SELECT MAX(dtbalance) FROM receipt WHERE dt = ?")
+                .set(second)
+                .select(new SingleOutcome<Long>(Long.class)),
+            Matchers.equalTo((long) threads)
+        );
+    }
+
+    /**
+     * Post one receipt of one unit from creditor to debitor.
+     * @param pgsql PostgreSQL client
+     * @param mode Zero for INSERT, one for add(), two for a batch
+     * @param creditor Creditor URN
+     * @param debitor Debitor URN
+     * @throws SQLException If fails
+     */
+    private static void post(final PgClient pgsql, final int mode,
+        final String creditor, final String debitor)
+        throws SQLException {
+        final JdbcSession session = new JdbcSession(pgsql.get());
+        if (mode == 0) {
+            session
+                // @checkstyle StringLiteralsConcatenation (2 lines)
+                .sql("INSERT INTO receipt (time, ct, ctrule, dt, dtrule,"
+                    + " amount, details) VALUES (NOW(), ?, '', ?, '', 1, 'x')")
+                .set(creditor)
+                .set(debitor)
+                .execute();
+        } else if (mode == 1) {
+            session
+                .sql("SELECT add(?, ?, 1, 'x')")
+                .set(creditor)
+                .set(debitor)
+                .execute();
+        } else {
+            session
+                .autocommit(false)
+                .sql("SELECT start_batch()")
+                .execute()
+                // @checkstyle StringLiteralsConcatenation (2 lines)
+                .sql("INSERT INTO batch VALUES"
+                    + " (0, '', '', '', ?, '', ?, '', 1, 'x')")
+                .set(creditor)
+                .set(debitor)
+                .execute()
+                .sql("SELECT add_batch()")
+                .execute()
+                .commit();
+        }
+    }
+
+    /**
+     * Make SQS message with a receipt.
+     * @param creditor Creditor URN
+     * @param debitor Debitor URN
+     * @param amount Amount
+     * @return Message
+     */
+    private static Message message(final String creditor,
+        final String debitor, final long amount) {
+        return new Message().withBody(
+            // @checkstyle StringLiteralsConcatenation (6 lines)
+            String.format("{\"work\": {\"owner\": \"%s\",", creditor)
+            + " \"rule\": \"test\", \"scheduled\": \"2012-08-23T13:25:33Z\"},"
+            + String.format("\"ct\":\"%s\", \"ctrule\":\"a\",", creditor)
+            + String.format("\"dt\":\"%s\", \"dtrule\":\"b\",", debitor)
+            + String.format("\"details\":\"x\", \"amount\": %d}", amount)
+        ).withReceiptHandle(String.format("%s-%s", creditor, debitor));
+    }
+
+    /**
+     * Get balance of URN.
+     * @param pgsql PostgreSQL client
+     * @param urn URN
+     * @return Balance
+     * @throws SQLException If fails
+     */
+    private static long balance(final PgClient pgsql, final String urn)
+        throws SQLException {
+        return new JdbcSession(pgsql.get())
+            .sql("SELECT balance(?)")
+            .set(urn)
+            .select(new SingleOutcome<Long>(Long.class));
+    }
+
     /**
      * Get PgSql client.
      * @return Sheet to test
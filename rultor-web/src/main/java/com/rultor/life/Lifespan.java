@@ -34,6 +34,7 @@ import com.jcabi.manifests.Manifests;
 import com.rultor.spi.Queue;
 import com.rultor.spi.Repo;
 import com.rultor.spi.Users;
+import com.rultor.web.Rendering;
 import java.io.IOException;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextEvent;
@@ -81,6 +82,7 @@ public final class Lifespan implements ServletContextListener {
     @Override
     public void contextDestroyed(final ServletContextEvent event) {
         IOUtils.closeQuietly(this.profile);
+        Rendering.shutdown();
     }
 
 }
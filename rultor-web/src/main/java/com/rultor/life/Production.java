@@ -46,6 +46,7 @@ import com.rultor.users.mongo.Mongo;
 import com.rultor.users.mongo.MongoUsers;
 import com.rultor.users.pgsql.PgClient;
 import com.rultor.users.pgsql.PgUsers;
+import java.io.Closeable;
 import java.io.IOException;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
@@ -150,6 +151,10 @@ final class Production implements Profile {
     public void close() throws IOException {
         this.quartz.close();
         this.sensor.close();
+        final Queue queue = this.queue();
+        if (queue instanceof Closeable) {
+            Closeable.class.cast(queue).close();
+        }
     }
 
 }
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.life;
+
+import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.ScheduleWithFixedDelay;
+import com.jcabi.aspects.Tv;
+import com.jcabi.urn.URN;
+import com.rultor.spi.Coordinates;
+import com.rultor.spi.Rule;
+import com.rultor.spi.User;
+import com.rultor.spi.Users;
+import com.rultor.tools.Time;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.EqualsAndHashCode;
+
+/**
+ * In-memory index of all rules of all users, refreshed in background.
+ *
+ * <p>Every minute a refresh scans all users and all their rules, so its
+ * cost grows with the number of users. While the scan goes on, the rules
+ * of every user are replaced as a whole as soon as they are loaded, so
+ * the index is always available for reading and never contains a
+ * half-loaded user. Owners that disappeared from {@link Users} are
+ * removed only when the entire scan succeeds.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ */
+@Loggable(Loggable.DEBUG)
+@ScheduleWithFixedDelay(
+    delay = 1, unit = TimeUnit.MINUTES,
+    await = 1, awaitUnit = TimeUnit.MINUTES,
+    shutdownAttempts = Tv.FIVE
+)
+@EqualsAndHashCode(of = "users")
+@SuppressWarnings({
+    "PMD.AvoidInstantiatingObjectsInLoops", "PMD.DoNotUseThreads"
+})
+final class RuleIndex implements Runnable, Closeable {
+
+    /**
+     * Users.
+     */
+    private final transient Users users;
+
+    /**
+     * Rule names by their owners.
+     */
+    private final transient ConcurrentMap<URN, Collection<String>> rules =
+        new ConcurrentHashMap<URN, Collection<String>>(0);
+
+    /**
+     * Was it loaded at least once?
+     */
+    private final transient AtomicBoolean loaded = new AtomicBoolean();
+
+    /**
+     * Public ctor.
+     * @param usr Users
+     */
+    RuleIndex(final Users usr) {
+        this.users = usr;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d owner(s)", this.rules.size());
+    }
+
+    @Override
+    @Loggable(value = Loggable.DEBUG, limit = Tv.FIVE, unit = TimeUnit.MINUTES)
+    public void run() {
+        this.refresh();
+    }
+
+    @Override
+    public void close() {
+        // nothing to do
+    }
+
+    /**
+     * Make works for all known rules, scheduled at the given time.
+     *
+     * <p>The first call blocks until the index is loaded, if the
+     * background refresh hasn't done it yet.
+     *
+     * @param time Time to schedule at
+     * @return Works
+     */
+    public Collection<Coordinates> works(final Time time) {
+        if (!this.loaded.get()) {
+            this.refresh();
+        }
+        final Collection<Coordinates> works = new ArrayList<Coordinates>(0);
+        for (final Map.Entry<URN, Collection<String>> entry
+            : this.rules.entrySet()) {
+            for (final String name : entry.getValue()) {
+                works.add(new Coordinates.Simple(entry.getKey(), name, time));
+            }
+        }
+        return works;
+    }
+
+    /**
+     * Reload rules of all users.
+     */
+    private synchronized void refresh() {
+        final Collection<URN> seen = new HashSet<URN>(0);
+        for (final User user : this.users) {
+            final Collection<String> names = new ArrayList<String>(0);
+            for (final Rule rule : user.rules()) {
+                names.add(rule.name());
+            }
+            this.rules.put(
+                user.urn(), Collections.unmodifiableCollection(names)
+            );
+            seen.add(user.urn());
+        }
+        this.rules.keySet().retainAll(seen);
+        this.loaded.set(true);
+    }
+
+}
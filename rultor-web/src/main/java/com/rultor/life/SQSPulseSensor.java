@@ -30,16 +30,23 @@
 package com.rultor.life;
 
 import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
 import com.jcabi.log.VerboseRunnable;
 import com.jcabi.log.VerboseThreads;
 import com.jcabi.urn.URN;
 import com.rultor.aws.SQSClient;
+import com.rultor.repo.ClasspathRepo;
 import com.rultor.spi.ACL;
 import com.rultor.spi.Arguments;
 import com.rultor.spi.Coordinates;
@@ -54,23 +61,55 @@ import com.rultor.tools.NormJson;
 import com.rultor.tools.Time;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.json.JsonObject;
 import lombok.EqualsAndHashCode;
 
 /**
  * Sensor to pulses in SQS queue.
  *
+ * <p>Messages go through a pipeline of three stages, connected by
+ * bounded queues: receiving from SQS with one long-lived client,
+ * posting to stands, and deleting from SQS in batches. Posting threads
+ * split messages into xembly lines, group the lines by pulse and key
+ * and post every line of a group separately, in the order of nano
+ * numbers, with one lookup of the stand and one check of the key by
+ * its ACL. Messages of a group that fails to be posted are not deleted
+ * and come back from SQS after their visibility timeout, while other
+ * groups of the batch go on. Stands are kept in memory for a minute and
+ * their ACLs are instantiated once per ACL spec. An update of a stand doesn't
+ * invalidate this cache, since it may happen on another node, so a new
+ * ACL of a stand is used here up to a minute after the update.
+ * Depths of the queues and latencies of the stages are available
+ * through {@link #metrics()} and are logged every minute, together with
+ * statistics of caches of {@link ClasspathRepo}.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ * @checkstyle ClassFanOutComplexity (500 lines)
  */
 @Loggable(Loggable.DEBUG)
 @EqualsAndHashCode(of = { "users", "client" })
-@SuppressWarnings({ "PMD.DoNotUseThreads", "PMD.ExcessiveImports" })
-public final class SQSPulseSensor implements Runnable, Closeable {
+@SuppressWarnings({
+    "PMD.DoNotUseThreads", "PMD.ExcessiveImports", "PMD.TooManyMethods"
+})
+public final class SQSPulseSensor implements Closeable {
 
     /**
      * JSON schema-based reader.
@@ -80,21 +119,87 @@ public final class SQSPulseSensor implements Runnable, Closeable {
     );
 
     /**
-     * How many threads to use.
+     * Comparator of JSON messages by their nanos.
+     */
+    private static final Comparator<SQSPulseSensor.Parsed> BY_NANO =
+        new Comparator<SQSPulseSensor.Parsed>() {
+            @Override
+            public int compare(final SQSPulseSensor.Parsed left,
+                final SQSPulseSensor.Parsed right) {
+                return Long.valueOf(left.nano()).compareTo(right.nano());
+            }
+        };
+
+    /**
+     * How many threads to use for posting.
      */
     private static final int THREADS = Math.min(
         Runtime.getRuntime().availableProcessors() * Tv.FIVE,
         Tv.TEN
     );
 
+    /**
+     * How many threads to use for receiving.
+     */
+    private static final int RECEIVERS = 2;
+
     /**
      * Executor service.
      */
     private final transient ScheduledExecutorService service =
         Executors.newScheduledThreadPool(
-            SQSPulseSensor.THREADS, new VerboseThreads()
+            SQSPulseSensor.THREADS + SQSPulseSensor.RECEIVERS + 2,
+            new VerboseThreads()
         );
 
+    /**
+     * Batches of messages received and waiting to be posted.
+     * @checkstyle LineLength (3 lines)
+     */
+    private final transient BlockingQueue<Collection<SQSPulseSensor.Received>> received =
+        new LinkedBlockingQueue<Collection<SQSPulseSensor.Received>>(Tv.TEN);
+
+    /**
+     * Messages posted and waiting to be deleted.
+     */
+    private final transient BlockingQueue<SQSPulseSensor.Received> posted =
+        new LinkedBlockingQueue<SQSPulseSensor.Received>(Tv.THOUSAND);
+
+    /**
+     * Stands, by names, for a minute (changes of their ACLs are noticed
+     * only when they are fetched again).
+     */
+    private final transient Cache<String, Stand> stands =
+        CacheBuilder.newBuilder()
+            .expireAfterWrite(1L, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * ACLs, by texts of their specs.
+     */
+    private final transient Cache<String, ACL> acls =
+        CacheBuilder.newBuilder()
+            .maximumSize((long) Tv.THOUSAND)
+            .build();
+
+    /**
+     * Latency of receiving.
+     */
+    private final transient SQSPulseSensor.Meter receiving =
+        new SQSPulseSensor.Meter("receive");
+
+    /**
+     * Latency of posting, since the moment of receiving.
+     */
+    private final transient SQSPulseSensor.Meter posting =
+        new SQSPulseSensor.Meter("post");
+
+    /**
+     * Latency of deleting.
+     */
+    private final transient SQSPulseSensor.Meter deleting =
+        new SQSPulseSensor.Meter("delete");
+
     /**
      * Users.
      */
@@ -110,6 +215,11 @@ public final class SQSPulseSensor implements Runnable, Closeable {
      */
     private final transient SQSClient client;
 
+    /**
+     * AWS SQS client, used by all stages.
+     */
+    private final transient AmazonSQS aws;
+
     /**
      * Public ctor.
      * @param usr Users
@@ -121,8 +231,89 @@ public final class SQSPulseSensor implements Runnable, Closeable {
         this.users = usr;
         this.repo = rpo;
         this.client = clnt;
-        final Runnable runnable = new VerboseRunnable(this, true, false);
-        for (int thread = 0; thread < SQSPulseSensor.THREADS; ++thread) {
+        this.aws = clnt.get();
+        this.schedule(
+            SQSPulseSensor.RECEIVERS,
+            new Runnable() {
+                @Override
+                public void run() {
+                    SQSPulseSensor.this.receive();
+                }
+            }
+        );
+        this.schedule(
+            SQSPulseSensor.THREADS,
+            new Runnable() {
+                @Override
+                public void run() {
+                    SQSPulseSensor.this.post();
+                }
+            }
+        );
+        this.schedule(
+            1,
+            new Runnable() {
+                @Override
+                public void run() {
+                    SQSPulseSensor.this.delete();
+                }
+            }
+        );
+        this.service.scheduleWithFixedDelay(
+            new VerboseRunnable(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        Logger.info(
+                            SQSPulseSensor.this, "%s; %s",
+                            SQSPulseSensor.this.metrics(),
+                            ClasspathRepo.stats()
+                        );
+                    }
+                },
+                true, false
+            ),
+            1L, 1L, TimeUnit.MINUTES
+        );
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.service.shutdown();
+        try {
+            if (!this.service.awaitTermination(1L, TimeUnit.MINUTES)) {
+                this.service.shutdownNow();
+            }
+        } catch (final InterruptedException ex) {
+            this.service.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        while (!this.posted.isEmpty()) {
+            this.delete();
+        }
+        this.aws.shutdown();
+    }
+
+    /**
+     * Depths of queues between stages and latencies of stages.
+     * @return Text with metrics
+     */
+    public String metrics() {
+        return String.format(
+            "%d batch(es) received, %d message(s) posted; %s; %s; %s",
+            this.received.size(), this.posted.size(),
+            this.receiving, this.posting, this.deleting
+        );
+    }
+
+    /**
+     * Schedule a stage in a number of threads.
+     * @param threads How many threads
+     * @param stage The stage
+     */
+    private void schedule(final int threads, final Runnable stage) {
+        final Runnable runnable = new VerboseRunnable(stage, true, false);
+        for (int thread = 0; thread < threads; ++thread) {
             this.service.scheduleWithFixedDelay(
                 runnable, TimeUnit.SECONDS.toMillis(1L), 1L,
                 TimeUnit.MILLISECONDS
@@ -130,102 +321,401 @@ public final class SQSPulseSensor implements Runnable, Closeable {
         }
     }
 
-    @Override
-    @Loggable(value = Loggable.DEBUG, limit = Integer.MAX_VALUE)
-    public void run() {
-        final AmazonSQS aws = this.client.get();
+    /**
+     * Receive messages from SQS and queue them for posting.
+     */
+    private void receive() {
+        final long start = System.nanoTime();
+        final ReceiveMessageResult result = this.aws.receiveMessage(
+            new ReceiveMessageRequest()
+                .withQueueUrl(this.client.url())
+                .withWaitTimeSeconds(Tv.TWENTY)
+                .withVisibilityTimeout(Tv.SIXTY)
+                .withMaxNumberOfMessages(Tv.TEN)
+        );
+        this.receiving.add(System.nanoTime() - start);
+        final Collection<SQSPulseSensor.Received> batch =
+            new ArrayList<SQSPulseSensor.Received>(result.getMessages().size());
+        for (final Message msg : result.getMessages()) {
+            batch.add(new SQSPulseSensor.Received(msg));
+        }
+        if (!batch.isEmpty()) {
+            try {
+                this.received.put(batch);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * Post a batch of received messages to their stands and queue them
+     * for deleting.
+     *
+     * <p>Messages of a pulse that failed to be posted are not deleted,
+     * they will be received again when their visibility timeout is over.
+     * Messages that will never be posted (broken JSON, unknown stand,
+     * wrong key) are deleted.
+     */
+    private void post() {
+        Collection<SQSPulseSensor.Received> batch;
         try {
-            final ReceiveMessageResult result = aws.receiveMessage(
-                new ReceiveMessageRequest()
-                    .withQueueUrl(this.client.url())
-                    .withWaitTimeSeconds(Tv.FIVE)
-                    .withVisibilityTimeout(Tv.FIVE)
-                    .withMaxNumberOfMessages(Tv.TEN)
-            );
-            for (final Message msg : result.getMessages()) {
-                this.process(aws, msg);
+            batch = this.received.poll(1L, TimeUnit.SECONDS);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+        if (batch == null) {
+            batch = Collections.emptyList();
+        }
+        for (final List<SQSPulseSensor.Parsed> pulse : this.pulses(batch)) {
+            if (this.post(pulse)) {
+                final Collection<SQSPulseSensor.Received> msgs =
+                    new LinkedHashSet<SQSPulseSensor.Received>(pulse.size());
+                for (final SQSPulseSensor.Parsed line : pulse) {
+                    msgs.add(line.received());
+                }
+                for (final SQSPulseSensor.Received msg : msgs) {
+                    this.done(msg);
+                }
             }
-        } finally {
-            aws.shutdown();
         }
     }
 
-    @Override
-    public void close() throws IOException {
-        this.service.shutdown();
+    /**
+     * Queue a message for deleting.
+     * @param msg The message
+     */
+    private void done(final SQSPulseSensor.Received msg) {
+        this.posting.add(System.nanoTime() - msg.start());
+        try {
+            this.posted.put(msg);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
     }
 
     /**
-     * Process one message.
-     * @param aws SQS client
-     * @param msg Message from SQS
+     * Delete a batch of posted messages from SQS.
      */
-    private void process(final AmazonSQS aws, final Message msg) {
+    private void delete() {
+        final List<SQSPulseSensor.Received> batch =
+            new ArrayList<SQSPulseSensor.Received>(Tv.TEN);
         try {
-            this.post(SQSPulseSensor.NORM.readObject(msg.getBody()));
-        } catch (final SecurityException ex) {
-            Exceptions.info(this, ex);
-        } catch (final Stand.BrokenXemblyException ex) {
-            throw new IllegalArgumentException(ex);
-        } catch (final NormJson.JsonException ex) {
-            throw new IllegalArgumentException(ex);
-        } finally {
-            aws.deleteMessage(
-                new DeleteMessageRequest()
-                    .withQueueUrl(this.client.url())
-                    .withReceiptHandle(msg.getReceiptHandle())
-            );
+            final SQSPulseSensor.Received first =
+                this.posted.poll(1L, TimeUnit.SECONDS);
+            if (first != null) {
+                batch.add(first);
+                this.posted.drainTo(batch, Tv.TEN - 1);
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+        if (!batch.isEmpty()) {
+            final Collection<DeleteMessageBatchRequestEntry> entries =
+                new ArrayList<DeleteMessageBatchRequestEntry>(batch.size());
+            for (final SQSPulseSensor.Received msg : batch) {
+                entries.add(
+                    new DeleteMessageBatchRequestEntry()
+                        .withId(Integer.toString(entries.size()))
+                        .withReceiptHandle(msg.handle())
+                );
+            }
+            final long start = System.nanoTime();
+            final DeleteMessageBatchResult result =
+                this.aws.deleteMessageBatch(
+                    new DeleteMessageBatchRequest()
+                        .withQueueUrl(this.client.url())
+                        .withEntries(entries)
+                );
+            this.deleting.add(System.nanoTime() - start);
+            for (final BatchResultErrorEntry error : result.getFailed()) {
+                Logger.warn(
+                    this, "failed to delete message #%s: %s",
+                    error.getId(), error.getMessage()
+                );
+            }
         }
     }
 
     /**
-     * Post this JSON to the right stand.
-     * @param json JSON to process
-     * @throws Stand.BrokenXemblyException If fails
-     * @checkstyle RedundantThrows (5 lines)
-     */
-    private void post(final JsonObject json)
-        throws Stand.BrokenXemblyException {
-        final Stand stand = this.users.stand(json.getString("stand"));
-        final String key = json.getString("key");
-        if (!this.acl(stand).canPost(key)) {
-            throw new SecurityException(
-                String.format(
-                    "access denied to `%s` for '%s'",
-                    stand.name(), key
-                )
-            );
+     * Parse messages, split them into xembly lines and group the lines
+     * by pulses and keys, in order of their nanos (messages that can't be
+     * parsed are queued for deleting).
+     *
+     * <p>A message contains either an array of lines, each one with its
+     * own nano and xembly, or one line right in the message, as it was
+     * sent before.
+     *
+     * @param batch Messages
+     * @return Groups of parsed lines, one group per pulse and key
+     */
+    private Collection<List<SQSPulseSensor.Parsed>> pulses(
+        final Collection<SQSPulseSensor.Received> batch) {
+        final Map<String, List<SQSPulseSensor.Parsed>> pulses =
+            new LinkedHashMap<String, List<SQSPulseSensor.Parsed>>(0);
+        for (final SQSPulseSensor.Received msg : batch) {
+            try {
+                final JsonObject json =
+                    SQSPulseSensor.NORM.readObject(msg.body());
+                final String key = String.format(
+                    "%s %s %s",
+                    json.getString("stand"), json.getString("key"),
+                    json.getJsonObject("work")
+                );
+                if (!pulses.containsKey(key)) {
+                    pulses.put(key, new LinkedList<SQSPulseSensor.Parsed>());
+                }
+                final Collection<JsonObject> lines;
+                if (json.containsKey("lines")) {
+                    lines = json.getJsonArray("lines")
+                        .getValuesAs(JsonObject.class);
+                } else {
+                    lines = Collections.singletonList(json);
+                }
+                for (final JsonObject line : lines) {
+                    pulses.get(key).add(
+                        new SQSPulseSensor.Parsed(msg, json, line)
+                    );
+                }
+            } catch (final NormJson.JsonException ex) {
+                Exceptions.warn(this, ex);
+                this.done(msg);
+            }
         }
-        final JsonObject work = json.getJsonObject("work");
-        stand.post(
-            new Coordinates.Simple(
+        for (final List<SQSPulseSensor.Parsed> pulse : pulses.values()) {
+            Collections.sort(pulse, SQSPulseSensor.BY_NANO);
+        }
+        return pulses.values();
+    }
+
+    /**
+     * Post lines of one pulse to the right stand, one by one.
+     * @param pulse Lines to post, of the same stand, pulse and key
+     * @return TRUE if they are done with, FALSE if they have to be
+     *  received and posted again
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private boolean post(final List<SQSPulseSensor.Parsed> pulse) {
+        final JsonObject head = pulse.get(0).json();
+        boolean done = true;
+        try {
+            final Stand stand = this.stand(head.getString("stand"));
+            final String key = head.getString("key");
+            if (!this.acl(stand).canPost(key)) {
+                throw new SecurityException(
+                    String.format(
+                        "access denied to `%s` for '%s'",
+                        stand.name(), key
+                    )
+                );
+            }
+            final JsonObject work = head.getJsonObject("work");
+            final Coordinates coords = new Coordinates.Simple(
                 URN.create(work.getString("owner")),
                 work.getString("rule"),
                 new Time(work.getString("scheduled"))
-            ),
-            json.getJsonNumber("nano").longValue(),
-            json.getString("xembly")
-        );
+            );
+            for (final SQSPulseSensor.Parsed line : pulse) {
+                stand.post(coords, line.nano(), line.xembly());
+            }
+        } catch (final SecurityException ex) {
+            Exceptions.info(this, ex);
+        } catch (final NoSuchElementException ex) {
+            Exceptions.info(this, ex);
+        // @checkstyle IllegalCatch (1 line)
+        } catch (final RuntimeException ex) {
+            Exceptions.warn(this, ex);
+            done = false;
+        }
+        return done;
     }
 
     /**
-     * Get ACL of a stand.
+     * Get stand by name, from cache if possible.
+     * @param name Name of the stand
+     * @return Stand
+     */
+    private Stand stand(final String name) {
+        Stand stand = this.stands.getIfPresent(name);
+        if (stand == null) {
+            stand = this.users.stand(name);
+            this.stands.put(name, stand);
+        }
+        return stand;
+    }
+
+    /**
+     * Get ACL of a stand, from cache if possible.
      * @param stand The stand
      * @return ACL
      */
     private ACL acl(final Stand stand) {
-        try {
-            return ACL.class.cast(
-                this.repo.make(new User.Nobody(), stand.acl())
-                    .instantiate(
-                        this.users,
-                        new Arguments(
-                            new Coordinates.None(), new Wallet.Empty()
+        final String spec = stand.acl().asText();
+        ACL acl = this.acls.getIfPresent(spec);
+        if (acl == null) {
+            try {
+                acl = ACL.class.cast(
+                    this.repo.make(new User.Nobody(), stand.acl())
+                        .instantiate(
+                            this.users,
+                            new Arguments(
+                                new Coordinates.None(), new Wallet.Empty()
+                            )
                         )
-                    )
+                );
+            } catch (final SpecException ex) {
+                throw new IllegalStateException(ex);
+            }
+            this.acls.put(spec, acl);
+        }
+        return acl;
+    }
+
+    /**
+     * Message received from SQS.
+     */
+    @EqualsAndHashCode(of = "message")
+    private static final class Received {
+        /**
+         * The message.
+         */
+        private final transient Message message;
+        /**
+         * When it was received, in nanoseconds.
+         */
+        private final transient long nano = System.nanoTime();
+        /**
+         * Ctor.
+         * @param msg The message
+         */
+        Received(final Message msg) {
+            this.message = msg;
+        }
+        /**
+         * Body of the message.
+         * @return Body
+         */
+        public String body() {
+            return this.message.getBody();
+        }
+        /**
+         * Receipt handle of the message.
+         * @return Handle
+         */
+        public String handle() {
+            return this.message.getReceiptHandle();
+        }
+        /**
+         * When it was received.
+         * @return Nanoseconds
+         */
+        public long start() {
+            return this.nano;
+        }
+    }
+
+    /**
+     * Xembly line of a message received from SQS and parsed.
+     */
+    @EqualsAndHashCode(of = { "msg", "line" })
+    private static final class Parsed {
+        /**
+         * The message.
+         */
+        private final transient SQSPulseSensor.Received msg;
+        /**
+         * Its JSON.
+         */
+        private final transient JsonObject obj;
+        /**
+         * JSON of the line, with nano and xembly.
+         */
+        private final transient JsonObject line;
+        /**
+         * Ctor.
+         * @param message The message
+         * @param json Its JSON
+         * @param item JSON of the line
+         */
+        Parsed(final SQSPulseSensor.Received message, final JsonObject json,
+            final JsonObject item) {
+            this.msg = message;
+            this.obj = json;
+            this.line = item;
+        }
+        /**
+         * The message.
+         * @return Message
+         */
+        public SQSPulseSensor.Received received() {
+            return this.msg;
+        }
+        /**
+         * JSON of the message.
+         * @return JSON
+         */
+        public JsonObject json() {
+            return this.obj;
+        }
+        /**
+         * Nano number of the line.
+         * @return Nano
+         */
+        public long nano() {
+            return this.line.getJsonNumber("nano").longValue();
+        }
+        /**
+         * Xembly script of the line.
+         * @return Xembly
+         */
+        public String xembly() {
+            return this.line.getString("xembly");
+        }
+    }
+
+    /**
+     * Latency of a stage.
+     */
+    @EqualsAndHashCode(of = "name")
+    private static final class Meter {
+        /**
+         * Name of the stage.
+         */
+        private final transient String name;
+        /**
+         * How many times it happened.
+         */
+        private final transient AtomicLong count = new AtomicLong();
+        /**
+         * Total time it took, in nanoseconds.
+         */
+        private final transient AtomicLong total = new AtomicLong();
+        /**
+         * Ctor.
+         * @param label Name of the stage
+         */
+        Meter(final String label) {
+            this.name = label;
+        }
+        /**
+         * Add one more measurement.
+         * @param nanos Time it took, in nanoseconds
+         */
+        public void add(final long nanos) {
+            this.count.incrementAndGet();
+            this.total.addAndGet(nanos);
+        }
+        @Override
+        public String toString() {
+            final long times = this.count.get();
+            return Logger.format(
+                "%s: %d in %[nano]s average",
+                this.name, times, this.total.get() / Math.max(1L, times)
             );
-        } catch (final SpecException ex) {
-            throw new IllegalStateException(ex);
         }
     }
 
@@ -35,30 +35,48 @@ import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
 import com.amazonaws.services.sqs.model.SendMessageRequest;
-import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.RetryOnFailure;
 import com.jcabi.aspects.ScheduleWithFixedDelay;
 import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import com.jcabi.log.VerboseThreads;
 import com.rultor.aws.SQSClient;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Queue;
-import com.rultor.spi.Rule;
-import com.rultor.spi.User;
 import com.rultor.spi.Users;
+import com.rultor.tools.Exceptions;
 import com.rultor.tools.Time;
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.EqualsAndHashCode;
 
 /**
  * Quartz in Amazon SQS.
  *
+ * <p>Every minute it publishes one work per rule of every user. Rules are
+ * taken from {@link RuleIndex}, which is refreshed in background, and
+ * published in batches of ten by a pool of threads. A batch that fails
+ * to be published in background is pushed once again synchronously,
+ * and its works are reported as lost only if that fails too. The delay
+ * between the scheduled time of a tick and the moment when all its works
+ * are in the queue is available through {@link #lag()} and is logged
+ * with WARN level when it exceeds one minute.
+ *
  * @author Yegor Bugayenko (yegor@tpc2.com)
  * @version $Id$
  * @checkstyle ClassDataAbstractionCoupling (500 lines)
  */
-@Immutable
 @Loggable(Loggable.DEBUG)
 @ScheduleWithFixedDelay(
     delay = 1, unit = TimeUnit.SECONDS,
@@ -67,15 +85,39 @@ import lombok.EqualsAndHashCode;
 )
 @EqualsAndHashCode(of = { "users", "queue", "client" })
 @SuppressWarnings({
-    "PMD.AvoidInstantiatingObjectsInLoops", "PMD.DoNotUseThreads"
+    "PMD.AvoidInstantiatingObjectsInLoops", "PMD.DoNotUseThreads",
+    "PMD.ExcessiveImports"
 })
 public final class SQSQuartz implements Runnable, Closeable {
 
+    /**
+     * How many threads to use for publishing.
+     */
+    private static final int THREADS = Tv.FIVE;
+
+    /**
+     * Executor service for publishing.
+     */
+    private final transient ExecutorService service =
+        Executors.newFixedThreadPool(
+            SQSQuartz.THREADS, new VerboseThreads()
+        );
+
+    /**
+     * Tick lag of the latest published tick, in milliseconds.
+     */
+    private final transient AtomicLong latest = new AtomicLong();
+
     /**
      * Users.
      */
     private final transient Users users;
 
+    /**
+     * Index of all rules.
+     */
+    private final transient RuleIndex index;
+
     /**
      * Queue.
      */
@@ -95,6 +137,7 @@ public final class SQSQuartz implements Runnable, Closeable {
     SQSQuartz(final Users usr, final Queue que,
         final SQSClient clnt) {
         this.users = usr;
+        this.index = new RuleIndex(usr);
         this.queue = que;
         this.client = clnt;
     }
@@ -107,7 +150,17 @@ public final class SQSQuartz implements Runnable, Closeable {
 
     @Override
     public void close() {
-        // nothing to do
+        this.index.close();
+        this.service.shutdown();
+    }
+
+    /**
+     * Tick lag of the latest published tick.
+     * @return Milliseconds between the scheduled time of the tick and
+     *  the moment when all its works were published
+     */
+    public long lag() {
+        return this.latest.get();
     }
 
     /**
@@ -175,13 +228,78 @@ public final class SQSQuartz implements Runnable, Closeable {
      * @param time Time to use
      */
     private void publish(final Time time) {
-        for (final User user : this.users) {
-            for (final Rule rule : user.rules()) {
-                this.queue.push(
-                    new Coordinates.Simple(user.urn(), rule.name(), time)
-                );
+        final List<Coordinates> works =
+            new ArrayList<Coordinates>(this.index.works(time));
+        final Map<Future<?>, Collection<Coordinates>> futures =
+            new LinkedHashMap<Future<?>, Collection<Coordinates>>(0);
+        for (int start = 0; start < works.size(); start += Tv.TEN) {
+            final Collection<Coordinates> batch = works.subList(
+                start, Math.min(start + Tv.TEN, works.size())
+            );
+            futures.put(
+                this.service.submit(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            SQSQuartz.this.queue.push(batch);
+                        }
+                    }
+                ),
+                batch
+            );
+        }
+        int lost = 0;
+        for (final Map.Entry<Future<?>, Collection<Coordinates>> entry
+            : futures.entrySet()) {
+            try {
+                entry.getKey().get();
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ex);
+            } catch (final ExecutionException ex) {
+                Exceptions.warn(this, ex);
+                if (!this.push(entry.getValue())) {
+                    lost += entry.getValue().size();
+                }
             }
         }
+        final long lag = System.currentTimeMillis() - time.millis();
+        this.latest.set(lag);
+        if (lost > 0) {
+            Logger.error(
+                this, "%d work(s) of %s lost, %d published with lag of %[ms]s",
+                lost, time, works.size() - lost, lag
+            );
+        } else if (lag > TimeUnit.MINUTES.toMillis(1)) {
+            Logger.warn(
+                this, "%d work(s) of %s published with tick lag of %[ms]s",
+                works.size(), time, lag
+            );
+        } else {
+            Logger.info(
+                this, "%d work(s) of %s published with tick lag of %[ms]s",
+                works.size(), time, lag
+            );
+        }
+    }
+
+    /**
+     * Push a batch that failed to be published in background once again,
+     * in this thread.
+     * @param batch Works to push
+     * @return TRUE if pushed
+     */
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private boolean push(final Collection<Coordinates> batch) {
+        boolean pushed = false;
+        try {
+            this.queue.push(batch);
+            pushed = true;
+        // @checkstyle IllegalCatch (1 line)
+        } catch (final RuntimeException ex) {
+            Exceptions.warn(this, ex);
+        }
+        return pushed;
     }
 
 }
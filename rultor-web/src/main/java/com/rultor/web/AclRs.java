@@ -125,6 +125,7 @@ public final class AclRs extends BaseRs {
                     new Coordinates.None(), Collection.class
                 )
             );
+            Feed.refresh();
         } catch (final SpecException ex) {
             return this.head()
                 .append(FlashInset.bundle(Level.SEVERE, Exceptions.message(ex)))
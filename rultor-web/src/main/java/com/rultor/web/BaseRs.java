@@ -49,16 +49,12 @@ import com.rexsl.page.inset.FlashInset;
 import com.rexsl.page.inset.LinksInset;
 import com.rexsl.page.inset.VersionInset;
 import com.rultor.spi.ACL;
-import com.rultor.spi.Arguments;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Repo;
-import com.rultor.spi.SpecException;
 import com.rultor.spi.Stand;
 import com.rultor.spi.User;
 import com.rultor.spi.Users;
-import com.rultor.spi.Wallet;
 import com.rultor.tools.Dollars;
-import com.rultor.tools.Exceptions;
 import com.rultor.tools.Time;
 import java.net.URI;
 import java.util.logging.Level;
@@ -329,30 +325,7 @@ public class BaseRs extends BaseResource {
      * @return ACL
      */
     protected final ACL acl(final Stand stand) {
-        ACL acl;
-        try {
-            acl = ACL.class.cast(
-                this.repo().make(new User.Nobody(), stand.acl()).instantiate(
-                    this.users(),
-                    new Arguments(
-                        new Coordinates.None(), new Wallet.Empty()
-                    )
-                )
-            );
-        } catch (final SpecException ex) {
-            Exceptions.warn(this, ex);
-            acl = new ACL() {
-                @Override
-                public boolean canView(final URN urn) {
-                    return false;
-                }
-                @Override
-                public boolean canPost(final String key) {
-                    return false;
-                }
-            };
-        }
-        return acl;
+        return new Feed(this.users(), this.repo()).acl(stand);
     }
 
     /**
@@ -35,6 +35,7 @@ import com.rexsl.page.JaxbBundle;
 import com.rexsl.page.Link;
 import com.rexsl.page.PageBuilder;
 import com.rultor.snapshot.Snapshot;
+import com.rultor.snapshot.Stylesheets;
 import com.rultor.snapshot.XSLT;
 import com.rultor.snapshot.XemblyException;
 import com.rultor.spi.Arguments;
@@ -47,6 +48,8 @@ import com.rultor.spi.Wallet;
 import com.rultor.tools.Exceptions;
 import com.rultor.tools.Time;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -295,13 +298,13 @@ public final class DrainRs extends BaseRs {
             );
         final Snapshot snapshot;
         try {
-            snapshot = new Snapshot(this.drain(time).read());
+            snapshot = new Snapshot(DrainRs.xembly(this.drain(time)));
             bundle = bundle.add("xembly", snapshot.xembly()).up();
             try {
                 bundle = bundle.add(
                     new XSLT(
                         snapshot,
-                        this.getClass().getResourceAsStream("post.xsl")
+                        Stylesheets.get(DrainRs.class, "post.xsl")
                     ).dom().getDocumentElement()
                 );
             } catch (final XemblyException ex) {
@@ -330,4 +333,54 @@ public final class DrainRs extends BaseRs {
         );
     }
 
+    /**
+     * Read xembly of the drain, from its sidecar if possible.
+     *
+     * <p>Pulses written before the sidecar was configured have no
+     * sidecar or an empty one, and their xembly is parsed from the main
+     * drain, as it was done before.
+     *
+     * @param drain The drain
+     * @return Stream with xembly lines (and maybe other lines too)
+     * @throws IOException If fails
+     */
+    static InputStream xembly(final Drain drain) throws IOException {
+        InputStream stream = null;
+        if (drain instanceof Drain.Sidecar) {
+            stream = DrainRs.sidecar(Drain.Sidecar.class.cast(drain));
+        }
+        if (stream == null) {
+            stream = drain.read();
+        }
+        return stream;
+    }
+
+    /**
+     * Read xembly from the sidecar of the drain.
+     * @param drain The drain
+     * @return Stream with xembly lines or NULL if the sidecar is absent
+     *  or empty
+     * @throws IOException If fails to close the sidecar
+     */
+    private static InputStream sidecar(final Drain.Sidecar drain)
+        throws IOException {
+        InputStream stream;
+        try {
+            final PushbackInputStream input =
+                new PushbackInputStream(drain.xembly());
+            final int first = input.read();
+            if (first < 0) {
+                input.close();
+                stream = null;
+            } else {
+                input.unread(first);
+                stream = input;
+            }
+        } catch (final IOException ex) {
+            Exceptions.info(DrainRs.class, ex);
+            stream = null;
+        }
+        return stream;
+    }
+
 }
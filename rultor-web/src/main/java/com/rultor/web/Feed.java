@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.web;
+
+import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterators;
+import com.jcabi.aspects.Loggable;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.VerboseThreads;
+import com.jcabi.urn.URN;
+import com.rultor.spi.ACL;
+import com.rultor.spi.Arguments;
+import com.rultor.spi.Coordinates;
+import com.rultor.spi.Pulse;
+import com.rultor.spi.Pulses;
+import com.rultor.spi.Repo;
+import com.rultor.spi.Spec;
+import com.rultor.spi.SpecException;
+import com.rultor.spi.Stand;
+import com.rultor.spi.User;
+import com.rultor.spi.Users;
+import com.rultor.spi.Wallet;
+import com.rultor.tools.Exceptions;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Global feed of pulses, visible to a user.
+ *
+ * <p>The feed is read from {@link Users#flow()} narrowed down to stands
+ * visible to the user, according to a listing of ACL specs of all stands.
+ * The listing is loaded once and then refreshed in background every
+ * minute (and when a stand is updated, see {@link #refresh()}),
+ * so request threads never walk through all users, except the very
+ * first one. The listing is only an index: every stand that shows up
+ * in the feed is loaded again and its current ACL is checked, so that
+ * a revoked ACL never grants access. ACLs are instantiated once per
+ * spec, which is all they depend on.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+@ToString
+@EqualsAndHashCode(of = { "users", "repo" })
+@Loggable(Loggable.DEBUG)
+@SuppressWarnings("PMD.DoNotUseThreads")
+final class Feed {
+
+    /**
+     * ACLs, by texts of their specs.
+     */
+    private static final Cache<String, ACL> ACLS = CacheBuilder.newBuilder()
+        .expireAfterAccess(1L, TimeUnit.HOURS)
+        .maximumSize((long) Tv.THOUSAND)
+        .build();
+
+    /**
+     * ACL specs of all stands, by names of stands.
+     */
+    private static final LoadingCache<Users, Map<String, Spec>> STANDS =
+        CacheBuilder.newBuilder()
+            .refreshAfterWrite(1L, TimeUnit.MINUTES)
+            .build(
+                CacheLoader.asyncReloading(
+                    new CacheLoader<Users, Map<String, Spec>>() {
+                        @Override
+                        public Map<String, Spec> load(final Users users) {
+                            return Feed.specs(users);
+                        }
+                    },
+                    Executors.newSingleThreadExecutor(
+                        new VerboseThreads(Feed.class)
+                    )
+                )
+            );
+
+    /**
+     * Users.
+     */
+    private final transient Users users;
+
+    /**
+     * Repo.
+     */
+    private final transient Repo repo;
+
+    /**
+     * Public ctor.
+     * @param usrs Users
+     * @param rpo Repo
+     */
+    Feed(final Users usrs, final Repo rpo) {
+        this.users = usrs;
+        this.repo = rpo;
+    }
+
+    /**
+     * Refresh the listing of stands in background, when one of them
+     * is updated.
+     */
+    public static void refresh() {
+        for (final Users key : Feed.STANDS.asMap().keySet()) {
+            Feed.STANDS.refresh(key);
+        }
+    }
+
+    /**
+     * Latest pulses visible to the user, starting from the head.
+     * @param urn URN of the user
+     * @param head Coordinates of the first pulse or NULL for the latest one
+     * @param maximum Maximum number of pulses to read
+     * @return Pulses
+     * @throws IOException If fails
+     */
+    public Iterator<Pulse> pulses(final URN urn, final Coordinates head,
+        final int maximum) throws IOException {
+        final Collection<String> visible = this.visible(urn);
+        final Iterator<Pulse> pulses;
+        if (visible.isEmpty()) {
+            pulses = Collections.<Pulse>emptyIterator();
+        } else {
+            final Pulses flow = this.users.flow().query()
+                .withStands(visible)
+                .withLimit(maximum)
+                .fetch();
+            final Iterator<Pulse> all;
+            if (head == null) {
+                all = flow.iterator();
+            } else {
+                all = flow.tail(head).iterator();
+            }
+            final Map<String, Boolean> checked =
+                new HashMap<String, Boolean>(0);
+            pulses = Iterators.filter(
+                all,
+                new Predicate<Pulse>() {
+                    @Override
+                    public boolean apply(final Pulse pulse) {
+                        final String stand = pulse.stand();
+                        if (!checked.containsKey(stand)) {
+                            checked.put(stand, Feed.this.canView(stand, urn));
+                        }
+                        return checked.get(stand);
+                    }
+                }
+            );
+        }
+        return pulses;
+    }
+
+    /**
+     * Get ACL of the stand, from cache if possible.
+     * @param stand The stand
+     * @return ACL
+     */
+    public ACL acl(final Stand stand) {
+        return this.acl(stand.acl());
+    }
+
+    /**
+     * Get ACL by its spec, from cache if possible.
+     * @param spec Spec of ACL
+     * @return ACL
+     */
+    private ACL acl(final Spec spec) {
+        ACL acl = Feed.ACLS.getIfPresent(spec.asText());
+        if (acl == null) {
+            try {
+                acl = ACL.class.cast(
+                    this.repo.make(new User.Nobody(), spec).instantiate(
+                        this.users,
+                        new Arguments(
+                            new Coordinates.None(), new Wallet.Empty()
+                        )
+                    )
+                );
+                Feed.ACLS.put(spec.asText(), acl);
+            } catch (final SpecException ex) {
+                Exceptions.warn(this, ex);
+                acl = new ACL() {
+                    @Override
+                    public boolean canView(final URN urn) {
+                        return false;
+                    }
+                    @Override
+                    public boolean canPost(final String key) {
+                        return false;
+                    }
+                };
+            }
+        }
+        return acl;
+    }
+
+    /**
+     * Names of stands visible to the user, according to the listing.
+     * @param urn URN of the user
+     * @return Names of stands
+     */
+    private Collection<String> visible(final URN urn) {
+        final Collection<String> visible = new LinkedList<String>();
+        for (final Map.Entry<String, Spec> stand
+            : Feed.STANDS.getUnchecked(this.users).entrySet()) {
+            if (this.acl(stand.getValue()).canView(urn)) {
+                visible.add(stand.getKey());
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * Can the user view pulses of the stand, according to its current ACL?
+     * @param stand Name of the stand
+     * @param urn URN of the user
+     * @return TRUE if the stand exists and is visible to the user
+     */
+    private boolean canView(final String stand, final URN urn) {
+        boolean can;
+        try {
+            can = this.acl(this.users.stand(stand)).canView(urn);
+        } catch (final NoSuchElementException ex) {
+            can = false;
+        }
+        return can;
+    }
+
+    /**
+     * ACL specs of all stands.
+     * @param users Users
+     * @return Specs by names of stands
+     */
+    private static Map<String, Spec> specs(final Users users) {
+        final Map<String, Spec> specs = new HashMap<String, Spec>(0);
+        for (final User user : users) {
+            for (final Stand stand : user.stands()) {
+                specs.put(stand.name(), stand.acl());
+            }
+        }
+        return Collections.unmodifiableMap(specs);
+    }
+
+}
@@ -29,8 +29,6 @@
  */
 package com.rultor.web;
 
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterators;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.Tv;
 import com.rexsl.page.JaxbBundle;
@@ -39,10 +37,13 @@ import com.rexsl.page.PageBuilder;
 import com.rexsl.page.auth.Identity;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Pulse;
+import com.rultor.spi.Pulses;
 import com.rultor.spi.Tag;
+import java.io.IOException;
 import java.util.Iterator;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Response;
 
 /**
@@ -57,13 +58,35 @@ import javax.ws.rs.core.Response;
 @Loggable(Loggable.DEBUG)
 public final class IndexRs extends BaseRs {
 
+    /**
+     * Query param for the first pulse to show.
+     */
+    public static final String QUERY_TAIL = "tail";
+
+    /**
+     * The first pulse to show, or NULL for the latest one.
+     */
+    private transient Coordinates head;
+
+    /**
+     * Inject it from query.
+     * @param tail Coordinates of the first pulse
+     */
+    @QueryParam(IndexRs.QUERY_TAIL)
+    public void setTail(final String tail) {
+        if (tail != null) {
+            this.head = Coordinates.Simple.valueOf(tail);
+        }
+    }
+
     /**
      * Get entrance page JAX-RS response.
      * @return The JAX-RS response
+     * @throws IOException If fails
      */
     @GET
     @Path("/")
-    public Response index() {
+    public Response index() throws IOException {
         final Identity self = this.auth().identity();
         final Response response;
         if (self.equals(Identity.ANONYMOUS)) {
@@ -74,21 +97,8 @@ public final class IndexRs extends BaseRs {
                 .append(new Breadcrumbs().with("self", "home").bundle())
                 .append(
                     this.pulses(
-                        Iterators.filter(
-                            this.users().flow().iterator(),
-                            new Predicate<Pulse>() {
-                                @Override
-                                public boolean apply(final Pulse pulse) {
-                                    return IndexRs.this.acl(
-                                        IndexRs.this.users()
-                                            .stand(pulse.stand())
-                                    )
-                                        .canView(
-                                            IndexRs.this.auth()
-                                                .identity().urn()
-                                        );
-                                }
-                            }
+                        new Feed(this.users(), this.repo()).pulses(
+                            self.urn(), this.head, Tv.TWENTY + 1
                         ),
                         Tv.TWENTY
                     )
@@ -102,9 +112,7 @@ public final class IndexRs extends BaseRs {
                 .init(this)
                 .append(new Breadcrumbs().with("self", "home").bundle())
                 .append(
-                    this.pulses(
-                        this.user().stands().flow().iterator(), Tv.TWENTY
-                    )
+                    this.pulses(this.own(), Tv.TWENTY)
                 )
                 .render()
                 .build();
@@ -112,6 +120,22 @@ public final class IndexRs extends BaseRs {
         return response;
     }
 
+    /**
+     * Latest pulses of all stands of the current user.
+     * @return Pulses, starting from the head
+     * @throws IOException If fails
+     */
+    private Iterator<Pulse> own() throws IOException {
+        final Pulses flow = this.user().stands().flow();
+        final Iterator<Pulse> pulses;
+        if (this.head == null) {
+            pulses = flow.iterator();
+        } else {
+            pulses = flow.tail(this.head).iterator();
+        }
+        return pulses;
+    }
+
     /**
      * All pulses of the stand.
      * @param pulses All pulses to show
@@ -127,6 +151,22 @@ public final class IndexRs extends BaseRs {
             }
             bundle = bundle.add(this.pulse(pulses.next()));
         }
+        if (pos == maximum && pulses.hasNext()) {
+            bundle = bundle.link(
+                new Link(
+                    "more",
+                    this.uriInfo().getBaseUriBuilder()
+                        .clone()
+                        .path(IndexRs.class)
+                        .queryParam(IndexRs.QUERY_TAIL, "{tail}")
+                        .build(
+                            new Coordinates.Simple(
+                                pulses.next().coordinates()
+                            ).toString()
+                        )
+                )
+            );
+        }
         return bundle;
     }
 
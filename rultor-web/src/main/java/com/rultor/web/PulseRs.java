@@ -45,11 +45,16 @@ import java.io.InputStream;
 import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import javax.validation.constraints.NotNull;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
-import org.apache.commons.io.IOUtils;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 /**
  * Single pulse.
@@ -64,6 +69,11 @@ import org.apache.commons.io.IOUtils;
 @Loggable(Loggable.DEBUG)
 public final class PulseRs extends BaseRs {
 
+    /**
+     * Query param with number of last lines to show.
+     */
+    public static final String QUERY_TAIL = "tail";
+
     /**
      * Rule name.
      */
@@ -96,14 +106,47 @@ public final class PulseRs extends BaseRs {
 
     /**
      * Get stream.
+     *
+     * <p>The log is never loaded into memory. With {@code tail} query
+     * parameter only the given number of last lines is sent, but no more
+     * than {@link PulseStream#LINES}. HTTP
+     * {@code Range} header is respected (see {@link PulseStream}).
+     *
+     * @param range HTTP Range header, if any
+     * @param tail How many last lines to send, or zero for all
+     * @param encoding HTTP Accept-Encoding header, if any
      * @return The JAX-RS response
      */
     @GET
     @Path("/stream")
     @Produces("text/plain; charset=UTF-8")
-    public String stream() {
+    public Response stream(@HeaderParam(PulseStream.RANGE) final String range,
+        @QueryParam(PulseRs.QUERY_TAIL) @DefaultValue("0") final int tail,
+        @HeaderParam(HttpHeaders.ACCEPT_ENCODING) final String encoding) {
         try {
-            return IOUtils.toString(this.pulse().stream());
+            final PulseStream stream = new PulseStream(this.pulse().stream());
+            final Response.ResponseBuilder resp;
+            if (range == null) {
+                StreamingOutput output;
+                if (tail > 0) {
+                    output = stream.tail(tail);
+                } else {
+                    output = stream.whole();
+                }
+                if (encoding != null && encoding.contains("gzip")) {
+                    output = PulseStream.gzip(output);
+                    resp = Response.ok(output)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                } else {
+                    resp = Response.ok(output);
+                }
+            } else {
+                resp = stream.range(range);
+            }
+            return resp
+                .header("Accept-Ranges", "bytes")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .build();
         } catch (final IOException ex) {
             throw this.flash().redirect(
                 this.uriInfo().getBaseUriBuilder()
@@ -0,0 +1,353 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.web;
+
+import com.jcabi.aspects.Tv;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+
+/**
+ * Log of a pulse, sent to the client without loading it into memory.
+ *
+ * <p>The log is either streamed as is, or only its last lines are sent,
+ * or only the byte range requested by HTTP {@code Range} header. Only
+ * the requested part of the log is ever kept in memory, and never more
+ * than {@link #MAX} bytes of it. Buffers grow with the content read, not
+ * with the size requested. No more than {@link #LINES} last lines are
+ * sent.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @see <a href="http://tools.ietf.org/html/rfc7233">RFC 7233</a>
+ */
+@ToString
+@EqualsAndHashCode(of = "input")
+final class PulseStream {
+
+    /**
+     * HTTP header with requested range.
+     */
+    public static final String RANGE = "Range";
+
+    /**
+     * Max size of a range to send, in bytes.
+     */
+    public static final int MAX = 16 * 1024 * 1024;
+
+    /**
+     * Max number of last lines to send.
+     */
+    public static final int LINES = Tv.TEN * Tv.THOUSAND;
+
+    /**
+     * HTTP status "Requested Range Not Satisfiable".
+     */
+    private static final int UNSATISFIABLE = 416;
+
+    /**
+     * Pattern of a single byte range.
+     */
+    private static final Pattern BYTES =
+        Pattern.compile("\\s*bytes\\s*=\\s*(\\d*)\\s*-\\s*(\\d*)\\s*");
+
+    /**
+     * Stream of the log.
+     */
+    private final transient InputStream input;
+
+    /**
+     * Public ctor.
+     * @param stream Stream of the log, it will be closed by this class
+     */
+    PulseStream(final InputStream stream) {
+        this.input = stream;
+    }
+
+    /**
+     * The entire log.
+     * @return Streaming output
+     */
+    public StreamingOutput whole() {
+        return new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                try {
+                    IOUtils.copyLarge(PulseStream.this.input, output);
+                } finally {
+                    PulseStream.this.input.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Last lines of the log, no more than {@link #LINES} of them and no
+     * more than {@link #MAX} characters in total.
+     * @param total How many lines to send
+     * @return Streaming output
+     */
+    public StreamingOutput tail(final int total) {
+        final int lines = Math.min(total, PulseStream.LINES);
+        return new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                final LinkedList<String> last = new LinkedList<String>();
+                long chars = 0;
+                final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(
+                        PulseStream.this.input, CharEncoding.UTF_8
+                    )
+                );
+                try {
+                    while (true) {
+                        final String line = reader.readLine();
+                        if (line == null) {
+                            break;
+                        }
+                        last.addLast(line);
+                        chars += line.length();
+                        while (last.size() > lines
+                            || chars > PulseStream.MAX && last.size() > 1) {
+                            chars -= last.removeFirst().length();
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+                final Writer writer = new OutputStreamWriter(
+                    output, CharEncoding.UTF_8
+                );
+                for (final String line : last) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                writer.flush();
+            }
+        };
+    }
+
+    /**
+     * Part of the log requested by HTTP {@code Range} header.
+     *
+     * <p>Only one range is supported, as "bytes=first-last",
+     * "bytes=first-" or "bytes=-suffix". If the header is not understood,
+     * the entire log is sent.
+     *
+     * @param header Value of the header
+     * @return Response
+     * @throws IOException If fails to read the log
+     */
+    public Response.ResponseBuilder range(final String header)
+        throws IOException {
+        final Matcher matcher = PulseStream.BYTES.matcher(header);
+        final Response.ResponseBuilder resp;
+        if (!matcher.matches() || matcher.group(1).isEmpty()
+            && matcher.group(2).isEmpty()) {
+            resp = Response.ok(this.whole());
+        } else if (matcher.group(1).isEmpty()) {
+            try {
+                resp = this.suffix(
+                    (int) Math.min(
+                        Long.parseLong(matcher.group(2)), PulseStream.MAX
+                    )
+                );
+            } finally {
+                this.input.close();
+            }
+        } else {
+            final long first = Long.parseLong(matcher.group(1));
+            long last = first + PulseStream.MAX - 1;
+            if (!matcher.group(2).isEmpty()) {
+                last = Math.min(last, Long.parseLong(matcher.group(2)));
+            }
+            if (last < first) {
+                resp = Response.ok(this.whole());
+            } else {
+                try {
+                    resp = this.window(first, last);
+                } finally {
+                    this.input.close();
+                }
+            }
+        }
+        return resp;
+    }
+
+    /**
+     * Compress the output with GZIP.
+     * @param origin Original output
+     * @return Compressed output
+     */
+    public static StreamingOutput gzip(final StreamingOutput origin) {
+        return new StreamingOutput() {
+            @Override
+            public void write(final OutputStream output) throws IOException {
+                final GZIPOutputStream gzip = new GZIPOutputStream(
+                    output, Tv.EIGHT * Tv.THOUSAND
+                );
+                origin.write(gzip);
+                gzip.finish();
+            }
+        };
+    }
+
+    /**
+     * Bytes from first to last, if there are any.
+     * @param first First byte to send
+     * @param last Last byte to send
+     * @return Response
+     * @throws IOException If fails to read the log
+     */
+    private Response.ResponseBuilder window(final long first, final long last)
+        throws IOException {
+        final Response.ResponseBuilder resp;
+        final long skipped = IOUtils.skip(this.input, first);
+        final long length = last - first + 1;
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final int read = (int) IOUtils.copyLarge(this.input, baos, 0, length);
+        if (read == 0) {
+            resp = PulseStream.unsatisfiable(skipped);
+        } else {
+            String total = "*";
+            if (read < length || this.input.read() < 0) {
+                total = Long.toString(first + read);
+            }
+            resp = PulseStream.partial(
+                baos.toByteArray(), read, String.format(
+                    "bytes %d-%d/%s", first, first + read - 1, total
+                )
+            );
+        }
+        return resp;
+    }
+
+    /**
+     * Last bytes of the log.
+     * @param size How many bytes to send
+     * @return Response
+     * @throws IOException If fails to read the log
+     */
+    private Response.ResponseBuilder suffix(final int size)
+        throws IOException {
+        final Response.ResponseBuilder resp;
+        if (size == 0) {
+            resp = PulseStream.unsatisfiable(
+                IOUtils.skip(this.input, Long.MAX_VALUE)
+            );
+        } else {
+            final LinkedList<byte[]> chunks = new LinkedList<byte[]>();
+            final byte[] buf = new byte[Tv.EIGHT * Tv.THOUSAND];
+            long total = 0;
+            long kept = 0;
+            while (true) {
+                final int len = this.input.read(buf);
+                if (len < 0) {
+                    break;
+                }
+                chunks.addLast(Arrays.copyOf(buf, len));
+                kept += len;
+                total += len;
+                while (kept - chunks.getFirst().length >= size) {
+                    kept -= chunks.removeFirst().length;
+                }
+            }
+            if (total == 0) {
+                resp = PulseStream.unsatisfiable(0);
+            } else {
+                final int len = (int) Math.min(total, size);
+                final ByteArrayOutputStream baos =
+                    new ByteArrayOutputStream(len);
+                int skip = (int) (kept - len);
+                for (final byte[] chunk : chunks) {
+                    final int off = Math.min(skip, chunk.length);
+                    baos.write(chunk, off, chunk.length - off);
+                    skip -= off;
+                }
+                resp = PulseStream.partial(
+                    baos.toByteArray(), len, String.format(
+                        "bytes %d-%d/%d", total - len, total - 1, total
+                    )
+                );
+            }
+        }
+        return resp;
+    }
+
+    /**
+     * Partial content.
+     * @param bytes Bytes to send
+     * @param len How many of them
+     * @param range Content range
+     * @return Response
+     */
+    private static Response.ResponseBuilder partial(final byte[] bytes,
+        final int len, final String range) {
+        final byte[] body;
+        if (len == bytes.length) {
+            body = bytes;
+        } else {
+            body = new byte[len];
+            System.arraycopy(bytes, 0, body, 0, len);
+        }
+        return Response.status(HttpURLConnection.HTTP_PARTIAL)
+            .entity(body)
+            .header("Content-Range", range);
+    }
+
+    /**
+     * Range is not satisfiable.
+     * @param total Total length of the log
+     * @return Response
+     */
+    private static Response.ResponseBuilder unsatisfiable(final long total) {
+        return Response.status(PulseStream.UNSATISFIABLE)
+            .header("Content-Range", String.format("bytes */%d", total));
+    }
+
+}
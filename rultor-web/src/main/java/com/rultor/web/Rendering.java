@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.web;
+
+import com.google.common.util.concurrent.Futures;
+import com.jcabi.aspects.Tv;
+import com.jcabi.log.Logger;
+import com.jcabi.log.VerboseThreads;
+import com.rultor.spi.Stand;
+import com.rultor.spi.Widget;
+import com.rultor.tools.Exceptions;
+import com.rultor.widget.Alert;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import lombok.ToString;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xembly.Directives;
+import org.xembly.ImpossibleModificationException;
+import org.xembly.Xembler;
+
+/**
+ * Rendering of widgets and snapshots of one page, in parallel threads.
+ *
+ * <p>All pages share a pool of twenty threads with a queue of a hundred
+ * tasks. A task that doesn't fit into the queue fails at once, instead
+ * of making the page wait. The page waits for all its tasks no longer
+ * than its time budget in total. Tasks that are not finished by then
+ * are cancelled (and interrupted); so are all tasks still running when
+ * the page is ready (see {@link #cancel()}). A widget that fails or is
+ * not rendered in time is replaced by an {@link Alert}.
+ *
+ * <p>The pool is shut down together with the web application, by
+ * {@link #shutdown()}, and started again when a task is submitted
+ * after that.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ */
+@ToString
+@SuppressWarnings("PMD.DoNotUseThreads")
+public final class Rendering {
+
+    /**
+     * Threads rendering widgets and snapshots of all pages.
+     */
+    private static final AtomicReference<ThreadPoolExecutor> THREADS =
+        new AtomicReference<ThreadPoolExecutor>();
+
+    /**
+     * DOM document builders of threads.
+     */
+    private static final ThreadLocal<DocumentBuilder> BUILDERS =
+        new ThreadLocal<DocumentBuilder>() {
+            @Override
+            protected DocumentBuilder initialValue() {
+                try {
+                    return DocumentBuilderFactory.newInstance()
+                        .newDocumentBuilder();
+                } catch (final ParserConfigurationException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+        };
+
+    /**
+     * Time budget, in milliseconds.
+     */
+    private final transient long budget;
+
+    /**
+     * When all tasks have to be finished, in milliseconds.
+     */
+    private final transient long deadline;
+
+    /**
+     * All tasks submitted.
+     */
+    private final transient Collection<Future<?>> tasks =
+        new ArrayList<Future<?>>(0);
+
+    /**
+     * Public ctor.
+     * @param msec Time budget of the page, in milliseconds
+     */
+    Rendering(final long msec) {
+        this.budget = msec;
+        this.deadline = System.currentTimeMillis() + msec;
+    }
+
+    /**
+     * Shut down all threads.
+     */
+    public static void shutdown() {
+        synchronized (Rendering.THREADS) {
+            final ThreadPoolExecutor pool = Rendering.THREADS.getAndSet(null);
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Get the pool of threads, starting it if necessary.
+     * @return The pool
+     */
+    private static ThreadPoolExecutor threads() {
+        synchronized (Rendering.THREADS) {
+            if (Rendering.THREADS.get() == null) {
+                Rendering.THREADS.set(
+                    new ThreadPoolExecutor(
+                        Tv.TWENTY, Tv.TWENTY, 1L, TimeUnit.MINUTES,
+                        new ArrayBlockingQueue<Runnable>(Tv.HUNDRED),
+                        new VerboseThreads(Rendering.class)
+                    )
+                );
+            }
+            return Rendering.THREADS.get();
+        }
+    }
+
+    /**
+     * Start a task.
+     * @param task The task
+     * @return Its result, when ready
+     * @param <T> Type of result
+     */
+    public <T> Future<T> submit(final Callable<T> task) {
+        Future<T> future;
+        try {
+            future = Rendering.threads().submit(task);
+        } catch (final RejectedExecutionException ex) {
+            Logger.warn(this, "too many tasks to render: %s", ex);
+            future = Futures.immediateFailedFuture(ex);
+        }
+        synchronized (this.tasks) {
+            this.tasks.add(future);
+        }
+        return future;
+    }
+
+    /**
+     * Get result of a task, waiting until the deadline, and cancel the
+     * task if it is not ready by then.
+     * @param future Result of the task
+     * @return The result
+     * @param <T> Type of result
+     * @throws ExecutionException If the task failed
+     * @throws TimeoutException If the task is not ready in time
+     */
+    public <T> T get(final Future<T> future)
+        throws ExecutionException, TimeoutException {
+        try {
+            return future.get(
+                Math.max(this.deadline - System.currentTimeMillis(), 0L),
+                TimeUnit.MILLISECONDS
+            );
+        } catch (final TimeoutException ex) {
+            future.cancel(true);
+            throw ex;
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new ExecutionException(ex);
+        }
+    }
+
+    /**
+     * Start rendering of widgets.
+     * @param widgets Widgets
+     * @param stand The stand to render them for
+     * @return Rendered widgets, when ready, in the same order
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public List<Future<Element>> widgets(final Collection<Widget> widgets,
+        final Stand stand) {
+        final List<Future<Element>> rendered =
+            new ArrayList<Future<Element>>(widgets.size());
+        for (final Widget widget : widgets) {
+            rendered.add(
+                this.submit(
+                    new Callable<Element>() {
+                        @Override
+                        public Element call() {
+                            return Rendering.widget(widget, stand);
+                        }
+                    }
+                )
+            );
+        }
+        return rendered;
+    }
+
+    /**
+     * Get rendered widget, or an alert if it can't be rendered in time.
+     * @param widget Widget being rendered
+     * @param rendered Rendered widget, when ready
+     * @param stand The stand
+     * @return DOM element
+     */
+    public Element widget(final Widget widget,
+        final Future<Element> rendered, final Stand stand) {
+        String alert;
+        Element element;
+        try {
+            element = this.get(rendered);
+        } catch (final ExecutionException ex) {
+            alert = Exceptions.stacktrace(ex.getCause());
+            element = Rendering.widget(new Alert(alert), stand);
+        } catch (final TimeoutException ex) {
+            alert = String.format(
+                "%s is too slow, it was not rendered in %d seconds",
+                widget.getClass().getSimpleName(),
+                TimeUnit.MILLISECONDS.toSeconds(this.budget)
+            );
+            element = Rendering.widget(new Alert(alert), stand);
+        }
+        return element;
+    }
+
+    /**
+     * Cancel all tasks that are still running.
+     */
+    public void cancel() {
+        synchronized (this.tasks) {
+            for (final Future<?> task : this.tasks) {
+                task.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Render one widget.
+     * @param widget Widget to render
+     * @param stand The stand
+     * @return DOM element
+     */
+    private static Element widget(final Widget widget, final Stand stand) {
+        final Document dom = Rendering.BUILDERS.get().newDocument();
+        final Element root = dom.createElement("widget");
+        root.setAttribute("class", widget.getClass().getCanonicalName());
+        dom.appendChild(root);
+        try {
+            new Xembler(
+                new Directives()
+                    .xpath("/widget")
+                    .append(widget.render(stand))
+            ).apply(dom);
+        } catch (final ImpossibleModificationException ex) {
+            final Element error = dom.createElement("error");
+            error.setTextContent(Exceptions.stacktrace(ex));
+            dom.getDocumentElement().appendChild(error);
+        }
+        return dom.getDocumentElement();
+    }
+
+}
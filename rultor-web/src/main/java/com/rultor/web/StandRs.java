@@ -37,8 +37,8 @@ import com.rexsl.page.Link;
 import com.rexsl.page.PageBuilder;
 import com.rexsl.page.auth.Identity;
 import com.rultor.snapshot.Snapshot;
+import com.rultor.snapshot.Stylesheets;
 import com.rultor.snapshot.XSLT;
-import com.rultor.snapshot.XemblyException;
 import com.rultor.spi.Arguments;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Pulse;
@@ -62,6 +62,11 @@ import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.GET;
@@ -71,15 +76,11 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
-import org.w3c.dom.Document;
+import javax.xml.transform.dom.DOMSource;
 import org.w3c.dom.Element;
 import org.xembly.Directives;
-import org.xembly.ImpossibleModificationException;
 import org.xembly.SyntaxException;
-import org.xembly.Xembler;
 
 /**
  * Stand front page.
@@ -111,11 +112,32 @@ public final class StandRs extends BaseRs {
      */
     private static final String QUERY_ID = "id";
 
+    /**
+     * How many pulses to show on a page.
+     */
+    private static final int PAGE = Tv.TWENTY;
+
+    /**
+     * How long widgets and pulses of a page may render, in milliseconds.
+     */
+    private static final long BUDGET = TimeUnit.SECONDS.toMillis(Tv.FIVE);
+
+    /**
+     * Rendering of widgets and pulses of this page.
+     */
+    private final transient Rendering rendering =
+        new Rendering(StandRs.BUDGET);
+
     /**
      * Stand name.
      */
     private transient String name;
 
+    /**
+     * The stand, once found and checked against its ACL.
+     */
+    private transient Stand found;
+
     /**
      * Names of pulses to show open.
      */
@@ -160,6 +182,11 @@ public final class StandRs extends BaseRs {
 
     /**
      * Get entrance page JAX-RS response.
+     *
+     * <p>Widgets and open pulses are rendered in parallel threads, while
+     * the page waits for them not longer than five seconds in total.
+     * A widget that is not ready by then is replaced by an alert.
+     *
      * @return The JAX-RS response
      */
     @GET
@@ -213,26 +240,37 @@ public final class StandRs extends BaseRs {
                     .bundle()
             );
         }
-        Pulses pulses = this.stand().pulses();
-        for (final String tag : this.tags) {
-            pulses = pulses.query().withTag(tag).fetch();
-        }
-        return page
-            .append(new JaxbBundle("stand", this.name))
-            .append(
-                new JaxbBundle("filters").add(
-                    new JaxbBundle.Group<String>(this.tags) {
-                        @Override
-                        public JaxbBundle bundle(final String tag) {
-                            return new JaxbBundle("filter", tag);
+        try {
+            final List<Widget> widgets =
+                new ArrayList<Widget>(this.widgets(this.stand().widgets()));
+            final List<Future<Element>> rendered =
+                this.rendering.widgets(widgets, this.stand());
+            Pulses pulses = this.stand().pulses();
+            for (final String tag : this.tags) {
+                pulses = pulses.query().withTag(tag).fetch();
+            }
+            pulses = pulses.query().withLimit(StandRs.PAGE).fetch();
+            final JaxbBundle bundle =
+                this.pulses(pulses.iterator(), StandRs.PAGE);
+            return page
+                .append(new JaxbBundle("stand", this.name))
+                .append(
+                    new JaxbBundle("filters").add(
+                        new JaxbBundle.Group<String>(this.tags) {
+                            @Override
+                            public JaxbBundle bundle(final String tag) {
+                                return new JaxbBundle("filter", tag);
+                            }
                         }
-                    }
+                    )
                 )
-            )
-            .append(this.widgets(this.widgets(this.stand().widgets())))
-            .append(this.pulses(pulses.iterator(), Tv.TWENTY))
-            .render()
-            .build();
+                .append(this.widgets(widgets, rendered))
+                .append(bundle)
+                .render()
+                .build();
+        } finally {
+            this.rendering.cancel();
+        }
     }
 
     /**
@@ -249,11 +287,16 @@ public final class StandRs extends BaseRs {
         try {
             resp = Response.ok().entity(
                 new XSLT(
-                    this.render(
-                        new JaxbBundle("div"),
-                        this.stand().pulses().tail(coords).iterator().next()
-                    ).element(),
-                    this.getClass().getResourceAsStream("fetch.xsl")
+                    new DOMSource(
+                        this.render(
+                            new JaxbBundle("div"),
+                            this.post(
+                                this.stand().pulses().tail(coords)
+                                    .iterator().next()
+                            )
+                        ).element()
+                    ),
+                    Stylesheets.get(StandRs.class, "fetch.xsl")
                 ).xml()
             ).build();
         } catch (final TransformerException ex) {
@@ -273,21 +316,24 @@ public final class StandRs extends BaseRs {
      * @return The stand
      */
     private Stand stand() {
-        final Stand stand;
-        try {
-            stand = this.users().stand(this.name);
-        } catch (final NoSuchElementException ex) {
-            throw this.flash().redirect(this.uriInfo().getBaseUri(), ex);
-        }
-        if (!stand.owner().equals(this.auth().identity().urn())
-            && !this.acl(stand).canView(this.auth().identity().urn())) {
-            throw this.flash().redirect(
-                this.uriInfo().getBaseUri(),
-                String.format("access denied to stand `%s`", this.name),
-                Level.WARNING
-            );
+        if (this.found == null) {
+            final Stand stand;
+            try {
+                stand = this.users().stand(this.name);
+            } catch (final NoSuchElementException ex) {
+                throw this.flash().redirect(this.uriInfo().getBaseUri(), ex);
+            }
+            if (!stand.owner().equals(this.auth().identity().urn())
+                && !this.acl(stand).canView(this.auth().identity().urn())) {
+                throw this.flash().redirect(
+                    this.uriInfo().getBaseUri(),
+                    String.format("access denied to stand `%s`", this.name),
+                    Level.WARNING
+                );
+            }
+            this.found = stand;
         }
-        return stand;
+        return this.found;
     }
 
     /**
@@ -297,13 +343,22 @@ public final class StandRs extends BaseRs {
      * @return Collection of JAXB stands
      */
     private JaxbBundle pulses(final Iterator<Pulse> pulses, final int maximum) {
-        JaxbBundle bundle = new JaxbBundle("pulses");
-        int pos;
-        for (pos = 0; pos < maximum; ++pos) {
-            if (!pulses.hasNext()) {
-                break;
+        final List<Pulse> page = new ArrayList<Pulse>(maximum);
+        while (page.size() < maximum && pulses.hasNext()) {
+            page.add(pulses.next());
+        }
+        final List<Future<Element>> posts =
+            new ArrayList<Future<Element>>(page.size());
+        for (final Pulse pulse : page) {
+            if (this.open.contains(StandRs.label(pulse))) {
+                posts.add(this.post(pulse));
+            } else {
+                posts.add(null);
             }
-            bundle = bundle.add(this.pulse(pulses.next()));
+        }
+        JaxbBundle bundle = new JaxbBundle("pulses");
+        for (int pos = 0; pos < page.size(); ++pos) {
+            bundle = bundle.add(this.pulse(page.get(pos), posts.get(pos)));
         }
         return bundle;
     }
@@ -311,9 +366,10 @@ public final class StandRs extends BaseRs {
     /**
      * Convert pulse to JaxbBundle.
      * @param pulse The pulse
+     * @param post Its rendered snapshot, if it is open, or NULL
      * @return Bundle
      */
-    private JaxbBundle pulse(final Pulse pulse) {
+    private JaxbBundle pulse(final Pulse pulse, final Future<Element> post) {
         final Coordinates coords = pulse.coordinates();
         JaxbBundle bundle = new JaxbBundle("pulse")
             .add("coordinates")
@@ -321,11 +377,11 @@ public final class StandRs extends BaseRs {
             .add("owner", coords.owner().toString()).up()
             .add("scheduled", coords.scheduled().toString()).up()
             .up();
-        final String label = new Coordinates.Simple(coords).toString();
+        final String label = StandRs.label(pulse);
         final ArraySet<String> now = new ArraySet<String>(this.open);
-        if (this.open.contains(label)) {
+        if (post != null) {
             bundle = this
-                .render(bundle, pulse)
+                .render(bundle, post)
                 .link(new Link("close", this.self(now.without(label))))
                 .link(
                     new Link(
@@ -379,42 +435,60 @@ public final class StandRs extends BaseRs {
     }
 
     /**
-     * Render snapshot into bundle.
+     * Add rendered snapshot to bundle, when it is ready.
      * @param bundle Bundle to render into
-     * @param pulse The pulse
+     * @param post Rendered snapshot
      * @return Bundle
      */
-    private JaxbBundle render(final JaxbBundle bundle, final Pulse pulse) {
-        JaxbBundle output = bundle;
+    private JaxbBundle render(final JaxbBundle bundle,
+        final Future<Element> post) {
+        JaxbBundle output;
         try {
-            final Snapshot snapshot = this.snapshot(pulse.xembly());
-            try {
-                output = output.add(
-                    new XSLT(
-                        snapshot,
-                        this.getClass().getResourceAsStream("post.xsl")
-                    ).dom().getDocumentElement()
-                );
-            } catch (final XemblyException ex) {
-                output = this.bug(output, ex);
-            } catch (final TransformerException ex) {
-                output = this.bug(output, ex);
-            }
-        } catch (final IOException ex) {
-            output = this.bug(output, ex);
-        } catch (final SyntaxException ex) {
-            output = this.bug(output, ex);
+            output = bundle.add(this.rendering.get(post));
+        } catch (final ExecutionException ex) {
+            output = this.bug(bundle, ex.getCause());
+        } catch (final TimeoutException ex) {
+            output = this.bug(bundle, ex);
         }
         return output;
     }
 
+    /**
+     * Start rendering of a snapshot of the pulse.
+     * @param pulse The pulse
+     * @return Rendered snapshot, when ready
+     */
+    private Future<Element> post(final Pulse pulse) {
+        return this.rendering.submit(
+            new Callable<Element>() {
+                @Override
+                public Element call() throws Exception {
+                    return new XSLT(
+                        StandRs.snapshot(pulse.xembly()),
+                        Stylesheets.get(StandRs.class, "post.xsl")
+                    ).dom().getDocumentElement();
+                }
+            }
+        );
+    }
+
+    /**
+     * Label of the pulse, used in the list of open ones.
+     * @param pulse The pulse
+     * @return Label
+     */
+    private static String label(final Pulse pulse) {
+        return new Coordinates.Simple(pulse.coordinates()).toString();
+    }
+
     /**
      * Get snapshot from xembly.
      * @param xembly Xembly script
      * @return Its snapshot
      * @throws SyntaxException If fails
      */
-    private Snapshot snapshot(final String xembly) throws SyntaxException {
+    private static Snapshot snapshot(final String xembly)
+        throws SyntaxException {
         return new Snapshot(
             new Directives(xembly).xpath("/snapshot/spec").remove()
         );
@@ -426,7 +500,7 @@ public final class StandRs extends BaseRs {
      * @param exc Exception
      * @return Bundle
      */
-    private JaxbBundle bug(final JaxbBundle bundle, final Exception exc) {
+    private JaxbBundle bug(final JaxbBundle bundle, final Throwable exc) {
         return bundle.add("error", Exceptions.stacktrace(exc)).up();
     }
 
@@ -454,48 +528,24 @@ public final class StandRs extends BaseRs {
     }
 
     /**
-     * All widgets of the stand.
+     * All widgets of the stand, when they are rendered.
      * @param widgets Collection of widgets
+     * @param rendered Rendered widgets, in the same order
      * @return Collection of JAXB widgets
      */
-    private JaxbBundle widgets(final Collection<Widget> widgets) {
+    private JaxbBundle widgets(final List<Widget> widgets,
+        final List<Future<Element>> rendered) {
         JaxbBundle bundle = new JaxbBundle("widgets");
-        for (final Widget widget : widgets) {
-            bundle = bundle.add(this.widget(widget));
+        for (int idx = 0; idx < widgets.size(); ++idx) {
+            bundle = bundle.add(
+                this.rendering.widget(
+                    widgets.get(idx), rendered.get(idx), this.stand()
+                )
+            );
         }
         return bundle;
     }
 
-    /**
-     * Render one widget.
-     * @param widget Widget to render
-     * @return DOM element
-     */
-    private Element widget(final Widget widget) {
-        final Document dom;
-        try {
-            dom = DocumentBuilderFactory.newInstance()
-                .newDocumentBuilder().newDocument();
-        } catch (final ParserConfigurationException ex) {
-            throw new IllegalStateException(ex);
-        }
-        final Element root = dom.createElement("widget");
-        root.setAttribute("class", widget.getClass().getCanonicalName());
-        dom.appendChild(root);
-        try {
-            new Xembler(
-                new Directives()
-                    .xpath("/widget")
-                    .append(widget.render(this.stand()))
-            ).apply(dom);
-        } catch (final ImpossibleModificationException ex) {
-            final Element error = dom.createElement("error");
-            error.setTextContent(Exceptions.stacktrace(ex));
-            dom.getDocumentElement().appendChild(error);
-        }
-        return dom.getDocumentElement();
-    }
-
     /**
      * Bundle a tag.
      * @param tag A tag
@@ -82,5 +82,17 @@
             </xsl:if>
         </ul>
         <xsl:apply-templates select="/page/pulses/pulse"/>
+        <xsl:if test="/page/pulses/links/link[@rel='more']">
+            <p>
+                <xsl:text>See </xsl:text>
+                <a title="more">
+                    <xsl:attribute name="href">
+                        <xsl:value-of select="/page/pulses/links/link[@rel='more']/@href"/>
+                    </xsl:attribute>
+                    <xsl:text>more</xsl:text>
+                </a>
+                <xsl:text> pulses.</xsl:text>
+            </p>
+        </xsl:if>
     </xsl:template>
 </xsl:stylesheet>
@@ -0,0 +1,344 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.life;
+
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.jcabi.aspects.Tv;
+import com.rultor.aws.SQSClient;
+import com.rultor.spi.ACL;
+import com.rultor.spi.Arguments;
+import com.rultor.spi.Coordinates;
+import com.rultor.spi.Repo;
+import com.rultor.spi.Spec;
+import com.rultor.spi.Stand;
+import com.rultor.spi.User;
+import com.rultor.spi.Users;
+import com.rultor.spi.Variable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+/**
+ * Test case for {@link SQSPulseSensor}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @checkstyle ClassDataAbstractionCoupling (500 lines)
+ * @checkstyle MultipleStringLiterals (500 lines)
+ */
+public final class SQSPulseSensorTest {
+
+    /**
+     * SQSPulseSensor can post pulses in order and delete them in a batch.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    public void postsPulsesInOrderAndDeletesInBatch() throws Exception {
+        final Stand stand = Mockito.mock(Stand.class);
+        final Users users = SQSPulseSensorTest.users(stand);
+        final Repo repo = SQSPulseSensorTest.repo();
+        final Collection<Message> msgs = new ArrayList<Message>(0);
+        for (final int nano : new int[] {3, 1, 2}) {
+            msgs.add(SQSPulseSensorTest.message(nano, "secret"));
+        }
+        final AmazonSQS aws = SQSPulseSensorTest.aws(msgs);
+        final SQSPulseSensor sensor = new SQSPulseSensor(
+            users, repo, SQSPulseSensorTest.client(aws)
+        );
+        try {
+            SQSPulseSensorTest.deleted(aws, msgs.size());
+            final InOrder order = Mockito.inOrder(stand);
+            for (final long nano : new long[] {1L, 2L, 3L}) {
+                order.verify(stand).post(
+                    Mockito.any(Coordinates.class), Mockito.eq(nano),
+                    Mockito.anyString()
+                );
+            }
+            Mockito.verify(users, Mockito.times(1)).stand("main");
+            Mockito.verify(repo, Mockito.times(1))
+                .make(Mockito.any(User.class), Mockito.any(Spec.class));
+            MatcherAssert.assertThat(
+                sensor.metrics(),
+                Matchers.containsString("post: 3 in")
+            );
+        } finally {
+            sensor.close();
+        }
+    }
+
+    /**
+     * SQSPulseSensor can check the key of every message of a pulse.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void rejectsMessagesWithWrongKeys() throws Exception {
+        final Stand stand = Mockito.mock(Stand.class);
+        final Collection<Message> msgs = Arrays.asList(
+            SQSPulseSensorTest.message(1, "secret"),
+            SQSPulseSensorTest.message(2, "forged")
+        );
+        final AmazonSQS aws = SQSPulseSensorTest.aws(msgs);
+        final SQSPulseSensor sensor = new SQSPulseSensor(
+            SQSPulseSensorTest.users(stand), SQSPulseSensorTest.repo(),
+            SQSPulseSensorTest.client(aws)
+        );
+        try {
+            SQSPulseSensorTest.deleted(aws, msgs.size());
+            Mockito.verify(stand).post(
+                Mockito.any(Coordinates.class), Mockito.eq(1L),
+                Mockito.anyString()
+            );
+            Mockito.verify(stand, Mockito.never()).post(
+                Mockito.any(Coordinates.class), Mockito.eq(2L),
+                Mockito.anyString()
+            );
+        } finally {
+            sensor.close();
+        }
+    }
+
+    /**
+     * SQSPulseSensor can keep messages of a pulse that failed to be posted,
+     * and post and delete messages of other pulses of the same batch.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void keepsMessagesOfFailedPulse() throws Exception {
+        final Stand stand = Mockito.mock(Stand.class);
+        final Users users = SQSPulseSensorTest.users(stand);
+        final Stand broken = Mockito.mock(Stand.class);
+        Mockito.doReturn(broken).when(users).stand("broken");
+        Mockito.doReturn(new Spec.Simple("com.rultor.acl.Prohibited()"))
+            .when(broken).acl();
+        Mockito.doThrow(new IllegalStateException("mongo is down"))
+            .when(broken).post(
+                Mockito.any(Coordinates.class), Mockito.anyLong(),
+                Mockito.anyString()
+            );
+        final Collection<Message> msgs = Arrays.asList(
+            SQSPulseSensorTest.message(1, "secret", "broken"),
+            SQSPulseSensorTest.message(2, "secret"),
+            SQSPulseSensorTest.message(Tv.THREE, "forged")
+        );
+        final AmazonSQS aws = SQSPulseSensorTest.aws(msgs);
+        final SQSPulseSensor sensor = new SQSPulseSensor(
+            users, SQSPulseSensorTest.repo(), SQSPulseSensorTest.client(aws)
+        );
+        try {
+            SQSPulseSensorTest.deleted(aws, 2);
+            Mockito.verify(stand).post(
+                Mockito.any(Coordinates.class), Mockito.eq(2L),
+                Mockito.anyString()
+            );
+            final ArgumentCaptor<DeleteMessageBatchRequest> reqs =
+                ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+            Mockito.verify(aws, Mockito.atLeast(0))
+                .deleteMessageBatch(reqs.capture());
+            final Collection<String> handles = new ArrayList<String>(0);
+            for (final DeleteMessageBatchRequest req : reqs.getAllValues()) {
+                for (final DeleteMessageBatchRequestEntry entry
+                    : req.getEntries()) {
+                    handles.add(entry.getReceiptHandle());
+                }
+            }
+            MatcherAssert.assertThat(
+                handles, Matchers.not(Matchers.hasItem("handle-1"))
+            );
+        } finally {
+            sensor.close();
+        }
+    }
+
+    /**
+     * SQSPulseSensor can post every line of a message separately.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void postsEveryLineOfMessage() throws Exception {
+        final Stand stand = Mockito.mock(Stand.class);
+        final Collection<Message> msgs = Arrays.asList(
+            new Message().withReceiptHandle("handle-many").withBody(
+                // @checkstyle LineLength (1 line)
+                "{\"work\":{\"owner\":\"urn:test:1\",\"rule\":\"r\",\"scheduled\":\"2013-08-23T13:00:00Z\"},\"stand\":\"main\",\"key\":\"secret\",\"lines\":[{\"nano\":5,\"xembly\":\"ADD 'x5';\"},{\"nano\":4,\"xembly\":\"ADD 'broken\"}]}"
+            ),
+            SQSPulseSensorTest.message(Tv.SIX, "secret")
+        );
+        final AmazonSQS aws = SQSPulseSensorTest.aws(msgs);
+        final SQSPulseSensor sensor = new SQSPulseSensor(
+            SQSPulseSensorTest.users(stand), SQSPulseSensorTest.repo(),
+            SQSPulseSensorTest.client(aws)
+        );
+        try {
+            SQSPulseSensorTest.deleted(aws, msgs.size());
+            final InOrder order = Mockito.inOrder(stand);
+            order.verify(stand).post(
+                Mockito.any(Coordinates.class), Mockito.eq((long) Tv.FOUR),
+                Mockito.eq("ADD 'broken")
+            );
+            order.verify(stand).post(
+                Mockito.any(Coordinates.class), Mockito.eq((long) Tv.FIVE),
+                Mockito.eq("ADD 'x5';")
+            );
+            order.verify(stand).post(
+                Mockito.any(Coordinates.class), Mockito.eq((long) Tv.SIX),
+                Mockito.eq("ADD 'x6';")
+            );
+        } finally {
+            sensor.close();
+        }
+    }
+
+    /**
+     * Make a pulse message of stand "main".
+     * @param nano Nano number
+     * @param key Key of the stand
+     * @return Message
+     */
+    private static Message message(final int nano, final String key) {
+        return SQSPulseSensorTest.message(nano, key, "main");
+    }
+
+    /**
+     * Make a pulse message.
+     * @param nano Nano number
+     * @param key Key of the stand
+     * @param stand Name of the stand
+     * @return Message
+     */
+    private static Message message(final int nano, final String key,
+        final String stand) {
+        return new Message()
+            .withReceiptHandle(String.format("handle-%d", nano))
+            .withBody(
+                String.format(
+                    // @checkstyle LineLength (1 line)
+                    "{\"work\":{\"owner\":\"urn:test:1\",\"rule\":\"r\",\"scheduled\":\"2013-08-23T13:00:00Z\"},\"stand\":\"%s\",\"key\":\"%s\",\"nano\":%d,\"xembly\":\"ADD 'x%d';\"}",
+                    stand, key, nano, nano
+                )
+            );
+    }
+
+    /**
+     * Make users with one stand "main".
+     * @param stand The stand
+     * @return Users
+     */
+    private static Users users(final Stand stand) {
+        final Users users = Mockito.mock(Users.class);
+        Mockito.doReturn(stand).when(users).stand("main");
+        Mockito.doReturn(new Spec.Simple("com.rultor.acl.Prohibited()"))
+            .when(stand).acl();
+        return users;
+    }
+
+    /**
+     * Make repo with an ACL that accepts only "secret".
+     * @return Repo
+     * @throws Exception If some problem inside
+     */
+    private static Repo repo() throws Exception {
+        final ACL acl = Mockito.mock(ACL.class);
+        Mockito.doReturn(true).when(acl).canPost("secret");
+        final Variable<?> var = Mockito.mock(Variable.class);
+        Mockito.doReturn(acl).when(var).instantiate(
+            Mockito.any(Users.class), Mockito.any(Arguments.class)
+        );
+        final Repo repo = Mockito.mock(Repo.class);
+        Mockito.doReturn(var).when(repo)
+            .make(Mockito.any(User.class), Mockito.any(Spec.class));
+        return repo;
+    }
+
+    /**
+     * Make SQS that returns these messages once.
+     * @param msgs Messages
+     * @return SQS
+     */
+    private static AmazonSQS aws(final Collection<Message> msgs) {
+        final AmazonSQS aws = Mockito.mock(AmazonSQS.class);
+        Mockito.doReturn(new ReceiveMessageResult().withMessages(msgs))
+            .doReturn(new ReceiveMessageResult())
+            .when(aws).receiveMessage(Mockito.any(ReceiveMessageRequest.class));
+        Mockito.doReturn(new DeleteMessageBatchResult()).when(aws)
+            .deleteMessageBatch(Mockito.any(DeleteMessageBatchRequest.class));
+        return aws;
+    }
+
+    /**
+     * Make SQS client.
+     * @param aws SQS
+     * @return Client
+     */
+    private static SQSClient client(final AmazonSQS aws) {
+        final SQSClient client = Mockito.mock(SQSClient.class);
+        Mockito.doReturn(aws).when(client).get();
+        Mockito.doReturn("http://localhost/queue").when(client).url();
+        return client;
+    }
+
+    /**
+     * Wait until this number of messages are deleted, in batches.
+     * @param aws SQS
+     * @param total How many messages
+     * @throws InterruptedException If interrupted
+     */
+    private static void deleted(final AmazonSQS aws, final int total)
+        throws InterruptedException {
+        final long start = System.currentTimeMillis();
+        int deleted = 0;
+        while (deleted < total
+            && System.currentTimeMillis() - start < Tv.TEN * Tv.THOUSAND) {
+            TimeUnit.MILLISECONDS.sleep(Tv.HUNDRED);
+            final ArgumentCaptor<DeleteMessageBatchRequest> reqs =
+                ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+            Mockito.verify(aws, Mockito.atLeast(0))
+                .deleteMessageBatch(reqs.capture());
+            deleted = 0;
+            for (final DeleteMessageBatchRequest req : reqs.getAllValues()) {
+                deleted += req.getEntries().size();
+            }
+        }
+        MatcherAssert.assertThat(deleted, Matchers.equalTo(total));
+    }
+
+}
@@ -45,6 +45,7 @@ import com.rultor.spi.Spec;
 import com.rultor.spi.User;
 import com.rultor.spi.Users;
 import com.rultor.tools.Time;
+import java.util.Collection;
 import java.util.Collections;
 import org.hamcrest.CustomMatcher;
 import org.hamcrest.Matchers;
@@ -114,15 +115,61 @@ public final class SQSQuartzTest {
         );
         Mockito.verify(queue, Mockito.atLeastOnce()).push(
             Mockito.argThat(
-                new CustomMatcher<Coordinates>("expected work") {
+                new CustomMatcher<Collection<Coordinates>>("expected works") {
                     @Override
-                    public boolean matches(final Object work) {
-                        return Coordinates.class.cast(work)
-                            .scheduled().equals(time);
+                    public boolean matches(final Object works) {
+                        final Collection<?> batch =
+                            Collection.class.cast(works);
+                        return batch.size() == 1
+                            && Coordinates.class.cast(batch.iterator().next())
+                                .scheduled().equals(time);
                     }
                 }
             )
         );
+        quartz.close();
+    }
+
+    /**
+     * SQSQuartz can push once again a batch that failed in background.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void pushesFailedBatchAgain() throws Exception {
+        final Users users = Mockito.mock(Users.class);
+        final User user = Mockito.mock(User.class);
+        Mockito.doReturn(Collections.singleton(user).iterator())
+            .when(users).iterator();
+        Mockito.doReturn(new URN("urn:github:2")).when(user).urn();
+        final Rule rule = Mockito.mock(Rule.class);
+        Mockito.doReturn("flaky-rule").when(rule).name();
+        final Rules rules = Mockito.mock(Rules.class);
+        Mockito.doReturn(rules).when(user).rules();
+        Mockito.doReturn(Collections.singleton(rule).iterator())
+            .when(rules).iterator();
+        final Queue queue = Mockito.mock(Queue.class);
+        Mockito.doThrow(new IllegalStateException("SQS is down"))
+            .doNothing()
+            .when(queue).push(Mockito.any(Collection.class));
+        final SQSClient client = Mockito.mock(SQSClient.class);
+        final AmazonSQS aws = Mockito.mock(AmazonSQS.class);
+        Mockito.doReturn(aws).when(client).get();
+        Mockito.doReturn(
+            new ReceiveMessageResult().withMessages(
+                new Message()
+                    .withBody("2013-07-21T13:38:00Z")
+                    .withReceiptHandle("handle")
+            )
+        ).when(aws).receiveMessage(Mockito.any(ReceiveMessageRequest.class));
+        final SQSQuartz quartz = new SQSQuartz(users, queue, client);
+        try {
+            quartz.run();
+            Mockito.verify(queue, Mockito.times(2))
+                .push(Mockito.any(Collection.class));
+        } finally {
+            quartz.close();
+        }
     }
 
 }
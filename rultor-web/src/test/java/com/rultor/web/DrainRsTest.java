@@ -33,11 +33,16 @@ import com.jcabi.manifests.Manifests;
 import com.rexsl.test.XhtmlMatchers;
 import com.rultor.snapshot.Snapshot;
 import com.rultor.snapshot.XSLT;
+import com.rultor.spi.Drain;
 import java.io.IOException;
 import javax.xml.transform.Source;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
 import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.xembly.Directives;
 
 /**
@@ -189,6 +194,45 @@ public final class DrainRsTest {
         );
     }
 
+    /**
+     * DrainRs can read xembly from the main drain when there is no sidecar.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void readsMainDrainWithoutSidecar() throws Exception {
+        final Drain drain = Mockito.mock(
+            Drain.class,
+            Mockito.withSettings().extraInterfaces(Drain.Sidecar.class)
+        );
+        Mockito.doThrow(new IOException("S3 object not found"))
+            .when(Drain.Sidecar.class.cast(drain)).xembly();
+        Mockito.doReturn(IOUtils.toInputStream("main log"))
+            .when(drain).read();
+        MatcherAssert.assertThat(
+            IOUtils.toString(DrainRs.xembly(drain), CharEncoding.UTF_8),
+            Matchers.equalTo("main log")
+        );
+    }
+
+    /**
+     * DrainRs can read xembly from the sidecar, without the main drain.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void readsSidecarWhenPresent() throws Exception {
+        final Drain drain = Mockito.mock(
+            Drain.class,
+            Mockito.withSettings().extraInterfaces(Drain.Sidecar.class)
+        );
+        Mockito.doReturn(IOUtils.toInputStream("xembly"))
+            .when(Drain.Sidecar.class.cast(drain)).xembly();
+        MatcherAssert.assertThat(
+            IOUtils.toString(DrainRs.xembly(drain), CharEncoding.UTF_8),
+            Matchers.equalTo("xembly")
+        );
+        Mockito.verify(drain, Mockito.never()).read();
+    }
+
     /**
      * Make XML out of directives.
      * @param xembly Xembly
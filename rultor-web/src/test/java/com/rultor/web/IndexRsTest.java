@@ -29,6 +29,7 @@
  */
 package com.rultor.web;
 
+import com.jcabi.aspects.Tv;
 import com.jcabi.manifests.Manifests;
 import com.jcabi.urn.URN;
 import com.rexsl.page.HttpHeadersMocker;
@@ -41,6 +42,7 @@ import com.rultor.spi.Account;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Pulse;
 import com.rultor.spi.Pulses;
+import com.rultor.spi.Query;
 import com.rultor.spi.Repo;
 import com.rultor.spi.Rules;
 import com.rultor.spi.Spec;
@@ -53,14 +55,18 @@ import com.rultor.spi.Users;
 import com.rultor.tools.Dollars;
 import com.rultor.tools.Time;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedList;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
 import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 /**
  * Test case for {@link IndexRs}.
@@ -68,7 +74,7 @@ import org.mockito.Mockito;
  * @version $Id$
  * @checkstyle ClassDataAbstractionCoupling (500 lines)
  */
-@SuppressWarnings("PMD.ExcessiveImports")
+@SuppressWarnings({ "PMD.ExcessiveImports", "PMD.TooManyMethods" })
 public final class IndexRsTest {
 
     /**
@@ -127,15 +133,16 @@ public final class IndexRsTest {
         final String invisible = "invisible";
         final String viurn = "urn:user:user1";
         final String inviurn = "urn:user:user2";
-        final Pulses pulses = Mockito.mock(Pulses.class);
-        final Iterator<Pulse> iterator = Arrays.asList(
+        this.flow(
+            users,
             this.pulse(visible, viurn),
             this.pulse(invisible, inviurn)
-        ).iterator();
-        Mockito.when(pulses.iterator()).thenReturn(iterator);
-        Mockito.when(users.flow()).thenReturn(pulses);
-        this.stand(users, visible, true);
-        this.stand(users, invisible, false);
+        );
+        this.stands(
+            users,
+            this.stand(users, visible, true),
+            this.stand(users, invisible, false)
+        );
         final IndexRs res = this.prepare(users);
         final Response response = res.index();
         final String coords = "/page/pulses/pulse/coordinates[owner='%s']";
@@ -151,6 +158,72 @@ public final class IndexRsTest {
         );
     }
 
+    /**
+     * IndexRs lists stands of all users only once.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void listsStandsOnce() throws Exception {
+        Manifests.inject("Rultor-Revision", "2");
+        final Users users = Mockito.mock(Users.class);
+        final String name = "public-once";
+        this.flow(users, this.pulse(name, "urn:user:user3"));
+        this.stands(users, this.stand(users, name, true));
+        this.prepare(users).index();
+        this.prepare(users).index();
+        Mockito.verify(users, Mockito.times(1)).iterator();
+    }
+
+    /**
+     * IndexRs hides pulses of a stand as soon as its ACL is revoked.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void hidesPulsesOfRevokedStand() throws Exception {
+        Manifests.inject("Rultor-Revision", "4");
+        final Users users = Mockito.mock(Users.class);
+        final String name = "public-revoked";
+        final String urn = "urn:user:user5";
+        this.flow(users, this.pulse(name, urn));
+        this.stands(users, this.stand(users, name, true));
+        final String xpath = String.format(
+            "/page/pulses/pulse/coordinates[owner='%s']", urn
+        );
+        MatcherAssert.assertThat(
+            JaxbConverter.the(this.prepare(users).index().getEntity()),
+            XhtmlMatchers.hasXPath(xpath)
+        );
+        this.stand(users, name, false);
+        MatcherAssert.assertThat(
+            JaxbConverter.the(this.prepare(users).index().getEntity()),
+            Matchers.not(XhtmlMatchers.hasXPath(xpath))
+        );
+    }
+
+    /**
+     * IndexRs shows a link to the next page of pulses.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void linksToMorePulses() throws Exception {
+        Manifests.inject("Rultor-Revision", "3");
+        final Users users = Mockito.mock(Users.class);
+        final String name = "public-paged";
+        final Pulse[] pulses = new Pulse[Tv.THIRTY];
+        for (int idx = 0; idx < pulses.length; ++idx) {
+            pulses[idx] = this.pulse(name, "urn:user:user4");
+        }
+        this.flow(users, pulses);
+        this.stands(users, this.stand(users, name, true));
+        MatcherAssert.assertThat(
+            JaxbConverter.the(this.prepare(users).index().getEntity()),
+            XhtmlMatchers.hasXPaths(
+                "/page/pulses[count(pulse) = 20]",
+                "/page/pulses/links/link[@rel='more']"
+            )
+        );
+    }
+
     /**
      * Prepare IndexRs to be used in tests.
      * @param users Users to store in attributes.
@@ -191,15 +264,75 @@ public final class IndexRsTest {
         return pulse;
     }
 
+    /**
+     * Mock global flow of pulses, which can be narrowed down to stands.
+     * @param users Users that provide the flow.
+     * @param all All pulses in the flow.
+     */
+    private void flow(final Users users, final Pulse... all) {
+        final Pulses pulses = Mockito.mock(Pulses.class);
+        final Query query = Mockito.mock(Query.class);
+        Mockito.when(pulses.query()).thenReturn(query);
+        Mockito.when(query.withStands(Mockito.<Collection<String>>any()))
+            .thenAnswer(
+                new Answer<Query>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Query answer(final InvocationOnMock inv) {
+                        final Collection<String> names =
+                            (Collection<String>) inv.getArguments()[0];
+                        final Collection<Pulse> found =
+                            new LinkedList<Pulse>();
+                        for (final Pulse pulse : all) {
+                            if (names.contains(pulse.stand())) {
+                                found.add(pulse);
+                            }
+                        }
+                        return new Pulses.Row(found).query();
+                    }
+                }
+            );
+        Mockito.when(users.flow()).thenReturn(pulses);
+    }
+
+    /**
+     * Mock a user, who owns all these stands.
+     * @param users Users to add the user to.
+     * @param all All stands.
+     */
+    private void stands(final Users users, final Stand... all) {
+        final User user = Mockito.mock(User.class);
+        final Stands stands = Mockito.mock(Stands.class);
+        Mockito.when(user.stands()).thenReturn(stands);
+        Mockito.when(stands.iterator()).thenAnswer(
+            new Answer<Iterator<Stand>>() {
+                @Override
+                public Iterator<Stand> answer(final InvocationOnMock inv) {
+                    return Arrays.asList(all).iterator();
+                }
+            }
+        );
+        Mockito.when(users.iterator()).thenAnswer(
+            new Answer<Iterator<User>>() {
+                @Override
+                public Iterator<User> answer(final InvocationOnMock inv) {
+                    return Collections.singleton(user).iterator();
+                }
+            }
+        );
+    }
+
     /**
      * Add a mock stand.
      * @param users Users that provide stands.
      * @param name Name of the stand.
      * @param visible If the stand is public.
+     * @return The stand
      */
-    private void stand(final Users users, final String name,
+    private Stand stand(final Users users, final String name,
         final boolean visible) {
         final Stand stand = Mockito.mock(Stand.class);
+        Mockito.when(stand.name()).thenReturn(name);
         final Spec acl;
         if (visible) {
             acl = new Spec.Simple("com.rultor.acl.OpenView()");
@@ -208,5 +341,6 @@ public final class IndexRsTest {
         }
         Mockito.when(stand.acl()).thenReturn(acl);
         Mockito.when(users.stand(name)).thenReturn(stand);
+        return stand;
     }
 }
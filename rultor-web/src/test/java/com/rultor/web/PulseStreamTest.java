@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.web;
+
+import com.jcabi.aspects.Tv;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPInputStream;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.CharEncoding;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link PulseStream}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @checkstyle MultipleStringLiterals (500 lines)
+ */
+@SuppressWarnings("PMD.AvoidDuplicateLiterals")
+public final class PulseStreamTest {
+
+    /**
+     * PulseStream can send last lines.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sendsLastLines() throws Exception {
+        MatcherAssert.assertThat(
+            PulseStreamTest.print(
+                new PulseStream(PulseStreamTest.log("a\nb\nc\nd\n")).tail(2)
+            ),
+            Matchers.equalTo("c\nd\n")
+        );
+    }
+
+    /**
+     * PulseStream can send no more than a limited number of last lines.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void limitsNumberOfLastLines() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int idx = 0; idx <= PulseStream.LINES; ++idx) {
+            text.append(idx).append('\n');
+        }
+        final String tail = PulseStreamTest.print(
+            new PulseStream(PulseStreamTest.log(text.toString()))
+                .tail(Integer.MAX_VALUE)
+        );
+        MatcherAssert.assertThat(
+            tail, Matchers.startsWith("1\n2\n")
+        );
+        MatcherAssert.assertThat(
+            tail.split("\n").length, Matchers.equalTo(PulseStream.LINES)
+        );
+    }
+
+    /**
+     * PulseStream can send a byte range.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sendsByteRange() throws Exception {
+        final Response resp = new PulseStream(
+            PulseStreamTest.log("0123456789")
+        ).range("bytes=2-4").build();
+        MatcherAssert.assertThat(
+            resp.getStatus(),
+            Matchers.equalTo(HttpURLConnection.HTTP_PARTIAL)
+        );
+        MatcherAssert.assertThat(
+            new String((byte[]) resp.getEntity(), CharEncoding.UTF_8),
+            Matchers.equalTo("234")
+        );
+        MatcherAssert.assertThat(
+            resp.getMetadata().getFirst("Content-Range").toString(),
+            Matchers.equalTo("bytes 2-4/*")
+        );
+    }
+
+    /**
+     * PulseStream can send an open byte range.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sendsOpenByteRange() throws Exception {
+        final Response resp = new PulseStream(
+            PulseStreamTest.log("0123456789")
+        ).range("bytes=7-").build();
+        MatcherAssert.assertThat(
+            new String((byte[]) resp.getEntity(), CharEncoding.UTF_8),
+            Matchers.equalTo("789")
+        );
+        MatcherAssert.assertThat(
+            resp.getMetadata().getFirst("Content-Range").toString(),
+            Matchers.equalTo("bytes 7-9/10")
+        );
+    }
+
+    /**
+     * PulseStream can send the end of a log.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sendsSuffixRange() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int idx = 0; idx < Tv.TEN * Tv.THOUSAND; ++idx) {
+            text.append(idx % Tv.TEN);
+        }
+        final Response resp = new PulseStream(
+            PulseStreamTest.log(text.toString())
+        ).range("bytes=-5").build();
+        MatcherAssert.assertThat(
+            new String((byte[]) resp.getEntity(), CharEncoding.UTF_8),
+            Matchers.equalTo("56789")
+        );
+        MatcherAssert.assertThat(
+            resp.getMetadata().getFirst("Content-Range").toString(),
+            Matchers.equalTo("bytes 9995-9999/10000")
+        );
+    }
+
+    /**
+     * PulseStream can send a short log for a long suffix range.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void sendsShortLogForLongSuffix() throws Exception {
+        final Response resp = new PulseStream(
+            PulseStreamTest.log("short")
+        ).range(String.format("bytes=-%d", Long.MAX_VALUE)).build();
+        MatcherAssert.assertThat(
+            new String((byte[]) resp.getEntity(), CharEncoding.UTF_8),
+            Matchers.equalTo("short")
+        );
+        MatcherAssert.assertThat(
+            resp.getMetadata().getFirst("Content-Range").toString(),
+            Matchers.equalTo("bytes 0-4/5")
+        );
+    }
+
+    /**
+     * PulseStream can reject a range beyond the end.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void rejectsRangeBeyondEnd() throws Exception {
+        final Response resp = new PulseStream(
+            PulseStreamTest.log("abc")
+        ).range("bytes=10-20").build();
+        MatcherAssert.assertThat(
+            // @checkstyle MagicNumber (1 line)
+            resp.getStatus(), Matchers.equalTo(416)
+        );
+        MatcherAssert.assertThat(
+            resp.getMetadata().getFirst("Content-Range").toString(),
+            Matchers.equalTo("bytes */3")
+        );
+    }
+
+    /**
+     * PulseStream can compress the log.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void compressesLog() throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PulseStream.gzip(
+            new PulseStream(PulseStreamTest.log("hello, world")).whole()
+        ).write(baos);
+        MatcherAssert.assertThat(
+            IOUtils.toString(
+                new GZIPInputStream(
+                    new ByteArrayInputStream(baos.toByteArray())
+                ),
+                CharEncoding.UTF_8
+            ),
+            Matchers.equalTo("hello, world")
+        );
+    }
+
+    /**
+     * Make a log.
+     * @param text Text of it
+     * @return Stream
+     * @throws IOException If fails
+     */
+    private static InputStream log(final String text) throws IOException {
+        return IOUtils.toInputStream(text, CharEncoding.UTF_8);
+    }
+
+    /**
+     * Print output.
+     * @param output Output to print
+     * @return Text printed
+     * @throws IOException If fails
+     */
+    private static String print(final StreamingOutput output)
+        throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        output.write(baos);
+        return new String(baos.toByteArray(), CharEncoding.UTF_8);
+    }
+
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.web;
+
+import com.jcabi.aspects.Tv;
+import com.rultor.spi.Stand;
+import com.rultor.spi.Widget;
+import com.rultor.widget.Alert;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.hamcrest.MatcherAssert;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.w3c.dom.Element;
+import org.xembly.Directives;
+
+/**
+ * Test case for {@link Rendering}.
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ */
+@SuppressWarnings("PMD.DoNotUseThreads")
+public final class RenderingTest {
+
+    /**
+     * Rendering can keep widgets in their order.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void keepsOrderOfWidgets() throws Exception {
+        final List<Widget> widgets = new ArrayList<Widget>(Tv.FIVE);
+        for (int idx = 0; idx < Tv.FIVE; ++idx) {
+            widgets.add(
+                new RenderingTest.Slow(
+                    Integer.toString(idx), (long) (Tv.FIVE - idx) * Tv.TEN
+                )
+            );
+        }
+        MatcherAssert.assertThat(
+            RenderingTest.texts(new Rendering(Tv.THOUSAND), widgets),
+            Matchers.contains("0", "1", "2", "3", "4")
+        );
+    }
+
+    /**
+     * Rendering can replace a slow widget with an alert and interrupt it.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void replacesSlowWidgetWithAlert() throws Exception {
+        final RenderingTest.Slow slow =
+            new RenderingTest.Slow("slow", TimeUnit.MINUTES.toMillis(1L));
+        final Rendering rendering = new Rendering((long) Tv.HUNDRED);
+        final Stand stand = Mockito.mock(Stand.class);
+        final Collection<Widget> widgets = Arrays.<Widget>asList(
+            new RenderingTest.Slow("fast", 0L), slow
+        );
+        final List<Future<Element>> rendered =
+            rendering.widgets(widgets, stand);
+        MatcherAssert.assertThat(
+            rendering.widget(slow, rendered.get(1), stand)
+                .getAttribute("class"),
+            Matchers.equalTo(Alert.class.getCanonicalName())
+        );
+        MatcherAssert.assertThat(
+            slow.interrupted().await(Tv.FIVE, TimeUnit.SECONDS),
+            Matchers.is(true)
+        );
+        MatcherAssert.assertThat(
+            rendering.widget(slow, rendered.get(0), stand).getTextContent(),
+            Matchers.equalTo("fast")
+        );
+    }
+
+    /**
+     * Rendering can replace a broken widget with an alert.
+     * @throws Exception If some problem inside
+     */
+    @Test
+    public void replacesBrokenWidgetWithAlert() throws Exception {
+        final Widget broken = new Widget() {
+            @Override
+            public Directives render(final Stand stand) {
+                throw new IllegalStateException("widget is broken");
+            }
+        };
+        final Rendering rendering = new Rendering(Tv.THOUSAND);
+        final Stand stand = Mockito.mock(Stand.class);
+        final List<Future<Element>> rendered = rendering.widgets(
+            Arrays.asList(broken, new RenderingTest.Slow("ok", 0L)), stand
+        );
+        final Element alert = rendering.widget(broken, rendered.get(0), stand);
+        MatcherAssert.assertThat(
+            alert.getAttribute("class"),
+            Matchers.equalTo(Alert.class.getCanonicalName())
+        );
+        MatcherAssert.assertThat(
+            alert.getTextContent(), Matchers.containsString("is broken")
+        );
+        MatcherAssert.assertThat(
+            rendering.widget(broken, rendered.get(1), stand).getTextContent(),
+            Matchers.equalTo("ok")
+        );
+    }
+
+    /**
+     * Render widgets and get their texts.
+     * @param rendering Rendering to use
+     * @param widgets Widgets
+     * @return Texts, in order of widgets
+     */
+    private static List<String> texts(final Rendering rendering,
+        final List<Widget> widgets) {
+        final Stand stand = Mockito.mock(Stand.class);
+        final List<Future<Element>> rendered =
+            rendering.widgets(widgets, stand);
+        final List<String> texts = new ArrayList<String>(widgets.size());
+        for (int idx = 0; idx < widgets.size(); ++idx) {
+            texts.add(
+                rendering.widget(widgets.get(idx), rendered.get(idx), stand)
+                    .getTextContent()
+            );
+        }
+        return texts;
+    }
+
+    /**
+     * Widget that renders its text after a delay.
+     */
+    private static final class Slow implements Widget {
+        /**
+         * Text to render.
+         */
+        private final transient String text;
+        /**
+         * Delay in milliseconds.
+         */
+        private final transient long delay;
+        /**
+         * Counted down when the rendering is interrupted.
+         */
+        private final transient CountDownLatch latch = new CountDownLatch(1);
+        /**
+         * Ctor.
+         * @param txt Text to render
+         * @param msec Delay in milliseconds
+         */
+        Slow(final String txt, final long msec) {
+            this.text = txt;
+            this.delay = msec;
+        }
+        @Override
+        public Directives render(final Stand stand) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(this.delay);
+            } catch (final InterruptedException ex) {
+                this.latch.countDown();
+                Thread.currentThread().interrupt();
+            }
+            return new Directives().add("text").set(this.text);
+        }
+        /**
+         * Latch, counted down when the rendering is interrupted.
+         * @return Latch
+         */
+        public CountDownLatch interrupted() {
+            return this.latch;
+        }
+    }
+
+}
@@ -35,15 +35,12 @@ import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.Tv;
 import com.rultor.spi.Coordinates;
 import com.rultor.spi.Pulse;
+import com.rultor.spi.Pulses;
 import com.rultor.spi.Stand;
 import com.rultor.spi.Tag;
 import com.rultor.spi.Widget;
-import java.util.Collection;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import lombok.EqualsAndHashCode;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.math3.stat.StatUtils;
@@ -66,48 +63,32 @@ public final class BuildHealth implements Widget {
     /**
      * {@inheritDoc}
      *
+     * <p>Health of every owner and rule is calculated by up to a hundred
+     * of their recent builds, which the stand may keep ready, see
+     * {@link Stand.Recent}.
+     *
      * @todo #201 If we increase the amount of elements to be
      *  processes, an OutOfMemory exception will be thrown. I don't understand
      *  why and how memory leakage is happening...
      *  http://stackoverflow.com/questions/18684598
      */
     @Override
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
     public Directives render(final Stand stand) {
         Directives dirs = new Directives()
             .add("width").set("4").up()
             .add("builds");
-        final Collection<BuildHealth.Build> builds = this.builds(
-            Iterables.limit(
-                stand.pulses().query().withTag("on-commit").fetch(),
-                Tv.HUNDRED
-            ).iterator()
-        );
-        for (final BuildHealth.Build build : builds) {
+        for (final Pulses group
+            : new TaggedPulses(stand, "on-commit").groups(Tv.HUNDRED)) {
+            final BuildHealth.Build build = new BuildHealth.Build();
+            for (final Pulse pulse : Iterables.limit(group, Tv.HUNDRED)) {
+                build.append(pulse);
+            }
             dirs = dirs.append(build.directives()).up();
         }
         return dirs;
     }
 
-    /**
-     * Find all builds.
-     * @param pulses Iterator of pulses
-     * @return Collection of builds
-     */
-    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-    private Collection<BuildHealth.Build> builds(final Iterator<Pulse> pulses) {
-        final ConcurrentMap<String, BuildHealth.Build> builds =
-            new ConcurrentSkipListMap<String, BuildHealth.Build>();
-        while (pulses.hasNext()) {
-            final Pulse pulse = pulses.next();
-            final String coord = String.format(
-                "%s %s", pulse.coordinates().owner(), pulse.coordinates().rule()
-            );
-            builds.putIfAbsent(coord, new BuildHealth.Build());
-            builds.get(coord).append(pulse);
-        }
-        return builds.values();
-    }
-
     /**
      * Mutable single build.
      */
@@ -29,7 +29,6 @@
  */
 package com.rultor.widget;
 
-import com.google.common.collect.Iterables;
 import com.jcabi.aspects.Immutable;
 import com.jcabi.aspects.Loggable;
 import com.jcabi.aspects.Tv;
@@ -59,10 +58,8 @@ public final class MergeHistory implements Widget {
         final Directives dirs = new Directives()
             .add("width").set("6").up()
             .add("merges");
-        final Iterable<Pulse> pulses = Iterables.limit(
-            stand.pulses().query().withTag("on-pull-request").fetch(),
-            Tv.TEN
-        );
+        final Iterable<Pulse> pulses =
+            new TaggedPulses(stand, "on-pull-request").latest(Tv.TEN);
         for (final Pulse pulse : pulses) {
             final Coordinates coords = pulse.coordinates();
             dirs.add("merge")
@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2009-2013, rultor.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1) Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2) Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided
+ * with the distribution. 3) Neither the name of the rultor.com nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT
+ * NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.rultor.widget;
+
+import com.google.common.collect.Iterables;
+import com.jcabi.aspects.Immutable;
+import com.jcabi.aspects.Loggable;
+import com.rultor.spi.Pulse;
+import com.rultor.spi.Pulses;
+import com.rultor.spi.Stand;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Recent pulses of a stand with a tag.
+ *
+ * <p>Pulses are read from {@link Stand.Recent}, when the stand keeps
+ * them, or found among the latest pulses of the stand otherwise.
+ *
+ * @author Yegor Bugayenko (yegor@tpc2.com)
+ * @version $Id$
+ * @since 1.0
+ */
+@Immutable
+@ToString
+@EqualsAndHashCode(of = { "stand", "label" })
+@Loggable(Loggable.DEBUG)
+final class TaggedPulses {
+
+    /**
+     * Comparator of pulses, from the latest one.
+     */
+    private static final Comparator<Pulse> LATEST = new Comparator<Pulse>() {
+        @Override
+        public int compare(final Pulse left, final Pulse right) {
+            return right.coordinates().scheduled()
+                .compareTo(left.coordinates().scheduled());
+        }
+    };
+
+    /**
+     * The stand.
+     */
+    private final transient Stand stand;
+
+    /**
+     * Label of the tag.
+     */
+    private final transient String label;
+
+    /**
+     * Public ctor.
+     * @param stnd The stand
+     * @param lbl Label of the tag
+     */
+    TaggedPulses(final Stand stnd, final String lbl) {
+        this.stand = stnd;
+        this.label = lbl;
+    }
+
+    /**
+     * Recent pulses, one group per owner and rule, ordered by owner and
+     * rule.
+     * @param maximum How many latest pulses of the stand to look at, if
+     *  the stand doesn't keep them
+     * @return Groups of pulses, each one ordered from the latest
+     */
+    public Collection<Pulses> groups(final int maximum) {
+        final ConcurrentMap<String, Pulses> groups =
+            new ConcurrentSkipListMap<String, Pulses>();
+        if (this.stand instanceof Stand.Recent) {
+            for (final Pulses group
+                : Stand.Recent.class.cast(this.stand).recent(this.label)) {
+                final Pulse head = Iterables.getFirst(group, null);
+                if (head != null) {
+                    groups.put(TaggedPulses.rule(head), group);
+                }
+            }
+        } else {
+            final ConcurrentMap<String, Collection<Pulse>> found =
+                new ConcurrentSkipListMap<String, Collection<Pulse>>();
+            for (final Pulse pulse : this.fetch(maximum)) {
+                final String rule = TaggedPulses.rule(pulse);
+                found.putIfAbsent(rule, new LinkedList<Pulse>());
+                found.get(rule).add(pulse);
+            }
+            for (final String rule : found.keySet()) {
+                groups.put(rule, new Pulses.Row(found.get(rule)));
+            }
+        }
+        return groups.values();
+    }
+
+    /**
+     * The latest pulses.
+     * @param maximum Maximum number of pulses
+     * @return Pulses, from the latest
+     */
+    public Iterable<Pulse> latest(final int maximum) {
+        final Iterable<Pulse> latest;
+        if (this.stand instanceof Stand.Recent) {
+            final List<Pulse> all = new ArrayList<Pulse>(0);
+            for (final Pulses group : this.groups(maximum)) {
+                Iterables.addAll(all, Iterables.limit(group, maximum));
+            }
+            Collections.sort(all, TaggedPulses.LATEST);
+            latest = Iterables.limit(all, maximum);
+        } else {
+            latest = this.fetch(maximum);
+        }
+        return latest;
+    }
+
+    /**
+     * Fetch latest pulses of the stand with the tag.
+     * @param maximum Maximum number of pulses
+     * @return Pulses
+     */
+    private Iterable<Pulse> fetch(final int maximum) {
+        return Iterables.limit(
+            this.stand.pulses().query()
+                .withTag(this.label)
+                .withLimit(maximum)
+                .fetch(),
+            maximum
+        );
+    }
+
+    /**
+     * Owner and rule of the pulse.
+     * @param pulse The pulse
+     * @return Text
+     */
+    private static String rule(final Pulse pulse) {
+        return String.format(
+            "%s %s", pulse.coordinates().owner(), pulse.coordinates().rule()
+        );
+    }
+
+}
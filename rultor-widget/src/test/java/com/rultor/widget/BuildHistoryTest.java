@@ -39,6 +39,7 @@ import com.rultor.spi.Stand;
 import com.rultor.spi.Tag;
 import com.rultor.spi.Tags;
 import com.rultor.spi.Widget;
+import com.rultor.tools.Time;
 import java.util.Arrays;
 import java.util.logging.Level;
 import org.hamcrest.MatcherAssert;
@@ -127,6 +128,40 @@ public final class BuildHistoryTest {
         );
     }
 
+    /**
+     * BuildHistory can read recent builds kept by the stand.
+     * @throws Exception If fails
+     */
+    @Test
+    public void readsRecentBuildsKeptByStand() throws Exception {
+        final Pulse first = this.build("urn:test:7", "rule-p", 1L);
+        final Pulse second = this.build("urn:test:8", "rule-q", 2L);
+        final Pulse third = this.build("urn:test:7", "rule-p", 3L);
+        final Stand stand = Mockito.mock(
+            Stand.class,
+            Mockito.withSettings().extraInterfaces(Stand.Recent.class)
+        );
+        Mockito.doReturn(
+            Arrays.asList(
+                new Pulses.Row(Arrays.asList(third, first)),
+                new Pulses.Row(Arrays.asList(second))
+            )
+        ).when(Stand.Recent.class.cast(stand)).recent("on-commit");
+        MatcherAssert.assertThat(
+            new Xembler(
+                new Directives().add("widget")
+                    .append(new BuildHistory().render(stand))
+            ).xml(),
+            XhtmlMatchers.hasXPaths(
+                "/widget/builds[count(build)=3]",
+                "/widget/builds/build[1]/coordinates[owner='urn:test:7']",
+                "/widget/builds/build[2]/coordinates[owner='urn:test:8']",
+                "/widget/builds/build[3][code=1]"
+            )
+        );
+        Mockito.verify(stand, Mockito.never()).pulses();
+    }
+
     /**
      * BuildHistory can gracefully handle broken tags.
      * @throws Exception If fails
@@ -191,4 +226,32 @@ public final class BuildHistoryTest {
         );
     }
 
+    /**
+     * Mock a pulse with build.
+     * @param owner Owner of the work
+     * @param rule Rule of the work
+     * @param code Exit code of the build
+     * @return Pulse
+     */
+    private Pulse build(final String owner, final String rule,
+        final long code) {
+        final Pulse pulse = Mockito.mock(Pulse.class);
+        Mockito.doReturn(
+            new Coordinates.Simple(URN.create(owner), rule, new Time(code))
+        ).when(pulse).coordinates();
+        Mockito.doReturn(
+            new Tags.Simple(
+                Arrays.<Tag>asList(
+                    new Tag.Simple(
+                        "on-commit", Level.INFO,
+                        new ArrayMap<String, String>()
+                            .with("code", Long.toString(code)),
+                        ""
+                    )
+                )
+            )
+        ).when(pulse).tags();
+        return pulse;
+    }
+
 }